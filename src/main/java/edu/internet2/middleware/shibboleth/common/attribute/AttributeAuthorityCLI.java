@@ -52,6 +52,7 @@ import ch.qos.logback.core.status.ErrorStatus;
 import ch.qos.logback.core.status.InfoStatus;
 import ch.qos.logback.core.status.StatusManager;
 
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.FilterEvaluationTrace;
 import edu.internet2.middleware.shibboleth.common.attribute.provider.SAML1AttributeAuthority;
 import edu.internet2.middleware.shibboleth.common.attribute.provider.SAML2AttributeAuthority;
 import edu.internet2.middleware.shibboleth.common.config.SpringConfigurationUtils;
@@ -100,6 +101,11 @@ public class AttributeAuthorityCLI {
         saml1AA = (SAML1AttributeAuthority) appCtx.getBean("shibboleth.SAML1AttributeAuthority");
         saml2AA = (SAML2AttributeAuthority) appCtx.getBean("shibboleth.SAML2AttributeAuthority");
 
+        Boolean explain = (Boolean) parser.getOptionValue(CLIParserBuilder.EXPLAIN_ARG, Boolean.FALSE);
+        if (explain.booleanValue()) {
+            FilterEvaluationTrace.start();
+        }
+
         SAMLObject attributeStatement;
         Boolean saml1 = (Boolean) parser.getOptionValue(CLIParserBuilder.SAML1_ARG, Boolean.FALSE);
         if (saml1.booleanValue()) {
@@ -111,6 +117,10 @@ public class AttributeAuthorityCLI {
         }
 
         printAttributeStatement(attributeStatement);
+
+        if (explain.booleanValue()) {
+            printFilterEvaluationTrace(FilterEvaluationTrace.stop());
+        }
     }
 
     /**
@@ -351,6 +361,24 @@ public class AttributeAuthorityCLI {
         }
     }
 
+    /**
+     * Prints the filter policy and rule evaluations recorded while filtering the attributes to system output.
+     * 
+     * @param trace the recorded evaluations
+     */
+    private static void printFilterEvaluationTrace(FilterEvaluationTrace trace) {
+        System.out.println("Attribute filter evaluation:");
+        List<String> lines = trace.getLines();
+        if (lines.isEmpty()) {
+            System.out.println("  No filter policies were evaluated.");
+            return;
+        }
+
+        for (String line : lines) {
+            System.out.println("  " + line);
+        }
+    }
+
     /**
      * Prints a help message to the given output stream.
      * 
@@ -385,6 +413,9 @@ public class AttributeAuthorityCLI {
         out.println(String.format("  --%-16s %s", CLIParserBuilder.SAML1,
                 "No-value parameter indicating the attribute "
                         + "authority should answer as if it received a SAML 1 request"));
+        out.println(String.format("  --%-16s %s", CLIParserBuilder.EXPLAIN,
+                "No-value parameter indicating that the attribute filter policies and rules evaluated, "
+                        + "with their results and timings, should be printed after the attribute statement"));
 
         out.println();
     }
@@ -428,6 +459,8 @@ public class AttributeAuthorityCLI {
 
         public static final String SAML1 = "saml1";
 
+        public static final String EXPLAIN = "explain";
+
         // Command line parser arguments
         public static CmdLineParser.Option HELP_ARG;
 
@@ -446,6 +479,8 @@ public class AttributeAuthorityCLI {
 
         public static CmdLineParser.Option SAML1_ARG;
 
+        public static CmdLineParser.Option EXPLAIN_ARG;
+
         /**
          * Create a new command line parser.
          * 
@@ -462,6 +497,7 @@ public class AttributeAuthorityCLI {
             PRINCIPAL_ARG = parser.addStringOption(PRINCIPAL);
             AUTHN_METHOD_ARG = parser.addStringOption(AUTHN_METHOD);
             SAML1_ARG = parser.addBooleanOption(SAML1);
+            EXPLAIN_ARG = parser.addBooleanOption(EXPLAIN);
 
             return parser;
         }
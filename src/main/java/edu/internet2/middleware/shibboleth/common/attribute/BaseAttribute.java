@@ -25,6 +25,7 @@ import java.util.Locale;
 import java.util.Map;
 
 import edu.internet2.middleware.shibboleth.common.attribute.encoding.AttributeEncoder;
+import edu.internet2.middleware.shibboleth.common.util.CopyOnWriteMap;
 
 /**
  * A resolved attribute.
@@ -33,16 +34,14 @@ import edu.internet2.middleware.shibboleth.common.attribute.encoding.AttributeEn
  */
 public abstract class BaseAttribute<ValueType> implements Comparable<BaseAttribute> {
     
-    /** Localized human intelligible attribute name. */
+    /** Localized human intelligible attribute name, created when first needed. */
     private Map<Locale, String> displayNames;
     
-    /** Localized human readable description of attribute. */
+    /** Localized human readable description of attribute, created when first needed. */
     private Map<Locale, String> displayDescriptions;
     
     /** Constructor. */
     protected BaseAttribute(){
-        displayNames = new HashMap<Locale, String>();
-        displayDescriptions = new HashMap<Locale, String>();
     }
 
     /**
@@ -51,18 +50,62 @@ public abstract class BaseAttribute<ValueType> implements Comparable<BaseAttribu
      * @return human readable description of attribute
      */
     public Map<Locale, String> getDisplayDescriptions() {
+        if (displayDescriptions == null) {
+            displayDescriptions = new HashMap<Locale, String>();
+        }
         return displayDescriptions;
     }
 
+    /**
+     * Adds a set of localized descriptions which may be shared with other attributes. If this attribute has no
+     * descriptions yet it reads through to the shared map, and only copies it if the descriptions are later modified;
+     * otherwise the shared descriptions are added to this attribute's own.
+     * 
+     * @param descriptions shared localized descriptions, must not be modified after being passed to this method
+     */
+    public void addSharedDisplayDescriptions(Map<Locale, String> descriptions) {
+        if (descriptions == null || descriptions.isEmpty()) {
+            return;
+        }
+
+        if (displayDescriptions == null || displayDescriptions.isEmpty()) {
+            displayDescriptions = new CopyOnWriteMap<Locale, String>(descriptions);
+        } else {
+            displayDescriptions.putAll(descriptions);
+        }
+    }
+
     /**
      * Gets the localized human readable name of the attribute.
      * 
      * @return human readable name of the attribute
      */
     public Map<Locale, String> getDisplayNames() {
+        if (displayNames == null) {
+            displayNames = new HashMap<Locale, String>();
+        }
         return displayNames;
     }
 
+    /**
+     * Adds a set of localized names which may be shared with other attributes. If this attribute has no names yet it
+     * reads through to the shared map, and only copies it if the names are later modified; otherwise the shared names
+     * are added to this attribute's own.
+     * 
+     * @param names shared localized names, must not be modified after being passed to this method
+     */
+    public void addSharedDisplayNames(Map<Locale, String> names) {
+        if (names == null || names.isEmpty()) {
+            return;
+        }
+
+        if (displayNames == null || displayNames.isEmpty()) {
+            displayNames = new CopyOnWriteMap<Locale, String>(names);
+        } else {
+            displayNames.putAll(names);
+        }
+    }
+
     /**
      * Gets the list of attribute encoders usable with this attribute.
      * 
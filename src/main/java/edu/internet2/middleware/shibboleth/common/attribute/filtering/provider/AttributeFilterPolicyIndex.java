@@ -0,0 +1,441 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.opensaml.xml.XMLObject;
+
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AbstractMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
+
+/**
+ * An index of attribute filter policies by the IDs of the attributes they have rules for.
+ * 
+ * A policy only has an effect on the attributes its rules are for, so a policy without a rule for any of the
+ * attributes being filtered may be skipped without evaluating its requirement. The index is a snapshot of the policy
+ * list it is built from; {@link #isIndexOf(List)} detects policies, or attribute rules, added or removed since.
+ * 
+ * Policies whose requirement rule depends only on the attribute requester, the attribute issuer and their metadata
+ * (see {@link AbstractMatchFunctor#isRequesterStatic(MatchFunctor)}) are evaluated once per requester and issuer, and
+ * the result is cached in the index. Cached results are keyed on the identity of the requester's and issuer's
+ * metadata objects, so a metadata refresh, which replaces those objects, leads to re-evaluation. The metadata objects
+ * are only weakly referenced by the cache, so cached results do not keep replaced metadata in memory; results whose
+ * metadata has been garbage collected are dropped from the cache. A policy reload builds a new index and so starts
+ * with an empty cache.
+ */
+@ThreadSafe
+public class AttributeFilterPolicyIndex {
+
+    /** List the index was built from. */
+    private final List<AttributeFilterPolicy> policySource;
+
+    /** Indexed policies, in evaluation order. */
+    private final AttributeFilterPolicy[] policies;
+
+    /** Number of attribute rules each policy had when the index was built. */
+    private final int[] ruleCounts;
+
+    /** Ordinals of the policies with a rule for an attribute, indexed by attribute ID. */
+    private final Map<String, BitSet> attributePolicies;
+
+    /** Ordinals of the policies whose requirement rule result is the same for every principal. */
+    private final BitSet requesterStaticPolicies;
+
+    /** Maximum number of requester and issuer combinations whose policy activation is cached. */
+    private final int activationCacheSize;
+
+    /** Cached policy activations, least recently used first. */
+    private final LinkedHashMap<RequesterKey, RequesterPolicyActivation> activationCache;
+
+    /** Queue to which the references to garbage collected metadata held by cached keys are added. */
+    private final ReferenceQueue<XMLObject> collectedMetadata;
+
+    /** Names of the match functors of the indexed policies, created on first use. */
+    private volatile MatchFunctorNames functorNames;
+
+    /**
+     * Constructor.
+     * 
+     * @param filterPolicies policies to index, in evaluation order
+     */
+    public AttributeFilterPolicyIndex(List<AttributeFilterPolicy> filterPolicies) {
+        this(filterPolicies, 0);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param filterPolicies policies to index, in evaluation order
+     * @param cacheSize maximum number of requester and issuer combinations whose policy activation is cached, 0 to
+     *            disable caching
+     */
+    public AttributeFilterPolicyIndex(List<AttributeFilterPolicy> filterPolicies, int cacheSize) {
+        if (filterPolicies == null) {
+            throw new IllegalArgumentException("Filter policies may not be null");
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Activation cache size may not be negative");
+        }
+
+        policySource = filterPolicies;
+        policies = filterPolicies.toArray(new AttributeFilterPolicy[filterPolicies.size()]);
+        ruleCounts = new int[policies.length];
+        attributePolicies = new HashMap<String, BitSet>();
+        requesterStaticPolicies = new BitSet(policies.length);
+        activationCacheSize = cacheSize;
+        activationCache = new LinkedHashMap<RequesterKey, RequesterPolicyActivation>(16, 0.75f, true);
+        collectedMetadata = new ReferenceQueue<XMLObject>();
+
+        BitSet policyOrdinals;
+        for (int i = 0; i < policies.length; i++) {
+            if (AbstractMatchFunctor.isRequesterStatic(policies[i].getPolicyRequirementRule())) {
+                requesterStaticPolicies.set(i);
+            }
+            ruleCounts[i] = policies[i].getAttributeRules().size();
+            for (AttributeRule rule : policies[i].getAttributeRules()) {
+                policyOrdinals = attributePolicies.get(rule.getAttributeId());
+                if (policyOrdinals == null) {
+                    policyOrdinals = new BitSet(policies.length);
+                    attributePolicies.put(rule.getAttributeId(), policyOrdinals);
+                }
+                policyOrdinals.set(i);
+            }
+        }
+    }
+
+    /**
+     * Checks whether this index still reflects the given policy list.
+     * 
+     * @param filterPolicies the policy list
+     * 
+     * @return true if the index was built from the list and no policies or attribute rules have been added or removed
+     *         since
+     */
+    public boolean isIndexOf(List<AttributeFilterPolicy> filterPolicies) {
+        if (filterPolicies != policySource || filterPolicies.size() != policies.length) {
+            return false;
+        }
+
+        for (int i = 0; i < policies.length; i++) {
+            if (filterPolicies.get(i) != policies[i] || policies[i].getAttributeRules().size() != ruleCounts[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the names under which the match functors of the indexed policies are reported when evaluations are
+     * recorded.
+     * 
+     * @return names of the match functors of the indexed policies
+     */
+    public MatchFunctorNames getFunctorNames() {
+        MatchFunctorNames names = functorNames;
+        if (names == null) {
+            names = new MatchFunctorNames(Arrays.asList(policies));
+            functorNames = names;
+        }
+        return names;
+    }
+
+    /**
+     * Gets the number of indexed policies.
+     * 
+     * @return number of indexed policies
+     */
+    public int getPolicyCount() {
+        return policies.length;
+    }
+
+    /**
+     * Gets an indexed policy.
+     * 
+     * @param ordinal position of the policy in evaluation order
+     * 
+     * @return the policy
+     */
+    public AttributeFilterPolicy getPolicy(int ordinal) {
+        return policies[ordinal];
+    }
+
+    /**
+     * Gets the policies which have a rule for at least one of the given attributes.
+     * 
+     * @param attributeIds IDs of the attributes
+     * 
+     * @return ordinals of the policies, the returned set may be modified by the caller
+     */
+    public BitSet getPolicies(Collection<String> attributeIds) {
+        BitSet relevantPolicies = new BitSet(policies.length);
+        BitSet policyOrdinals;
+        for (String attributeId : attributeIds) {
+            policyOrdinals = attributePolicies.get(attributeId);
+            if (policyOrdinals != null) {
+                relevantPolicies.or(policyOrdinals);
+            }
+        }
+        return relevantPolicies;
+    }
+
+    /**
+     * Checks whether the result of a policy's requirement rule is the same for every principal.
+     * 
+     * @param ordinal position of the policy in evaluation order
+     * 
+     * @return true if the policy's requirement rule depends only on the attribute requester and issuer
+     */
+    public boolean isRequesterStatic(int ordinal) {
+        return requesterStaticPolicies.get(ordinal);
+    }
+
+    /**
+     * Gets the cached activation of the requester static policies for the requester and issuer of a request.
+     * 
+     * @param requestContext the attribute request context
+     * 
+     * @return the policy activation for the request's requester and issuer, or null if caching is disabled
+     */
+    public RequesterPolicyActivation getRequesterPolicyActivation(SAMLProfileRequestContext requestContext) {
+        if (activationCacheSize == 0 || requesterStaticPolicies.isEmpty()) {
+            return null;
+        }
+
+        RequesterKey key = new RequesterKey(requestContext);
+        synchronized (activationCache) {
+            Reference<? extends XMLObject> collected = collectedMetadata.poll();
+            while (collected != null) {
+                activationCache.remove(((MetadataReference) collected).getKey());
+                collected = collectedMetadata.poll();
+            }
+
+            RequesterPolicyActivation activation = activationCache.get(key);
+            if (activation == null) {
+                activation = new RequesterPolicyActivation();
+                activationCache.put(new RequesterKey(key, collectedMetadata), activation);
+                if (activationCache.size() > activationCacheSize) {
+                    activationCache.remove(activationCache.keySet().iterator().next());
+                }
+            }
+            return activation;
+        }
+    }
+
+    /** Which of the requester static policies are active for a particular requester and issuer. */
+    public class RequesterPolicyActivation {
+
+        /** Ordinals of the policies whose requirement rule has been evaluated. */
+        private final BitSet evaluated;
+
+        /** Ordinals of the evaluated policies whose requirement rule was met. */
+        private final BitSet active;
+
+        /** Constructor. */
+        protected RequesterPolicyActivation() {
+            evaluated = new BitSet(policies.length);
+            active = new BitSet(policies.length);
+        }
+
+        /**
+         * Checks whether a requester static policy is active, evaluating its requirement rule the first time the policy
+         * is checked.
+         * 
+         * @param ordinal position of the policy in evaluation order
+         * @param filterContext current filtering context, used if the requirement rule must be evaluated
+         * 
+         * @return true if the policy's requirement rule is met
+         * 
+         * @throws FilterProcessingException thrown if the requirement rule can not be evaluated
+         */
+        public boolean isActive(int ordinal, ShibbolethFilteringContext filterContext)
+                throws FilterProcessingException {
+            synchronized (this) {
+                if (evaluated.get(ordinal)) {
+                    return active.get(ordinal);
+                }
+            }
+
+            MatchFunctor requirement = policies[ordinal].getPolicyRequirementRule();
+            boolean isActive = requirement != null && requirement.evaluatePolicyRequirement(filterContext);
+
+            synchronized (this) {
+                evaluated.set(ordinal);
+                active.set(ordinal, isActive);
+            }
+            return isActive;
+        }
+    }
+
+    /**
+     * Identifies the requester, issuer and metadata a policy activation was computed for.
+     * 
+     * Keys used to look up a cached activation hold the metadata of the current request. Keys stored in the cache
+     * hold their metadata weakly; once a metadata object has been garbage collected the key no longer equals any other
+     * key.
+     */
+    private static class RequesterKey {
+
+        /** Number of metadata objects identifying a key. */
+        private static final int METADATA_COUNT = 4;
+
+        /** Entity ID of the attribute requester. */
+        private final String requester;
+
+        /** Entity ID of the attribute issuer. */
+        private final String issuer;
+
+        /** Requester entity, requester role, issuer entity and issuer role metadata, null for a cached key. */
+        private final XMLObject[] metadata;
+
+        /** Weak references to the metadata, null for a lookup key or for metadata which was not available. */
+        private final MetadataReference[] metadataReferences;
+
+        /** Hash code of this key. */
+        private final int hashCode;
+
+        /**
+         * Constructor for a lookup key.
+         * 
+         * @param requestContext request context from which the requester, issuer and their metadata are taken
+         */
+        public RequesterKey(SAMLProfileRequestContext requestContext) {
+            requester = requestContext.getInboundMessageIssuer();
+            issuer = requestContext.getOutboundMessageIssuer();
+            metadata = new XMLObject[] {requestContext.getPeerEntityMetadata(),
+                    requestContext.getPeerEntityRoleMetadata(), requestContext.getLocalEntityMetadata(),
+                    requestContext.getLocalEntityRoleMetadata()};
+            metadataReferences = null;
+
+            int hash = requester == null ? 0 : requester.hashCode();
+            hash = hash * 31 + (issuer == null ? 0 : issuer.hashCode());
+            for (XMLObject metadataObject : metadata) {
+                hash = hash * 31 + System.identityHashCode(metadataObject);
+            }
+            hashCode = hash;
+        }
+
+        /**
+         * Constructor for a key to be cached.
+         * 
+         * @param lookupKey the lookup key whose requester, issuer and metadata are copied
+         * @param queue queue to which the metadata references are added once the metadata is garbage collected
+         */
+        public RequesterKey(RequesterKey lookupKey, ReferenceQueue<XMLObject> queue) {
+            requester = lookupKey.requester;
+            issuer = lookupKey.issuer;
+            metadata = null;
+            metadataReferences = new MetadataReference[METADATA_COUNT];
+            for (int i = 0; i < METADATA_COUNT; i++) {
+                if (lookupKey.metadata[i] != null) {
+                    metadataReferences[i] = new MetadataReference(lookupKey.metadata[i], this, queue);
+                }
+            }
+            hashCode = lookupKey.hashCode;
+        }
+
+        /**
+         * Gets the object identifying one of the metadata objects of this key.
+         * 
+         * @param index index of the metadata object
+         * 
+         * @return the metadata object, null if no metadata was available, or the reference to the metadata if it has
+         *         been garbage collected
+         */
+        private Object getMetadata(int index) {
+            if (metadata != null) {
+                return metadata[index];
+            }
+
+            MetadataReference reference = metadataReferences[index];
+            if (reference == null) {
+                return null;
+            }
+            XMLObject metadataObject = reference.get();
+            return metadataObject != null ? metadataObject : reference;
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return hashCode;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof RequesterKey)) {
+                return false;
+            }
+
+            RequesterKey other = (RequesterKey) obj;
+            if (hashCode != other.hashCode
+                    || !(requester == null ? other.requester == null : requester.equals(other.requester))
+                    || !(issuer == null ? other.issuer == null : issuer.equals(other.issuer))) {
+                return false;
+            }
+            for (int i = 0; i < METADATA_COUNT; i++) {
+                if (getMetadata(i) != other.getMetadata(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Weak reference to metadata held by a cached key. */
+    private static class MetadataReference extends WeakReference<XMLObject> {
+
+        /** Cached key holding this reference. */
+        private final RequesterKey key;
+
+        /**
+         * Constructor.
+         * 
+         * @param referent the metadata
+         * @param cachedKey cached key holding this reference
+         * @param queue queue to which this reference is added once the metadata is garbage collected
+         */
+        public MetadataReference(XMLObject referent, RequesterKey cachedKey, ReferenceQueue<XMLObject> queue) {
+            super(referent, queue);
+            key = cachedKey;
+        }
+
+        /**
+         * Gets the cached key holding this reference.
+         * 
+         * @return cached key holding this reference
+         */
+        public RequesterKey getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+/**
+ * Receives the outcome of the filter policy and match functor evaluations performed while filtering attributes.
+ * 
+ * A listener is attached to a filtering request through {@link ShibbolethFilteringContext#setEvaluationListener}.
+ * Evaluations are reported when they complete, so the evaluations of a functor's children are reported before that of
+ * the functor itself, and the evaluations made while evaluating a policy are reported before the policy.
+ */
+public interface FilterEvaluationListener {
+
+    /**
+     * Called when a match functor evaluation completes.
+     * 
+     * @param functor the evaluated functor
+     * @param depth nesting depth of the evaluation, 0 for a functor evaluated directly by the filtering engine
+     * @param attributeId ID of the attribute whose value was evaluated, null for a policy requirement evaluation
+     * @param attributeValue the attribute value evaluated, null for a policy requirement evaluation
+     * @param result result of the evaluation, false if the evaluation failed
+     * @param elapsedTime time taken by the evaluation, in nanoseconds
+     */
+    public void functorEvaluated(MatchFunctor functor, int depth, String attributeId, Object attributeValue,
+            boolean result, long elapsedTime);
+
+    /**
+     * Called when the evaluation of a filter policy, including its attribute rules if it was active, completes.
+     * 
+     * @param filterPolicy the evaluated policy
+     * @param active whether the policy was active
+     * @param elapsedTime time taken by the evaluation, in nanoseconds
+     */
+    public void policyEvaluated(AttributeFilterPolicy filterPolicy, boolean active, long elapsedTime);
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Aggregates, across filtering requests, the number of evaluations, the number of matches and the time spent in each
+ * filter policy and match functor.
+ * 
+ * Policies are identified by their ID and functors by their {@link MatchFunctorNames} name, the same name used in a
+ * {@link FilterEvaluationTrace}. The time recorded for a policy, or a functor with children, includes the time spent
+ * in the functors it evaluated.
+ */
+@ThreadSafe
+public class FilterEvaluationStatistics implements FilterEvaluationListener, FilterEvaluationStatisticsMBean {
+
+    /** Number of filtering requests recorded. */
+    private final AtomicLong filteringRequests;
+
+    /** Counters of each policy, indexed by policy ID. */
+    private final ConcurrentMap<String, Counter> policyCounters;
+
+    /** Counters of each functor. */
+    private final ConcurrentMap<MatchFunctor, Counter> functorCounters;
+
+    /** Names under which the functors are reported. */
+    private volatile MatchFunctorNames functorNames;
+
+    /** Constructor. */
+    public FilterEvaluationStatistics() {
+        filteringRequests = new AtomicLong();
+        policyCounters = new ConcurrentHashMap<String, Counter>();
+        functorCounters = new ConcurrentHashMap<MatchFunctor, Counter>();
+        functorNames = new MatchFunctorNames(null);
+    }
+
+    /**
+     * Sets the names under which the functors are reported.
+     * 
+     * @param names names under which the functors are reported
+     */
+    public void setFunctorNames(MatchFunctorNames names) {
+        if (names == null) {
+            throw new IllegalArgumentException("Functor names may not be null");
+        }
+        functorNames = names;
+    }
+
+    /** Records the completion of a filtering request. */
+    public void filteringRequestCompleted() {
+        filteringRequests.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    public void functorEvaluated(MatchFunctor functor, int depth, String attributeId, Object attributeValue,
+            boolean result, long elapsedTime) {
+        Counter counter = functorCounters.get(functor);
+        if (counter == null) {
+            counter = new Counter();
+            Counter existing = functorCounters.putIfAbsent(functor, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.record(result, elapsedTime);
+    }
+
+    /** {@inheritDoc} */
+    public void policyEvaluated(AttributeFilterPolicy filterPolicy, boolean active, long elapsedTime) {
+        String policyId = String.valueOf(filterPolicy.getPolicyId());
+        Counter counter = policyCounters.get(policyId);
+        if (counter == null) {
+            counter = new Counter();
+            Counter existing = policyCounters.putIfAbsent(policyId, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.record(active, elapsedTime);
+    }
+
+    /** {@inheritDoc} */
+    public long getFilteringRequestCount() {
+        return filteringRequests.get();
+    }
+
+    /** {@inheritDoc} */
+    public String[] getPolicyStatistics() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Counter> entry : sortByTime(policyCounters)) {
+            lines.add(entry.getValue().format(entry.getKey(), "active"));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /** {@inheritDoc} */
+    public String[] getFunctorStatistics() {
+        MatchFunctorNames names = functorNames;
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<MatchFunctor, Counter> entry : sortByTime(functorCounters)) {
+            lines.add(entry.getValue().format(names.getName(entry.getKey()), "matches"));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        filteringRequests.set(0);
+        policyCounters.clear();
+        functorCounters.clear();
+    }
+
+    /**
+     * Discards the functor statistics, which are no longer meaningful once the functors have been replaced by a
+     * reload of the filter policies.
+     */
+    public void resetFunctorStatistics() {
+        functorCounters.clear();
+    }
+
+    /**
+     * Gets the entries of a counter map, in descending order of total time.
+     * 
+     * @param <K> type of the counter keys
+     * @param counters the counters
+     * 
+     * @return the sorted entries
+     */
+    private <K> List<Map.Entry<K, Counter>> sortByTime(Map<K, Counter> counters) {
+        List<Map.Entry<K, Counter>> entries = new ArrayList<Map.Entry<K, Counter>>(counters.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<K, Counter>>() {
+            public int compare(Map.Entry<K, Counter> entry1, Map.Entry<K, Counter> entry2) {
+                long time1 = entry1.getValue().time.get();
+                long time2 = entry2.getValue().time.get();
+                return time1 < time2 ? 1 : (time1 == time2 ? 0 : -1);
+            }
+        });
+        return entries;
+    }
+
+    /** Evaluation counters of a policy or functor. */
+    private static class Counter {
+
+        /** Number of evaluations. */
+        private final AtomicLong evaluations = new AtomicLong();
+
+        /** Number of evaluations which matched. */
+        private final AtomicLong matches = new AtomicLong();
+
+        /** Total time of the evaluations, in nanoseconds. */
+        private final AtomicLong time = new AtomicLong();
+
+        /**
+         * Records an evaluation.
+         * 
+         * @param matched whether the evaluation matched
+         * @param elapsedTime time taken by the evaluation, in nanoseconds
+         */
+        public void record(boolean matched, long elapsedTime) {
+            evaluations.incrementAndGet();
+            if (matched) {
+                matches.incrementAndGet();
+            }
+            time.addAndGet(elapsedTime);
+        }
+
+        /**
+         * Formats the counters as a single line.
+         * 
+         * @param name name of the counted policy or functor
+         * @param matchLabel label of the match count
+         * 
+         * @return the formatted counters
+         */
+        public String format(String name, String matchLabel) {
+            long count = evaluations.get();
+            long matchCount = matches.get();
+            long totalTime = time.get();
+            return String.format("%s: evaluations=%d, %s=%d (%.1f%%), total time=%.3f ms, mean time=%.3f us", name,
+                    count, matchLabel, matchCount, count == 0 ? 0.0 : 100.0 * matchCount / count, totalTime / 1e6,
+                    count == 0 ? 0.0 : totalTime / 1e3 / count);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+/**
+ * Management interface of {@link FilterEvaluationStatistics}.
+ */
+public interface FilterEvaluationStatisticsMBean {
+
+    /**
+     * Gets the number of filtering requests recorded.
+     * 
+     * @return number of filtering requests recorded
+     */
+    public long getFilteringRequestCount();
+
+    /**
+     * Gets the statistics of each filter policy, one line per policy, most time consuming first.
+     * 
+     * @return statistics of each filter policy
+     */
+    public String[] getPolicyStatistics();
+
+    /**
+     * Gets the statistics of each match functor, one line per functor, most time consuming first.
+     * 
+     * @return statistics of each match functor
+     */
+    public String[] getFunctorStatistics();
+
+    /** Discards all recorded statistics. */
+    public void reset();
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Records the filter policy and match functor evaluations of the filtering requests made on a thread, so that the way
+ * a set of attributes was filtered can be explained.
+ * 
+ * A trace is started on the current thread with {@link #start()}; the filtering engine then reports the evaluations
+ * of every filtering request made on that thread to the trace until {@link #stop()} is called. Tracing slows
+ * filtering down and should only be enabled for test requests.
+ */
+public class FilterEvaluationTrace implements FilterEvaluationListener {
+
+    /** Trace of the current thread. */
+    private static final ThreadLocal<FilterEvaluationTrace> CURRENT_TRACE = new ThreadLocal<FilterEvaluationTrace>();
+
+    /** Recorded evaluations, in the order they completed. */
+    private final List<Evaluation> evaluations;
+
+    /** Names under which functors are recorded. */
+    private MatchFunctorNames functorNames;
+
+    /** Constructor. */
+    public FilterEvaluationTrace() {
+        evaluations = new ArrayList<Evaluation>();
+        functorNames = new MatchFunctorNames(null);
+    }
+
+    /**
+     * Starts a new trace on the current thread, replacing any trace already started.
+     * 
+     * @return the new trace
+     */
+    public static FilterEvaluationTrace start() {
+        FilterEvaluationTrace trace = new FilterEvaluationTrace();
+        CURRENT_TRACE.set(trace);
+        return trace;
+    }
+
+    /**
+     * Gets the trace started on the current thread.
+     * 
+     * @return the trace started on the current thread, or null if there is none
+     */
+    public static FilterEvaluationTrace getCurrent() {
+        return CURRENT_TRACE.get();
+    }
+
+    /**
+     * Stops the trace started on the current thread.
+     * 
+     * @return the stopped trace, or null if there was none
+     */
+    public static FilterEvaluationTrace stop() {
+        FilterEvaluationTrace trace = CURRENT_TRACE.get();
+        CURRENT_TRACE.remove();
+        return trace;
+    }
+
+    /**
+     * Sets the names under which functors evaluated from now on are recorded.
+     * 
+     * @param names names under which functors are recorded
+     */
+    public synchronized void setFunctorNames(MatchFunctorNames names) {
+        if (names == null) {
+            throw new IllegalArgumentException("Functor names may not be null");
+        }
+        functorNames = names;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void functorEvaluated(MatchFunctor functor, int depth, String attributeId,
+            Object attributeValue, boolean result, long elapsedTime) {
+        StringBuilder description = new StringBuilder(functorNames.getName(functor));
+        if (attributeId != null) {
+            description.append(" [").append(attributeId).append('=').append(attributeValue).append(']');
+        }
+        description.append(": ").append(result);
+        evaluations.add(new Evaluation(description.toString(), depth, elapsedTime));
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void policyEvaluated(AttributeFilterPolicy filterPolicy, boolean active, long elapsedTime) {
+        evaluations.add(new Evaluation("Policy " + filterPolicy.getPolicyId() + ": "
+                + (active ? "active" : "not active"), -1, elapsedTime));
+    }
+
+    /**
+     * Gets the recorded evaluations, one per line, with the evaluations made while evaluating a policy or functor
+     * indented beneath it. Each line ends with the time taken by the evaluation.
+     * 
+     * @return the recorded evaluations
+     */
+    public synchronized List<String> getLines() {
+        LinkedList<Evaluation> pending = new LinkedList<Evaluation>();
+        for (Evaluation evaluation : evaluations) {
+            evaluation.children.clear();
+        }
+        for (Evaluation evaluation : evaluations) {
+            Evaluation child;
+            while (!pending.isEmpty() && pending.getLast().depth > evaluation.depth) {
+                child = pending.removeLast();
+                evaluation.children.add(0, child);
+            }
+            pending.add(evaluation);
+        }
+
+        List<String> lines = new ArrayList<String>();
+        for (Evaluation root : pending) {
+            root.format(lines, "");
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        StringBuilder trace = new StringBuilder();
+        for (String line : getLines()) {
+            trace.append(line).append('\n');
+        }
+        return trace.toString();
+    }
+
+    /** A recorded evaluation. */
+    private static class Evaluation {
+
+        /** Description of the evaluation and its result. */
+        private final String description;
+
+        /** Nesting depth of the evaluation, -1 for a policy. */
+        private final int depth;
+
+        /** Time taken by the evaluation, in nanoseconds. */
+        private final long elapsedTime;
+
+        /** Evaluations made while performing this one. */
+        private final List<Evaluation> children;
+
+        /**
+         * Constructor.
+         * 
+         * @param evaluationDescription description of the evaluation and its result
+         * @param evaluationDepth nesting depth of the evaluation, -1 for a policy
+         * @param time time taken by the evaluation, in nanoseconds
+         */
+        public Evaluation(String evaluationDescription, int evaluationDepth, long time) {
+            description = evaluationDescription;
+            depth = evaluationDepth;
+            elapsedTime = time;
+            children = new ArrayList<Evaluation>();
+        }
+
+        /**
+         * Formats this evaluation and, beneath it, its children.
+         * 
+         * @param lines list to which the lines are added
+         * @param indent indentation of this evaluation
+         */
+        public void format(List<String> lines, String indent) {
+            lines.add(String.format("%s%s (%.3f ms)", indent, description, elapsedTime / 1e6));
+            for (Evaluation child : children) {
+                child.format(lines, indent + "  ");
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AbstractMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AndMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.GeneratedMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.NotMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.OrMatchFunctor;
+
+/**
+ * The names under which the match functors of a set of filter policies are reported in
+ * {@link FilterEvaluationStatistics} and {@link FilterEvaluationTrace}.
+ * 
+ * A functor is named after where it is used: the ID of its policy, the attribute ID of its attribute rule, if any, and
+ * its role, <code>requirement</code>, <code>permit</code> or <code>deny</code>, separated by slashes. A functor nested
+ * in an AND, OR or NOT functor is named after its parent followed by its position within the parent, starting at 1.
+ * The name ends with the functor's configured ID, in brackets, if it has one and its class name, e.g.
+ * <code>releaseToSP/mail/permit/2[mailDomain] (AttributeValueRegexMatchFunctor)</code>. A functor used in more than one
+ * place is named after the first, in policy order. Functors which are not part of the policies are named after their
+ * class and identity hash code.
+ */
+@ThreadSafe
+public class MatchFunctorNames {
+
+    /** Names of the functors. */
+    private final Map<MatchFunctor, String> names;
+
+    /**
+     * Constructor.
+     * 
+     * @param filterPolicies policies whose functors are named, in evaluation order
+     */
+    public MatchFunctorNames(List<AttributeFilterPolicy> filterPolicies) {
+        names = new IdentityHashMap<MatchFunctor, String>();
+        if (filterPolicies == null) {
+            return;
+        }
+
+        String policyPath;
+        for (AttributeFilterPolicy filterPolicy : filterPolicies) {
+            policyPath = String.valueOf(filterPolicy.getPolicyId());
+            addName(filterPolicy.getPolicyRequirementRule(), policyPath + "/requirement");
+            for (AttributeRule attributeRule : filterPolicy.getAttributeRules()) {
+                addName(attributeRule.getPermitValueRule(), policyPath + "/" + attributeRule.getAttributeId()
+                        + "/permit");
+                addName(attributeRule.getDenyValueRule(), policyPath + "/" + attributeRule.getAttributeId()
+                        + "/deny");
+            }
+        }
+    }
+
+    /**
+     * Gets the name under which a functor which is not part of the named policies is reported.
+     * 
+     * @param functor the functor
+     * 
+     * @return the functor's class name, without its package, and identity hash code
+     */
+    public static String getDefaultName(MatchFunctor functor) {
+        return getClassName(functor) + "@" + Integer.toHexString(System.identityHashCode(functor));
+    }
+
+    /**
+     * Gets the name under which a functor is reported.
+     * 
+     * @param functor the functor
+     * 
+     * @return the name of the functor
+     */
+    public String getName(MatchFunctor functor) {
+        String name = names.get(functor);
+        if (name == null) {
+            return getDefaultName(functor);
+        }
+        return name;
+    }
+
+    /**
+     * Names a functor, and the functors nested in it, unless it has already been named.
+     * 
+     * @param functor the functor, may be null
+     * @param path the path of the functor within the policies
+     */
+    private void addName(MatchFunctor functor, String path) {
+        if (functor == null || names.containsKey(functor)) {
+            return;
+        }
+
+        StringBuilder name = new StringBuilder(path);
+        String functorId = getFunctorId(functor);
+        if (functorId != null) {
+            name.append('[').append(functorId).append(']');
+        }
+        name.append(" (").append(getClassName(functor)).append(')');
+        names.put(functor, name.toString());
+
+        MatchFunctor source = functor;
+        if (functor instanceof GeneratedMatchFunctor) {
+            source = ((GeneratedMatchFunctor) functor).getSource();
+        }
+
+        List<MatchFunctor> children = null;
+        if (source instanceof AndMatchFunctor) {
+            children = ((AndMatchFunctor) source).getTargetRules();
+        } else if (source instanceof OrMatchFunctor) {
+            children = ((OrMatchFunctor) source).getTargetRules();
+        } else if (source instanceof NotMatchFunctor) {
+            addName(((NotMatchFunctor) source).getTargetRule(), path + "/1");
+        }
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                addName(children.get(i), path + "/" + (i + 1));
+            }
+        }
+    }
+
+    /**
+     * Gets the configured ID of a functor.
+     * 
+     * @param functor the functor
+     * 
+     * @return the configured ID of the functor, or null if it has none
+     */
+    private static String getFunctorId(MatchFunctor functor) {
+        if (functor instanceof AbstractMatchFunctor) {
+            return ((AbstractMatchFunctor) functor).getFunctorId();
+        }
+        return null;
+    }
+
+    /**
+     * Gets the class name of a functor without its package.
+     * 
+     * @param functor the functor
+     * 
+     * @return the class name of the functor without its package
+     */
+    private static String getClassName(MatchFunctor functor) {
+        String className = functor.getClass().getName();
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Evaluates a permit value rule against many values of an attribute in parallel.
+ * 
+ * Values are split in to chunks which are evaluated by a fork-join pool shared by all requests. To keep the work
+ * bounded under load at most as many evaluations as the pool has threads run in parallel at any one time; an
+ * evaluation started while they are all in use is run on the calling thread instead.
+ * 
+ * The rule is evaluated with the filtering context of the request, so it must not modify the context while evaluating
+ * a value.
+ */
+@ThreadSafe
+public class ParallelValueEvaluator {
+
+    /** Smallest number of values evaluated by a single task. */
+    private static final int MIN_CHUNK_SIZE = 32;
+
+    /** Pool the values are evaluated in. */
+    private final ForkJoinPool pool;
+
+    /** Permits for the evaluations allowed to run in parallel. */
+    private final Semaphore parallelEvaluations;
+
+    /**
+     * Constructor.
+     * 
+     * @param threads number of threads used to evaluate values
+     */
+    public ParallelValueEvaluator(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be greater than 0");
+        }
+        pool = new ForkJoinPool(threads);
+        parallelEvaluations = new Semaphore(threads);
+    }
+
+    /**
+     * Evaluates a permit value rule against the values of an attribute.
+     * 
+     * @param permitRule the permit value rule
+     * @param filterContext current filtering context
+     * @param attributeId ID of the attribute the values belong to
+     * @param values the values to evaluate
+     * 
+     * @return the result of evaluating each value, in the order of the values
+     * 
+     * @throws FilterProcessingException thrown if the rule can not be evaluated against a value
+     */
+    public boolean[] evaluate(MatchFunctor permitRule, ShibbolethFilteringContext filterContext, String attributeId,
+            Object[] values) throws FilterProcessingException {
+        boolean[] results = new boolean[values.length];
+        if (!parallelEvaluations.tryAcquire()) {
+            for (int i = 0; i < values.length; i++) {
+                results[i] = permitRule.evaluatePermitValue(filterContext, attributeId, values[i]);
+            }
+            return results;
+        }
+
+        try {
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, values.length / (pool.getParallelism() * 4));
+            pool.invoke(new EvaluationTask(permitRule, filterContext, attributeId, values, results, 0, values.length,
+                    chunkSize));
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause != null) {
+                if (cause instanceof FilterProcessingException) {
+                    throw (FilterProcessingException) cause;
+                }
+                cause = cause.getCause();
+            }
+            throw e;
+        } finally {
+            parallelEvaluations.release();
+        }
+        return results;
+    }
+
+    /** Stops the threads used to evaluate values. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /** Task which evaluates a range of values, splitting it if it is larger than the chunk size. */
+    private static class EvaluationTask extends RecursiveAction {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = -1866473460546212347L;
+
+        /** The permit value rule. */
+        private final transient MatchFunctor permitRule;
+
+        /** Current filtering context. */
+        private final transient ShibbolethFilteringContext filterContext;
+
+        /** ID of the attribute the values belong to. */
+        private final String attributeId;
+
+        /** All the values being evaluated. */
+        private final transient Object[] values;
+
+        /** Results of evaluating all the values. */
+        private final boolean[] results;
+
+        /** Index of the first value evaluated by this task. */
+        private final int start;
+
+        /** Index after the last value evaluated by this task. */
+        private final int end;
+
+        /** Largest number of values evaluated without splitting the range. */
+        private final int chunkSize;
+
+        /**
+         * Constructor.
+         * 
+         * @param rule the permit value rule
+         * @param context current filtering context
+         * @param id ID of the attribute the values belong to
+         * @param allValues all the values being evaluated
+         * @param allResults results of evaluating all the values
+         * @param rangeStart index of the first value evaluated by this task
+         * @param rangeEnd index after the last value evaluated by this task
+         * @param maxChunkSize largest number of values evaluated without splitting the range
+         */
+        public EvaluationTask(MatchFunctor rule, ShibbolethFilteringContext context, String id, Object[] allValues,
+                boolean[] allResults, int rangeStart, int rangeEnd, int maxChunkSize) {
+            permitRule = rule;
+            filterContext = context;
+            attributeId = id;
+            values = allValues;
+            results = allResults;
+            start = rangeStart;
+            end = rangeEnd;
+            chunkSize = maxChunkSize;
+        }
+
+        /** {@inheritDoc} */
+        protected void compute() {
+            if (end - start > chunkSize) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new EvaluationTask(permitRule, filterContext, attributeId, values, results, start, middle,
+                        chunkSize), new EvaluationTask(permitRule, filterContext, attributeId, values, results,
+                        middle, end, chunkSize));
+                return;
+            }
+
+            try {
+                for (int i = start; i < end; i++) {
+                    results[i] = permitRule.evaluatePermitValue(filterContext, attributeId, values[i]);
+                }
+            } catch (FilterProcessingException e) {
+                throw new IllegalStateException("Unable to evaluate permit value rule", e);
+            }
+        }
+    }
+}
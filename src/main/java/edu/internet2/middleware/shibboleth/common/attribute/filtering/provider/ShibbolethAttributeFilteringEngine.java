@@ -17,7 +17,9 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -26,6 +28,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.locks.Lock;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
@@ -33,12 +38,34 @@ import org.springframework.context.ApplicationContext;
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.AttributeFilteringEngine;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.AttributeFilteringException;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.AttributeFilterPolicyIndex.RequesterPolicyActivation;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.MatchFunctorBytecodeGenerator;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.MatchFunctorCompiler;
 import edu.internet2.middleware.shibboleth.common.config.BaseReloadableService;
 import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
 import edu.internet2.middleware.shibboleth.common.service.ServiceException;
 
 /**
  * Implementation of {@link AttributeFilteringEngine}.
+ * 
+ * Only the policies with a rule for at least one of the attributes being filtered are evaluated, in their configured
+ * order. The deny value rules of the active policies are collected as the policies are evaluated and then applied, in
+ * a single pass, to the values retained by all the permit value rules.
+ * 
+ * The results of policy requirement rules which depend only on the attribute requester and issuer are cached, per
+ * requester and issuer, so that they are not re-evaluated for every principal. The match functors of newly loaded
+ * policies are compiled, see {@link MatchFunctorCompiler}, and, if enabled, turned in to generated bytecode, see
+ * {@link MatchFunctorBytecodeGenerator}.
+ * 
+ * If a parallel value threshold is set, the permit value rules for attributes with at least that many values are
+ * evaluated in parallel, see {@link ParallelValueEvaluator}. Retained values keep the order of the attribute's values.
+ * 
+ * If profiling is enabled, the evaluations of every request are recorded in the engine's
+ * {@link FilterEvaluationStatistics}, which are registered as an MBean with the platform MBean server. The evaluations
+ * of the requests made on a thread with a started {@link FilterEvaluationTrace} are recorded in that trace. The
+ * statistics are thread safe, so profiling alone does not prevent values from being evaluated in parallel. A trace
+ * records the order and nesting of evaluations, so values are always evaluated serially for a traced request. Match
+ * functors are reported under their {@link MatchFunctorNames} name, which locates them within the filter policies.
  */
 public class ShibbolethAttributeFilteringEngine extends BaseReloadableService implements
         AttributeFilteringEngine<SAMLProfileRequestContext> {
@@ -49,10 +76,160 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
     /** List of unmodifiable loaded filter policies. */
     private List<AttributeFilterPolicy> filterPolicies;
 
+    /** Index of the filter policies by the IDs of the attributes they have rules for. */
+    private volatile AttributeFilterPolicyIndex filterPolicyIndex;
+
+    /** Maximum number of requester and issuer combinations whose active policies are cached. */
+    private int activePolicyCacheSize;
+
+    /** Whether bytecode is generated for the match functors of loaded policies. */
+    private boolean compileToBytecode;
+
+    /** Number of values at and above which an attribute's values are evaluated in parallel, 0 to disable. */
+    private int parallelValueThreshold;
+
+    /** Number of threads used to evaluate values in parallel. */
+    private int parallelValueThreads;
+
+    /** Evaluator used to evaluate values in parallel, created on first use. */
+    private ParallelValueEvaluator parallelValueEvaluator;
+
+    /** Whether the evaluations of every request are recorded in the engine's statistics. */
+    private boolean profilingEnabled;
+
+    /** Statistics of the evaluations made by this engine. */
+    private final FilterEvaluationStatistics statistics;
+
+    /** Name under which the statistics are registered with the platform MBean server, null if not registered. */
+    private ObjectName statisticsName;
+
     /** Constructor. */
     public ShibbolethAttributeFilteringEngine() {
         super();
         filterPolicies = new ArrayList<AttributeFilterPolicy>();
+        statistics = new FilterEvaluationStatistics();
+        activePolicyCacheSize = 1000;
+        parallelValueThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Gets the maximum number of requester and issuer combinations whose active policies are cached.
+     * 
+     * @return maximum number of requester and issuer combinations whose active policies are cached, 0 if caching is
+     *         disabled
+     */
+    public int getActivePolicyCacheSize() {
+        return activePolicyCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of requester and issuer combinations whose active policies are cached. Changing the
+     * size discards the currently cached policies.
+     * 
+     * @param size maximum number of requester and issuer combinations whose active policies are cached, 0 to disable
+     *            caching
+     */
+    public void setActivePolicyCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Active policy cache size may not be negative");
+        }
+        activePolicyCacheSize = size;
+        filterPolicyIndex = null;
+    }
+
+    /**
+     * Gets whether bytecode is generated for the match functors of loaded policies.
+     * 
+     * @return whether bytecode is generated for the match functors of loaded policies
+     */
+    public boolean isCompileToBytecode() {
+        return compileToBytecode;
+    }
+
+    /**
+     * Sets whether bytecode is generated for the match functors of loaded policies. Takes effect the next time the
+     * policies are loaded.
+     * 
+     * @param compile whether bytecode is generated for the match functors of loaded policies
+     */
+    public void setCompileToBytecode(boolean compile) {
+        compileToBytecode = compile;
+    }
+
+    /**
+     * Gets the number of values at and above which an attribute's values are evaluated in parallel.
+     * 
+     * @return number of values at and above which an attribute's values are evaluated in parallel, 0 if values are
+     *         never evaluated in parallel
+     */
+    public int getParallelValueThreshold() {
+        return parallelValueThreshold;
+    }
+
+    /**
+     * Sets the number of values at and above which an attribute's values are evaluated in parallel.
+     * 
+     * @param threshold number of values at and above which an attribute's values are evaluated in parallel, 0 to
+     *            never evaluate values in parallel
+     */
+    public void setParallelValueThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Parallel value threshold may not be negative");
+        }
+        parallelValueThreshold = threshold;
+    }
+
+    /**
+     * Gets the number of threads used to evaluate values in parallel.
+     * 
+     * @return number of threads used to evaluate values in parallel
+     */
+    public int getParallelValueThreads() {
+        return parallelValueThreads;
+    }
+
+    /**
+     * Sets the number of threads used to evaluate values in parallel. This is also the largest number of attributes
+     * whose values are evaluated in parallel at the same time. Must be set before the engine filters any attributes.
+     * 
+     * @param threads number of threads used to evaluate values in parallel
+     */
+    public synchronized void setParallelValueThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of parallel value threads must be greater than 0");
+        }
+        if (parallelValueEvaluator != null) {
+            throw new IllegalStateException("Number of parallel value threads may not be changed once in use");
+        }
+        parallelValueThreads = threads;
+    }
+
+    /**
+     * Gets whether the evaluations of every request are recorded in the engine's statistics.
+     * 
+     * @return whether the evaluations of every request are recorded in the engine's statistics
+     */
+    public boolean isProfilingEnabled() {
+        return profilingEnabled;
+    }
+
+    /**
+     * Sets whether the evaluations of every request are recorded in the engine's statistics. The statistics are
+     * registered with the platform MBean server when the engine is initialized if profiling is enabled at that time.
+     * 
+     * @param enabled whether the evaluations of every request are recorded in the engine's statistics
+     */
+    public void setProfilingEnabled(boolean enabled) {
+        profilingEnabled = enabled;
+    }
+
+    /**
+     * Gets the statistics of the evaluations made by this engine.
+     * 
+     * @return statistics of the evaluations made by this engine
+     */
+    public FilterEvaluationStatistics getStatistics() {
+        return statistics;
     }
 
     /**
@@ -81,17 +258,50 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
         }
 
         ShibbolethFilteringContext filterContext = new ShibbolethFilteringContext(attributes, context);
+        FilterEvaluationListener listener = getEvaluationListener();
+        filterContext.setEvaluationListener(listener);
         Lock readLock = getReadWriteLock().readLock();
         readLock.lock();
         try{
-            for (AttributeFilterPolicy filterPolicy : filterPolicies) {
-                filterAttributes(filterContext, filterPolicy);
-                runDenyRules(filterContext);
+            AttributeFilterPolicyIndex policyIndex = getFilterPolicyIndex();
+            if (listener != null) {
+                setFunctorNames(policyIndex.getFunctorNames());
             }
+            BitSet relevantPolicies = policyIndex.getPolicies(attributes.keySet());
+            log.debug("{} of {} filter policies have rules for the attributes being filtered", relevantPolicies
+                    .cardinality(), policyIndex.getPolicyCount());
+            RequesterPolicyActivation activation = policyIndex.getRequesterPolicyActivation(context);
+            AttributeFilterPolicy filterPolicy;
+            boolean active;
+            long start = 0;
+            for (int i = relevantPolicies.nextSetBit(0); i >= 0; i = relevantPolicies.nextSetBit(i + 1)) {
+                filterPolicy = policyIndex.getPolicy(i);
+                if (listener != null) {
+                    start = System.nanoTime();
+                }
+                if (activation != null && policyIndex.isRequesterStatic(i)) {
+                    active = activation.isActive(i, filterContext);
+                    if (active) {
+                        log.debug("Filter policy {} is active for requester {}", filterPolicy.getPolicyId(), context
+                                .getInboundMessageIssuer());
+                        filterAttributes(filterContext, filterPolicy.getAttributeRules());
+                    }
+                } else {
+                    active = filterAttributes(filterContext, filterPolicy);
+                }
+                if (listener != null) {
+                    listener.policyEvaluated(filterPolicy, active, System.nanoTime() - start);
+                }
+            }
+            runDenyRules(filterContext);
         }finally{
             readLock.unlock();
         }
 
+        if (profilingEnabled) {
+            statistics.filteringRequestCompleted();
+        }
+
         Iterator<Entry<String, BaseAttribute>> attributeEntryItr = attributes.entrySet().iterator();
         Entry<String, BaseAttribute> attributeEntry;
         BaseAttribute attribute;
@@ -116,6 +326,64 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
         return attributes;
     }
 
+    /**
+     * Gets the index of the filter policies, rebuilding it if the policy list has been changed since it was built.
+     * 
+     * @return index of the filter policies
+     */
+    protected AttributeFilterPolicyIndex getFilterPolicyIndex() {
+        AttributeFilterPolicyIndex policyIndex = filterPolicyIndex;
+        if (policyIndex == null || !policyIndex.isIndexOf(filterPolicies)) {
+            policyIndex = new AttributeFilterPolicyIndex(filterPolicies, activePolicyCacheSize);
+            filterPolicyIndex = policyIndex;
+        }
+        return policyIndex;
+    }
+
+    /**
+     * Gets the listener to which the evaluations of a new request are reported.
+     * 
+     * @return the listener to which evaluations are reported, or null if evaluations are not recorded
+     */
+    protected FilterEvaluationListener getEvaluationListener() {
+        FilterEvaluationTrace trace = FilterEvaluationTrace.getCurrent();
+        if (!profilingEnabled) {
+            return trace;
+        }
+        if (trace == null) {
+            return statistics;
+        }
+        return new CompositeEvaluationListener(statistics, trace);
+    }
+
+    /**
+     * Sets the names under which functors are reported in the engine's statistics and in the trace started on the
+     * current thread, if any.
+     * 
+     * @param functorNames names of the functors of the current filter policies
+     */
+    protected void setFunctorNames(MatchFunctorNames functorNames) {
+        if (profilingEnabled) {
+            statistics.setFunctorNames(functorNames);
+        }
+        FilterEvaluationTrace trace = FilterEvaluationTrace.getCurrent();
+        if (trace != null) {
+            trace.setFunctorNames(functorNames);
+        }
+    }
+
+    /**
+     * Checks whether values may be evaluated in parallel while evaluations are reported to a listener.
+     * 
+     * @param listener listener to which evaluations are reported, may be null
+     * 
+     * @return true if there is no listener or the listener is the engine's statistics, which are thread safe and do
+     *         not depend on the order of evaluations
+     */
+    protected boolean isParallelEvaluationListener(FilterEvaluationListener listener) {
+        return listener == null || listener == statistics;
+    }
+
     /**
      * Evaluates the given policy's requirement and, if the requirement is met, filters the attributes according to the
      * policy.
@@ -123,9 +391,11 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
      * @param filterContext current filtering context
      * @param filterPolicy current filter policy
      * 
+     * @return whether the policy was active
+     * 
      * @throws FilterProcessingException thrown if the given policy can be evaluated
      */
-    protected void filterAttributes(ShibbolethFilteringContext filterContext, AttributeFilterPolicy filterPolicy)
+    protected boolean filterAttributes(ShibbolethFilteringContext filterContext, AttributeFilterPolicy filterPolicy)
             throws FilterProcessingException {
         log.debug("Evaluating if filter policy {} is active for principal {}", filterPolicy.getPolicyId(),
                 filterContext.getAttributeRequestContext().getPrincipalName());
@@ -133,12 +403,26 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
         if (policyRequirement == null || !policyRequirement.evaluatePolicyRequirement(filterContext)) {
             log.debug("Filter policy {} is not active for principal {}", filterPolicy.getPolicyId(), filterContext
                     .getAttributeRequestContext().getPrincipalName());
-            return;
+            return false;
         }
 
         log.debug("Filter policy {} is active for principal {}", filterPolicy.getPolicyId(), filterContext
                 .getAttributeRequestContext().getPrincipalName());
-        for (AttributeRule attributeRule : filterPolicy.getAttributeRules()) {
+        filterAttributes(filterContext, filterPolicy.getAttributeRules());
+        return true;
+    }
+
+    /**
+     * Evaluates the attribute rules of an active policy.
+     * 
+     * @param filterContext current filtering context
+     * @param attributeRules the attribute rules of the policy
+     * 
+     * @throws FilterProcessingException thrown if an attribute rule can not be evaluated
+     */
+    protected void filterAttributes(ShibbolethFilteringContext filterContext, List<AttributeRule> attributeRules)
+            throws FilterProcessingException {
+        for (AttributeRule attributeRule : attributeRules) {
             filterAttributes(filterContext, attributeRule);
         }
     }
@@ -169,14 +453,28 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
             
             Collection unfilteredValues = attribute.getValues();
             Collection retainedValues = filterContext.getRetainedValues(attributeId, false);
-            for (Object value : unfilteredValues) {
-                if (permitRule.evaluatePermitValue(filterContext, attributeId, value)) {
-                    log.trace("The following value for attribute {} meets the permit value rule: {}", attributeId,
-                            value == null ? "<null>" : value.toString());
-                    retainedValues.add(value);
-                } else {
-                    log.trace("The following value for attribute {} does not meet permit value rule: {}", attributeId,
-                            value == null ? "<null>" : value.toString());
+            if (parallelValueThreshold > 0 && unfilteredValues.size() >= parallelValueThreshold
+                    && isParallelEvaluationListener(filterContext.getEvaluationListener())) {
+                log.debug("Evaluating the {} values of attribute {} in parallel", unfilteredValues.size(),
+                        attributeId);
+                Object[] values = unfilteredValues.toArray();
+                boolean[] permitted = getParallelValueEvaluator().evaluate(permitRule, filterContext, attributeId,
+                        values);
+                for (int i = 0; i < values.length; i++) {
+                    if (permitted[i]) {
+                        retainedValues.add(values[i]);
+                    }
+                }
+            } else {
+                for (Object value : unfilteredValues) {
+                    if (permitRule.evaluatePermitValue(filterContext, attributeId, value)) {
+                        log.trace("The following value for attribute {} meets the permit value rule: {}",
+                                attributeId, value == null ? "<null>" : value.toString());
+                        retainedValues.add(value);
+                    } else {
+                        log.trace("The following value for attribute {} does not meet permit value rule: {}",
+                                attributeId, value == null ? "<null>" : value.toString());
+                    }
                 }
             }
         }
@@ -196,6 +494,18 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
         }
     }
 
+    /**
+     * Gets the evaluator used to evaluate values in parallel, creating it if necessary.
+     * 
+     * @return evaluator used to evaluate values in parallel
+     */
+    protected synchronized ParallelValueEvaluator getParallelValueEvaluator() {
+        if (parallelValueEvaluator == null) {
+            parallelValueEvaluator = new ParallelValueEvaluator(parallelValueThreads);
+        }
+        return parallelValueEvaluator;
+    }
+
     /**
      * Runs the deny rules registered with the filter context upon the retained value set.
      * 
@@ -220,19 +530,105 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
             }
 
             Iterator<?> attributeValueItr = attributeValues.iterator();
-            for (MatchFunctor denyRule : denyRules) {
-                while (attributeValueItr.hasNext()) {
-                    attributeValue = attributeValueItr.next();
+            while (attributeValueItr.hasNext()) {
+                attributeValue = attributeValueItr.next();
+                for (MatchFunctor denyRule : denyRules) {
                     if (denyRule.evaluateDenyRule(filterContext, denyRuleEntry.getKey(), attributeValue)) {
                         log.trace("Removing the following value of attribute {} per deny rule: {}", denyRuleEntry
                                 .getKey(), attributeValue);
                         attributeValueItr.remove();
+                        break;
                     }
                 }
             }
         }
     }
 
+    /**
+     * Replaces the match functors of a newly loaded policy with their compiled equivalents.
+     * 
+     * @param filterPolicy the policy whose match functors are compiled
+     */
+    protected void compileMatchFunctors(AttributeFilterPolicy filterPolicy) {
+        filterPolicy.setPolicyRequirementRule(compileMatchFunctor(filterPolicy.getPolicyRequirementRule()));
+        for (AttributeRule attributeRule : filterPolicy.getAttributeRules()) {
+            attributeRule.setPermitValueRule(compileMatchFunctor(attributeRule.getPermitValueRule()));
+            attributeRule.setDenyValueRule(compileMatchFunctor(attributeRule.getDenyValueRule()));
+        }
+    }
+
+    /**
+     * Compiles a match functor tree and, if enabled, generates bytecode for it.
+     * 
+     * @param functor the functor tree, may be null
+     * 
+     * @return the compiled functor tree
+     */
+    private MatchFunctor compileMatchFunctor(MatchFunctor functor) {
+        MatchFunctor compiled = MatchFunctorCompiler.compile(functor);
+        if (compileToBytecode) {
+            compiled = MatchFunctorBytecodeGenerator.generate(compiled);
+        }
+        return compiled;
+    }
+
+    /** {@inheritDoc} */
+    public void initialize() throws ServiceException {
+        if (isInitialized()) {
+            return;
+        }
+
+        super.initialize();
+        if (profilingEnabled) {
+            registerStatistics();
+        }
+    }
+
+    /**
+     * Registers the engine's statistics with the platform MBean server. A failure to register is logged and otherwise
+     * ignored, the statistics are still recorded.
+     */
+    protected synchronized void registerStatistics() {
+        if (statisticsName != null) {
+            return;
+        }
+
+        try {
+            ObjectName name = new ObjectName("edu.internet2.middleware.shibboleth:type=AttributeFilteringEngine,name="
+                    + ObjectName.quote(String.valueOf(getId())));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, name);
+            statisticsName = name;
+            log.info("Registered filter evaluation statistics of {} as MBean {}", getId(), name);
+        } catch (JMException e) {
+            log.warn("Unable to register filter evaluation statistics of " + getId() + " as an MBean", e);
+        }
+    }
+
+    /** Unregisters the engine's statistics from the platform MBean server if they were registered. */
+    protected synchronized void unregisterStatistics() {
+        if (statisticsName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(statisticsName);
+        } catch (JMException e) {
+            log.warn("Unable to unregister MBean " + statisticsName, e);
+        }
+        statisticsName = null;
+    }
+
+    /** {@inheritDoc} */
+    public void destroy() throws ServiceException {
+        unregisterStatistics();
+        synchronized (this) {
+            if (parallelValueEvaluator != null) {
+                parallelValueEvaluator.shutdown();
+            }
+        }
+        super.destroy();
+    }
+
     /** {@inheritDoc} */
     protected void onNewContextCreated(ApplicationContext newServiceContext) throws ServiceException {
         List<AttributeFilterPolicy> oldFilterPolicies = filterPolicies;
@@ -240,13 +636,52 @@ public class ShibbolethAttributeFilteringEngine extends BaseReloadableService im
         try {
             List<AttributeFilterPolicy> newFilterPolicies = new ArrayList<AttributeFilterPolicy>();
             String[] beanNames = newServiceContext.getBeanNamesForType(AttributeFilterPolicy.class);
+            AttributeFilterPolicy filterPolicy;
             for (String beanName : beanNames) {
-                newFilterPolicies.add((AttributeFilterPolicy) newServiceContext.getBean(beanName));
+                filterPolicy = (AttributeFilterPolicy) newServiceContext.getBean(beanName);
+                compileMatchFunctors(filterPolicy);
+                newFilterPolicies.add(filterPolicy);
             }
+            filterPolicyIndex = new AttributeFilterPolicyIndex(newFilterPolicies, activePolicyCacheSize);
             filterPolicies = newFilterPolicies;
+            statistics.resetFunctorStatistics();
         } catch (Exception e) {
             filterPolicies = oldFilterPolicies;
             throw new ServiceException(getId() + " configuration is not valid, retaining old configuration", e);
         }
     }
-}
\ No newline at end of file
+
+    /** Listener which reports evaluations to two other listeners. */
+    private static class CompositeEvaluationListener implements FilterEvaluationListener {
+
+        /** First listener. */
+        private final FilterEvaluationListener first;
+
+        /** Second listener. */
+        private final FilterEvaluationListener second;
+
+        /**
+         * Constructor.
+         * 
+         * @param listener1 first listener
+         * @param listener2 second listener
+         */
+        public CompositeEvaluationListener(FilterEvaluationListener listener1, FilterEvaluationListener listener2) {
+            first = listener1;
+            second = listener2;
+        }
+
+        /** {@inheritDoc} */
+        public void functorEvaluated(MatchFunctor functor, int depth, String attributeId, Object attributeValue,
+                boolean result, long elapsedTime) {
+            first.functorEvaluated(functor, depth, attributeId, attributeValue, result, elapsedTime);
+            second.functorEvaluated(functor, depth, attributeId, attributeValue, result, elapsedTime);
+        }
+
+        /** {@inheritDoc} */
+        public void policyEvaluated(AttributeFilterPolicy filterPolicy, boolean active, long elapsedTime) {
+            first.policyEvaluated(filterPolicy, active, elapsedTime);
+            second.policyEvaluated(filterPolicy, active, elapsedTime);
+        }
+    }
+}
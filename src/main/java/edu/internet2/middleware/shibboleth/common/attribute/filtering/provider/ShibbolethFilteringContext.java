@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opensaml.xml.util.LazyList;
 import org.opensaml.xml.util.LazySet;
@@ -45,6 +46,15 @@ public class ShibbolethFilteringContext {
     /** Deny value rules that apply to the attribute identified by the map key. */
     private Map<String, List<MatchFunctor>> denyValueRules;
 
+    /** Results of match functor evaluations kept for the duration of the filtering request. */
+    private Map<Object, Object> matchFunctorResults;
+
+    /** Listener notified of the evaluations made for this request, may be null. */
+    private FilterEvaluationListener evaluationListener;
+
+    /** Number of match functor evaluations currently in progress on this request, per evaluating thread. */
+    private final ThreadLocal<int[]> evaluationDepth;
+
     /**
      * Constructor.
      * 
@@ -56,6 +66,8 @@ public class ShibbolethFilteringContext {
         unfilteredAttributes = attributes;
         retainedValues = new HashMap<String, Collection>();
         denyValueRules = new HashMap<String, List<MatchFunctor>>();
+        matchFunctorResults = new ConcurrentHashMap<Object, Object>();
+        evaluationDepth = new ThreadLocal<int[]>();
     }
 
     /**
@@ -117,4 +129,57 @@ public class ShibbolethFilteringContext {
     public Map<String, List<MatchFunctor>> getDenyValueRules() {
         return denyValueRules;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the results of match functor evaluations kept for the duration of the filtering request. Functors may use
+     * this to avoid repeating costly evaluations within a request; each functor is responsible for choosing keys which
+     * do not collide with those of other functors. The map may be used by several threads at once.
+     * 
+     * @return results of match functor evaluations, never null
+     */
+    public Map<Object, Object> getMatchFunctorResults() {
+        return matchFunctorResults;
+    }
+
+    /**
+     * Gets the listener notified of the evaluations made for this request.
+     * 
+     * @return listener notified of the evaluations made for this request, may be null
+     */
+    public FilterEvaluationListener getEvaluationListener() {
+        return evaluationListener;
+    }
+
+    /**
+     * Sets the listener notified of the evaluations made for this request. If the values of an attribute are evaluated
+     * in parallel the listener is notified from several threads at once.
+     * 
+     * @param listener listener notified of the evaluations made for this request, may be null
+     */
+    public void setEvaluationListener(FilterEvaluationListener listener) {
+        evaluationListener = listener;
+    }
+
+    /**
+     * Records the start of a match functor evaluation on the current thread.
+     * 
+     * @return the nesting depth of the started evaluation, 0 if no other evaluation is in progress on the current
+     *         thread
+     */
+    public int enterEvaluation() {
+        int[] depth = evaluationDepth.get();
+        if (depth == null) {
+            depth = new int[1];
+            evaluationDepth.set(depth);
+        }
+        return depth[0]++;
+    }
+
+    /** Records the end of a match functor evaluation on the current thread. */
+    public void exitEvaluation() {
+        int[] depth = evaluationDepth.get();
+        if (depth != null && --depth[0] <= 0) {
+            evaluationDepth.remove();
+        }
+    }
+}
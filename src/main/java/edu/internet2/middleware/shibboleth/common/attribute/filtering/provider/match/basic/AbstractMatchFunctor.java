@@ -17,6 +17,7 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
 
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.FilterEvaluationListener;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.FilterProcessingException;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.MatchFunctor;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.ShibbolethFilteringContext;
@@ -24,19 +25,96 @@ import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.S
 /**
  * Base class for {@link MatchFunctor}s that delegate the evaluation and negate the result if necessary.
  * 
- * This class provides an extension point for functionality across all match functors.
+ * This class provides an extension point for functionality across all match functors. If the filtering context has an
+ * evaluation listener, see {@link ShibbolethFilteringContext#getEvaluationListener()}, each evaluation is timed and
+ * reported to it.
  */
 public abstract class AbstractMatchFunctor implements MatchFunctor {
 
+    /** ID the functor was configured with, null if it was not given one. */
+    private String functorId;
+
+    /**
+     * Checks whether the result of a functor's policy requirement evaluation depends only on the attribute requester,
+     * the attribute issuer and their metadata, and is therefore the same for every principal.
+     * 
+     * @param functor the functor to check, may be null
+     * 
+     * @return true if the functor is known to produce the same policy requirement result for every principal
+     */
+    public static boolean isRequesterStatic(MatchFunctor functor) {
+        return functor instanceof AbstractMatchFunctor && ((AbstractMatchFunctor) functor).isRequesterStatic();
+    }
+
+    /**
+     * Gets whether the result of {@link #evaluatePolicyRequirement(ShibbolethFilteringContext)} depends only on the
+     * attribute requester, the attribute issuer and their metadata. Functors which return true allow the filtering
+     * engine to reuse their result across principals.
+     * 
+     * @return whether the policy requirement result is the same for every principal, false unless overridden
+     */
+    public boolean isRequesterStatic() {
+        return false;
+    }
+
+    /**
+     * Gets the ID the functor was configured with. The ID is only used to identify the functor in evaluation
+     * statistics and traces.
+     * 
+     * @return ID the functor was configured with, null if it was not given one
+     */
+    public String getFunctorId() {
+        return functorId;
+    }
+
+    /**
+     * Sets the ID the functor was configured with.
+     * 
+     * @param id ID the functor was configured with, null if it was not given one
+     */
+    public void setFunctorId(String id) {
+        functorId = id;
+    }
+
     /** {@inheritDoc} */
     public boolean evaluatePolicyRequirement(ShibbolethFilteringContext filterContext) throws FilterProcessingException {
-        return doEvaluatePolicyRequirement(filterContext);
+        FilterEvaluationListener listener = filterContext == null ? null : filterContext.getEvaluationListener();
+        if (listener == null) {
+            return doEvaluatePolicyRequirement(filterContext);
+        }
+
+        boolean result = false;
+        int depth = filterContext.enterEvaluation();
+        long start = System.nanoTime();
+        try {
+            result = doEvaluatePolicyRequirement(filterContext);
+            return result;
+        } finally {
+            long elapsedTime = System.nanoTime() - start;
+            filterContext.exitEvaluation();
+            listener.functorEvaluated(this, depth, null, null, result, elapsedTime);
+        }
     }
 
     /** {@inheritDoc} */
     public boolean evaluatePermitValue(ShibbolethFilteringContext filterContext, String attributeId,
             Object attributeValue) throws FilterProcessingException {
-        return doEvaluateValue(filterContext, attributeId, attributeValue);
+        FilterEvaluationListener listener = filterContext == null ? null : filterContext.getEvaluationListener();
+        if (listener == null) {
+            return doEvaluateValue(filterContext, attributeId, attributeValue);
+        }
+
+        boolean result = false;
+        int depth = filterContext.enterEvaluation();
+        long start = System.nanoTime();
+        try {
+            result = doEvaluateValue(filterContext, attributeId, attributeValue);
+            return result;
+        } finally {
+            long elapsedTime = System.nanoTime() - start;
+            filterContext.exitEvaluation();
+            listener.functorEvaluated(this, depth, attributeId, attributeValue, result, elapsedTime);
+        }
     }
 
     /** {@inheritDoc} */
@@ -36,6 +36,15 @@ public abstract class AbstractRegexMatchFunctor extends AbstractMatchFunctor {
         return regex.pattern();
     }
 
+    /**
+     * Gets the compiled regular expression to match.
+     * 
+     * @return compiled regular expression to match, null if none has been set
+     */
+    protected Pattern getPattern() {
+        return regex;
+    }
+
     /**
      * Sets the regular expression to match.
      * 
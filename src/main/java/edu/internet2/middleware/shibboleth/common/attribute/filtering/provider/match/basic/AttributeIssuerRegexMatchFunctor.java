@@ -25,6 +25,11 @@ import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.S
  */
 public class AttributeIssuerRegexMatchFunctor extends AbstractRegexMatchFunctor {
 
+    /** {@inheritDoc} */
+    public boolean isRequesterStatic() {
+        return true;
+    }
+
     /** {@inheritDoc} */
     protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext)
             throws FilterProcessingException {
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
+
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.MatchFunctor;
+
+/**
+ * Base class of the functors produced by {@link MatchFunctorBytecodeGenerator}. A generated functor evaluates exactly
+ * as the functor tree it was generated from and has the configured ID of its root.
+ */
+public abstract class GeneratedMatchFunctor extends AbstractMatchFunctor {
+
+    /** Functor tree this functor was generated from. */
+    private final MatchFunctor source;
+
+    /**
+     * Constructor.
+     * 
+     * @param sourceFunctor functor tree this functor was generated from
+     */
+    protected GeneratedMatchFunctor(MatchFunctor sourceFunctor) {
+        source = sourceFunctor;
+        if (sourceFunctor instanceof AbstractMatchFunctor) {
+            setFunctorId(((AbstractMatchFunctor) sourceFunctor).getFunctorId());
+        }
+    }
+
+    /**
+     * Gets the functor tree this functor was generated from.
+     * 
+     * @return functor tree this functor was generated from
+     */
+    public MatchFunctor getSource() {
+        return source;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isRequesterStatic() {
+        return isRequesterStatic(source);
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.FilterProcessingException;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.MatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.ShibbolethFilteringContext;
+
+/**
+ * Generates JVM bytecode for {@link MatchFunctor} trees.
+ * 
+ * The {@link AndMatchFunctor}s, {@link OrMatchFunctor}s and {@link NotMatchFunctor}s of a tree are turned in to
+ * short-circuiting branches within a single generated method, and {@link AnyMatchFunctor}s in to constants. Every other
+ * functor in the tree is a leaf which the generated code calls through a field declared with the leaf's own class, so
+ * that each call site sees a single receiver type and may be inlined by the JIT compiler. Leaves whose class is not
+ * public, or not visible to the generated code, are called through the {@link MatchFunctor} interface instead.
+ * 
+ * The generated functor evaluates children in the same order, with the same short-circuiting, as the tree it was
+ * generated from, so its results, and any exceptions thrown, are the same.
+ */
+public final class MatchFunctorBytecodeGenerator {
+
+    /** Package of the generated classes, in internal form. */
+    private static final String GENERATED_PACKAGE =
+            "edu/internet2/middleware/shibboleth/common/attribute/filtering/provider/match/generated/";
+
+    /** Internal name of the generated classes' superclass. */
+    private static final String SUPERCLASS = Type.getInternalName(GeneratedMatchFunctor.class);
+
+    /** Internal name of the {@link MatchFunctor} interface. */
+    private static final String MATCH_FUNCTOR = Type.getInternalName(MatchFunctor.class);
+
+    /** Descriptor of the policy requirement evaluation methods. */
+    private static final String POLICY_REQUIREMENT_DESC = "(" + Type.getDescriptor(ShibbolethFilteringContext.class)
+            + ")Z";
+
+    /** Descriptor of the value evaluation methods. */
+    private static final String VALUE_DESC = "(" + Type.getDescriptor(ShibbolethFilteringContext.class)
+            + "Ljava/lang/String;Ljava/lang/Object;)Z";
+
+    /** Exceptions declared by the generated methods. */
+    private static final String[] EXCEPTIONS = {Type.getInternalName(FilterProcessingException.class)};
+
+    /** Counter used to name the generated classes. */
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    /** Class logger. */
+    private static final Logger LOG = LoggerFactory.getLogger(MatchFunctorBytecodeGenerator.class);
+
+    /** Constructor. */
+    private MatchFunctorBytecodeGenerator() {
+    }
+
+    /**
+     * Generates bytecode for a functor tree.
+     * 
+     * @param functor root of the functor tree, may be null
+     * 
+     * @return the generated functor, or the given functor if its root is not an AND, OR or NOT or if bytecode could not
+     *         be generated for it
+     */
+    public static MatchFunctor generate(MatchFunctor functor) {
+        if (functor == null || !isComposite(functor)) {
+            return functor;
+        }
+
+        try {
+            return new Generator(functor).generate();
+        } catch (Exception e) {
+            LOG.warn("Unable to generate bytecode for match functor " + functor + ", it will be interpreted", e);
+            return functor;
+        } catch (LinkageError e) {
+            LOG.warn("Unable to generate bytecode for match functor " + functor + ", it will be interpreted", e);
+            return functor;
+        }
+    }
+
+    /**
+     * Checks whether a functor is an AND, OR or NOT whose structure can be turned in to branches.
+     * 
+     * @param functor the functor to check
+     * 
+     * @return true if the functor is an AND, OR or NOT with no null children
+     */
+    private static boolean isComposite(MatchFunctor functor) {
+        Class<?> functorClass = functor.getClass();
+        if (functorClass == AndMatchFunctor.class || functorClass == OrMatchFunctor.class) {
+            List<MatchFunctor> children = functorClass == AndMatchFunctor.class ? ((AndMatchFunctor) functor)
+                    .getTargetRules() : ((OrMatchFunctor) functor).getTargetRules();
+            return children == null || !children.contains(null);
+        } else if (functorClass == NotMatchFunctor.class) {
+            return ((NotMatchFunctor) functor).getTargetRule() != null;
+        }
+        return false;
+    }
+
+    /** Generates the class for one functor tree. */
+    private static class Generator {
+
+        /** Root of the functor tree. */
+        private final MatchFunctor root;
+
+        /** Internal name of the generated class. */
+        private final String className;
+
+        /** Leaves of the functor tree, in the order their fields are declared. */
+        private final List<MatchFunctor> leaves;
+
+        /** Types of the fields holding the leaves. */
+        private final List<Class<?>> leafTypes;
+
+        /** Class loader the generated class is defined in. */
+        private final GeneratedClassLoader classLoader;
+
+        /**
+         * Constructor.
+         * 
+         * @param functor root of the functor tree
+         */
+        public Generator(MatchFunctor functor) {
+            root = functor;
+            className = GENERATED_PACKAGE + "GeneratedMatchFunctor" + CLASS_COUNTER.incrementAndGet();
+            leaves = new ArrayList<MatchFunctor>();
+            leafTypes = new ArrayList<Class<?>>();
+            classLoader = new GeneratedClassLoader(MatchFunctorBytecodeGenerator.class.getClassLoader());
+        }
+
+        /**
+         * Generates, loads and instantiates the class.
+         * 
+         * @return the generated functor
+         * 
+         * @throws Exception thrown if the generated class can not be loaded or instantiated
+         */
+        public MatchFunctor generate() throws Exception {
+            ClassWriter classWriter = new ClassWriter(true);
+            classWriter.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className,
+                    null, SUPERCLASS, null);
+
+            MethodVisitor method = classWriter.visitMethod(Opcodes.ACC_PROTECTED, "doEvaluatePolicyRequirement",
+                    POLICY_REQUIREMENT_DESC, null, EXCEPTIONS);
+            generateMethod(method, false);
+
+            method = classWriter.visitMethod(Opcodes.ACC_PROTECTED, "doEvaluateValue", VALUE_DESC, null, EXCEPTIONS);
+            generateMethod(method, true);
+
+            for (int i = 0; i < leaves.size(); i++) {
+                classWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "leaf" + i,
+                        Type.getDescriptor(leafTypes.get(i)), null, null).visitEnd();
+            }
+            generateConstructor(classWriter);
+            classWriter.visitEnd();
+
+            Class<?> generatedClass = classLoader.define(className.replace('/', '.'), classWriter.toByteArray());
+            return (MatchFunctor) generatedClass.getConstructor(MatchFunctor.class, MatchFunctor[].class).newInstance(
+                    root, leaves.toArray(new MatchFunctor[leaves.size()]));
+        }
+
+        /**
+         * Generates the constructor, which stores each leaf in its field.
+         * 
+         * @param classWriter writer of the generated class
+         */
+        private void generateConstructor(ClassWriter classWriter) {
+            MethodVisitor constructor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "("
+                    + Type.getDescriptor(MatchFunctor.class) + Type.getDescriptor(MatchFunctor[].class) + ")V", null,
+                    null);
+            constructor.visitCode();
+            constructor.visitVarInsn(Opcodes.ALOAD, 0);
+            constructor.visitVarInsn(Opcodes.ALOAD, 1);
+            constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPERCLASS, "<init>", "("
+                    + Type.getDescriptor(MatchFunctor.class) + ")V");
+            for (int i = 0; i < leaves.size(); i++) {
+                constructor.visitVarInsn(Opcodes.ALOAD, 0);
+                constructor.visitVarInsn(Opcodes.ALOAD, 2);
+                pushInt(constructor, i);
+                constructor.visitInsn(Opcodes.AALOAD);
+                constructor.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(leafTypes.get(i)));
+                constructor.visitFieldInsn(Opcodes.PUTFIELD, className, "leaf" + i, Type.getDescriptor(leafTypes
+                        .get(i)));
+            }
+            constructor.visitInsn(Opcodes.RETURN);
+            constructor.visitMaxs(0, 0);
+            constructor.visitEnd();
+        }
+
+        /**
+         * Generates one of the evaluation methods.
+         * 
+         * @param method visitor of the method
+         * @param valueEvaluation true to generate value evaluation, false to generate policy requirement evaluation
+         */
+        private void generateMethod(MethodVisitor method, boolean valueEvaluation) {
+            Label onTrue = new Label();
+            Label onFalse = new Label();
+
+            method.visitCode();
+            generateBranch(method, root, valueEvaluation, onTrue, onFalse);
+            method.visitLabel(onTrue);
+            method.visitInsn(Opcodes.ICONST_1);
+            method.visitInsn(Opcodes.IRETURN);
+            method.visitLabel(onFalse);
+            method.visitInsn(Opcodes.ICONST_0);
+            method.visitInsn(Opcodes.IRETURN);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+        }
+
+        /**
+         * Generates code which evaluates a functor and jumps to one of two labels depending on the result.
+         * 
+         * @param method visitor of the method
+         * @param functor the functor to evaluate
+         * @param valueEvaluation true to evaluate the functor against a value, false to evaluate it as a policy
+         *            requirement
+         * @param onTrue label jumped to if the functor evaluates to true
+         * @param onFalse label jumped to if the functor evaluates to false
+         */
+        private void generateBranch(MethodVisitor method, MatchFunctor functor, boolean valueEvaluation,
+                Label onTrue, Label onFalse) {
+            Class<?> functorClass = functor.getClass();
+            if (functorClass == AnyMatchFunctor.class) {
+                method.visitJumpInsn(Opcodes.GOTO, onTrue);
+            } else if (!isComposite(functor)) {
+                generateLeaf(method, functor, valueEvaluation, onTrue, onFalse);
+            } else if (functorClass == NotMatchFunctor.class) {
+                generateBranch(method, ((NotMatchFunctor) functor).getTargetRule(), valueEvaluation, onFalse, onTrue);
+            } else {
+                boolean isAnd = functorClass == AndMatchFunctor.class;
+                List<MatchFunctor> children = isAnd ? ((AndMatchFunctor) functor).getTargetRules()
+                        : ((OrMatchFunctor) functor).getTargetRules();
+                if (children == null || children.isEmpty()) {
+                    method.visitJumpInsn(Opcodes.GOTO, onFalse);
+                    return;
+                }
+
+                Label next;
+                for (int i = 0; i < children.size() - 1; i++) {
+                    next = new Label();
+                    if (isAnd) {
+                        generateBranch(method, children.get(i), valueEvaluation, next, onFalse);
+                    } else {
+                        generateBranch(method, children.get(i), valueEvaluation, onTrue, next);
+                    }
+                    method.visitLabel(next);
+                }
+                generateBranch(method, children.get(children.size() - 1), valueEvaluation, onTrue, onFalse);
+            }
+        }
+
+        /**
+         * Generates a call to a leaf functor.
+         * 
+         * @param method visitor of the method
+         * @param functor the leaf functor
+         * @param valueEvaluation true to evaluate the functor against a value, false to evaluate it as a policy
+         *            requirement
+         * @param onTrue label jumped to if the functor evaluates to true
+         * @param onFalse label jumped to if the functor evaluates to false
+         */
+        private void generateLeaf(MethodVisitor method, MatchFunctor functor, boolean valueEvaluation, Label onTrue,
+                Label onFalse) {
+            Class<?> leafType = getLeafType(functor);
+            int leafIndex = leaves.size();
+            leaves.add(functor);
+            leafTypes.add(leafType);
+
+            method.visitVarInsn(Opcodes.ALOAD, 0);
+            method.visitFieldInsn(Opcodes.GETFIELD, className, "leaf" + leafIndex, Type.getDescriptor(leafType));
+            method.visitVarInsn(Opcodes.ALOAD, 1);
+            if (valueEvaluation) {
+                method.visitVarInsn(Opcodes.ALOAD, 2);
+                method.visitVarInsn(Opcodes.ALOAD, 3);
+            }
+
+            String methodName = valueEvaluation ? "evaluatePermitValue" : "evaluatePolicyRequirement";
+            String methodDesc = valueEvaluation ? VALUE_DESC : POLICY_REQUIREMENT_DESC;
+            if (leafType == MatchFunctor.class) {
+                method.visitMethodInsn(Opcodes.INVOKEINTERFACE, MATCH_FUNCTOR, methodName, methodDesc);
+            } else {
+                method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(leafType), methodName, methodDesc);
+            }
+            method.visitJumpInsn(Opcodes.IFNE, onTrue);
+            method.visitJumpInsn(Opcodes.GOTO, onFalse);
+        }
+
+        /**
+         * Gets the type of the field holding a leaf functor.
+         * 
+         * @param functor the leaf functor
+         * 
+         * @return the functor's class if generated code can refer to it, otherwise {@link MatchFunctor}
+         */
+        private Class<?> getLeafType(MatchFunctor functor) {
+            Class<?> functorClass = functor.getClass();
+            if (!Modifier.isPublic(functorClass.getModifiers()) || functorClass.isAnonymousClass()
+                    || (functorClass.getEnclosingClass() != null && !Modifier.isStatic(functorClass.getModifiers()))) {
+                return MatchFunctor.class;
+            }
+
+            try {
+                if (Class.forName(functorClass.getName(), false, classLoader) == functorClass) {
+                    return functorClass;
+                }
+            } catch (ClassNotFoundException e) {
+                // not visible to the generated class
+            }
+            return MatchFunctor.class;
+        }
+
+        /**
+         * Generates the instruction which pushes an int constant.
+         * 
+         * @param method visitor of the method
+         * @param value the constant
+         */
+        private void pushInt(MethodVisitor method, int value) {
+            if (value <= 5) {
+                method.visitInsn(Opcodes.ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                method.visitIntInsn(Opcodes.BIPUSH, value);
+            } else if (value <= Short.MAX_VALUE) {
+                method.visitIntInsn(Opcodes.SIPUSH, value);
+            } else {
+                method.visitLdcInsn(Integer.valueOf(value));
+            }
+        }
+    }
+
+    /** Class loader which defines the classes generated for one functor tree. */
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        /**
+         * Constructor.
+         * 
+         * @param parent class loader of the functor classes
+         */
+        public GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Defines a generated class.
+         * 
+         * @param name binary name of the class
+         * @param bytecode the class file
+         * 
+         * @return the defined class
+         */
+        public Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
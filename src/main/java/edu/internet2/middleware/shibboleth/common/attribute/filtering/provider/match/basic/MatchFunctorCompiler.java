@@ -0,0 +1,538 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.MatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.ShibbolethFilteringContext;
+
+/**
+ * Rewrites {@link MatchFunctor} trees into equivalent trees which are cheaper to evaluate.
+ * 
+ * The following rewrites are performed:
+ * <ul>
+ * <li>{@link AnyMatchFunctor}s, and the constants they produce, are folded in to the {@link AndMatchFunctor},
+ * {@link OrMatchFunctor} and {@link NotMatchFunctor} which contain them, and double negations are removed</li>
+ * <li>sibling {@link AttributeValueStringMatchFunctor}s of an OR which target the same attribute with the same case
+ * sensitivity are replaced by a single hash set lookup</li>
+ * <li>sibling {@link AttributeValueRegexMatchFunctor}s of an OR which target the same attribute are replaced by a single
+ * regular expression made from the alternation of their expressions, provided none of the expressions contains a
+ * capturing group, special construct or quoted section; java.util.regex has no DFA mode, but one pass through an
+ * alternation avoids creating a matcher and converting the value to a string for every expression</li>
+ * <li>the children of an AND or an OR are ordered so that the cheapest are evaluated first</li>
+ * </ul>
+ * 
+ * Folding, merging and re-ordering change which children are evaluated, and in which order, so they are only applied to
+ * the children of an AND or an OR when every child is a built-in functor known to have no side effects and to never
+ * throw an exception. The children of any other AND or OR are compiled but kept in their configured order. Functors are
+ * matched by their exact class, so subclasses of the built-in functors are left untouched.
+ * 
+ * The compiled tree shares leaf functors with the original tree; the original tree itself is not modified. An AND, OR
+ * or NOT rebuilt by the compiler keeps the configured ID of the functor it replaces.
+ */
+public final class MatchFunctorCompiler {
+
+    /** Functor which always evaluates to true. */
+    private static final MatchFunctor TRUE = new AnyMatchFunctor();
+
+    /** Functor which always evaluates to false. */
+    private static final MatchFunctor FALSE = new NoneMatchFunctor();
+
+    /** Orders functors by their evaluation cost, cheapest first. */
+    private static final Comparator<MatchFunctor> COST_ORDER = new Comparator<MatchFunctor>() {
+        public int compare(MatchFunctor functor1, MatchFunctor functor2) {
+            int cost1 = getCost(functor1);
+            int cost2 = getCost(functor2);
+            return cost1 < cost2 ? -1 : (cost1 == cost2 ? 0 : 1);
+        }
+    };
+
+    /** Constructor. */
+    private MatchFunctorCompiler() {
+    }
+
+    /**
+     * Compiles a functor tree.
+     * 
+     * @param functor root of the functor tree, may be null
+     * 
+     * @return root of the compiled functor tree, or null if the given functor was null
+     */
+    public static MatchFunctor compile(MatchFunctor functor) {
+        if (functor == null) {
+            return null;
+        }
+
+        Class<?> functorClass = functor.getClass();
+        MatchFunctor compiled;
+        if (functorClass == AndMatchFunctor.class) {
+            compiled = compileAnd((AndMatchFunctor) functor);
+        } else if (functorClass == OrMatchFunctor.class) {
+            compiled = compileOr((OrMatchFunctor) functor);
+        } else if (functorClass == NotMatchFunctor.class) {
+            compiled = compileNot((NotMatchFunctor) functor);
+        } else {
+            return functor;
+        }
+
+        if (compiled != functor && compiled.getClass() == functorClass
+                && ((AbstractMatchFunctor) compiled).getFunctorId() == null) {
+            ((AbstractMatchFunctor) compiled).setFunctorId(((AbstractMatchFunctor) functor).getFunctorId());
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles an AND functor.
+     * 
+     * @param functor the functor to compile
+     * 
+     * @return the compiled functor
+     */
+    private static MatchFunctor compileAnd(AndMatchFunctor functor) {
+        List<MatchFunctor> children = compileChildren(functor.getTargetRules());
+        if (children == null) {
+            return functor;
+        }
+        if (children.isEmpty()) {
+            return FALSE;
+        }
+        if (!isPure(children)) {
+            return new AndMatchFunctor(children);
+        }
+
+        List<MatchFunctor> remaining = new ArrayList<MatchFunctor>(children.size());
+        for (MatchFunctor child : children) {
+            if (child.getClass() == NoneMatchFunctor.class) {
+                return FALSE;
+            } else if (child.getClass() != AnyMatchFunctor.class) {
+                remaining.add(child);
+            }
+        }
+
+        if (remaining.isEmpty()) {
+            return TRUE;
+        } else if (remaining.size() == 1) {
+            return remaining.get(0);
+        }
+
+        Collections.sort(remaining, COST_ORDER);
+        return new AndMatchFunctor(remaining);
+    }
+
+    /**
+     * Compiles an OR functor.
+     * 
+     * @param functor the functor to compile
+     * 
+     * @return the compiled functor
+     */
+    private static MatchFunctor compileOr(OrMatchFunctor functor) {
+        if (functor.getTargetRules() == null) {
+            return FALSE;
+        }
+
+        List<MatchFunctor> children = compileChildren(functor.getTargetRules());
+        if (children == null) {
+            return functor;
+        }
+        if (children.isEmpty()) {
+            return FALSE;
+        }
+        if (!isPure(children)) {
+            return new OrMatchFunctor(children);
+        }
+
+        List<MatchFunctor> remaining = new ArrayList<MatchFunctor>(children.size());
+        Map<String, StringSetMatchFunctor> stringSets = new LinkedHashMap<String, StringSetMatchFunctor>();
+        Map<String, List<Pattern>> regexes = new LinkedHashMap<String, List<Pattern>>();
+        StringSetMatchFunctor stringSet;
+        List<Pattern> patterns;
+        for (MatchFunctor child : children) {
+            if (child.getClass() == AnyMatchFunctor.class) {
+                return TRUE;
+            } else if (child.getClass() == NoneMatchFunctor.class) {
+                continue;
+            } else if (child.getClass() == AttributeValueStringMatchFunctor.class) {
+                AttributeValueStringMatchFunctor stringChild = (AttributeValueStringMatchFunctor) child;
+                String key = stringChild.getAttributeId() + "|" + stringChild.isCaseSensitive();
+                stringSet = stringSets.get(key);
+                if (stringSet == null) {
+                    stringSet = new StringSetMatchFunctor(stringChild.getAttributeId(), stringChild.isCaseSensitive());
+                    stringSets.put(key, stringSet);
+                }
+                stringSet.addMatchString(stringChild.getMatchString());
+            } else if (child.getClass() == AttributeValueRegexMatchFunctor.class
+                    && isCombinable(((AttributeValueRegexMatchFunctor) child).getPattern())) {
+                AttributeValueRegexMatchFunctor regexChild = (AttributeValueRegexMatchFunctor) child;
+                patterns = regexes.get(regexChild.getAttributeId());
+                if (patterns == null) {
+                    patterns = new ArrayList<Pattern>();
+                    regexes.put(regexChild.getAttributeId(), patterns);
+                }
+                patterns.add(regexChild.getPattern());
+            } else {
+                remaining.add(child);
+            }
+        }
+
+        remaining.addAll(stringSets.values());
+        for (Map.Entry<String, List<Pattern>> regex : regexes.entrySet()) {
+            remaining.add(new CombinedRegexMatchFunctor(regex.getKey(), regex.getValue()));
+        }
+
+        if (remaining.isEmpty()) {
+            return FALSE;
+        } else if (remaining.size() == 1) {
+            return remaining.get(0);
+        }
+
+        Collections.sort(remaining, COST_ORDER);
+        return new OrMatchFunctor(remaining);
+    }
+
+    /**
+     * Compiles a NOT functor.
+     * 
+     * @param functor the functor to compile
+     * 
+     * @return the compiled functor
+     */
+    private static MatchFunctor compileNot(NotMatchFunctor functor) {
+        if (functor.getTargetRule() == null) {
+            return functor;
+        }
+
+        MatchFunctor target = compile(functor.getTargetRule());
+        if (target.getClass() == AnyMatchFunctor.class) {
+            return FALSE;
+        } else if (target.getClass() == NoneMatchFunctor.class) {
+            return TRUE;
+        } else if (target.getClass() == NotMatchFunctor.class
+                && ((NotMatchFunctor) target).getTargetRule() != null) {
+            return ((NotMatchFunctor) target).getTargetRule();
+        }
+
+        return new NotMatchFunctor(target);
+    }
+
+    /**
+     * Compiles the children of an AND or an OR.
+     * 
+     * @param children the children to compile
+     * 
+     * @return the compiled children, or null if the children are null or contain a null
+     */
+    private static List<MatchFunctor> compileChildren(List<MatchFunctor> children) {
+        if (children == null) {
+            return null;
+        }
+
+        List<MatchFunctor> compiledChildren = new ArrayList<MatchFunctor>(children.size());
+        for (MatchFunctor child : children) {
+            if (child == null) {
+                return null;
+            }
+            compiledChildren.add(compile(child));
+        }
+        return compiledChildren;
+    }
+
+    /**
+     * Checks whether a regular expression may be combined with others without changing its meaning.
+     * 
+     * @param pattern the regular expression
+     * 
+     * @return true if the expression is not null and contains no capturing groups, special constructs or quoting
+     */
+    private static boolean isCombinable(Pattern pattern) {
+        if (pattern == null || pattern.flags() != 0) {
+            return false;
+        }
+
+        String expression = pattern.pattern();
+        return expression.indexOf("(?") == -1 && expression.indexOf("\\Q") == -1
+                && pattern.matcher("").groupCount() == 0;
+    }
+
+    /**
+     * Checks whether every functor in a list is free of side effects and never throws an exception.
+     * 
+     * @param functors the functors to check
+     * 
+     * @return true if every functor is free of side effects and never throws an exception
+     */
+    private static boolean isPure(List<MatchFunctor> functors) {
+        for (MatchFunctor functor : functors) {
+            if (!isPure(functor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a functor is free of side effects and never throws an exception.
+     * 
+     * @param functor the functor to check
+     * 
+     * @return true if the functor is free of side effects and never throws an exception
+     */
+    private static boolean isPure(MatchFunctor functor) {
+        Class<?> functorClass = functor.getClass();
+        if (functorClass == AndMatchFunctor.class) {
+            List<MatchFunctor> children = ((AndMatchFunctor) functor).getTargetRules();
+            return children == null || (!children.contains(null) && isPure(children));
+        } else if (functorClass == OrMatchFunctor.class) {
+            List<MatchFunctor> children = ((OrMatchFunctor) functor).getTargetRules();
+            return children == null || (!children.contains(null) && isPure(children));
+        } else if (functorClass == NotMatchFunctor.class) {
+            MatchFunctor target = ((NotMatchFunctor) functor).getTargetRule();
+            return target != null && isPure(target);
+        }
+
+        return getCost(functor) < Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gets the relative cost of evaluating a functor.
+     * 
+     * @param functor the functor
+     * 
+     * @return relative cost of evaluating the functor, {@link Integer#MAX_VALUE} if the functor is not known to be free
+     *         of side effects and exceptions
+     */
+    private static int getCost(MatchFunctor functor) {
+        Class<?> functorClass = functor.getClass();
+        if (functorClass == AnyMatchFunctor.class || functorClass == NoneMatchFunctor.class) {
+            return 0;
+        } else if (functorClass == AttributeRequesterStringMatchFunctor.class
+                || functorClass == AttributeIssuerStringMatchFunctor.class
+                || functorClass == PrincipalStringMatchFunctor.class
+                || functorClass == AuthenticationMethodStringMatchFunctor.class
+                || functorClass == NumOfAttributeValuesMatchFunctor.class) {
+            return 1;
+        } else if (functorClass == AttributeRequesterRegexMatchFunctor.class
+                || functorClass == AttributeIssuerRegexMatchFunctor.class
+                || functorClass == PrincipalRegexMatchFunctor.class
+                || functorClass == AuthenticationMethodRegexMatchFunctor.class) {
+            return 2;
+        } else if (functorClass == AttributeValueStringMatchFunctor.class
+                || functorClass == StringSetMatchFunctor.class) {
+            return 3;
+        } else if (functorClass == AttributeValueRegexMatchFunctor.class
+                || functorClass == CombinedRegexMatchFunctor.class) {
+            return 4;
+        } else if (functorClass == AndMatchFunctor.class || functorClass == OrMatchFunctor.class) {
+            List<MatchFunctor> children = functorClass == AndMatchFunctor.class ? ((AndMatchFunctor) functor)
+                    .getTargetRules() : ((OrMatchFunctor) functor).getTargetRules();
+            long cost = 0;
+            if (children != null) {
+                for (MatchFunctor child : children) {
+                    if (child == null) {
+                        return Integer.MAX_VALUE;
+                    }
+                    cost += getCost(child);
+                }
+            }
+            return (int) Math.min(cost, Integer.MAX_VALUE);
+        } else if (functorClass == NotMatchFunctor.class) {
+            MatchFunctor target = ((NotMatchFunctor) functor).getTargetRule();
+            return target == null ? Integer.MAX_VALUE : getCost(target);
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Folds a string in the same way {@link String#equalsIgnoreCase(String)} compares characters, so that two strings
+     * are equal ignoring case if and only if their folded forms are equal.
+     * 
+     * @param value the string to fold
+     * 
+     * @return the folded string
+     */
+    private static String foldCase(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /** A functor which always evaluates to false. */
+    private static class NoneMatchFunctor extends AbstractMatchFunctor {
+
+        /** {@inheritDoc} */
+        public boolean isRequesterStatic() {
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext) {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        protected boolean doEvaluateValue(ShibbolethFilteringContext filterContext, String attributeId,
+                Object attributeValue) {
+            return false;
+        }
+    }
+
+    /** The OR of a set of {@link AttributeValueStringMatchFunctor}s targeting the same attribute. */
+    private static class StringSetMatchFunctor extends AbstractMatchFunctor {
+
+        /** ID of the attribute whose values are evaluated by the policy requirement. */
+        private final String attributeId;
+
+        /** Whether the match is case sensitive. */
+        private final boolean caseSensitive;
+
+        /** Strings to match, case folded if the match is not case sensitive. */
+        private final Set<String> matchStrings;
+
+        /** Whether one of the match strings was null, in which case a null value matches. */
+        private boolean matchesNull;
+
+        /**
+         * Constructor.
+         * 
+         * @param id ID of the attribute whose values are evaluated by the policy requirement
+         * @param isCaseSensitive whether the match is case sensitive
+         */
+        public StringSetMatchFunctor(String id, boolean isCaseSensitive) {
+            attributeId = id;
+            caseSensitive = isCaseSensitive;
+            matchStrings = new HashSet<String>();
+        }
+
+        /**
+         * Adds a string to match.
+         * 
+         * @param matchString the string to match
+         */
+        public void addMatchString(String matchString) {
+            if (matchString == null) {
+                matchesNull = true;
+            } else {
+                matchStrings.add(caseSensitive ? matchString : foldCase(matchString));
+            }
+        }
+
+        /** {@inheritDoc} */
+        protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext) {
+            BaseAttribute attribute = filterContext.getUnfilteredAttributes().get(attributeId);
+            if (attribute != null && attribute.getValues() != null) {
+                for (Object value : attribute.getValues()) {
+                    if (isMatch(value)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        protected boolean doEvaluateValue(ShibbolethFilteringContext filterContext, String id, Object attributeValue) {
+            return isMatch(attributeValue);
+        }
+
+        /**
+         * Checks whether a value matches one of the match strings.
+         * 
+         * @param value the value to check
+         * 
+         * @return true if the value matches one of the match strings
+         */
+        private boolean isMatch(Object value) {
+            if (value == null) {
+                return matchesNull;
+            }
+            return matchStrings.contains(caseSensitive ? value.toString() : foldCase(value.toString()));
+        }
+    }
+
+    /** The OR of a set of {@link AttributeValueRegexMatchFunctor}s targeting the same attribute. */
+    private static class CombinedRegexMatchFunctor extends AbstractMatchFunctor {
+
+        /** ID of the attribute whose values are evaluated by the policy requirement. */
+        private final String attributeId;
+
+        /** Alternation of the regular expressions. */
+        private final Pattern regex;
+
+        /**
+         * Constructor.
+         * 
+         * @param id ID of the attribute whose values are evaluated by the policy requirement
+         * @param patterns regular expressions to combine
+         */
+        public CombinedRegexMatchFunctor(String id, List<Pattern> patterns) {
+            attributeId = id;
+
+            StringBuilder expression = new StringBuilder();
+            for (Pattern pattern : patterns) {
+                if (expression.length() > 0) {
+                    expression.append('|');
+                }
+                expression.append("(?:").append(pattern.pattern()).append(')');
+            }
+            regex = Pattern.compile(expression.toString());
+        }
+
+        /** {@inheritDoc} */
+        protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext) {
+            BaseAttribute attribute = filterContext.getUnfilteredAttributes().get(attributeId);
+            if (attribute != null && attribute.getValues() != null) {
+                for (Object value : attribute.getValues()) {
+                    if (isMatch(value)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        protected boolean doEvaluateValue(ShibbolethFilteringContext filterContext, String id, Object attributeValue) {
+            return isMatch(attributeValue);
+        }
+
+        /**
+         * Checks whether a value matches one of the regular expressions.
+         * 
+         * @param value the value to check
+         * 
+         * @return true if the value matches one of the regular expressions
+         */
+        private boolean isMatch(Object value) {
+            return value != null && regex.matcher(value.toString()).matches();
+        }
+    }
+}
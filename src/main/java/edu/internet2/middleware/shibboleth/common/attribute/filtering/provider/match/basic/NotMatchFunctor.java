@@ -62,6 +62,11 @@ public class NotMatchFunctor extends AbstractMatchFunctor {
         return !targetRule.evaluatePermitValue(filterContext, attributeId, attributeValue);
     }
 
+    /** {@inheritDoc} */
+    public boolean isRequesterStatic() {
+        return isRequesterStatic(targetRule);
+    }
+
     /** {@inheritDoc} */
     protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext)
             throws FilterProcessingException {
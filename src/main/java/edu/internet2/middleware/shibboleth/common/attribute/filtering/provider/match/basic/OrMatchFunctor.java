@@ -49,6 +49,21 @@ public class OrMatchFunctor extends AbstractMatchFunctor {
         return targetRules;
     }
 
+    /** {@inheritDoc} */
+    public boolean isRequesterStatic() {
+        if (targetRules == null) {
+            return true;
+        }
+
+        for (MatchFunctor child : targetRules) {
+            if (!isRequesterStatic(child)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /** {@inheritDoc} */
     protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext)
             throws FilterProcessingException {
@@ -17,23 +17,37 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
 
-import javax.script.Compilable;
-import javax.script.CompiledScript;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import javax.script.SimpleScriptContext;
 
-import org.opensaml.xml.util.DatatypeHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.FilterProcessingException;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.ShibbolethFilteringContext;
+import edu.internet2.middleware.shibboleth.common.util.ScriptEnginePool;
+import edu.internet2.middleware.shibboleth.common.util.ScriptEnginePool.PooledScript;
 
 /**
  * Match function based on a JSR-268 script.
+ * 
+ * The script is run by a pool of script engines, each with its own compiled copy of the script. The result of a
+ * policy requirement evaluation is remembered for the rest of the filtering request, so the script is run at most
+ * once per request however many policies share the functor.
+ * 
+ * By default the script is run for every value, with the value bound to <code>attributeValue</code>, and returns
+ * whether the value meets the rule. In batch mode the script is instead run once per attribute and request, with all
+ * the attribute's values bound to <code>attributeValues</code>, and adds the values which meet the rule to the
+ * collection bound to <code>permittedValues</code>. A value which is not one of the attribute's values is evaluated on
+ * its own.
  */
 public class ScriptMatchFunctor extends AbstractMatchFunctor {
 
@@ -46,55 +60,136 @@ public class ScriptMatchFunctor extends AbstractMatchFunctor {
     /** The script to execute. */
     private String script;
 
-    /** The script engine to execute the script. */
-    private ScriptEngine scriptEngine;
+    /** Whether the script evaluates all the values of an attribute at once. */
+    private boolean batchEvaluation;
 
-    /** The compiled form of the script, if the script engine supports compiling. */
-    private CompiledScript compiledScript;
+    /** Pool of engines used to execute the script, null if the script could not be prepared. */
+    private ScriptEnginePool enginePool;
 
     /**
-     * Constructor.
+     * Constructor. The script is executed by, at most, as many engines as there are available processors.
      * 
      * @param language the scripting language
      * @param newScript the script to execute
      */
     public ScriptMatchFunctor(String language, String newScript) {
+        this(language, newScript, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param language the scripting language
+     * @param newScript the script to execute
+     * @param enginePoolSize maximum number of engines used to execute the script concurrently
+     */
+    public ScriptMatchFunctor(String language, String newScript, int enginePoolSize) {
         scriptLanguage = language;
         script = newScript;
 
-        ScriptEngineManager sem = new ScriptEngineManager();
-        scriptEngine = sem.getEngineByName(scriptLanguage);
-        compileScript();
+        try {
+            enginePool = new ScriptEnginePool(scriptLanguage, script, Math.max(1, enginePoolSize), 0);
+        } catch (ScriptException e) {
+            log.warn("Unable to prepare JSR-268 script: " + script, e);
+        } catch (RuntimeException e) {
+            log.warn("Unable to prepare JSR-268 script: " + script, e);
+        }
+    }
+
+    /**
+     * Gets whether the script evaluates all the values of an attribute at once.
+     * 
+     * @return whether the script evaluates all the values of an attribute at once
+     */
+    public boolean isBatchEvaluation() {
+        return batchEvaluation;
+    }
+
+    /**
+     * Sets whether the script evaluates all the values of an attribute at once.
+     * 
+     * @param batch whether the script evaluates all the values of an attribute at once
+     */
+    public void setBatchEvaluation(boolean batch) {
+        batchEvaluation = batch;
+    }
+
+    /**
+     * Gets the pool of engines used to execute the script. The pool provides statistics about the script's execution.
+     * 
+     * @return pool of engines used to execute the script, null if the script could not be prepared
+     */
+    public ScriptEnginePool getEnginePool() {
+        return enginePool;
     }
 
     /** {@inheritDoc} */
     protected boolean doEvaluateValue(ShibbolethFilteringContext filterContext, String attributeId,
             Object attributeValue) throws FilterProcessingException {
-        ScriptContext context = getScriptContext(filterContext, attributeId, attributeValue);
-        return executeScript(context);
+        if (!batchEvaluation) {
+            return executeScript(filterContext, attributeId, attributeValue, null, null);
+        }
+
+        BatchResult batchResult = null;
+        if (filterContext != null) {
+            Map<Object, Object> functorResults = filterContext.getMatchFunctorResults();
+            BatchKey batchKey = new BatchKey(this, attributeId);
+            batchResult = (BatchResult) functorResults.get(batchKey);
+            if (batchResult == null) {
+                BaseAttribute attribute = filterContext.getUnfilteredAttributes().get(attributeId);
+                if (attribute != null && attribute.getValues() != null) {
+                    Collection<Object> attributeValues = attribute.getValues();
+                    batchResult = new BatchResult(attributeValues, getPermittedValues(filterContext, attributeId,
+                            attributeValues));
+                    functorResults.put(batchKey, batchResult);
+                }
+            }
+        }
+
+        if (batchResult != null) {
+            if (batchResult.permittedValues.contains(attributeValue)) {
+                return true;
+            }
+            if (batchResult.evaluatedValues.contains(attributeValue)) {
+                return false;
+            }
+        }
+        return getPermittedValues(filterContext, attributeId, Collections.singleton(attributeValue)).contains(
+                attributeValue);
     }
 
     /** {@inheritDoc} */
     protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext)
             throws FilterProcessingException {
-        ScriptContext context = getScriptContext(filterContext, null, null);
-        return executeScript(context);
-    }
-
-    /** Compiles the script if the scripting engine supports it. */
-    protected void compileScript() {
-        if (DatatypeHelper.isEmpty(script)) {
-            return;
+        if (filterContext == null) {
+            return executeScript(filterContext, null, null, null, null);
         }
 
-        try {
-            if (scriptEngine != null && scriptEngine instanceof Compilable) {
-                compiledScript = ((Compilable) scriptEngine).compile(script);
-            }
-        } catch (ScriptException e) {
-            compiledScript = null;
-            log.warn("Unable to pre-compile JSR-268 script: " + script, e);
+        Map<Object, Object> functorResults = filterContext.getMatchFunctorResults();
+        Boolean result = (Boolean) functorResults.get(this);
+        if (result == null) {
+            result = executeScript(filterContext, null, null, null, null);
+            functorResults.put(this, result);
         }
+        return result;
+    }
+
+    /**
+     * Runs the script in batch mode.
+     * 
+     * @param filterContext current filtering context
+     * @param attributeId ID of the attribute whose values are evaluated
+     * @param attributeValues the values to evaluate
+     * 
+     * @return the values which meet the rule
+     * 
+     * @throws FilterProcessingException thrown if there is a problem evaluating the script
+     */
+    protected Set<Object> getPermittedValues(ShibbolethFilteringContext filterContext, String attributeId,
+            Collection<Object> attributeValues) throws FilterProcessingException {
+        Set<Object> permittedValues = new HashSet<Object>();
+        executeScript(filterContext, attributeId, null, attributeValues, permittedValues);
+        return permittedValues;
     }
 
     /**
@@ -109,37 +204,129 @@ public class ScriptMatchFunctor extends AbstractMatchFunctor {
     protected ScriptContext getScriptContext(ShibbolethFilteringContext filterContext, String attributeId,
             Object attributeValue) {
         SimpleScriptContext scriptContext = new SimpleScriptContext();
+        populateScriptContext(scriptContext, filterContext, attributeId, attributeValue);
+        return scriptContext;
+    }
+
+    /**
+     * Binds the filtering context, attribute ID and attribute value in to the engine scope of a script context.
+     * 
+     * @param scriptContext the script context to populate, its engine scope should contain no bindings
+     * @param filterContext current resolution context
+     * @param attributeId ID of the attribute currently being evaluted
+     * @param attributeValue attribute currently being validated
+     */
+    protected void populateScriptContext(ScriptContext scriptContext, ShibbolethFilteringContext filterContext,
+            String attributeId, Object attributeValue) {
         scriptContext.setAttribute("filterContext", filterContext, ScriptContext.ENGINE_SCOPE);
         scriptContext.setAttribute("attributeId", attributeId, ScriptContext.ENGINE_SCOPE);
         scriptContext.setAttribute("attributeValue", attributeValue, ScriptContext.ENGINE_SCOPE);
-        return scriptContext;
     }
 
     /**
      * Executes the functor's script.
      * 
-     * @param scriptContext the script execution context
+     * @param filterContext current filtering context
+     * @param attributeId ID of the attribute currently being evaluated
+     * @param attributeValue value currently being evaluated
+     * @param attributeValues values evaluated in batch mode, null if not in batch mode
+     * @param permittedValues collection the script adds the values meeting the rule to in batch mode, null if not in
+     *            batch mode
      * 
-     * @return the result of the script
+     * @return the result of the script, false if it returned null or was run in batch mode
      * 
      * @throws FilterProcessingException thrown if there is a problem evaluating the script
      */
-    protected Boolean executeScript(ScriptContext scriptContext) throws FilterProcessingException {
-        Boolean result;
+    protected boolean executeScript(ShibbolethFilteringContext filterContext, String attributeId,
+            Object attributeValue, Collection<Object> attributeValues, Set<Object> permittedValues)
+            throws FilterProcessingException {
+        if (enginePool == null) {
+            throw new FilterProcessingException("Match functor script could not be prepared for the language "
+                    + scriptLanguage);
+        }
+
+        PooledScript pooledScript = null;
         try {
-            if (compiledScript != null) {
-                result = (Boolean) compiledScript.eval(scriptContext);
-            } else {
-                result = (Boolean) scriptEngine.eval(script, scriptContext);
+            pooledScript = enginePool.borrow();
+            ScriptContext context = pooledScript.getContext();
+            populateScriptContext(context, filterContext, attributeId, attributeValue);
+            if (attributeValues != null) {
+                context.setAttribute("attributeValues", attributeValues, ScriptContext.ENGINE_SCOPE);
+                context.setAttribute("permittedValues", permittedValues, ScriptContext.ENGINE_SCOPE);
+            }
+
+            Object scriptResult = enginePool.eval(pooledScript);
+            if (attributeValues != null) {
+                return false;
             }
 
+            Boolean result = (Boolean) scriptResult;
             if (result != null) {
                 return result.booleanValue();
             } else {
-                return Boolean.FALSE;
+                return false;
             }
         } catch (ScriptException e) {
             throw new FilterProcessingException("Unable to execute match functor script", e);
+        } finally {
+            enginePool.release(pooledScript);
+        }
+    }
+
+    /** The values of an attribute evaluated in batch mode and those of them which meet the rule. */
+    private static class BatchResult {
+
+        /** The evaluated values. */
+        private final Set<Object> evaluatedValues;
+
+        /** The evaluated values which meet the rule. */
+        private final Set<Object> permittedValues;
+
+        /**
+         * Constructor.
+         * 
+         * @param attributeValues the evaluated values
+         * @param permitted the evaluated values which meet the rule
+         */
+        public BatchResult(Collection<Object> attributeValues, Set<Object> permitted) {
+            evaluatedValues = new HashSet<Object>(attributeValues);
+            permittedValues = permitted;
+        }
+    }
+
+    /** Key of the values computed in batch mode for an attribute. */
+    private static class BatchKey {
+
+        /** Functor which computed the values. */
+        private final ScriptMatchFunctor functor;
+
+        /** ID of the attribute. */
+        private final String attributeId;
+
+        /**
+         * Constructor.
+         * 
+         * @param scriptFunctor functor which computed the values
+         * @param id ID of the attribute
+         */
+        public BatchKey(ScriptMatchFunctor scriptFunctor, String id) {
+            functor = scriptFunctor;
+            attributeId = id;
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return 31 * System.identityHashCode(functor) + (attributeId == null ? 0 : attributeId.hashCode());
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey other = (BatchKey) obj;
+            return functor == other.functor
+                    && (attributeId == null ? other.attributeId == null : attributeId.equals(other.attributeId));
         }
     }
-}
\ No newline at end of file
+}
@@ -17,6 +17,8 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.saml;
 
+import java.util.Set;
+
 import org.opensaml.xml.util.DatatypeHelper;
 
 /**
@@ -46,6 +48,11 @@ public abstract class AbstractEntityAttributeExactMatchFunctor extends AbstractE
         value = attributeValue;
     }
 
+    /** {@inheritDoc} */
+    protected boolean entityAttributeValuesMatch(Set<String> entityAttributeValues) {
+        return getValue() != null && entityAttributeValues.contains(getValue());
+    }
+
     /** {@inheritDoc} */
     protected boolean entityAttributeValueMatches(String entityAttributeValue) {
         return DatatypeHelper.safeEquals(getValue(), DatatypeHelper.safeTrim(entityAttributeValue));
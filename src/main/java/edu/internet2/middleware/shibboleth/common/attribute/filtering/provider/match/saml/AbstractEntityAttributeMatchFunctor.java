@@ -18,13 +18,12 @@
 package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.saml;
 
 import java.util.List;
+import java.util.Set;
 
 import org.opensaml.saml2.core.Attribute;
 import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.samlext.saml2mdattr.EntityAttributes;
 import org.opensaml.xml.XMLObject;
-import org.opensaml.xml.schema.XSAny;
-import org.opensaml.xml.schema.XSString;
 import org.opensaml.xml.util.DatatypeHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,9 +35,15 @@ import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.m
 /**
  * Base class for match functions that check whether a particular entity attribute is present and contains a given
  * value.
+ * 
+ * Entity attribute values are looked up in an {@link EntityAttributeIndex} shared by all the functors, rather than
+ * read from the metadata for every evaluation.
  */
 public abstract class AbstractEntityAttributeMatchFunctor extends AbstractMatchFunctor {
 
+    /** Index of the entity attributes of the entities evaluated by all functors. */
+    private static final EntityAttributeIndex ENTITY_ATTRIBUTE_INDEX = new EntityAttributeIndex();
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractEntityAttributeMatchFunctor.class);
 
@@ -84,6 +89,11 @@ public abstract class AbstractEntityAttributeMatchFunctor extends AbstractMatchF
         nameFormat = DatatypeHelper.safeTrimOrNullString(attributeNameFormat);
     }
 
+    /** {@inheritDoc} */
+    public boolean isRequesterStatic() {
+        return true;
+    }
+
     /** {@inheritDoc} */
     protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext)
             throws FilterProcessingException {
@@ -111,40 +121,39 @@ public abstract class AbstractEntityAttributeMatchFunctor extends AbstractMatchF
             return false;
         }
 
-        Attribute entityAttribute = getEntityAttribute(entityDescriptor);
-        if (entityAttribute == null) {
+        Set<String> attributeValues = ENTITY_ATTRIBUTE_INDEX.getValues(entityDescriptor, getName(), getNameFormat());
+        if (attributeValues == null) {
+            log.debug("Descriptor for {} does not contain an entity attribute with the name {} and the format {}",
+                    new Object[] { entityDescriptor.getEntityID(), getName(), getNameFormat() });
             return false;
         }
 
-        List<XMLObject> attributeValues = entityAttribute.getAttributeValues();
-        if (attributeValues == null || attributeValues.isEmpty()) {
+        if (attributeValues.isEmpty()) {
             log.debug("Entity attribute {} for entity {} does not contain any values", getName(),
                     entityDescriptor.getEntityID());
             return false;
         }
 
         log.debug("Checking if entity attribute {} contains the required value.", getName());
-        String valueString;
-        for (XMLObject attributeValue : attributeValues) {
-            if (attributeValue instanceof XSAny) {
-                valueString = ((XSAny) attributeValue).getTextContent();
-            } else if (attributeValue instanceof XSString) {
-                valueString = ((XSString) attributeValue).getValue();
-            } else {
-                log.debug("Entity attribute {} contains the unsupported value type {}, skipping it", getName(),
-                        attributeValue.getClass().getName());
-                continue;
-            }
+        return entityAttributeValuesMatch(attributeValues);
+    }
 
-            if (valueString != null) {
-                if (entityAttributeValueMatches(valueString)) {
-                    log.debug("Entity attribute {} value {} meets matching requirements", getName(), valueString);
-                    return true;
-                }
-                log.debug("Entity attribute {} value {} does not meet matching requirements", getName(), valueString);
+    /**
+     * Checks whether any of the values of the entity attribute match the rules for particular implementation of this
+     * functor. The default implementation checks each value with {@link #entityAttributeValueMatches(String)}.
+     * 
+     * @param entityAttributeValues the trimmed values of the entity attribute, never null or empty
+     * 
+     * @return true if a value matches, false if not
+     */
+    protected boolean entityAttributeValuesMatch(Set<String> entityAttributeValues) {
+        for (String valueString : entityAttributeValues) {
+            if (entityAttributeValueMatches(valueString)) {
+                log.debug("Entity attribute {} value {} meets matching requirements", getName(), valueString);
+                return true;
             }
+            log.debug("Entity attribute {} value {} does not meet matching requirements", getName(), valueString);
         }
-
         return false;
     }
 
@@ -17,6 +17,10 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.saml;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,12 +29,19 @@ import org.opensaml.xml.util.DatatypeHelper;
 /**
  * Base class for match functors that perform an regular expression match of a given attribute string value against
  * entity attribute value.
+ * 
+ * The result of matching a set of entity attribute values is remembered for as long as the metadata the values were
+ * read from is in use.
  */
 public abstract class AbstractEntityAttributeRegexMatchFunctor extends AbstractEntityAttributeMatchFunctor {
 
     /** The value of the entity attribute the entity must have. */
     private Pattern valueRegex;
 
+    /** Results of matching sets of entity attribute values, by the values. */
+    private final Map<Set<String>, Boolean> valuesResults = Collections
+            .synchronizedMap(new WeakHashMap<Set<String>, Boolean>());
+
     /**
      * Gets the value of the entity attribute the entity must have.
      * 
@@ -47,6 +58,17 @@ public abstract class AbstractEntityAttributeRegexMatchFunctor extends AbstractE
      */
     public void setValueRegex(Pattern attributeValueRegex) {
         valueRegex = attributeValueRegex;
+        valuesResults.clear();
+    }
+
+    /** {@inheritDoc} */
+    protected boolean entityAttributeValuesMatch(Set<String> entityAttributeValues) {
+        Boolean result = valuesResults.get(entityAttributeValues);
+        if (result == null) {
+            result = super.entityAttributeValuesMatch(entityAttributeValues);
+            valuesResults.put(entityAttributeValues, result);
+        }
+        return result;
     }
 
     /** {@inheritDoc} */
@@ -24,9 +24,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AbstractMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.util.EntityGroupMembership;
 
 /**
  * Base class for match functors that check if a given entity is in an entity group.
+ * 
+ * Group membership is looked up in the {@link EntityGroupMembership} shared with relying party configuration lookup.
  */
 public abstract class AbstractEntityGroupMatchFunctor extends AbstractMatchFunctor {
 
@@ -54,6 +57,11 @@ public abstract class AbstractEntityGroupMatchFunctor extends AbstractMatchFunct
         entityGroup = DatatypeHelper.safeTrimOrNullString(group);
     }
 
+    /** {@inheritDoc} */
+    public boolean isRequesterStatic() {
+        return true;
+    }
+
     /**
      * Checks if the given entity is in the provided entity group.
      * 
@@ -72,20 +80,12 @@ public abstract class AbstractEntityGroupMatchFunctor extends AbstractMatchFunct
             return false;
         }
 
-        EntitiesDescriptor currentGroup = (EntitiesDescriptor) entity.getParent();
-        if (currentGroup == null) {
+        if (!(entity.getParent() instanceof EntitiesDescriptor)) {
             log.debug("Entity descriptor does not have a parent object, unable to check if entity is in group {}",
                     entityGroup);
             return false;
         }
 
-        do {
-            if (entityGroup.equals(currentGroup.getName())) {
-                return true;
-            }
-            currentGroup = (EntitiesDescriptor) currentGroup.getParent();
-        } while (currentGroup != null);
-
-        return false;
+        return EntityGroupMembership.getInstance().getGroups(entity).contains(entityGroup);
     }
 }
\ No newline at end of file
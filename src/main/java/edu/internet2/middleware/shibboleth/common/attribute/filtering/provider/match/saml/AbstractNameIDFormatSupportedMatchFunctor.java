@@ -55,6 +55,11 @@ public abstract class AbstractNameIDFormatSupportedMatchFunctor extends Abstract
         nameIdFormat = format;
     }
 
+    /** {@inheritDoc} */
+    public boolean isRequesterStatic() {
+        return true;
+    }
+
     /** {@inheritDoc} */
     protected boolean doEvaluatePolicyRequirement(ShibbolethFilteringContext filterContext)
             throws FilterProcessingException {
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.saml;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.samlext.saml2mdattr.EntityAttributes;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.schema.XSAny;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.util.DatatypeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the entity attributes of metadata entities, by attribute name and name format.
+ * 
+ * An entity's attributes are indexed the first time they are looked up and the index entry lives as long as the
+ * entity's {@link EntityDescriptor}. When metadata is refreshed the provider creates new descriptors, so entries for
+ * the old metadata are discarded with it and the entities of the new metadata are indexed, one at a time, as they are
+ * encountered.
+ * 
+ * Lookups follow the rules of {@link AbstractEntityAttributeMatchFunctor#getEntityAttribute(EntityDescriptor)}: only
+ * the first EntityAttributes extension is used and, when several attributes have the same name, or name and name
+ * format, only the first one's values are returned. Values are the trimmed string content of the XSAny and XSString
+ * values of the attribute, values of other types are ignored.
+ * 
+ * This class is thread-safe.
+ */
+public class EntityAttributeIndex {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(EntityAttributeIndex.class);
+
+    /** Indexed entity attributes, by entity. */
+    private final Map<EntityDescriptor, IndexedEntity> entities;
+
+    /** Constructor. */
+    public EntityAttributeIndex() {
+        entities = Collections.synchronizedMap(new WeakHashMap<EntityDescriptor, IndexedEntity>());
+    }
+
+    /**
+     * Gets the values of an entity attribute.
+     * 
+     * @param entityDescriptor metadata of the entity
+     * @param name name of the entity attribute
+     * @param nameFormat name format of the entity attribute, or null to match any name format
+     * 
+     * @return the attribute's values, or null if the entity does not have the attribute
+     */
+    public Set<String> getValues(EntityDescriptor entityDescriptor, String name, String nameFormat) {
+        IndexedEntity indexedEntity = entities.get(entityDescriptor);
+        if (indexedEntity == null) {
+            indexedEntity = index(entityDescriptor);
+            entities.put(entityDescriptor, indexedEntity);
+        }
+
+        if (nameFormat == null) {
+            return indexedEntity.valuesByName.get(name);
+        }
+
+        Map<String, Set<String>> valuesByFormat = indexedEntity.valuesByNameAndFormat.get(name);
+        if (valuesByFormat == null) {
+            return null;
+        }
+        return valuesByFormat.get(nameFormat);
+    }
+
+    /**
+     * Indexes the entity attributes of an entity.
+     * 
+     * @param entityDescriptor metadata of the entity
+     * 
+     * @return the indexed entity attributes
+     */
+    protected IndexedEntity index(EntityDescriptor entityDescriptor) {
+        IndexedEntity indexedEntity = new IndexedEntity();
+
+        List<XMLObject> entityAttributesCollection = null;
+        if (entityDescriptor.getExtensions() != null) {
+            entityAttributesCollection = entityDescriptor.getExtensions().getUnknownXMLObjects(
+                    EntityAttributes.DEFAULT_ELEMENT_NAME);
+        }
+        if (entityAttributesCollection == null || entityAttributesCollection.isEmpty()) {
+            return indexedEntity;
+        }
+
+        List<Attribute> entityAttributes = ((EntityAttributes) entityAttributesCollection.get(0)).getAttributes();
+        if (entityAttributes == null) {
+            return indexedEntity;
+        }
+
+        Set<String> values;
+        Map<String, Set<String>> valuesByFormat;
+        for (Attribute entityAttribute : entityAttributes) {
+            values = getValues(entityAttribute);
+            if (!indexedEntity.valuesByName.containsKey(entityAttribute.getName())) {
+                indexedEntity.valuesByName.put(entityAttribute.getName(), values);
+            }
+
+            valuesByFormat = indexedEntity.valuesByNameAndFormat.get(entityAttribute.getName());
+            if (valuesByFormat == null) {
+                valuesByFormat = new HashMap<String, Set<String>>();
+                indexedEntity.valuesByNameAndFormat.put(entityAttribute.getName(), valuesByFormat);
+            }
+            if (!valuesByFormat.containsKey(entityAttribute.getNameFormat())) {
+                valuesByFormat.put(entityAttribute.getNameFormat(), values);
+            }
+        }
+
+        log.debug("Indexed {} entity attributes for entity {}", entityAttributes.size(), entityDescriptor
+                .getEntityID());
+        return indexedEntity;
+    }
+
+    /**
+     * Gets the string values of an entity attribute.
+     * 
+     * @param entityAttribute the entity attribute
+     * 
+     * @return the trimmed string values of the attribute
+     */
+    private Set<String> getValues(Attribute entityAttribute) {
+        List<XMLObject> attributeValues = entityAttribute.getAttributeValues();
+        if (attributeValues == null || attributeValues.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> values = new HashSet<String>();
+        String valueString;
+        for (XMLObject attributeValue : attributeValues) {
+            if (attributeValue instanceof XSAny) {
+                valueString = ((XSAny) attributeValue).getTextContent();
+            } else if (attributeValue instanceof XSString) {
+                valueString = ((XSString) attributeValue).getValue();
+            } else {
+                log.debug("Entity attribute {} contains the unsupported value type {}, skipping it", entityAttribute
+                        .getName(), attributeValue.getClass().getName());
+                continue;
+            }
+
+            if (valueString != null) {
+                values.add(DatatypeHelper.safeTrim(valueString));
+            }
+        }
+        return Collections.unmodifiableSet(values);
+    }
+
+    /** The indexed entity attributes of one entity. */
+    protected static class IndexedEntity {
+
+        /** Values of the first attribute with a given name. */
+        private final Map<String, Set<String>> valuesByName = new HashMap<String, Set<String>>();
+
+        /** Values of the first attribute with a given name and name format. */
+        private final Map<String, Map<String, Set<String>>> valuesByNameAndFormat =
+                new HashMap<String, Map<String, Set<String>>>();
+    }
+}
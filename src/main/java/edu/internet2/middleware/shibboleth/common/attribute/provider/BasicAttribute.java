@@ -26,6 +26,7 @@ import org.opensaml.xml.util.DatatypeHelper;
 
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.encoding.AttributeEncoder;
+import edu.internet2.middleware.shibboleth.common.util.CopyOnWriteList;
 
 /**
  * An attribute implementation that operates on simple value types.
@@ -41,8 +42,8 @@ public class BasicAttribute<ValueType> extends BaseAttribute<ValueType> implemen
     /** ID of this attribute. */
     private String id;
 
-    /** Map of attribute encoders for this attribute, keyed off of category. */
-    private ArrayList<AttributeEncoder> encoders;
+    /** Attribute encoders for this attribute, created when first needed. */
+    private List<AttributeEncoder> encoders;
 
     /** Set of values for this attribute. */
     private Collection<ValueType> values;
@@ -52,8 +53,7 @@ public class BasicAttribute<ValueType> extends BaseAttribute<ValueType> implemen
 
     /** Constructor. */
     public BasicAttribute() {
-        encoders = new ArrayList<AttributeEncoder>(3);
-        values = new ArrayList<ValueType>(5);
+        values = new CompactValueList<ValueType>();
     }
 
     /**
@@ -63,15 +63,36 @@ public class BasicAttribute<ValueType> extends BaseAttribute<ValueType> implemen
      */
     public BasicAttribute(String attributeId) {
         id = DatatypeHelper.safeTrimOrNullString(attributeId);
-        encoders = new ArrayList<AttributeEncoder>();
-        values = new ArrayList<ValueType>(5);
+        values = new CompactValueList<ValueType>();
     }
 
     /** {@inheritDoc} */
     public List<AttributeEncoder> getEncoders() {
+        if (encoders == null) {
+            encoders = new ArrayList<AttributeEncoder>(3);
+        }
         return encoders;
     }
 
+    /**
+     * Adds a list of encoders which may be shared with other attributes. If this attribute has no encoders yet it
+     * reads through to the shared list, and only copies it if the encoders are later modified; otherwise the shared
+     * encoders are added to this attribute's own.
+     * 
+     * @param sharedEncoders shared encoders, must not be modified after being passed to this method
+     */
+    public void addSharedEncoders(List<AttributeEncoder> sharedEncoders) {
+        if (sharedEncoders == null || sharedEncoders.isEmpty()) {
+            return;
+        }
+
+        if (encoders == null || encoders.isEmpty()) {
+            encoders = new CopyOnWriteList<AttributeEncoder>(sharedEncoders);
+        } else {
+            encoders.addAll(sharedEncoders);
+        }
+    }
+
     /** {@inheritDoc} */
     public String getId() {
         return id;
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.provider;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A compact, array backed, list of attribute values.
+ * 
+ * Most attributes have only a handful of values, so values are stored in a single array which starts empty and grows
+ * only as needed rather than in a pre-sized {@link java.util.ArrayList}.
+ * 
+ * Removed values leave a gap in the array which is moved, rather than closed, by later removals. Removing values while
+ * iterating over the list, as is done when duplicate values are removed after resolution, therefore copies each
+ * remaining value at most once instead of once per removal.
+ * 
+ * @param <ValueType> object type of the values
+ */
+@NotThreadSafe
+public class CompactValueList<ValueType> extends AbstractList<ValueType> implements RandomAccess {
+
+    /** Backing array used by all empty lists. */
+    private static final Object[] EMPTY = new Object[0];
+
+    /** The values, and a gap of unused positions starting at {@link #gapStart}. */
+    private Object[] values;
+
+    /** Number of values in the list. */
+    private int size;
+
+    /** Position of the first unused array element within the used part of the array. */
+    private int gapStart;
+
+    /** Number of unused array elements within the used part of the array. */
+    private int gapLength;
+
+    /** Constructor. */
+    public CompactValueList() {
+        values = EMPTY;
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param initialValues values initially in the list
+     */
+    public CompactValueList(Collection<? extends ValueType> initialValues) {
+        values = EMPTY;
+        ensureCapacity(initialValues.size());
+        addAll(initialValues);
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public ValueType get(int position) {
+        checkPosition(position, size - 1);
+        return (ValueType) values[arrayIndex(position)];
+    }
+
+    /** {@inheritDoc} */
+    public int size() {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    public void add(int position, ValueType value) {
+        checkPosition(position, size);
+        moveGap(position);
+        if (gapLength > 0) {
+            gapLength--;
+        } else {
+            ensureCapacity(size + 1);
+            System.arraycopy(values, position, values, position + 1, size - position);
+        }
+        values[position] = value;
+        gapStart = position + 1;
+        size++;
+        modCount++;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public ValueType set(int position, ValueType value) {
+        checkPosition(position, size - 1);
+        int index = arrayIndex(position);
+        ValueType replaced = (ValueType) values[index];
+        values[index] = value;
+        return replaced;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public ValueType remove(int position) {
+        checkPosition(position, size - 1);
+        moveGap(position);
+        int index = gapStart + gapLength;
+        ValueType removed = (ValueType) values[index];
+        values[index] = null;
+        gapLength++;
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    /** {@inheritDoc} */
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+        gapStart = 0;
+        gapLength = 0;
+        modCount++;
+    }
+
+    /** Shrinks the backing array to the number of values in the list. */
+    public void trimToSize() {
+        closeGap();
+        if (values.length > size) {
+            Object[] trimmed = size == 0 ? EMPTY : new Object[size];
+            System.arraycopy(values, 0, trimmed, 0, size);
+            values = trimmed;
+        }
+    }
+
+    /**
+     * Gets the array index of the value at a given position in the list.
+     * 
+     * @param position position in the list
+     * 
+     * @return index of the value in the backing array
+     */
+    private int arrayIndex(int position) {
+        if (position < gapStart) {
+            return position;
+        }
+        return position + gapLength;
+    }
+
+    /**
+     * Moves the gap so that it starts at the given position in the list.
+     * 
+     * @param position position in the list at which the gap starts
+     */
+    private void moveGap(int position) {
+        if (gapLength == 0) {
+            gapStart = position;
+            return;
+        }
+
+        int clearFrom;
+        int clearTo;
+        if (position < gapStart) {
+            System.arraycopy(values, position, values, position + gapLength, gapStart - position);
+            clearFrom = position;
+            clearTo = Math.min(gapStart, position + gapLength);
+        } else if (position > gapStart) {
+            System.arraycopy(values, gapStart + gapLength, values, gapStart, position - gapStart);
+            clearFrom = Math.max(gapStart + gapLength, position);
+            clearTo = position + gapLength;
+        } else {
+            return;
+        }
+        // clear the elements vacated by the moved values which were not already in the gap
+        for (int i = clearFrom; i < clearTo; i++) {
+            values[i] = null;
+        }
+        gapStart = position;
+    }
+
+    /** Moves the gap to the end of the list, where it becomes unused capacity. */
+    private void closeGap() {
+        moveGap(size);
+        gapLength = 0;
+    }
+
+    /**
+     * Grows the backing array, if necessary, so that it holds at least the given number of values.
+     * 
+     * @param capacity number of values the backing array must be able to hold
+     */
+    private void ensureCapacity(int capacity) {
+        closeGap();
+        if (capacity <= values.length) {
+            return;
+        }
+
+        // grow slowly while small, most attributes have very few values
+        int newCapacity = Math.max(capacity, values.length + (values.length >> 1) + 1);
+        Object[] grown = new Object[newCapacity];
+        System.arraycopy(values, 0, grown, 0, size);
+        values = grown;
+    }
+
+    /**
+     * Checks that a position is between 0 and a given maximum, inclusive.
+     * 
+     * @param position position to check
+     * @param maximum largest valid position
+     */
+    private void checkPosition(int position, int maximum) {
+        if (position < 0 || position > maximum) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+    }
+}
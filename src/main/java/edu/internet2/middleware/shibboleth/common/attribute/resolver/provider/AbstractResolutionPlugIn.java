@@ -24,8 +24,6 @@ import java.util.Map;
 
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
-import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.AttributeDefinition;
-import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.DataConnector;
 
 
 /**
@@ -76,10 +74,14 @@ public abstract class AbstractResolutionPlugIn<ResolvedType> implements Resoluti
         List<Object> values = new ArrayList<Object>();
     
         for (String id : getDependencyIds()) {
-            if (context.getResolvedAttributeDefinitions().containsKey(id)) {
-                values.addAll(getValuesFromAttributeDependency(context, id));
-            } else if (context.getResolvedDataConnectors().containsKey(id)) {
-                values.addAll(getValuesFromConnectorDependency(context, id, sourceAttribute));
+            try {
+                if (context.getResolvedAttribute(id) != null) {
+                    values.addAll(getValuesFromAttributeDependency(context, id));
+                } else if (context.getResolvedDataConnectorAttributes(id) != null) {
+                    values.addAll(getValuesFromConnectorDependency(context, id, sourceAttribute));
+                }
+            } catch (AttributeResolutionException e) {
+
             }
         }
     
@@ -97,16 +99,15 @@ public abstract class AbstractResolutionPlugIn<ResolvedType> implements Resoluti
     protected Collection<Object> getValuesFromAttributeDependency(ShibbolethResolutionContext context, String id) {
         List<Object> values = new ArrayList<Object>();
     
-        AttributeDefinition definition = context.getResolvedAttributeDefinitions().get(id);
-        if (definition != null) {
-            try {
-                BaseAttribute attribute = definition.resolve(context);
+        try {
+            BaseAttribute attribute = context.getResolvedAttribute(id);
+            if (attribute != null) {
                 for (Object o : attribute.getValues()) {
                     values.add(o);
                 }
-            } catch (AttributeResolutionException e) {
-                
             }
+        } catch (AttributeResolutionException e) {
+
         }
     
         return values;
@@ -124,10 +125,9 @@ public abstract class AbstractResolutionPlugIn<ResolvedType> implements Resoluti
     protected Collection<Object> getValuesFromConnectorDependency(ShibbolethResolutionContext context, String id, String sourceAttribute) {
         List<Object> values = new ArrayList<Object>();
     
-        DataConnector connector = context.getResolvedDataConnectors().get(id);
-        if (connector != null) {
-            try {
-                Map<String, BaseAttribute> attributes = connector.resolve(context);
+        try {
+            Map<String, BaseAttribute> attributes = context.getResolvedDataConnectorAttributes(id);
+            if (attributes != null) {
                 for (String attributeId : attributes.keySet()) {
                     if (attributeId != null && attributeId.equals(sourceAttribute)) {
                         for (Object o : attributes.get(attributeId).getValues()) {
@@ -135,10 +135,9 @@ public abstract class AbstractResolutionPlugIn<ResolvedType> implements Resoluti
                         }
                     }
                 }
-            } catch (AttributeResolutionException e) {
-                
             }
-    
+        } catch (AttributeResolutionException e) {
+
         }
     
         return values;
@@ -0,0 +1,430 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.internet2.middleware.shibboleth.common.log.AuditLogEntry;
+import edu.internet2.middleware.shibboleth.common.profile.provider.BaseSAMLProfileRequestContext;
+import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
+
+/**
+ * Pre-resolves the data connectors of principals who are likely to log in soon so that their results are already
+ * cached when they do. Only data connectors, and the plug-ins they depend on, are resolved, see
+ * {@link ShibbolethAttributeResolver#resolveDataConnectors(SAMLProfileRequestContext)}; attribute definitions with side
+ * effects, such as issuing transient or persistent IDs, are not run for logins which have not happened.
+ * 
+ * Likely principals are predicted from the audit log. Each audit log entry within the history period whose time of day
+ * falls within the look ahead window following the current time of day adds to the score of its principal, relying
+ * party and asserting party. An entry's contribution halves with every history half-life of age, so principals who
+ * logged in at this time of day recently and often score highest. The highest scoring principals are then resolved,
+ * one per warming interval, so that warming never places more than a fixed load on the attribute sources.
+ * 
+ * A prediction is made as soon as the warmer starts and again, once the previous prediction has been worked through,
+ * every prediction interval. Predictions and resolutions run on a single background thread owned by the warmer, so
+ * reading the audit logs never delays other scheduled tasks.
+ */
+public class AuditLogCacheWarmer {
+
+    /** Number of milliseconds in a day. */
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(AuditLogCacheWarmer.class);
+
+    /** Resolver whose data connectors are pre-resolved. */
+    private final ShibbolethAttributeResolver attributeResolver;
+
+    /** Directory containing the audit log files. */
+    private final File auditLogDirectory;
+
+    /** Executor running the background task which pre-resolves one principal each time it runs. */
+    private final ScheduledExecutorService warmingExecutor;
+
+    /** Pattern the names of the audit log files must match. */
+    private Pattern auditLogFilePattern;
+
+    /** Age, in milliseconds, of the oldest audit log entries used in a prediction. */
+    private long historyPeriod;
+
+    /** Age, in milliseconds, at which an audit log entry contributes half as much to a prediction as a new one. */
+    private long historyHalfLife;
+
+    /** Length, in milliseconds, of the window following the current time of day in which logins are predicted. */
+    private long lookAhead;
+
+    /** Time, in milliseconds, between predictions. */
+    private long predictionInterval;
+
+    /** Maximum number of principals pre-resolved for a prediction. */
+    private int maximumPrincipals;
+
+    /** Principals, with the relying and asserting party they last logged in with, which have yet to be resolved. */
+    private final LinkedList<AuditLogEntry> pendingPrincipals;
+
+    /** Time at which the next prediction may be made. */
+    private long nextPredictionTime;
+
+    /**
+     * Constructor.
+     * 
+     * @param resolver resolver whose data connectors are pre-resolved
+     * @param logDirectory directory containing the audit log files
+     * @param interval time, in milliseconds, between the resolution of each principal
+     */
+    public AuditLogCacheWarmer(ShibbolethAttributeResolver resolver, String logDirectory, long interval) {
+        if (resolver == null) {
+            throw new IllegalArgumentException("Attribute resolver may not be null");
+        }
+        if (logDirectory == null) {
+            throw new IllegalArgumentException("Audit log directory may not be null");
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Warming interval must be greater than 0");
+        }
+
+        attributeResolver = resolver;
+        auditLogDirectory = new File(logDirectory);
+        auditLogFilePattern = Pattern.compile("idp-audit.*\\.log");
+        historyPeriod = 14 * DAY;
+        historyHalfLife = 3 * DAY;
+        lookAhead = 60 * 60 * 1000L;
+        predictionInterval = 60 * 60 * 1000L;
+        maximumPrincipals = 1000;
+        pendingPrincipals = new LinkedList<AuditLogEntry>();
+
+        warmingExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "shibboleth-audit-log-cache-warmer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        warmingExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    warm();
+                } catch (RuntimeException e) {
+                    // an escaping exception would cancel all further warming
+                    log.warn("Unable to warm attribute caches", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the pattern the names of the audit log files must match.
+     * 
+     * @return pattern the names of the audit log files must match
+     */
+    public synchronized String getAuditLogFilePattern() {
+        return auditLogFilePattern.pattern();
+    }
+
+    /**
+     * Sets the pattern the names of the audit log files must match.
+     * 
+     * @param pattern pattern the names of the audit log files must match
+     */
+    public synchronized void setAuditLogFilePattern(String pattern) {
+        auditLogFilePattern = Pattern.compile(pattern);
+    }
+
+    /**
+     * Gets the age, in milliseconds, of the oldest audit log entries used in a prediction.
+     * 
+     * @return age of the oldest audit log entries used in a prediction
+     */
+    public synchronized long getHistoryPeriod() {
+        return historyPeriod;
+    }
+
+    /**
+     * Sets the age, in milliseconds, of the oldest audit log entries used in a prediction.
+     * 
+     * @param period age of the oldest audit log entries used in a prediction
+     */
+    public synchronized void setHistoryPeriod(long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("History period must be greater than 0");
+        }
+        historyPeriod = period;
+    }
+
+    /**
+     * Gets the age, in milliseconds, at which an audit log entry contributes half as much to a prediction as a new one.
+     * 
+     * @return half-life of audit log entries
+     */
+    public synchronized long getHistoryHalfLife() {
+        return historyHalfLife;
+    }
+
+    /**
+     * Sets the age, in milliseconds, at which an audit log entry contributes half as much to a prediction as a new one.
+     * 
+     * @param halfLife half-life of audit log entries
+     */
+    public synchronized void setHistoryHalfLife(long halfLife) {
+        if (halfLife <= 0) {
+            throw new IllegalArgumentException("History half-life must be greater than 0");
+        }
+        historyHalfLife = halfLife;
+    }
+
+    /**
+     * Gets the length, in milliseconds, of the window following the current time of day in which logins are predicted.
+     * 
+     * @return length of the look ahead window
+     */
+    public synchronized long getLookAhead() {
+        return lookAhead;
+    }
+
+    /**
+     * Sets the length, in milliseconds, of the window following the current time of day in which logins are predicted.
+     * 
+     * @param window length of the look ahead window
+     */
+    public synchronized void setLookAhead(long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Look ahead window must be greater than 0");
+        }
+        lookAhead = window;
+    }
+
+    /**
+     * Gets the time, in milliseconds, between predictions.
+     * 
+     * @return time between predictions
+     */
+    public synchronized long getPredictionInterval() {
+        return predictionInterval;
+    }
+
+    /**
+     * Sets the time, in milliseconds, between predictions.
+     * 
+     * @param interval time between predictions
+     */
+    public synchronized void setPredictionInterval(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Prediction interval must be greater than 0");
+        }
+        predictionInterval = interval;
+    }
+
+    /**
+     * Gets the maximum number of principals pre-resolved for a prediction.
+     * 
+     * @return maximum number of principals pre-resolved for a prediction
+     */
+    public synchronized int getMaximumPrincipals() {
+        return maximumPrincipals;
+    }
+
+    /**
+     * Sets the maximum number of principals pre-resolved for a prediction.
+     * 
+     * @param maximum maximum number of principals pre-resolved for a prediction
+     */
+    public synchronized void setMaximumPrincipals(int maximum) {
+        if (maximum <= 0) {
+            throw new IllegalArgumentException("Maximum number of principals must be greater than 0");
+        }
+        maximumPrincipals = maximum;
+    }
+
+    /** Stops warming the caches. */
+    public void destroy() {
+        warmingExecutor.shutdownNow();
+    }
+
+    /**
+     * Predicts which principals are likely to log in within the look ahead window following the given time.
+     * 
+     * @param now time from which logins are predicted
+     * 
+     * @return audit log entries, most likely first, carrying the principal name and the relying and asserting party the
+     *         principal last logged in with
+     * 
+     * @throws IOException thrown if the audit log files can not be read
+     */
+    public synchronized List<AuditLogEntry> predictLogins(DateTime now) throws IOException {
+        final Map<String, Prediction> predictions = new HashMap<String, Prediction>();
+
+        File[] logFiles = auditLogDirectory.listFiles();
+        if (logFiles != null) {
+            long oldest = now.getMillis() - historyPeriod;
+            for (File logFile : logFiles) {
+                if (logFile.isFile() && logFile.lastModified() >= oldest
+                        && auditLogFilePattern.matcher(logFile.getName()).matches()) {
+                    readAuditLog(logFile, now, predictions);
+                }
+            }
+        }
+
+        List<Prediction> ranked = new ArrayList<Prediction>(predictions.values());
+        Collections.sort(ranked, new Comparator<Prediction>() {
+            public int compare(Prediction p1, Prediction p2) {
+                return Double.compare(p2.score, p1.score);
+            }
+        });
+
+        int size = Math.min(ranked.size(), maximumPrincipals);
+        List<AuditLogEntry> likelyLogins = new ArrayList<AuditLogEntry>(size);
+        for (int i = 0; i < size; i++) {
+            likelyLogins.add(ranked.get(i).lastEntry);
+        }
+        return likelyLogins;
+    }
+
+    /**
+     * Scores the entries of an audit log file.
+     * 
+     * @param logFile the audit log file
+     * @param now time from which logins are predicted
+     * @param predictions predictions, indexed by principal, relying party and asserting party, the scores are added to
+     * 
+     * @throws IOException thrown if the audit log file can not be read
+     */
+    private void readAuditLog(File logFile, DateTime now, Map<String, Prediction> predictions) throws IOException {
+        long nowMillis = now.getMillis();
+        long nowTimeOfDay = now.withZone(DateTimeZone.UTC).getMillisOfDay();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), "UTF-8"));
+        try {
+            String line;
+            AuditLogEntry entry;
+            long age;
+            long offset;
+            String key;
+            Prediction prediction;
+            while ((line = reader.readLine()) != null) {
+                entry = AuditLogEntry.parse(line);
+                if (entry == null || entry.getPrincipalName() == null) {
+                    continue;
+                }
+
+                age = nowMillis - entry.getAuditEventTime().getMillis();
+                if (age < 0 || age > historyPeriod) {
+                    continue;
+                }
+
+                offset = (entry.getAuditEventTime().withZone(DateTimeZone.UTC).getMillisOfDay() - nowTimeOfDay + DAY)
+                        % DAY;
+                if (offset >= lookAhead) {
+                    continue;
+                }
+
+                key = entry.getPrincipalName() + "|" + entry.getRelyingPartyId() + "|" + entry.getAssertingPartyId();
+                prediction = predictions.get(key);
+                if (prediction == null) {
+                    prediction = new Prediction(entry);
+                    predictions.put(key, prediction);
+                } else if (entry.getAuditEventTime().isAfter(prediction.lastEntry.getAuditEventTime())) {
+                    prediction.lastEntry = entry;
+                }
+                prediction.score += Math.pow(0.5, (double) age / historyHalfLife);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Pre-resolves the next pending principal, or makes a new prediction if there are none left and the prediction
+     * interval has passed.
+     */
+    protected synchronized void warm() {
+        if (pendingPrincipals.isEmpty()) {
+            long now = System.currentTimeMillis();
+            if (now < nextPredictionTime) {
+                return;
+            }
+            nextPredictionTime = now + predictionInterval;
+
+            try {
+                pendingPrincipals.addAll(predictLogins(new DateTime(now)));
+                log.info("Predicted {} principals likely to log in within the next {}ms", pendingPrincipals.size(),
+                        lookAhead);
+            } catch (IOException e) {
+                log.warn("Unable to read audit logs in " + auditLogDirectory, e);
+            }
+            return;
+        }
+
+        AuditLogEntry login = pendingPrincipals.removeFirst();
+        BaseSAMLProfileRequestContext requestContext = new BaseSAMLProfileRequestContext();
+        requestContext.setPrincipalName(login.getPrincipalName());
+        requestContext.setInboundMessageIssuer(login.getRelyingPartyId());
+        requestContext.setPeerEntityId(login.getRelyingPartyId());
+        requestContext.setOutboundMessageIssuer(login.getAssertingPartyId());
+        requestContext.setLocalEntityId(login.getAssertingPartyId());
+        requestContext.setPrincipalAuthenticationMethod(login.getPrincipalAuthenticationMethod());
+
+        try {
+            attributeResolver.resolveDataConnectors(requestContext);
+            log.trace("Pre-resolved data connectors of principal {} for relying party {}", login.getPrincipalName(),
+                    login.getRelyingPartyId());
+        } catch (RuntimeException e) {
+            log.debug("Unable to pre-resolve data connectors of principal " + login.getPrincipalName(), e);
+        }
+    }
+
+    /** Score of a principal, relying party and asserting party combination. */
+    private static class Prediction {
+
+        /** Most recent audit log entry for the combination. */
+        private AuditLogEntry lastEntry;
+
+        /** Sum of the contributions of the combination's audit log entries. */
+        private double score;
+
+        /**
+         * Constructor.
+         * 
+         * @param entry first audit log entry seen for the combination
+         */
+        public Prediction(AuditLogEntry entry) {
+            lastEntry = entry;
+        }
+    }
+}
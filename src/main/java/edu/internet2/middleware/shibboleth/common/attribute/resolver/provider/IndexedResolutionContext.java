@@ -0,0 +1,236 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.opensaml.xml.util.ValueTypeIndexedMap;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.AttributeDefinition;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.ContextualAttributeDefinition;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.ContextualDataConnector;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.DataConnector;
+import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
+
+/**
+ * A resolution context which keeps the result of each data connector and attribute definition in arrays indexed by the
+ * plug-in's ordinal within a {@link ResolutionPlugInIndex}, rather than wrapping each resolved plug-in in a contextual
+ * object and registering it in a map. Contexts are reset and reused across requests, so resolving attributes creates
+ * little garbage beyond the attributes themselves.
+ * 
+ * The map based methods inherited from {@link ShibbolethResolutionContext} are still supported, for plug-ins which use
+ * them, by a view built the first time one of them is called during a request and kept up to date with plug-ins
+ * resolved afterwards. Plug-ins added directly to that view are not seen by the resolver.
+ */
+@NotThreadSafe
+public class IndexedResolutionContext extends ShibbolethResolutionContext {
+
+    /** Index giving the ordinal of each plug-in. */
+    private final ResolutionPlugInIndex plugInIndex;
+
+    /** Connector whose result is used for each data connector, the connector itself or its failover connector. */
+    private final DataConnector[] effectiveConnectors;
+
+    /** Result of each resolved data connector, indexed by ordinal, null if not yet resolved. */
+    private final Map<String, BaseAttribute>[] connectorResults;
+
+    /** Result of each resolved attribute definition, indexed by ordinal, null if not yet resolved. */
+    private final BaseAttribute[] definitionResults;
+
+    /** Map view of the resolved plug-ins, null until requested. */
+    private ValueTypeIndexedMap<String, ResolutionPlugIn> resolvedPlugins;
+
+    /** Whether the context is being used for a resolution. */
+    private boolean inUse;
+
+    /**
+     * Constructor.
+     * 
+     * @param index index giving the ordinal of each plug-in
+     */
+    @SuppressWarnings("unchecked")
+    public IndexedResolutionContext(ResolutionPlugInIndex index) {
+        super();
+        if (index == null) {
+            throw new IllegalArgumentException("Plug-in index may not be null");
+        }
+        plugInIndex = index;
+        effectiveConnectors = new DataConnector[index.getDataConnectorCount()];
+        connectorResults = new Map[index.getDataConnectorCount()];
+        definitionResults = new BaseAttribute[index.getAttributeDefinitionCount()];
+    }
+
+    /**
+     * Gets the index giving the ordinal of each plug-in.
+     * 
+     * @return index giving the ordinal of each plug-in
+     */
+    public ResolutionPlugInIndex getPlugInIndex() {
+        return plugInIndex;
+    }
+
+    /**
+     * Gets whether the context is currently being used for a resolution.
+     * 
+     * @return whether the context is currently being used for a resolution
+     */
+    public boolean isInUse() {
+        return inUse;
+    }
+
+    /**
+     * Prepares the context for a new resolution.
+     * 
+     * @param context the attribute request the resolution is being performed for
+     */
+    public void begin(SAMLProfileRequestContext context) {
+        setAttributeRequestContext(context);
+        inUse = true;
+    }
+
+    /** Ends the current resolution, releasing all references to its request and results. */
+    public void release() {
+        setAttributeRequestContext(null);
+        Arrays.fill(effectiveConnectors, null);
+        Arrays.fill(connectorResults, null);
+        Arrays.fill(definitionResults, null);
+        resolvedPlugins = null;
+        inUse = false;
+    }
+
+    /**
+     * Gets the result of a data connector resolved for this request.
+     * 
+     * @param ordinal ordinal of the data connector
+     * 
+     * @return the result of the data connector, or null if it has not been resolved
+     */
+    public Map<String, BaseAttribute> getDataConnectorResult(int ordinal) {
+        return connectorResults[ordinal];
+    }
+
+    /**
+     * Records the result of a data connector resolved for this request.
+     * 
+     * @param ordinal ordinal of the data connector
+     * @param connector connector which produced the result, either the connector itself or its failover connector
+     * @param result the result of the data connector
+     */
+    public void setDataConnectorResult(int ordinal, DataConnector connector, Map<String, BaseAttribute> result) {
+        effectiveConnectors[ordinal] = connector;
+        connectorResults[ordinal] = result;
+        if (resolvedPlugins != null) {
+            resolvedPlugins.put(plugInIndex.getDataConnector(ordinal).getId(), new ContextualDataConnector(connector,
+                    result));
+        }
+    }
+
+    /**
+     * Gets the result of an attribute definition resolved for this request.
+     * 
+     * @param ordinal ordinal of the attribute definition
+     * 
+     * @return the result of the attribute definition, or null if it has not been resolved
+     */
+    public BaseAttribute getAttributeDefinitionResult(int ordinal) {
+        return definitionResults[ordinal];
+    }
+
+    /**
+     * Records the result of an attribute definition resolved for this request.
+     * 
+     * @param ordinal ordinal of the attribute definition
+     * @param result the result of the attribute definition
+     */
+    public void setAttributeDefinitionResult(int ordinal, BaseAttribute result) {
+        definitionResults[ordinal] = result;
+        if (resolvedPlugins != null) {
+            AttributeDefinition definition = plugInIndex.getAttributeDefinition(ordinal);
+            resolvedPlugins.put(definition.getId(), new ContextualAttributeDefinition(definition, result));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public BaseAttribute getResolvedAttribute(String definitionId) throws AttributeResolutionException {
+        int ordinal = plugInIndex.getAttributeDefinitionOrdinal(definitionId);
+        if (ordinal < 0) {
+            return null;
+        }
+        return definitionResults[ordinal];
+    }
+
+    /** {@inheritDoc} */
+    public Map<String, BaseAttribute> getResolvedDataConnectorAttributes(String connectorId)
+            throws AttributeResolutionException {
+        int ordinal = plugInIndex.getDataConnectorOrdinal(connectorId);
+        if (ordinal < 0) {
+            return null;
+        }
+        return connectorResults[ordinal];
+    }
+
+    /** {@inheritDoc} */
+    public Map<String, ResolutionPlugIn> getResolvedPlugins() {
+        return getResolvedPlugInView();
+    }
+
+    /** {@inheritDoc} */
+    public Map<String, AttributeDefinition> getResolvedAttributeDefinitions() {
+        return getResolvedPlugInView().subMap(AttributeDefinition.class);
+    }
+
+    /** {@inheritDoc} */
+    public Map<String, DataConnector> getResolvedDataConnectors() {
+        return getResolvedPlugInView().subMap(DataConnector.class);
+    }
+
+    /**
+     * Gets the map view of the resolved plug-ins, building it if necessary.
+     * 
+     * @return map view of the resolved plug-ins
+     */
+    private ValueTypeIndexedMap<String, ResolutionPlugIn> getResolvedPlugInView() {
+        if (resolvedPlugins == null) {
+            resolvedPlugins = new ValueTypeIndexedMap<String, ResolutionPlugIn>(
+                    ShibbolethAttributeResolver.PLUGIN_TYPES);
+
+            for (int i = 0; i < connectorResults.length; i++) {
+                if (connectorResults[i] != null) {
+                    resolvedPlugins.put(plugInIndex.getDataConnector(i).getId(), new ContextualDataConnector(
+                            effectiveConnectors[i], connectorResults[i]));
+                }
+            }
+
+            AttributeDefinition definition;
+            for (int i = 0; i < definitionResults.length; i++) {
+                if (definitionResults[i] != null) {
+                    definition = plugInIndex.getAttributeDefinition(i);
+                    resolvedPlugins.put(definition.getId(), new ContextualAttributeDefinition(definition,
+                            definitionResults[i]));
+                }
+            }
+        }
+
+        return resolvedPlugins;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.AttributeDefinition;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.DataConnector;
+
+/**
+ * Assigns each data connector and attribute definition of a resolver configuration a dense ordinal, so that per-request
+ * resolution state can be kept in arrays rather than maps keyed by plug-in ID, and pre-computes the ordinals of each
+ * plug-in's dependencies.
+ * 
+ * Dependencies are encoded in a single int: data connectors by their ordinal, attribute definitions by -1 minus their
+ * ordinal. As with {@link ShibbolethAttributeResolver}, an ID used by both a data connector and an attribute
+ * definition refers to the data connector.
+ * 
+ * An index is built once per configuration and is never modified.
+ */
+@ThreadSafe
+public class ResolutionPlugInIndex {
+
+    /** Data connectors the index was built from. */
+    private final Map<String, DataConnector> connectorSource;
+
+    /** Attribute definitions the index was built from. */
+    private final Map<String, AttributeDefinition> definitionSource;
+
+    /** Ordinals of the data connectors, indexed by ID. */
+    private final Map<String, Integer> connectorOrdinals;
+
+    /** Ordinals of the attribute definitions, indexed by ID. */
+    private final Map<String, Integer> definitionOrdinals;
+
+    /** IDs of the data connectors, indexed by ordinal. */
+    private final String[] connectorIds;
+
+    /** IDs of the attribute definitions, indexed by ordinal. */
+    private final String[] definitionIds;
+
+    /** Data connectors, indexed by ordinal. */
+    private final DataConnector[] connectors;
+
+    /** Attribute definitions, indexed by ordinal. */
+    private final AttributeDefinition[] definitions;
+
+    /** Encoded dependencies of each data connector, indexed by ordinal. */
+    private final int[][] connectorDependencies;
+
+    /** Encoded dependencies of each attribute definition, indexed by ordinal. */
+    private final int[][] definitionDependencies;
+
+    /** Ordinal of each data connector's failover connector, -1 if it has none, indexed by ordinal. */
+    private final int[] failoverOrdinals;
+
+    /**
+     * Constructor.
+     * 
+     * @param dataConnectors data connectors of the resolver configuration, indexed by ID
+     * @param attributeDefinitions attribute definitions of the resolver configuration, indexed by ID
+     */
+    public ResolutionPlugInIndex(Map<String, DataConnector> dataConnectors,
+            Map<String, AttributeDefinition> attributeDefinitions) {
+        if (dataConnectors == null || attributeDefinitions == null) {
+            throw new IllegalArgumentException("Data connectors and attribute definitions may not be null");
+        }
+        connectorSource = dataConnectors;
+        definitionSource = attributeDefinitions;
+
+        connectorOrdinals = new HashMap<String, Integer>();
+        connectorIds = new String[dataConnectors.size()];
+        connectors = new DataConnector[dataConnectors.size()];
+        for (Map.Entry<String, DataConnector> connector : dataConnectors.entrySet()) {
+            connectorIds[connectorOrdinals.size()] = connector.getKey();
+            connectors[connectorOrdinals.size()] = connector.getValue();
+            connectorOrdinals.put(connector.getKey(), connectorOrdinals.size());
+        }
+
+        definitionOrdinals = new HashMap<String, Integer>();
+        definitionIds = new String[attributeDefinitions.size()];
+        definitions = new AttributeDefinition[attributeDefinitions.size()];
+        for (Map.Entry<String, AttributeDefinition> definition : attributeDefinitions.entrySet()) {
+            definitionIds[definitionOrdinals.size()] = definition.getKey();
+            definitions[definitionOrdinals.size()] = definition.getValue();
+            definitionOrdinals.put(definition.getKey(), definitionOrdinals.size());
+        }
+
+        connectorDependencies = new int[connectors.length][];
+        failoverOrdinals = new int[connectors.length];
+        for (int i = 0; i < connectors.length; i++) {
+            connectorDependencies[i] = encodeDependencies(connectors[i].getDependencyIds());
+            failoverOrdinals[i] = getDataConnectorOrdinal(connectors[i].getFailoverDependencyId());
+        }
+
+        definitionDependencies = new int[definitions.length][];
+        for (int i = 0; i < definitions.length; i++) {
+            definitionDependencies[i] = encodeDependencies(definitions[i].getDependencyIds());
+        }
+    }
+
+    /**
+     * Checks whether this index still describes the given plug-ins. Plug-ins registered, removed or replaced directly in
+     * a resolver's maps, rather than through a configuration reload, make the index stale.
+     * 
+     * @param dataConnectors current data connectors of the resolver
+     * @param attributeDefinitions current attribute definitions of the resolver
+     * 
+     * @return true if the index was built from the given maps and they still hold the indexed plug-ins
+     */
+    public boolean isIndexOf(Map<String, DataConnector> dataConnectors,
+            Map<String, AttributeDefinition> attributeDefinitions) {
+        if (dataConnectors != connectorSource || attributeDefinitions != definitionSource
+                || dataConnectors.size() != connectors.length || attributeDefinitions.size() != definitions.length) {
+            return false;
+        }
+
+        // a map which has not been structurally modified iterates in the order the index was built in
+        int ordinal = 0;
+        for (Map.Entry<String, DataConnector> connector : dataConnectors.entrySet()) {
+            if (connector.getValue() != connectors[ordinal] || !connector.getKey().equals(connectorIds[ordinal])) {
+                return false;
+            }
+            ordinal++;
+        }
+
+        ordinal = 0;
+        for (Map.Entry<String, AttributeDefinition> definition : attributeDefinitions.entrySet()) {
+            if (definition.getValue() != definitions[ordinal] || !definition.getKey().equals(definitionIds[ordinal])) {
+                return false;
+            }
+            ordinal++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of data connectors in the index.
+     * 
+     * @return number of data connectors in the index
+     */
+    public int getDataConnectorCount() {
+        return connectors.length;
+    }
+
+    /**
+     * Gets the number of attribute definitions in the index.
+     * 
+     * @return number of attribute definitions in the index
+     */
+    public int getAttributeDefinitionCount() {
+        return definitions.length;
+    }
+
+    /**
+     * Gets the ordinal of a data connector.
+     * 
+     * @param connectorId ID of the data connector
+     * 
+     * @return ordinal of the data connector, or -1 if there is no such connector
+     */
+    public int getDataConnectorOrdinal(String connectorId) {
+        Integer ordinal = connectorId == null ? null : connectorOrdinals.get(connectorId);
+        if (ordinal == null) {
+            return -1;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Gets the ordinal of an attribute definition.
+     * 
+     * @param definitionId ID of the attribute definition
+     * 
+     * @return ordinal of the attribute definition, or -1 if there is no such definition
+     */
+    public int getAttributeDefinitionOrdinal(String definitionId) {
+        Integer ordinal = definitionId == null ? null : definitionOrdinals.get(definitionId);
+        if (ordinal == null) {
+            return -1;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Gets a data connector by ordinal.
+     * 
+     * @param ordinal ordinal of the data connector
+     * 
+     * @return the data connector
+     */
+    public DataConnector getDataConnector(int ordinal) {
+        return connectors[ordinal];
+    }
+
+    /**
+     * Gets an attribute definition by ordinal.
+     * 
+     * @param ordinal ordinal of the attribute definition
+     * 
+     * @return the attribute definition
+     */
+    public AttributeDefinition getAttributeDefinition(int ordinal) {
+        return definitions[ordinal];
+    }
+
+    /**
+     * Gets the encoded dependencies of a data connector.
+     * 
+     * @param ordinal ordinal of the data connector
+     * 
+     * @return encoded dependencies of the data connector
+     */
+    public int[] getDataConnectorDependencies(int ordinal) {
+        return connectorDependencies[ordinal];
+    }
+
+    /**
+     * Gets the encoded dependencies of an attribute definition.
+     * 
+     * @param ordinal ordinal of the attribute definition
+     * 
+     * @return encoded dependencies of the attribute definition
+     */
+    public int[] getAttributeDefinitionDependencies(int ordinal) {
+        return definitionDependencies[ordinal];
+    }
+
+    /**
+     * Gets the ordinal of a data connector's failover connector.
+     * 
+     * @param ordinal ordinal of the data connector
+     * 
+     * @return ordinal of the failover connector, or -1 if the connector has no, or an unknown, failover connector
+     */
+    public int getFailoverOrdinal(int ordinal) {
+        return failoverOrdinals[ordinal];
+    }
+
+    /**
+     * Checks whether an encoded dependency is a data connector.
+     * 
+     * @param dependency encoded dependency
+     * 
+     * @return true if the dependency is a data connector, false if it is an attribute definition
+     */
+    public static boolean isDataConnectorDependency(int dependency) {
+        return dependency >= 0;
+    }
+
+    /**
+     * Gets the attribute definition ordinal of an encoded dependency.
+     * 
+     * @param dependency encoded attribute definition dependency
+     * 
+     * @return ordinal of the attribute definition
+     */
+    public static int decodeAttributeDefinitionOrdinal(int dependency) {
+        return -1 - dependency;
+    }
+
+    /**
+     * Encodes dependencies, dropping those which are neither a data connector nor an attribute definition.
+     * 
+     * @param dependencyIds IDs of the dependencies
+     * 
+     * @return the encoded dependencies
+     */
+    private int[] encodeDependencies(List<String> dependencyIds) {
+        int[] encoded = new int[dependencyIds.size()];
+        int count = 0;
+        int ordinal;
+        for (String dependencyId : dependencyIds) {
+            ordinal = getDataConnectorOrdinal(dependencyId);
+            if (ordinal > -1) {
+                encoded[count++] = ordinal;
+                continue;
+            }
+
+            ordinal = getAttributeDefinitionOrdinal(dependencyId);
+            if (ordinal > -1) {
+                encoded[count++] = -1 - ordinal;
+            }
+        }
+
+        if (count < encoded.length) {
+            int[] trimmed = new int[count];
+            System.arraycopy(encoded, 0, trimmed, 0, count);
+            return trimmed;
+        }
+        return encoded;
+    }
+}
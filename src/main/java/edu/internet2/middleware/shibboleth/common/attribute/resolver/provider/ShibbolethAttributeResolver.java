@@ -17,14 +17,27 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
 import org.jgrapht.DirectedGraph;
@@ -56,6 +69,11 @@ import edu.internet2.middleware.shibboleth.common.service.ServiceException;
  * "Raw" attributes are gathered by the registered {@link DataConnector}s while the {@link AttributeDefinition}s refine
  * the raw attributes or create attributes of their own. Connectors and definitions may depend on each other so
  * implementations must use a directed dependency graph when performing the resolution.
+ * 
+ * Once a configuration has been loaded each plug-in is given an ordinal by a {@link ResolutionPlugInIndex} and
+ * resolutions use a per-thread {@link IndexedResolutionContext}, which is reset and reused rather than recreated for
+ * each request. Plug-ins registered directly in to the maps returned by {@link #getDataConnectors()} and
+ * {@link #getAttributeDefinitions()} are resolved with a new {@link ShibbolethResolutionContext} per request instead.
  */
 public class ShibbolethAttributeResolver extends BaseReloadableService implements
         AttributeResolver<SAMLProfileRequestContext> {
@@ -64,6 +82,18 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
     public static final Collection<Class> PLUGIN_TYPES = Arrays.asList(new Class[] {DataConnector.class,
             AttributeDefinition.class, PrincipalConnector.class,});
 
+    /** Default maximum number of plug-ins validated at the same time: {@value} . */
+    public static final int DEFAULT_VALIDATION_THREADS = 8;
+
+    /** Default time, in milliseconds, a plug-in may take to validate: {@value} . */
+    public static final long DEFAULT_VALIDATION_TIMEOUT = 60000;
+
+    /** Interval, in milliseconds, at which concurrent validations are checked for timeouts. */
+    private static final long VALIDATION_POLL_INTERVAL = 100;
+
+    /** Largest number of values whose duplicates are removed without allocating a hash set. */
+    private static final int LINEAR_DEDUPLICATION_THRESHOLD = 16;
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(ShibbolethAttributeResolver.class.getName());
 
@@ -76,12 +106,30 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
     /** Principal connectors defined for this resolver. */
     private Map<String, PrincipalConnector> principalConnectors;
 
+    /** Ordinals of the loaded data connectors and attribute definitions, null until a configuration is loaded. */
+    private volatile ResolutionPlugInIndex plugInIndex;
+
+    /**
+     * Resolution context reused by each thread, replaced along with the plug-in index so that contexts built for a
+     * previous configuration are released.
+     */
+    private volatile ThreadLocal<IndexedResolutionContext> pooledContexts;
+
+    /** Maximum number of plug-ins validated at the same time. */
+    private int validationThreads;
+
+    /** Time, in milliseconds, a plug-in may take to validate, 0 or less for no limit. */
+    private long validationTimeout;
+
     /** Constructor. */
     public ShibbolethAttributeResolver() {
         super();
         dataConnectors = new HashMap<String, DataConnector>();
         definitions = new HashMap<String, AttributeDefinition>();
         principalConnectors = new HashMap<String, PrincipalConnector>();
+        pooledContexts = new ThreadLocal<IndexedResolutionContext>();
+        validationThreads = DEFAULT_VALIDATION_THREADS;
+        validationTimeout = DEFAULT_VALIDATION_TIMEOUT;
     }
 
     /**
@@ -114,8 +162,6 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
     /** {@inheritDoc} */
     public Map<String, BaseAttribute> resolveAttributes(SAMLProfileRequestContext attributeRequestContext)
             throws AttributeResolutionException {
-        ShibbolethResolutionContext resolutionContext = new ShibbolethResolutionContext(attributeRequestContext);
-
         log.debug("{} resolving attributes for principal {}", getId(), attributeRequestContext.getPrincipalName());
 
         if (getAttributeDefinitions().size() == 0) {
@@ -127,10 +173,12 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
         Lock readLock = getReadWriteLock().readLock();
         readLock.lock();
         Map<String, BaseAttribute> resolvedAttributes = null;
+        ShibbolethResolutionContext resolutionContext = createResolutionContext(attributeRequestContext);
         try {
             resolvedAttributes = resolveAttributes(resolutionContext);
             cleanResolvedAttributes(resolvedAttributes, resolutionContext);
         } finally {
+            releaseResolutionContext(resolutionContext);
             readLock.unlock();
         }
 
@@ -139,8 +187,85 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
         return resolvedAttributes;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * Resolves every data connector, and the plug-ins each depends on, for a request without resolving any other
+     * attribute definition. Data connectors which cache their results are thereby primed for the request's principal
+     * without the side effects of attribute definitions, such as issuing transient or persistent IDs. A data connector
+     * which fails does not prevent the others from being resolved.
+     * 
+     * @param attributeRequestContext the request the data connectors are resolved for
+     */
+    public void resolveDataConnectors(SAMLProfileRequestContext attributeRequestContext) {
+        log.debug("{} resolving data connectors for principal {}", getId(), attributeRequestContext.getPrincipalName());
+
+        Lock readLock = getReadWriteLock().readLock();
+        readLock.lock();
+        ShibbolethResolutionContext resolutionContext = createResolutionContext(attributeRequestContext);
+        try {
+            for (String connectorID : getDataConnectors().keySet()) {
+                try {
+                    resolveDataConnector(connectorID, resolutionContext);
+                } catch (AttributeResolutionException e) {
+                    log.debug("Unable to resolve data connector " + connectorID + " for principal "
+                            + attributeRequestContext.getPrincipalName(), e);
+                }
+            }
+        } finally {
+            releaseResolutionContext(resolutionContext);
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the maximum number of plug-ins validated at the same time.
+     * 
+     * @return maximum number of plug-ins validated at the same time
+     */
+    public int getValidationThreads() {
+        return validationThreads;
+    }
+
+    /**
+     * Sets the maximum number of plug-ins validated at the same time. A value of 1 or less validates plug-ins one after
+     * the other, on the calling thread, stopping at the first invalid plug-in.
+     * 
+     * @param threads maximum number of plug-ins validated at the same time
+     */
+    public void setValidationThreads(int threads) {
+        validationThreads = threads;
+    }
+
+    /**
+     * Gets the time, in milliseconds, a plug-in may take to validate before it is considered invalid.
+     * 
+     * @return time a plug-in may take to validate, 0 or less if there is no limit
+     */
+    public long getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    /**
+     * Sets the time, in milliseconds, a plug-in may take to validate before it is considered invalid. The limit only
+     * applies when plug-ins are validated concurrently.
+     * 
+     * @param timeout time a plug-in may take to validate, 0 or less if there is no limit
+     */
+    public void setValidationTimeout(long timeout) {
+        validationTimeout = timeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * If more than one validation thread is configured all plug-ins are validated concurrently and every failure is
+     * reported in a single exception, rather than stopping at the first invalid plug-in.
+     */
     public void validate() throws AttributeResolutionException {
+        if (validationThreads > 1) {
+            validateConcurrently();
+            return;
+        }
+
         for (DataConnector plugin : dataConnectors.values()) {
             if (plugin != null) {
                 validateDataConnector(plugin);
@@ -160,6 +285,96 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
         }
     }
 
+    /**
+     * Validates all plug-ins on a bounded pool of threads, giving each plug-in at most the validation timeout once it
+     * has started validating.
+     * 
+     * @throws AttributeResolutionException thrown if one or more plug-ins are invalid, listing every invalid plug-in
+     */
+    protected void validateConcurrently() throws AttributeResolutionException {
+        List<PlugInValidation> validations = new ArrayList<PlugInValidation>();
+        for (DataConnector plugin : dataConnectors.values()) {
+            if (plugin != null) {
+                validations.add(new PlugInValidation("data connector", plugin));
+            }
+        }
+        for (AttributeDefinition plugin : definitions.values()) {
+            if (plugin != null) {
+                validations.add(new PlugInValidation("attribute definition", plugin));
+            }
+        }
+        for (PrincipalConnector plugin : principalConnectors.values()) {
+            if (plugin != null) {
+                validations.add(new PlugInValidation("principal connector", plugin));
+            }
+        }
+        if (validations.isEmpty()) {
+            return;
+        }
+
+        log.debug("{} validating {} plug-ins using up to {} threads", new Object[] {getId(), validations.size(),
+                validationThreads,});
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(validationThreads, validations.size()),
+                new ValidationThreadFactory(getId()));
+        List<String> failures = new ArrayList<String>();
+        Throwable firstFailure = null;
+        try {
+            for (PlugInValidation validation : validations) {
+                validation.future = executor.submit(validation);
+            }
+
+            List<PlugInValidation> pending = new LinkedList<PlugInValidation>(validations);
+            Iterator<PlugInValidation> pendingItr;
+            PlugInValidation validation;
+            while (!pending.isEmpty()) {
+                pendingItr = pending.iterator();
+                while (pendingItr.hasNext()) {
+                    validation = pendingItr.next();
+                    if (validation.future.isDone()) {
+                        pendingItr.remove();
+                        try {
+                            validation.future.get();
+                        } catch (ExecutionException e) {
+                            failures.add(validation.describe() + ": " + e.getCause().getMessage());
+                            if (firstFailure == null) {
+                                firstFailure = e.getCause();
+                            }
+                        }
+                    } else if (validation.isTimedOut(validationTimeout)) {
+                        pendingItr.remove();
+                        validation.future.cancel(true);
+                        failures.add(validation.describe() + ": did not validate within " + validationTimeout + "ms");
+                    }
+                }
+
+                if (!pending.isEmpty()) {
+                    try {
+                        pending.get(0).future.get(VALIDATION_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    } catch (ExecutionException e) {
+                        // reported on the next pass
+                    } catch (TimeoutException e) {
+                        // check the timeouts of all pending validations
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AttributeResolutionException(getId() + " was interrupted while validating plug-ins", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            StringBuilder report = new StringBuilder();
+            report.append(failures.size()).append(" of ").append(validations.size()).append(" plug-ins are invalid");
+            for (String failure : failures) {
+                log.error("{} {}", getId(), failure);
+                report.append("; ").append(failure);
+            }
+            throw new AttributeResolutionException(report.toString(), firstFailure);
+        }
+    }
+
     /**
      * Validates that a data connector is valid, per {@link ResolutionPlugIn#validate()} and, if invalid, fails over to
      * a connector's failover connector, if present.
@@ -222,12 +437,56 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
         log.debug("Using principal connector {} to resolve principal name.", effectiveConnector.getId());
         effectiveConnector = new ContextualPrincipalConnector(effectiveConnector);
 
-        ShibbolethResolutionContext resolutionContext = new ShibbolethResolutionContext(requestContext);
+        ShibbolethResolutionContext resolutionContext = createResolutionContext(requestContext);
+        try {
+            // resolve all the connectors dependencies
+            resolveDependencies(effectiveConnector, resolutionContext);
 
-        // resolve all the connectors dependencies
-        resolveDependencies(effectiveConnector, resolutionContext);
+            return effectiveConnector.resolve(resolutionContext);
+        } finally {
+            releaseResolutionContext(resolutionContext);
+        }
+    }
+
+    /**
+     * Gets a resolution context for a request. If the plug-in index is current this is the calling thread's reusable
+     * {@link IndexedResolutionContext}, unless that context is already in use by an enclosing resolution, otherwise a
+     * new {@link ShibbolethResolutionContext} is created. The context must be passed to
+     * {@link #releaseResolutionContext(ShibbolethResolutionContext)} once the resolution is complete.
+     * 
+     * @param requestContext the attribute request the resolution is being performed for
+     * 
+     * @return the resolution context
+     */
+    protected ShibbolethResolutionContext createResolutionContext(SAMLProfileRequestContext requestContext) {
+        ResolutionPlugInIndex index = plugInIndex;
+        if (index == null || !index.isIndexOf(dataConnectors, definitions)) {
+            return new ShibbolethResolutionContext(requestContext);
+        }
 
-        return effectiveConnector.resolve(resolutionContext);
+        ThreadLocal<IndexedResolutionContext> contexts = pooledContexts;
+        IndexedResolutionContext context = contexts.get();
+        if (context == null || context.getPlugInIndex() != index) {
+            context = new IndexedResolutionContext(index);
+            contexts.set(context);
+        } else if (context.isInUse()) {
+            context = new IndexedResolutionContext(index);
+        }
+
+        context.begin(requestContext);
+        return context;
+    }
+
+    /**
+     * Releases a resolution context obtained from {@link #createResolutionContext(SAMLProfileRequestContext)} so that
+     * it may be reused.
+     * 
+     * @param resolutionContext the resolution context
+     */
+    protected void releaseResolutionContext(ShibbolethResolutionContext resolutionContext) {
+        if (resolutionContext instanceof IndexedResolutionContext) {
+            ((IndexedResolutionContext) resolutionContext).release();
+        }
     }
 
     /**
@@ -308,6 +567,17 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
     protected BaseAttribute resolveAttribute(String attributeID, ShibbolethResolutionContext resolutionContext)
             throws AttributeResolutionException {
 
+        if (resolutionContext instanceof IndexedResolutionContext) {
+            IndexedResolutionContext indexedContext = (IndexedResolutionContext) resolutionContext;
+            int ordinal = indexedContext.getPlugInIndex().getAttributeDefinitionOrdinal(attributeID);
+            if (ordinal < 0) {
+                log.warn("{} requested attribute {} but no attribute definition exists for that attribute",
+                        resolutionContext.getAttributeRequestContext().getInboundMessageIssuer(), attributeID);
+                return null;
+            }
+            return resolveAttribute(ordinal, indexedContext);
+        }
+
         AttributeDefinition definition = resolutionContext.getResolvedAttributeDefinitions().get(attributeID);
 
         if (definition == null) {
@@ -348,6 +618,18 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
     protected void resolveDataConnector(String connectorID, ShibbolethResolutionContext resolutionContext)
             throws AttributeResolutionException {
 
+        if (resolutionContext instanceof IndexedResolutionContext) {
+            IndexedResolutionContext indexedContext = (IndexedResolutionContext) resolutionContext;
+            int ordinal = indexedContext.getPlugInIndex().getDataConnectorOrdinal(connectorID);
+            if (ordinal < 0) {
+                log.warn("{} requested to resolve data connector {} but does not have such a data connector", getId(),
+                        connectorID);
+                return;
+            }
+            resolveDataConnector(ordinal, indexedContext);
+            return;
+        }
+
         DataConnector dataConnector = resolutionContext.getResolvedDataConnectors().get(connectorID);
 
         if (dataConnector == null) {
@@ -405,6 +687,25 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
     protected void resolveDependencies(ResolutionPlugIn<?> plugin, ShibbolethResolutionContext resolutionContext)
             throws AttributeResolutionException {
 
+        if (resolutionContext instanceof IndexedResolutionContext) {
+            IndexedResolutionContext indexedContext = (IndexedResolutionContext) resolutionContext;
+            ResolutionPlugInIndex index = indexedContext.getPlugInIndex();
+            int ordinal;
+            for (String dependency : plugin.getDependencyIds()) {
+                ordinal = index.getDataConnectorOrdinal(dependency);
+                if (ordinal > -1) {
+                    resolveDataConnector(ordinal, indexedContext);
+                    continue;
+                }
+
+                ordinal = index.getAttributeDefinitionOrdinal(dependency);
+                if (ordinal > -1) {
+                    resolveAttribute(ordinal, indexedContext);
+                }
+            }
+            return;
+        }
+
         for (String dependency : plugin.getDependencyIds()) {
             if (dataConnectors.containsKey(dependency)) {
                 resolveDataConnector(dependency, resolutionContext);
@@ -414,6 +715,100 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
         }
     }
 
+    /**
+     * Resolves, if it has not already been resolved, the attribute definition with the given ordinal.
+     * 
+     * @param ordinal ordinal of the attribute definition
+     * @param resolutionContext current resolution context
+     * 
+     * @return resolution of the attribute definition
+     * 
+     * @throws AttributeResolutionException if unable to resolve the attribute definition
+     */
+    private BaseAttribute resolveAttribute(int ordinal, IndexedResolutionContext resolutionContext)
+            throws AttributeResolutionException {
+        BaseAttribute attribute = resolutionContext.getAttributeDefinitionResult(ordinal);
+        if (attribute != null) {
+            return attribute;
+        }
+
+        ResolutionPlugInIndex index = resolutionContext.getPlugInIndex();
+        AttributeDefinition definition = index.getAttributeDefinition(ordinal);
+        log.debug("Resolving attribute {} for principal {}", definition.getId(), resolutionContext
+                .getAttributeRequestContext().getPrincipalName());
+
+        resolveDependencies(index.getAttributeDefinitionDependencies(ordinal), resolutionContext);
+
+        attribute = definition.resolve(resolutionContext);
+        resolutionContext.setAttributeDefinitionResult(ordinal, attribute);
+        log.debug("Resolved attribute {} containing {} values", definition.getId(), attribute.getValues().size());
+        return attribute;
+    }
+
+    /**
+     * Resolves, if it has not already been resolved, the data connector with the given ordinal, using its failover
+     * connector if it fails.
+     * 
+     * @param ordinal ordinal of the data connector
+     * @param resolutionContext current resolution context
+     * 
+     * @throws AttributeResolutionException if unable to resolve the connector or its failover connector
+     */
+    private void resolveDataConnector(int ordinal, IndexedResolutionContext resolutionContext)
+            throws AttributeResolutionException {
+        if (resolutionContext.getDataConnectorResult(ordinal) != null) {
+            return;
+        }
+
+        ResolutionPlugInIndex index = resolutionContext.getPlugInIndex();
+        DataConnector dataConnector = index.getDataConnector(ordinal);
+        log.debug("Resolving data connector {} for principal {}", dataConnector.getId(), resolutionContext
+                .getAttributeRequestContext().getPrincipalName());
+
+        resolveDependencies(index.getDataConnectorDependencies(ordinal), resolutionContext);
+
+        try {
+            resolutionContext.setDataConnectorResult(ordinal, dataConnector, dataConnector.resolve(resolutionContext));
+        } catch (AttributeResolutionException e) {
+            int failoverOrdinal = index.getFailoverOrdinal(ordinal);
+            if (failoverOrdinal < 0) {
+                log.error("Received the following error from data connector " + dataConnector.getId()
+                        + ", no failover data connector available", e);
+                throw e;
+            }
+
+            DataConnector failoverConnector = index.getDataConnector(failoverOrdinal);
+            log.warn("Received the following error from data connector " + dataConnector.getId()
+                    + ", trying its failover connector " + failoverConnector.getId(), e.getMessage());
+            log.debug("Error recieved from data connector " + dataConnector.getId(), e);
+            resolveDataConnector(failoverOrdinal, resolutionContext);
+
+            log.debug("Using failover connector {} in place of {} for the remainder of this resolution",
+                    failoverConnector.getId(), dataConnector.getId());
+            resolutionContext.setDataConnectorResult(ordinal, failoverConnector, resolutionContext
+                    .getDataConnectorResult(failoverOrdinal));
+        }
+    }
+
+    /**
+     * Resolves the plug-ins a plug-in depends on.
+     * 
+     * @param dependencies dependencies encoded as described by {@link ResolutionPlugInIndex}
+     * @param resolutionContext current resolution context
+     * 
+     * @throws AttributeResolutionException thrown if there is a problem resolving a dependency
+     */
+    private void resolveDependencies(int[] dependencies, IndexedResolutionContext resolutionContext)
+            throws AttributeResolutionException {
+        for (int dependency : dependencies) {
+            if (ResolutionPlugInIndex.isDataConnectorDependency(dependency)) {
+                resolveDataConnector(dependency, resolutionContext);
+            } else {
+                resolveAttribute(ResolutionPlugInIndex.decodeAttributeDefinitionOrdinal(dependency), resolutionContext);
+            }
+        }
+    }
+
     /**
      * Removes attributes that contain no values or those which are dependency only.
      * 
@@ -426,7 +821,6 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
 
         Iterator<Entry<String, BaseAttribute>> attributeItr = resolvedAttributes.entrySet().iterator();
         BaseAttribute<?> resolvedAttribute;
-        Set<Object> values;
         while (attributeItr.hasNext()) {
             resolvedAttribute = attributeItr.next().getValue();
 
@@ -453,23 +847,89 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
                 continue;
             }
 
-            // remove duplicate attribute values
-            Iterator<?> valueItr = resolvedAttribute.getValues().iterator();
-            values = new HashSet<Object>();
-            while (valueItr.hasNext()) {
-                Object value = valueItr.next();
-                if (!values.add(value)) {
-                    log.debug("Removing duplicate value {} of attribute {} from resolution result", value,
-                            resolvedAttribute.getId());
-                    valueItr.remove();
-                }
-            }
+            removeDuplicateValues(resolvedAttribute);
 
             log.debug("Attribute {} has {} values after post-processing", resolvedAttribute.getId(), resolvedAttribute
                     .getValues().size());
         }
     }
 
+    /**
+     * Removes duplicate values from an attribute, keeping the first occurrence of each value in its original position.
+     * Lists of a few values, the common case, are checked by comparing each value with the ones before it so that no
+     * set needs to be allocated; larger collections are checked with a hash set.
+     * 
+     * @param attribute attribute whose duplicate values are removed
+     */
+    protected void removeDuplicateValues(BaseAttribute<?> attribute) {
+        Collection<?> values = attribute.getValues();
+        int size = values.size();
+        if (size < 2) {
+            return;
+        }
+
+        if (size <= LINEAR_DEDUPLICATION_THRESHOLD && values instanceof List && values instanceof RandomAccess) {
+            List<?> valueList = (List<?>) values;
+            Object value;
+            int i = 1;
+            while (i < valueList.size()) {
+                value = valueList.get(i);
+                if (isDuplicateValue(valueList, i, value)) {
+                    log.debug("Removing duplicate value {} of attribute {} from resolution result", value, attribute
+                            .getId());
+                    valueList.remove(i);
+                } else {
+                    i++;
+                }
+            }
+            return;
+        }
+
+        Set<Object> seenValues = new HashSet<Object>(size * 4 / 3 + 1);
+        Iterator<?> valueItr = values.iterator();
+        Object value;
+        while (valueItr.hasNext()) {
+            value = valueItr.next();
+            if (!seenValues.add(value)) {
+                log.debug("Removing duplicate value {} of attribute {} from resolution result", value, attribute
+                        .getId());
+                valueItr.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a value is equal to one of the values before a position in a list. String values, the most common
+     * kind, compare their cached hash codes before their characters.
+     * 
+     * @param values the list of values
+     * @param end position before which values are compared
+     * @param value the value to look for
+     * 
+     * @return true if one of the first end values of the list equals the value
+     */
+    private boolean isDuplicateValue(List<?> values, int end, Object value) {
+        Object other;
+        if (value instanceof String) {
+            int hash = value.hashCode();
+            for (int i = 0; i < end; i++) {
+                other = values.get(i);
+                if (other == value || (other instanceof String && other.hashCode() == hash && value.equals(other))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (int i = 0; i < end; i++) {
+            other = values.get(i);
+            if (other == value || (value != null && value.equals(other))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Add a resolution plug-in and dependencies to a directed graph.
      * 
@@ -534,6 +994,8 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
             definitions = newAttributeDefinitions;
             principalConnectors = newPrincipalConnectors;
             validate();
+            pooledContexts = new ThreadLocal<IndexedResolutionContext>();
+            plugInIndex = new ResolutionPlugInIndex(newDataConnectors, newAttributeDefinitions);
         } catch (AttributeResolutionException e) {
             dataConnectors = oldDataConnectors;
             definitions = oldAttributeDefinitions;
@@ -541,4 +1003,89 @@ public class ShibbolethAttributeResolver extends BaseReloadableService implement
             throw new ServiceException(getId() + " configuration is not valid, retaining old configuration", e);
         }
     }
-}
\ No newline at end of file
+
+    /** Validation of a single plug-in, run on the validation thread pool. */
+    private class PlugInValidation implements Callable<Object> {
+
+        /** Type of the plug-in, used in failure reports. */
+        private final String type;
+
+        /** Plug-in to validate. */
+        private final ResolutionPlugIn<?> plugin;
+
+        /** Result of the validation, set once the validation has been submitted. */
+        private Future<Object> future;
+
+        /** Time the validation started, 0 if it has not yet started. */
+        private volatile long started;
+
+        /**
+         * Constructor.
+         * 
+         * @param pluginType type of the plug-in, used in failure reports
+         * @param validatedPlugin plug-in to validate
+         */
+        public PlugInValidation(String pluginType, ResolutionPlugIn<?> validatedPlugin) {
+            type = pluginType;
+            plugin = validatedPlugin;
+        }
+
+        /** {@inheritDoc} */
+        public Object call() throws Exception {
+            started = System.currentTimeMillis();
+            if (plugin instanceof DataConnector) {
+                validateDataConnector((DataConnector) plugin);
+            } else {
+                plugin.validate();
+            }
+            return null;
+        }
+
+        /**
+         * Checks whether the validation has been running for longer than the given timeout.
+         * 
+         * @param timeout validation timeout in milliseconds, 0 or less for no limit
+         * 
+         * @return true if the validation started more than the timeout ago
+         */
+        public boolean isTimedOut(long timeout) {
+            return timeout > 0 && started > 0 && System.currentTimeMillis() - started > timeout;
+        }
+
+        /**
+         * Describes the validated plug-in for failure reports.
+         * 
+         * @return description of the validated plug-in
+         */
+        public String describe() {
+            return type + " " + plugin.getId();
+        }
+    }
+
+    /** Creates daemon threads, named after the resolver, for validating plug-ins. */
+    private static class ValidationThreadFactory implements ThreadFactory {
+
+        /** Prefix of the thread names. */
+        private final String namePrefix;
+
+        /** Number of threads created so far. */
+        private final AtomicInteger threadCount;
+
+        /**
+         * Constructor.
+         * 
+         * @param resolverId ID of the resolver whose plug-ins are validated
+         */
+        public ValidationThreadFactory(String resolverId) {
+            namePrefix = resolverId + "-validation-";
+            threadCount = new AtomicInteger();
+        }
+
+        /** {@inheritDoc} */
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -21,6 +21,8 @@ import java.util.Map;
 
 import org.opensaml.xml.util.ValueTypeIndexedMap;
 
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.AttributeDefinition;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.DataConnector;
 import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
@@ -46,6 +48,14 @@ public class ShibbolethResolutionContext {
         resolvedPlugins = new ValueTypeIndexedMap<String, ResolutionPlugIn>(ShibbolethAttributeResolver.PLUGIN_TYPES);
     }
 
+    /**
+     * Constructor for contexts which keep track of resolved plug-ins themselves, and so override
+     * {@link #getResolvedPlugins()}, {@link #getResolvedAttributeDefinitions()} and
+     * {@link #getResolvedDataConnectors()}.
+     */
+    protected ShibbolethResolutionContext() {
+    }
+
     /**
      * Gets the attribute request that started this resolution.
      * 
@@ -55,6 +65,15 @@ public class ShibbolethResolutionContext {
         return requestContext;
     }
 
+    /**
+     * Sets the attribute request that started this resolution.
+     * 
+     * @param context attribute request that started this resolution
+     */
+    protected void setAttributeRequestContext(SAMLProfileRequestContext context) {
+        requestContext = context;
+    }
+
     /**
      * Get the resolution plug-ins that have been resolved for this request.
      * 
@@ -83,4 +102,39 @@ public class ShibbolethResolutionContext {
     public Map<String, DataConnector> getResolvedDataConnectors() {
         return resolvedPlugins.subMap(DataConnector.class);
     }
+
+    /**
+     * Gets the attribute produced by an attribute definition resolved for this request.
+     * 
+     * @param definitionId ID of the attribute definition
+     * 
+     * @return the attribute produced by the definition, or null if no such definition has been resolved
+     * 
+     * @throws AttributeResolutionException thrown if the definition can not be resolved
+     */
+    public BaseAttribute getResolvedAttribute(String definitionId) throws AttributeResolutionException {
+        AttributeDefinition definition = getResolvedAttributeDefinitions().get(definitionId);
+        if (definition == null) {
+            return null;
+        }
+        return definition.resolve(this);
+    }
+
+    /**
+     * Gets the attributes produced by a data connector resolved for this request.
+     * 
+     * @param connectorId ID of the data connector
+     * 
+     * @return the attributes produced by the connector, or null if no such connector has been resolved
+     * 
+     * @throws AttributeResolutionException thrown if the connector can not be resolved
+     */
+    public Map<String, BaseAttribute> getResolvedDataConnectorAttributes(String connectorId)
+            throws AttributeResolutionException {
+        DataConnector connector = getResolvedDataConnectors().get(connectorId);
+        if (connector == null) {
+            return null;
+        }
+        return connector.resolve(this);
+    }
 }
\ No newline at end of file
@@ -29,9 +29,11 @@ import org.slf4j.LoggerFactory;
 
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.encoding.AttributeEncoder;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.AbstractResolutionPlugIn;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ShibbolethResolutionContext;
+import edu.internet2.middleware.shibboleth.common.util.LRUCache;
 
 /**
  * Base class for {@link AttributeDefinition} plug-ins.
@@ -57,6 +59,9 @@ public abstract class BaseAttributeDefinition extends AbstractResolutionPlugIn<B
     /** Localized human readable description of attribute. */
     private Map<Locale, String> displayDescriptions;
 
+    /** Values produced for previously seen inputs, null if memoization is disabled. */
+    private LRUCache<List<?>, List<?>> memoizedValues;
+
     /** Constructor. */
     public BaseAttributeDefinition() {
         dependencyOnly = false;
@@ -103,28 +108,127 @@ public abstract class BaseAttributeDefinition extends AbstractResolutionPlugIn<B
         return encoders;
     }
 
+    /**
+     * Gets the maximum number of inputs whose resulting values are memoized.
+     * 
+     * @return maximum number of inputs whose resulting values are memoized, 0 if memoization is disabled
+     */
+    public int getMemoizationCacheSize() {
+        if (memoizedValues == null) {
+            return 0;
+        }
+        return memoizedValues.getMaximumSize();
+    }
+
+    /**
+     * Sets the maximum number of inputs whose resulting values are memoized. Memoization only takes place for
+     * definitions that declare themselves to be pure functions of their input by way of
+     * {@link #getMemoizationKey(ShibbolethResolutionContext)}.
+     * 
+     * @param size maximum number of inputs whose resulting values are memoized, 0 or less disables memoization
+     */
+    public void setMemoizationCacheSize(int size) {
+        if (size > 0) {
+            memoizedValues = new LRUCache<List<?>, List<?>>(size);
+        } else {
+            memoizedValues = null;
+        }
+    }
+
     /** {@inheritDoc} */
     public BaseAttribute resolve(ShibbolethResolutionContext resolutionContext) throws AttributeResolutionException {
-        BaseAttribute resolvedAttribute = doResolve(resolutionContext);
+        BaseAttribute resolvedAttribute;
+        if (memoizedValues != null) {
+            resolvedAttribute = resolveMemoized(resolutionContext);
+        } else {
+            resolvedAttribute = doResolve(resolutionContext);
+        }
 
         if(resolvedAttribute == null){
             log.error("{} produced a null attribute, this is not allowed", getId());
             throw new AttributeResolutionException(getId() + " produced a null attribute");
         }
         
-        if(getDisplayNames() != null) {
-            resolvedAttribute.getDisplayNames().putAll(displayNames);
+        // the definition's metadata is not changed once it is configured, so rather than copying it in to every
+        // resolved attribute it is shared and only copied by attributes that go on to modify it
+        resolvedAttribute.addSharedDisplayNames(displayNames);
+        resolvedAttribute.addSharedDisplayDescriptions(displayDescriptions);
+
+        if (resolvedAttribute instanceof BasicAttribute) {
+            ((BasicAttribute) resolvedAttribute).addSharedEncoders(encoders);
+        } else if (encoders != null) {
+            resolvedAttribute.getEncoders().addAll(encoders);
         }
-        
-        if(getDisplayDescriptions() != null){
-            resolvedAttribute.getDisplayDescriptions().putAll(displayDescriptions);
+
+        return resolvedAttribute;
+    }
+
+    /**
+     * Resolves the attribute using the memoized values for the current input, if there are any, and otherwise
+     * resolves it normally and memoizes the resulting values.
+     * 
+     * @param resolutionContext current attribute resolution context
+     * 
+     * @return resolved attribute
+     * 
+     * @throws AttributeResolutionException thrown if there is a problem resolving and creating the attribute
+     */
+    private BaseAttribute resolveMemoized(ShibbolethResolutionContext resolutionContext)
+            throws AttributeResolutionException {
+        List<?> key = getMemoizationKey(resolutionContext);
+        if (key == null) {
+            return doResolve(resolutionContext);
         }
-        
-        if (getAttributeEncoders() != null) {
-            resolvedAttribute.getEncoders().addAll(getAttributeEncoders());
+
+        List<?> values = memoizedValues.get(key);
+        if (values != null) {
+            log.trace("Attribute definition {} using memoized values for input {}", getId(), key);
+            BasicAttribute<Object> attribute = new BasicAttribute<Object>(getId());
+            attribute.getValues().addAll(values);
+            return attribute;
         }
 
-        return resolvedAttribute;
+        BaseAttribute<?> attribute = doResolve(resolutionContext);
+        if (attribute != null && attribute.getValueComparator() == null) {
+            memoizedValues.put(key, new ArrayList<Object>(attribute.getValues()));
+        }
+        return attribute;
+    }
+
+    /**
+     * Gets the input from which this definition computes its values for the current request. Definitions whose values
+     * are a pure function of this input, that is, they do not depend on the principal, requester, or any other request
+     * state not captured by the input, may override this method to allow their values to be memoized. The values must
+     * be immutable and all input elements must implement {@link Object#equals(Object)} and {@link Object#hashCode()}.
+     * 
+     * The default implementation returns null, disabling memoization.
+     * 
+     * @param resolutionContext current attribute resolution context
+     * 
+     * @return input to this definition for the current request, or null if the values may not be memoized
+     */
+    protected List<?> getMemoizationKey(ShibbolethResolutionContext resolutionContext) {
+        return null;
+    }
+
+    /**
+     * Gets the values of the source attribute from all dependencies as a memoization key. Only string values can be
+     * used in a key.
+     * 
+     * @param resolutionContext current attribute resolution context
+     * @param sourceAttribute ID of attribute to retrieve from dependencies
+     * 
+     * @return source attribute values or null if any of them is not a string
+     */
+    protected List<?> getStringValuesMemoizationKey(ShibbolethResolutionContext resolutionContext,
+            String sourceAttribute) {
+        List<Object> values = new ArrayList<Object>(getValuesFromAllDependencies(resolutionContext, sourceAttribute));
+        for (Object value : values) {
+            if (value != null && !(value instanceof String)) {
+                return null;
+            }
+        }
+        return values;
     }
 
     /**
@@ -47,6 +47,17 @@ public class ContextualAttributeDefinition implements AttributeDefinition {
         definition = newDefinition;
     }
 
+    /**
+     * Constructor.
+     * 
+     * @param newDefinition attribute definition to wrap
+     * @param resolvedAttribute result of already resolving the definition within the context
+     */
+    public ContextualAttributeDefinition(AttributeDefinition newDefinition, BaseAttribute resolvedAttribute) {
+        definition = newDefinition;
+        attribute = resolvedAttribute;
+    }
+
     /** {@inheritDoc} */
     public boolean equals(Object obj) {
         return definition.equals(obj);
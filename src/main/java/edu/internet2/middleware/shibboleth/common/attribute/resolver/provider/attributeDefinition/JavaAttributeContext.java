@@ -0,0 +1,151 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ShibbolethResolutionContext;
+import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
+
+/**
+ * A typed view of the current attribute resolution given to a {@link JavaAttributeFunction}.
+ */
+public class JavaAttributeContext {
+
+    /** Current resolution context. */
+    private final ShibbolethResolutionContext resolutionContext;
+
+    /** Definition being resolved. */
+    private final JavaAttributeDefinition definition;
+
+    /**
+     * Constructor.
+     * 
+     * @param context current resolution context
+     * @param javaDefinition definition being resolved
+     */
+    public JavaAttributeContext(ShibbolethResolutionContext context, JavaAttributeDefinition javaDefinition) {
+        resolutionContext = context;
+        definition = javaDefinition;
+    }
+
+    /**
+     * Gets the ID of the attribute being resolved.
+     * 
+     * @return ID of the attribute being resolved
+     */
+    public String getAttributeId() {
+        return definition.getId();
+    }
+
+    /**
+     * Gets the name of the principal whose attributes are being resolved.
+     * 
+     * @return name of the principal whose attributes are being resolved
+     */
+    public String getPrincipalName() {
+        return resolutionContext.getAttributeRequestContext().getPrincipalName();
+    }
+
+    /**
+     * Gets the entity ID of the relying party the attributes are being resolved for.
+     * 
+     * @return entity ID of the relying party the attributes are being resolved for
+     */
+    public String getRelyingPartyId() {
+        return resolutionContext.getAttributeRequestContext().getInboundMessageIssuer();
+    }
+
+    /**
+     * Gets the request that started this resolution.
+     * 
+     * @return request that started this resolution
+     */
+    public SAMLProfileRequestContext getRequestContext() {
+        return resolutionContext.getAttributeRequestContext();
+    }
+
+    /**
+     * Gets the underlying resolution context.
+     * 
+     * @return underlying resolution context
+     */
+    public ShibbolethResolutionContext getResolutionContext() {
+        return resolutionContext;
+    }
+
+    /**
+     * Gets the values of the definition's source attribute from all its dependencies.
+     * 
+     * @return values of the source attribute, never null
+     */
+    public List<Object> getValues() {
+        return getValues(definition.getSourceAttributeID());
+    }
+
+    /**
+     * Gets the values of an attribute from all the definition's dependencies.
+     * 
+     * @param attributeId ID of the attribute
+     * 
+     * @return values of the attribute, never null
+     */
+    public List<Object> getValues(String attributeId) {
+        Collection<Object> values = definition.getDependencyValues(resolutionContext, attributeId);
+        if (values instanceof List) {
+            return (List<Object>) values;
+        }
+        return new ArrayList<Object>(values);
+    }
+
+    /**
+     * Gets the string form of the non-null values of an attribute from all the definition's dependencies.
+     * 
+     * @param attributeId ID of the attribute
+     * 
+     * @return string values of the attribute, never null
+     */
+    public List<String> getStringValues(String attributeId) {
+        Collection<Object> values = definition.getDependencyValues(resolutionContext, attributeId);
+        List<String> stringValues = new ArrayList<String>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                stringValues.add(value.toString());
+            }
+        }
+        return stringValues;
+    }
+
+    /**
+     * Gets the string form of the first non-null value of an attribute from all the definition's dependencies.
+     * 
+     * @param attributeId ID of the attribute
+     * 
+     * @return first string value of the attribute, or null if it has no values
+     */
+    public String getStringValue(String attributeId) {
+        for (Object value : definition.getDependencyValues(resolutionContext, attributeId)) {
+            if (value != null) {
+                return value.toString();
+            }
+        }
+        return null;
+    }
+}
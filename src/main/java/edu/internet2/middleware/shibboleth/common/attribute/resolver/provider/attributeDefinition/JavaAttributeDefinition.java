@@ -0,0 +1,173 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+
+import org.opensaml.xml.util.DatatypeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ShibbolethResolutionContext;
+
+/**
+ * An attribute definition that computes its values with Java code. The code is either a class implementing
+ * {@link JavaAttributeFunction} or the Java source of a function body, which is compiled when the definition is
+ * initialized. Compared to a {@link ScriptedAttributeDefinition} the code runs at full JIT compiled speed and
+ * compilation errors are reported when the configuration is loaded rather than when the attribute is resolved.
+ */
+public class JavaAttributeDefinition extends BaseAttributeDefinition {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(JavaAttributeDefinition.class);
+
+    /** Java source of the function body. */
+    private String source;
+
+    /** Name of the class implementing the function. */
+    private String functionClass;
+
+    /** The function computing the attribute values. */
+    private JavaAttributeFunction function;
+
+    /** Error which prevented the function from being created, null if there was none. */
+    private String initializationError;
+
+    /**
+     * Gets the Java source of the function body.
+     * 
+     * @return Java source of the function body, null if the function is provided by a class
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Sets the Java source of the function body.
+     * 
+     * @param newSource Java source of the function body
+     */
+    public void setSource(String newSource) {
+        source = newSource;
+    }
+
+    /**
+     * Gets the name of the class implementing the function.
+     * 
+     * @return name of the class implementing the function, null if the function is provided as source
+     */
+    public String getFunctionClass() {
+        return functionClass;
+    }
+
+    /**
+     * Sets the name of the class implementing the function.
+     * 
+     * @param className name of the class implementing the function
+     */
+    public void setFunctionClass(String className) {
+        functionClass = DatatypeHelper.safeTrimOrNullString(className);
+    }
+
+    /**
+     * Gets the function computing the attribute values.
+     * 
+     * @return function computing the attribute values, null if the definition has not been successfully initialized
+     */
+    public JavaAttributeFunction getFunction() {
+        return function;
+    }
+
+    /**
+     * Sets the function computing the attribute values.
+     * 
+     * @param newFunction function computing the attribute values
+     */
+    public void setFunction(JavaAttributeFunction newFunction) {
+        function = newFunction;
+        initializationError = null;
+    }
+
+    /** Initializes this attribute definition by loading or compiling its function. */
+    public void initialize() {
+        function = null;
+        initializationError = null;
+
+        try {
+            if (functionClass != null) {
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                if (loader == null) {
+                    loader = JavaAttributeDefinition.class.getClassLoader();
+                }
+                function = (JavaAttributeFunction) Class.forName(functionClass, true, loader)
+                        .getDeclaredConstructor().newInstance();
+            } else if (!DatatypeHelper.isEmpty(source)) {
+                function = new JavaAttributeFunctionCompiler().compile(getId(), source);
+            } else {
+                initializationError = "neither Java source nor a function class was given";
+            }
+        } catch (AttributeResolutionException e) {
+            initializationError = e.getMessage();
+        } catch (InvocationTargetException e) {
+            initializationError = "constructor of function class " + functionClass + " failed: " + e.getCause();
+        } catch (Exception e) {
+            initializationError = "unable to create function class " + functionClass + ": " + e;
+        }
+
+        if (initializationError != null) {
+            log.error("Java attribute definition {}: {}", getId(), initializationError);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void validate() throws AttributeResolutionException {
+        if (function == null) {
+            throw new AttributeResolutionException("Java attribute definition " + getId() + " is not usable: "
+                    + initializationError);
+        }
+    }
+
+    /** {@inheritDoc} */
+    protected BaseAttribute<?> doResolve(ShibbolethResolutionContext resolutionContext)
+            throws AttributeResolutionException {
+        if (function == null) {
+            throw new AttributeResolutionException("Java attribute definition " + getId() + " is not usable: "
+                    + initializationError);
+        }
+
+        BasicAttribute<Object> attribute = new BasicAttribute<Object>(getId());
+        function.resolve(new JavaAttributeContext(resolutionContext, this), attribute);
+        return attribute;
+    }
+
+    /**
+     * Gets the values of an attribute from all of this definition's dependencies.
+     * 
+     * @param resolutionContext current resolution context
+     * @param attributeId ID of the attribute
+     * 
+     * @return values of the attribute
+     */
+    Collection<Object> getDependencyValues(ShibbolethResolutionContext resolutionContext, String attributeId) {
+        return getValuesFromAllDependencies(resolutionContext, attributeId);
+    }
+}
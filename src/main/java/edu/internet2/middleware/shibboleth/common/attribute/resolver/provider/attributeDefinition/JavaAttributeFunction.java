@@ -0,0 +1,42 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
+
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+
+/**
+ * The body of a {@link JavaAttributeDefinition}. Implementations are either provided as a class on the classpath or
+ * compiled from Java source contained in the resolver configuration.
+ * 
+ * Like attribute definitions, implementations must be stateless and thread-safe as a single instance is used to service
+ * every request.
+ */
+public interface JavaAttributeFunction {
+
+    /**
+     * Computes the values of an attribute.
+     * 
+     * @param context the current resolution, and the values provided by the definition's dependencies
+     * @param attribute the attribute to which computed values should be added
+     * 
+     * @throws AttributeResolutionException thrown if the values can not be computed
+     */
+    public void resolve(JavaAttributeContext context, BasicAttribute<Object> attribute)
+            throws AttributeResolutionException;
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+
+/**
+ * Compiles the Java source of a {@link JavaAttributeDefinition}'s body, in memory, in to a {@link JavaAttributeFunction}.
+ * 
+ * The source is the body of the {@link JavaAttributeFunction#resolve} method, within which the variables
+ * <code>context</code> and <code>attribute</code> are in scope. The java.util, java.util.regex, and attribute
+ * packages are imported. Any exception thrown by the body is wrapped in an {@link AttributeResolutionException}.
+ * 
+ * This requires the system Java compiler and so the IdP must be run with a JDK rather than a JRE.
+ */
+public class JavaAttributeFunctionCompiler {
+
+    /** Package in to which generated classes are placed. */
+    public static final String GENERATED_PACKAGE = "edu.internet2.middleware.shibboleth.common.attribute.resolver."
+            + "provider.attributeDefinition.generated";
+
+    /** Number of lines in the generated source before the function body. */
+    private static final int SOURCE_PREAMBLE_LINES = 12;
+
+    /** Counter used to give each generated class a unique name. */
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(JavaAttributeFunctionCompiler.class);
+
+    /** Class loader used to load classes referred to by the source and parent of the generated class loader. */
+    private final ClassLoader parentClassLoader;
+
+    /** Constructor. */
+    public JavaAttributeFunctionCompiler() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = JavaAttributeFunctionCompiler.class.getClassLoader();
+        }
+        parentClassLoader = loader;
+    }
+
+    /**
+     * Compiles a function body.
+     * 
+     * @param definitionId ID of the definition the body belongs to, used in error messages
+     * @param body Java source of the function body
+     * 
+     * @return the compiled function
+     * 
+     * @throws AttributeResolutionException thrown if no compiler is available or the body does not compile
+     */
+    public JavaAttributeFunction compile(String definitionId, String body) throws AttributeResolutionException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new AttributeResolutionException("No Java compiler is available to compile attribute definition "
+                    + definitionId + ", the IdP must be run with a JDK");
+        }
+
+        String className = "JavaAttributeFunction" + CLASS_COUNTER.incrementAndGet();
+        String qualifiedName = GENERATED_PACKAGE + "." + className;
+        JavaFileObject source = new SourceFile(qualifiedName, buildSource(className, body));
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, Charset
+                .forName("UTF-8"));
+        ClassFileManager fileManager = new ClassFileManager(standardManager);
+
+        List<String> options = Arrays.asList("-classpath", buildClasspath(), "-g:source,lines");
+        boolean compiled = compiler.getTask(null, fileManager, diagnostics, options, null, Arrays.asList(source))
+                .call();
+
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            log.debug("Unable to close Java file manager", e);
+        }
+
+        if (!compiled) {
+            StringBuilder errors = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.append("\n  line ").append(diagnostic.getLineNumber() - SOURCE_PREAMBLE_LINES).append(": ")
+                            .append(diagnostic.getMessage(null));
+                }
+            }
+            throw new AttributeResolutionException("Java attribute definition " + definitionId
+                    + " does not compile:" + errors);
+        }
+
+        try {
+            ClassLoader loader = new GeneratedClassLoader(parentClassLoader, fileManager.getClassFiles());
+            return (JavaAttributeFunction) loader.loadClass(qualifiedName).getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException e) {
+            throw new AttributeResolutionException("Compiled Java attribute definition " + definitionId
+                    + " could not be instantiated", e.getCause());
+        } catch (Exception e) {
+            throw new AttributeResolutionException("Unable to load compiled Java attribute definition "
+                    + definitionId, e);
+        }
+    }
+
+    /**
+     * Wraps a function body in a class implementing {@link JavaAttributeFunction}.
+     * 
+     * @param className simple name of the generated class
+     * @param body function body
+     * 
+     * @return source of the generated class
+     */
+    private String buildSource(String className, String body) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(GENERATED_PACKAGE).append(";\n");
+        source.append("import java.util.*;\n");
+        source.append("import java.util.regex.*;\n");
+        source.append("import edu.internet2.middleware.shibboleth.common.attribute.*;\n");
+        source.append("import edu.internet2.middleware.shibboleth.common.attribute.provider.*;\n");
+        source.append("import edu.internet2.middleware.shibboleth.common.attribute.resolver.*;\n");
+        source.append("import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider."
+                + "attributeDefinition.*;\n");
+        source.append("public final class ").append(className).append(" implements JavaAttributeFunction {\n");
+        source.append("public void resolve(JavaAttributeContext context, BasicAttribute<Object> attribute)\n");
+        source.append("        throws AttributeResolutionException {\n");
+        source.append("try {\n");
+        source.append("{\n");
+        source.append(body);
+        source.append("\n}\n");
+        source.append("} catch (Exception e) {\n");
+        source.append("if (e instanceof AttributeResolutionException) { throw (AttributeResolutionException) e; }\n");
+        source.append("throw new AttributeResolutionException(\"Attribute \" + context.getAttributeId()");
+        source.append(" + \" could not be computed\", e);\n");
+        source.append("}\n}\n}\n");
+        return source.toString();
+    }
+
+    /**
+     * Builds the classpath used to compile function bodies. This is the system classpath plus the locations from
+     * which the parent class loader, and the attribute API, were loaded.
+     * 
+     * @return classpath used to compile function bodies
+     */
+    private String buildClasspath() {
+        Set<String> entries = new LinkedHashSet<String>();
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (entry.length() > 0) {
+                entries.add(entry);
+            }
+        }
+
+        addCodeSource(entries, BaseAttribute.class);
+        addCodeSource(entries, JavaAttributeFunction.class);
+
+        ClassLoader loader = parentClassLoader;
+        while (loader != null) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    addURL(entries, url);
+                }
+            }
+            loader = loader.getParent();
+        }
+
+        StringBuilder classpath = new StringBuilder();
+        for (String entry : entries) {
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparator);
+            }
+            classpath.append(entry);
+        }
+        return classpath.toString();
+    }
+
+    /**
+     * Adds the location from which a class was loaded to a set of classpath entries.
+     * 
+     * @param entries classpath entries
+     * @param clazz the class
+     */
+    private void addCodeSource(Set<String> entries, Class<?> clazz) {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            addURL(entries, codeSource.getLocation());
+        }
+    }
+
+    /**
+     * Adds a file URL to a set of classpath entries.
+     * 
+     * @param entries classpath entries
+     * @param url the URL, ignored if it is not a file URL
+     */
+    private void addURL(Set<String> entries, URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return;
+        }
+        try {
+            entries.add(new File(url.toURI()).getPath());
+        } catch (URISyntaxException e) {
+            entries.add(url.getPath());
+        }
+    }
+
+    /** In-memory Java source. */
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        /** The source. */
+        private final String source;
+
+        /**
+         * Constructor.
+         * 
+         * @param className fully qualified name of the class defined by the source
+         * @param classSource the source
+         */
+        public SourceFile(String className, String classSource) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            source = classSource;
+        }
+
+        /** {@inheritDoc} */
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    /** In-memory class file. */
+    private static class ClassFile extends SimpleJavaFileObject {
+
+        /** Bytecode of the class. */
+        private final ByteArrayOutputStream bytecode;
+
+        /**
+         * Constructor.
+         * 
+         * @param className fully qualified name of the class
+         */
+        public ClassFile(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            bytecode = new ByteArrayOutputStream();
+        }
+
+        /** {@inheritDoc} */
+        public OutputStream openOutputStream() {
+            return bytecode;
+        }
+
+        /**
+         * Gets the bytecode of the class.
+         * 
+         * @return bytecode of the class
+         */
+        public byte[] getBytes() {
+            return bytecode.toByteArray();
+        }
+    }
+
+    /** File manager which keeps compiled classes in memory. */
+    private static class ClassFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+        /** Compiled classes, indexed by fully qualified name. */
+        private final Map<String, ClassFile> classFiles;
+
+        /**
+         * Constructor.
+         * 
+         * @param fileManager file manager to which everything other than class output is delegated
+         */
+        public ClassFileManager(JavaFileManager fileManager) {
+            super(fileManager);
+            classFiles = new HashMap<String, ClassFile>();
+        }
+
+        /** {@inheritDoc} */
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+                FileObject sibling) {
+            ClassFile classFile = new ClassFile(className);
+            classFiles.put(className, classFile);
+            return classFile;
+        }
+
+        /**
+         * Gets the bytecode of the compiled classes.
+         * 
+         * @return bytecode of the compiled classes, indexed by fully qualified name
+         */
+        public Map<String, byte[]> getClassFiles() {
+            Map<String, byte[]> bytecode = new HashMap<String, byte[]>();
+            for (Map.Entry<String, ClassFile> classFile : classFiles.entrySet()) {
+                bytecode.put(classFile.getKey(), classFile.getValue().getBytes());
+            }
+            return bytecode;
+        }
+    }
+
+    /** Class loader which defines classes from in-memory bytecode. */
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        /** Bytecode of the generated classes, indexed by fully qualified name. */
+        private final Map<String, byte[]> classFiles;
+
+        /**
+         * Constructor.
+         * 
+         * @param parent parent class loader
+         * @param bytecode bytecode of the generated classes, indexed by fully qualified name
+         */
+        public GeneratedClassLoader(ClassLoader parent, Map<String, byte[]> bytecode) {
+            super(parent);
+            classFiles = bytecode;
+        }
+
+        /** {@inheritDoc} */
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytecode = classFiles.get(name);
+            if (bytecode == null) {
+                return super.findClass(name);
+            }
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.a
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import org.opensaml.xml.util.DatatypeHelper;
@@ -49,6 +50,9 @@ public class MappedAttributeDefinition extends BaseAttributeDefinition {
     /** Value maps. */
     private Collection<ValueMap> valueMaps;
 
+    /** Compiled form of the value maps, built the first time it is needed. */
+    private volatile ValueMapMatcher valueMapMatcher;
+
     /** Constructor. */
     public MappedAttributeDefinition() {
         valueMaps = new ArrayList<ValueMap>(5);
@@ -86,6 +90,11 @@ public class MappedAttributeDefinition extends BaseAttributeDefinition {
         return attribute;
     }
 
+    /** {@inheritDoc} */
+    protected List<?> getMemoizationKey(ShibbolethResolutionContext resolutionContext) {
+        return getStringValuesMemoizationKey(resolutionContext, getSourceAttributeID());
+    }
+
     /**
      * Maps the value from a dependency in to the value(s) for this attribute.
      * 
@@ -98,16 +107,10 @@ public class MappedAttributeDefinition extends BaseAttributeDefinition {
         
         LazySet<String> mappedValues = new LazySet<String>();
 
-        boolean valueMapMatch = false;
         if (!DatatypeHelper.isEmpty(value)) {
-            for (ValueMap valueMap : valueMaps) {
-                mappedValues.addAll(valueMap.evaluate(value));
-                if (!mappedValues.isEmpty()) {
-                    valueMapMatch = true;
-                }
-            }
+            mappedValues.addAll(getValueMapMatcher().evaluate(value));
 
-            if (!valueMapMatch) {
+            if (mappedValues.isEmpty()) {
                 if (passThru) {
                     mappedValues.add(value);
                 } else if (getDefaultValue() != null) {
@@ -122,6 +125,20 @@ public class MappedAttributeDefinition extends BaseAttributeDefinition {
         return mappedValues;
     }
 
+    /**
+     * Gets the compiled form of the value maps, compiling them if this has not yet been done.
+     * 
+     * @return compiled form of the value maps
+     */
+    protected ValueMapMatcher getValueMapMatcher() {
+        ValueMapMatcher matcher = valueMapMatcher;
+        if (matcher == null) {
+            matcher = new ValueMapMatcher(valueMaps);
+            valueMapMatcher = matcher;
+        }
+        return matcher;
+    }
+
     /** {@inheritDoc} */
     public void validate() throws AttributeResolutionException {
         if (passThru && !DatatypeHelper.isEmpty(defaultValue)) {
@@ -130,6 +147,8 @@ public class MappedAttributeDefinition extends BaseAttributeDefinition {
             throw new AttributeResolutionException("MappedAttributeDefinition (" + getId()
                     + ") may not have a DefaultValue string with passThru enabled.");
         }
+
+        valueMapMatcher = new ValueMapMatcher(valueMaps);
     }
 
     /**
@@ -169,7 +188,8 @@ public class MappedAttributeDefinition extends BaseAttributeDefinition {
     }
 
     /**
-     * Get the value maps.
+     * Get the value maps. The value maps are compiled when the definition is validated or first resolved, changes made
+     * to them after that point are not seen until the definition is validated again.
      * 
      * @return the value maps.
      */
@@ -18,6 +18,7 @@
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +88,11 @@ public class PrescopedAttributeDefinition extends BaseAttributeDefinition {
         return scopeDelimiter;
     }
 
+    /** {@inheritDoc} */
+    protected List<?> getMemoizationKey(ShibbolethResolutionContext resolutionContext) {
+        return getStringValuesMemoizationKey(resolutionContext, getSourceAttributeID());
+    }
+
     /** {@inheritDoc} */
     public void validate() throws AttributeResolutionException {
         // do nothing
@@ -18,6 +18,7 @@
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -81,6 +82,11 @@ public class RegexSplitAttributeDefinition extends BaseAttributeDefinition {
         return attribute;
     }
 
+    /** {@inheritDoc} */
+    protected List<?> getMemoizationKey(ShibbolethResolutionContext resolutionContext) {
+        return getStringValuesMemoizationKey(resolutionContext, getSourceAttributeID());
+    }
+
     /** {@inheritDoc} */
     public void validate() throws AttributeResolutionException {
         if(getSourceAttributeID() == null){
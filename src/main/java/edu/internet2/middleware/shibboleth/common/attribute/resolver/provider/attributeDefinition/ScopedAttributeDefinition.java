@@ -18,6 +18,7 @@
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.opensaml.xml.util.DatatypeHelper;
 
@@ -75,6 +76,11 @@ public class ScopedAttributeDefinition extends BaseAttributeDefinition {
         return scope;
     }
 
+    /** {@inheritDoc} */
+    protected List<?> getMemoizationKey(ShibbolethResolutionContext resolutionContext) {
+        return getStringValuesMemoizationKey(resolutionContext, getSourceAttributeID());
+    }
+
     /** {@inheritDoc} */
     public void validate() throws AttributeResolutionException {
         // do nothing
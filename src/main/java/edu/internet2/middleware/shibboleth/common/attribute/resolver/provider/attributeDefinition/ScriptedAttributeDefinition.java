@@ -19,23 +19,18 @@ package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.a
 
 import java.util.Map;
 
-import javax.script.Compilable;
-import javax.script.CompiledScript;
 import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import javax.script.SimpleScriptContext;
 
-import org.opensaml.xml.util.DatatypeHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
-import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ResolutionPlugIn;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ShibbolethResolutionContext;
-import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.DataConnector;
+import edu.internet2.middleware.shibboleth.common.util.ScriptEnginePool;
+import edu.internet2.middleware.shibboleth.common.util.ScriptEnginePool.PooledScript;
 
 /**
  * An attribute definition the computes the attribute definition by executing a script written in some JSR-223
@@ -52,11 +47,14 @@ public class ScriptedAttributeDefinition extends BaseAttributeDefinition {
     /** The script to execute. */
     private String script;
 
-    /** The script engine to execute the script. */
-    private ScriptEngine scriptEngine;
+    /** Maximum number of script engines used to execute the script concurrently. */
+    private int enginePoolSize;
 
-    /** The compiled form of the script, if the script engine supports compiling. */
-    private CompiledScript compiledScript;
+    /** Maximum time, in milliseconds, the script may run, 0 for no limit. */
+    private long executionTimeout;
+
+    /** Pool of script engines, each with its own compiled copy of the script. */
+    private ScriptEnginePool enginePool;
 
     /**
      * Constructor.
@@ -65,6 +63,7 @@ public class ScriptedAttributeDefinition extends BaseAttributeDefinition {
      */
     public ScriptedAttributeDefinition(String language) {
         scriptLanguage = language;
+        enginePoolSize = Runtime.getRuntime().availableProcessors();
     }
 
     /**
@@ -92,19 +91,71 @@ public class ScriptedAttributeDefinition extends BaseAttributeDefinition {
      */
     public void setScript(String newScript) {
         script = newScript;
-        compileScript();
+        if (enginePool != null) {
+            initialize();
+        }
+    }
+
+    /**
+     * Gets the maximum number of script engines used to execute the script concurrently.
+     * 
+     * @return maximum number of script engines used to execute the script concurrently
+     */
+    public int getEnginePoolSize() {
+        return enginePoolSize;
+    }
+
+    /**
+     * Sets the maximum number of script engines used to execute the script concurrently. Defaults to the number of
+     * available processors. Takes effect the next time the definition is initialized.
+     * 
+     * @param size maximum number of script engines used to execute the script concurrently
+     */
+    public void setEnginePoolSize(int size) {
+        enginePoolSize = size;
+    }
+
+    /**
+     * Gets the maximum time, in milliseconds, the script may run.
+     * 
+     * @return maximum time the script may run, 0 for no limit
+     */
+    public long getExecutionTimeout() {
+        return executionTimeout;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, the script may run. Takes effect the next time the definition is
+     * initialized.
+     * 
+     * @param timeout maximum time the script may run, 0 for no limit
+     */
+    public void setExecutionTimeout(long timeout) {
+        executionTimeout = timeout;
+    }
+
+    /**
+     * Gets the pool of engines used to execute the script. The pool provides statistics about the script's execution.
+     * 
+     * @return pool of engines used to execute the script, null if the definition could not be initialized
+     */
+    public ScriptEnginePool getEnginePool() {
+        return enginePool;
     }
 
     /** Initializes this attribute definition. */
     public void initialize() {
-        ScriptEngineManager sem = new ScriptEngineManager();
-        scriptEngine = sem.getEngineByName(scriptLanguage);
-        compileScript();
+        try {
+            enginePool = new ScriptEnginePool(scriptLanguage, script, Math.max(1, enginePoolSize), executionTimeout);
+        } catch (ScriptException e) {
+            enginePool = null;
+            log.error("ScriptletAttributeDefinition " + getId() + " unable to prepare script", e);
+        }
     }
 
     /** {@inheritDoc} */
     public void validate() throws AttributeResolutionException {
-        if (scriptEngine == null) {
+        if (enginePool == null) {
             log.error("ScriptletAttributeDefinition " + getId()
                     + " unable to create scripting engine for the language: " + scriptLanguage);
             throw new AttributeResolutionException("ScriptletAttributeDefinition " + getId()
@@ -115,14 +166,19 @@ public class ScriptedAttributeDefinition extends BaseAttributeDefinition {
     /** {@inheritDoc} */
     protected BaseAttribute<?> doResolve(ShibbolethResolutionContext resolutionContext)
             throws AttributeResolutionException {
-        ScriptContext context = getScriptContext(resolutionContext);
+        if (enginePool == null) {
+            throw new AttributeResolutionException("ScriptletAttributeDefinition " + getId()
+                    + " has no scripting engine available");
+        }
 
+        PooledScript pooledScript = null;
         try {
-            if (compiledScript != null) {
-                compiledScript.eval(context);
-            } else {
-                scriptEngine.eval(script, context);
-            }
+            pooledScript = enginePool.borrow();
+            ScriptContext context = pooledScript.getContext();
+            context.getBindings(ScriptContext.ENGINE_SCOPE).putAll(
+                    getScriptContext(resolutionContext).getBindings(ScriptContext.ENGINE_SCOPE));
+
+            enginePool.eval(pooledScript);
 
             BaseAttribute attribute = (BaseAttribute) context.getAttribute(getId());
             if (attribute == null) {
@@ -135,27 +191,14 @@ public class ScriptedAttributeDefinition extends BaseAttributeDefinition {
             log.error("ScriptletAttributeDefinition " + getId() + " unable to execute script", e);
             throw new AttributeResolutionException("ScriptletAttributeDefinition " + getId()
                     + " unable to execute script", e);
-        }
-    }
-
-    /** Compiles the script if the scripting engine supports it. */
-    protected void compileScript() {
-        if (DatatypeHelper.isEmpty(script)) {
-            return;
-        }
-
-        try {
-            if (scriptEngine != null && scriptEngine instanceof Compilable) {
-                compiledScript = ((Compilable) scriptEngine).compile(script);
-            }
-        } catch (ScriptException e) {
-            compiledScript = null;
-            log.warn("{} unable to compile even though the scripting engine supports this functionality.", getId());
+        } finally {
+            enginePool.release(pooledScript);
         }
     }
 
     /**
-     * Creates the script execution context from the resolution context.
+     * Creates the script execution context from the resolution context. The engine scope bindings of the returned
+     * context are copied in to the context of the pooled engine the script is executed with; other scopes are not.
      * 
      * @param resolutionContext current resolution context
      * 
@@ -167,34 +210,43 @@ public class ScriptedAttributeDefinition extends BaseAttributeDefinition {
     protected ScriptContext getScriptContext(ShibbolethResolutionContext resolutionContext)
             throws AttributeResolutionException {
         SimpleScriptContext scriptContext = new SimpleScriptContext();
+        populateScriptContext(scriptContext, resolutionContext);
+        return scriptContext;
+    }
+
+    /**
+     * Binds the request context and the attributes of all dependencies in to the engine scope of a script context.
+     * 
+     * @param scriptContext the script context to populate, its engine scope should contain no bindings
+     * @param resolutionContext current resolution context
+     * 
+     * @throws AttributeResolutionException thrown if dependent data connectors or attribute definitions can not be
+     *             resolved
+     */
+    protected void populateScriptContext(ScriptContext scriptContext, ShibbolethResolutionContext resolutionContext)
+            throws AttributeResolutionException {
         scriptContext.setAttribute(getId(), null, ScriptContext.ENGINE_SCOPE);
 
         scriptContext.setAttribute("requestContext", resolutionContext.getAttributeRequestContext(),
                 ScriptContext.ENGINE_SCOPE);
 
-        ResolutionPlugIn plugin;
         Map<String, BaseAttribute> attributes;
         BaseAttribute attribute;
 
         if (!getDependencyIds().isEmpty()) {
             for (String dependency : getDependencyIds()) {
-                plugin = resolutionContext.getResolvedPlugins().get(dependency);
-                if (plugin instanceof DataConnector) {
-                    attributes = ((DataConnector) plugin).resolve(resolutionContext);
-                    if (attributes != null) {
-                        for (BaseAttribute attr : attributes.values()) {
-                            scriptContext.setAttribute(attr.getId(), attr, ScriptContext.ENGINE_SCOPE);
-                        }
+                attributes = resolutionContext.getResolvedDataConnectorAttributes(dependency);
+                if (attributes != null) {
+                    for (BaseAttribute attr : attributes.values()) {
+                        scriptContext.setAttribute(attr.getId(), attr, ScriptContext.ENGINE_SCOPE);
                     }
-                } else if (plugin instanceof AttributeDefinition) {
-                    attribute = ((AttributeDefinition) plugin).resolve(resolutionContext);
+                } else {
+                    attribute = resolutionContext.getResolvedAttribute(dependency);
                     if (attribute != null) {
                         scriptContext.setAttribute(attribute.getId(), attribute, ScriptContext.ENGINE_SCOPE);
                     }
                 }
             }
         }
-
-        return scriptContext;
     }
 }
\ No newline at end of file
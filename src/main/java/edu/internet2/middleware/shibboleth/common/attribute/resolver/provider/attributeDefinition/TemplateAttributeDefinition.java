@@ -123,6 +123,30 @@ public class TemplateAttributeDefinition extends BaseAttributeDefinition {
         return attribute;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Templates that refer to the request context are not a pure function of the source attribute values and are
+     * never memoized.
+     */
+    protected List<?> getMemoizationKey(ShibbolethResolutionContext resolutionContext) {
+        if (attributeTemplate == null || attributeTemplate.contains("requestContext")) {
+            return null;
+        }
+
+        List<Object> key = new ArrayList<Object>(sourceAttributes.size());
+        List<?> values;
+        for (String attributeId : sourceAttributes) {
+            values = getStringValuesMemoizationKey(resolutionContext, attributeId);
+            if (values == null) {
+                return null;
+            }
+            key.add(values);
+        }
+
+        return key;
+    }
+
     /**
      * Initialize the attribute definition and prepare it for use.
      * 
@@ -97,16 +97,16 @@ public class ValueMap {
                 }
             } else {
                 log.debug("Performing regular expression based comparison");
-                try {
-                    int flags = sourceValue.isIgnoreCase() ? Pattern.CASE_INSENSITIVE : 0;
-                    m = Pattern.compile(sourceValue.getValue(), flags).matcher(attributeValue);
+                if (sourceValue.getPattern() == null) {
+                    log.debug("Source value '{}' is not a valid regular expression.  Skipping it.", sourceValue
+                            .getValue());
+                } else {
+                    m = sourceValue.getPattern().matcher(attributeValue);
                     if (m.matches()) {
                         newValue = m.replaceAll(returnValue);
                         log.debug("Attribute value '{}' matches regular expression it will be mapped to '{}'",
                                 attributeValue, newValue);
                     }
-                } catch (PatternSyntaxException e) {
-                    log.debug("Error matching value {}.  Skipping this value.", attributeValue);
                 }
             }
 
@@ -138,6 +138,9 @@ public class ValueMap {
          */
         private boolean partialMatch;
 
+        /** Compiled form of the value, null if this is a partial match or the value is not a valid expression. */
+        private Pattern pattern;
+
         /**
          * Constructor.
          * 
@@ -149,6 +152,15 @@ public class ValueMap {
             value = newValue;
             ignoreCase = newIgnoreCase;
             partialMatch = newPartialMatch;
+
+            if (!partialMatch && value != null) {
+                try {
+                    int flags = ignoreCase ? Pattern.CASE_INSENSITIVE : 0;
+                    pattern = Pattern.compile(value, flags);
+                } catch (PatternSyntaxException e) {
+                    log.warn("Source value '{}' is not a valid regular expression, it will never match", value);
+                }
+            }
         }
 
         /**
@@ -178,6 +190,16 @@ public class ValueMap {
             return value;
         }
 
+        /**
+         * Gets the compiled regular expression for the value string.
+         * 
+         * @return compiled regular expression, or null if this is a partial match or the value is not a valid regular
+         *         expression
+         */
+        public Pattern getPattern() {
+            return pattern;
+        }
+
         /** {@inheritDoc} */
         public String toString() {
             return getValue();
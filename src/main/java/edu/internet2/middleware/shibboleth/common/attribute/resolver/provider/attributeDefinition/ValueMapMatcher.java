@@ -0,0 +1,363 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.opensaml.xml.util.LazySet;
+
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.ValueMap.SourceValue;
+
+/**
+ * A compiled form of a list of {@link ValueMap}s which produces the same results as evaluating each of the maps in
+ * turn, but without scanning every source value for every incoming value.
+ * 
+ * Source values are split in to three groups when the matcher is built:
+ * <ul>
+ * <li>regular expressions which contain no meta-characters are looked up in a hash table keyed by the value (ASCII
+ * lower cased if the match is case insensitive, mirroring {@link Pattern#CASE_INSENSITIVE})</li>
+ * <li>partial match source values are searched for all at once with an Aho-Corasick automaton</li>
+ * <li>all other regular expressions are evaluated individually using their pre-compiled {@link Pattern}</li>
+ * </ul>
+ * 
+ * The java.util.regex engine has no DFA mode and renumbers capturing groups when expressions are combined, which would
+ * break back references in return values, so the remaining regular expressions are not merged in to a single pattern.
+ * 
+ * Instances of this class are immutable and thread-safe.
+ */
+public class ValueMapMatcher {
+
+    /** Characters which give a regular expression a meaning other than the literal string. */
+    private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    /** Return values for case sensitive literal source values, indexed by the literal. */
+    private final Map<String, Set<String>> exactMatches;
+
+    /** Return values for case insensitive literal source values, indexed by the ASCII lower cased literal. */
+    private final Map<String, Set<String>> caseInsensitiveMatches;
+
+    /** Automaton used to find partial match source values, null if there are none. */
+    private final PartialMatchAutomaton partialMatches;
+
+    /** Return values of the value maps, indexed by the position of the map. */
+    private final String[] returnValues;
+
+    /** Source values which must be evaluated as regular expressions. */
+    private final RegexSourceValue[] regexMatches;
+
+    /**
+     * Constructor.
+     * 
+     * @param valueMaps value maps to compile, in evaluation order
+     */
+    public ValueMapMatcher(Collection<ValueMap> valueMaps) {
+        exactMatches = new HashMap<String, Set<String>>();
+        caseInsensitiveMatches = new HashMap<String, Set<String>>();
+        returnValues = new String[valueMaps.size()];
+
+        List<RegexSourceValue> regexes = new ArrayList<RegexSourceValue>();
+        PartialMatchAutomaton automaton = new PartialMatchAutomaton();
+        boolean hasPartialMatches = false;
+
+        int mapIndex = 0;
+        for (ValueMap valueMap : valueMaps) {
+            String returnValue = valueMap.getReturnValue();
+            returnValues[mapIndex] = returnValue;
+
+            for (SourceValue sourceValue : valueMap.getSourceValues()) {
+                if (sourceValue.isPartialMatch()) {
+                    if (returnValue != null && sourceValue.getValue() != null) {
+                        automaton.add(sourceValue.getValue(), mapIndex);
+                        hasPartialMatches = true;
+                    }
+                } else if (sourceValue.getPattern() != null) {
+                    if (isLiteral(sourceValue.getValue()) && isLiteralReplacement(returnValue)) {
+                        if (sourceValue.isIgnoreCase()) {
+                            addExactMatch(caseInsensitiveMatches, toAsciiLowerCase(sourceValue.getValue()),
+                                    returnValue);
+                        } else {
+                            addExactMatch(exactMatches, sourceValue.getValue(), returnValue);
+                        }
+                    } else {
+                        regexes.add(new RegexSourceValue(sourceValue.getPattern(), returnValue));
+                    }
+                }
+            }
+
+            mapIndex++;
+        }
+
+        if (hasPartialMatches) {
+            automaton.build();
+            partialMatches = automaton;
+        } else {
+            partialMatches = null;
+        }
+        regexMatches = regexes.toArray(new RegexSourceValue[regexes.size()]);
+    }
+
+    /**
+     * Evaluates an incoming attribute value against all the value maps.
+     * 
+     * @param attributeValue incoming attribute value
+     * 
+     * @return set of new values the incoming value mapped to, never null
+     */
+    public Set<String> evaluate(String attributeValue) {
+        LazySet<String> mappedValues = new LazySet<String>();
+
+        Set<String> literalValues = exactMatches.get(attributeValue);
+        if (literalValues != null) {
+            mappedValues.addAll(literalValues);
+        }
+
+        if (!caseInsensitiveMatches.isEmpty()) {
+            literalValues = caseInsensitiveMatches.get(toAsciiLowerCase(attributeValue));
+            if (literalValues != null) {
+                mappedValues.addAll(literalValues);
+            }
+        }
+
+        if (partialMatches != null) {
+            BitSet matchedMaps = partialMatches.match(attributeValue);
+            for (int i = matchedMaps.nextSetBit(0); i >= 0; i = matchedMaps.nextSetBit(i + 1)) {
+                mappedValues.add(returnValues[i]);
+            }
+        }
+
+        Matcher m;
+        for (RegexSourceValue regex : regexMatches) {
+            m = regex.pattern.matcher(attributeValue);
+            if (m.matches()) {
+                mappedValues.add(m.replaceAll(regex.returnValue));
+            }
+        }
+
+        return mappedValues;
+    }
+
+    /**
+     * Adds a return value for a literal source value.
+     * 
+     * @param index index to which the value is added
+     * @param key literal source value
+     * @param returnValue value the literal maps to
+     */
+    private void addExactMatch(Map<String, Set<String>> index, String key, String returnValue) {
+        Set<String> values = index.get(key);
+        if (values == null) {
+            values = new LazySet<String>();
+            index.put(key, values);
+        }
+        values.add(returnValue);
+    }
+
+    /**
+     * Checks whether a string is non-empty and means the same thing whether it is used literally or as a regular
+     * expression.
+     * 
+     * @param value the string to check
+     * 
+     * @return true if the string contains no regular expression meta-characters
+     */
+    private static boolean isLiteral(String value) {
+        if (value == null || value.length() == 0) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            if (REGEX_META_CHARACTERS.indexOf(value.charAt(i)) > -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a replacement string produces itself when used with {@link Matcher#replaceAll(String)}.
+     * 
+     * @param replacement the replacement string to check
+     * 
+     * @return true if the string is not null and contains no group references or escapes
+     */
+    private static boolean isLiteralReplacement(String replacement) {
+        return replacement != null && replacement.indexOf('$') == -1 && replacement.indexOf('\\') == -1;
+    }
+
+    /**
+     * Lower cases the ASCII letters in a string, leaving all other characters untouched. This is the case folding
+     * performed by {@link Pattern#CASE_INSENSITIVE} when {@link Pattern#UNICODE_CASE} is not set.
+     * 
+     * @param value string to lower case
+     * 
+     * @return the lower cased string
+     */
+    private static String toAsciiLowerCase(String value) {
+        char[] chars = null;
+        char c;
+        for (int i = 0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (chars == null) {
+                    chars = value.toCharArray();
+                }
+                chars[i] = (char) (c + ('a' - 'A'));
+            }
+        }
+
+        if (chars == null) {
+            return value;
+        }
+        return new String(chars);
+    }
+
+    /** A pre-compiled regular expression source value and the value it maps to. */
+    private static class RegexSourceValue {
+
+        /** Compiled source value. */
+        private final Pattern pattern;
+
+        /** Return value, possibly containing back references. */
+        private final String returnValue;
+
+        /**
+         * Constructor.
+         * 
+         * @param sourcePattern compiled source value
+         * @param mapReturnValue return value
+         */
+        public RegexSourceValue(Pattern sourcePattern, String mapReturnValue) {
+            pattern = sourcePattern;
+            returnValue = mapReturnValue;
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton which finds, in a single pass over the input, which value maps have a partial match
+     * source value contained in the input.
+     */
+    private static class PartialMatchAutomaton {
+
+        /** Root state of the automaton. */
+        private final State root;
+
+        /** Constructor. */
+        public PartialMatchAutomaton() {
+            root = new State();
+        }
+
+        /**
+         * Adds a source value to the automaton's keyword tree.
+         * 
+         * @param keyword the source value
+         * @param mapIndex index of the value map the source value belongs to
+         */
+        public void add(String keyword, int mapIndex) {
+            State state = root;
+            State next;
+            for (int i = 0; i < keyword.length(); i++) {
+                next = state.transitions.get(keyword.charAt(i));
+                if (next == null) {
+                    next = new State();
+                    state.transitions.put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            state.output.set(mapIndex);
+        }
+
+        /** Computes the failure transitions and merges outputs along them. Must be called after all keywords are added. */
+        public void build() {
+            LinkedList<State> queue = new LinkedList<State>();
+            for (State child : root.transitions.values()) {
+                child.failure = root;
+                child.output.or(root.output);
+                queue.add(child);
+            }
+
+            State state;
+            State failure;
+            while (!queue.isEmpty()) {
+                state = queue.removeFirst();
+                for (Map.Entry<Character, State> transition : state.transitions.entrySet()) {
+                    failure = state.failure;
+                    while (failure != null && !failure.transitions.containsKey(transition.getKey())) {
+                        failure = failure.failure;
+                    }
+                    transition.getValue().failure = failure == null ? root : failure.transitions.get(transition
+                            .getKey());
+                    transition.getValue().output.or(transition.getValue().failure.output);
+                    queue.add(transition.getValue());
+                }
+            }
+        }
+
+        /**
+         * Finds the value maps whose partial match source values occur in the given input.
+         * 
+         * @param input the input to search
+         * 
+         * @return the indexes of the matched value maps
+         */
+        public BitSet match(String input) {
+            BitSet matched = new BitSet();
+            matched.or(root.output);
+
+            State state = root;
+            State next;
+            char c;
+            for (int i = 0; i < input.length(); i++) {
+                c = input.charAt(i);
+                next = state.transitions.get(c);
+                while (next == null && state != root) {
+                    state = state.failure;
+                    next = state.transitions.get(c);
+                }
+                if (next != null) {
+                    state = next;
+                    matched.or(state.output);
+                }
+            }
+
+            return matched;
+        }
+
+        /** A state of the automaton. */
+        private static class State {
+
+            /** Goto transitions out of this state. */
+            private final Map<Character, State> transitions = new HashMap<Character, State>();
+
+            /** Indexes of the value maps matched when this state is reached. */
+            private final BitSet output = new BitSet();
+
+            /** Failure transition, null for the root state. */
+            private State failure;
+        }
+    }
+}
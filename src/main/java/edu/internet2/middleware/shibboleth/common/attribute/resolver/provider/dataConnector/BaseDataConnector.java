@@ -21,6 +21,7 @@ import java.util.Map;
 
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.AbstractResolutionPlugIn;
+import edu.internet2.middleware.shibboleth.common.util.ValueInterner;
 
 /**
  * Base class for {@link DataConnector} plug-ins.
@@ -30,6 +31,9 @@ public abstract class BaseDataConnector extends AbstractResolutionPlugIn<Map<Str
 
     /** ID of the data connector to use if this one fails. */
     private String failoverDependencyId;
+
+    /** Pool used to share instances of repeated string values, null if values are not pooled. */
+    private ValueInterner<String> valueInterner;
     
     /** Constructor. */
     public BaseDataConnector(){
@@ -49,4 +53,36 @@ public abstract class BaseDataConnector extends AbstractResolutionPlugIn<Map<Str
     public void setFailoverDependencyIds(String id) {
         failoverDependencyId = id;
     }
+
+    /**
+     * Gets the pool used to share instances of repeated string values.
+     * 
+     * @return pool used to share instances of repeated string values, null if values are not pooled
+     */
+    public ValueInterner<String> getValueInterner() {
+        return valueInterner;
+    }
+
+    /**
+     * Sets the pool used to share instances of repeated string values.
+     * 
+     * @param interner pool used to share instances of repeated string values, null if values are not pooled
+     */
+    public void setValueInterner(ValueInterner<String> interner) {
+        valueInterner = interner;
+    }
+
+    /**
+     * Gets the pooled instance of a string value produced by this connector, if values are pooled.
+     * 
+     * @param value value produced by this connector
+     * 
+     * @return the pooled instance equal to the value, or the value itself
+     */
+    protected String internValue(String value) {
+        if (valueInterner == null) {
+            return value;
+        }
+        return valueInterner.intern(value);
+    }
 }
\ No newline at end of file
@@ -17,13 +17,10 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 
-import org.opensaml.xml.util.Base64;
 import org.opensaml.xml.util.DatatypeHelper;
 import org.opensaml.xml.util.LazyMap;
 import org.slf4j.Logger;
@@ -54,6 +51,9 @@ public class ComputedIDDataConnector extends BaseDataConnector {
     /** Salt used when computing the ID. */
     private byte[] salt;
 
+    /** Generator used to compute the ID. */
+    private ComputedIDGenerator idGenerator;
+
     /**
      * Constructor.
      * 
@@ -78,6 +78,7 @@ public class ComputedIDDataConnector extends BaseDataConnector {
             throw new IllegalArgumentException("Provided salt must be at least 16 bytes in size.");
         }
         salt = idSalt;
+        idGenerator = new ComputedIDGenerator(ComputedIDGenerator.DEFAULT_ALGORITHM, salt, 0);
     }
 
     /**
@@ -89,6 +90,27 @@ public class ComputedIDDataConnector extends BaseDataConnector {
         return salt;
     }
 
+    /**
+     * Gets the generator used to compute the ID.
+     * 
+     * @return generator used to compute the ID
+     */
+    public ComputedIDGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * Sets the generator used to compute the ID. The generator should use the same salt as this connector.
+     * 
+     * @param generator generator used to compute the ID
+     */
+    public void setIdGenerator(ComputedIDGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID generator may not be null");
+        }
+        idGenerator = generator;
+    }
+
     /**
      * Gets the ID of the attribute whose first value is used when generating the computed ID.
      * 
@@ -132,22 +154,11 @@ public class ComputedIDDataConnector extends BaseDataConnector {
         BasicAttribute<String> computedIdAttrib = new BasicAttribute<String>();
         computedIdAttrib.setId(getGeneratedAttributeId());
 
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA");
-            md.update(inboundMessageIssuer.getBytes());
-            md.update((byte) '!');
-            md.update(sourceId.getBytes());
-            md.update((byte) '!');
-
-            computedIdAttrib.getValues().add(Base64.encodeBytes(md.digest(salt)));
-
-            LazyMap<String, BaseAttribute> attribtues = new LazyMap<String, BaseAttribute>();
-            attribtues.put(getGeneratedAttributeId(), computedIdAttrib);
-            return attribtues;
-        } catch (NoSuchAlgorithmException e) {
-            log.error("JVM error, SHA-1 hash is not supported.");
-            throw new AttributeResolutionException("SHA-1A is not supported, unable to compute ID");
-        }
+        computedIdAttrib.getValues().add(idGenerator.generate(inboundMessageIssuer, sourceId));
+
+        LazyMap<String, BaseAttribute> attribtues = new LazyMap<String, BaseAttribute>();
+        attribtues.put(getGeneratedAttributeId(), computedIdAttrib);
+        return attribtues;
     }
 
     /** {@inheritDoc} */
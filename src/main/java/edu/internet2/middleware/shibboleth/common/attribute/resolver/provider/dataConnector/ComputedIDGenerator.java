@@ -0,0 +1,184 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.opensaml.xml.util.Base64;
+import org.opensaml.xml.util.DatatypeHelper;
+
+import edu.internet2.middleware.shibboleth.common.util.LRUCache;
+
+/**
+ * Generates the opaque identifiers used by {@link ComputedIDDataConnector} and {@link StoredIDDataConnector}.
+ * 
+ * An identifier is the Base64 encoded hash of the peer entity ID, a '!', the source ID, a '!' and the salt. By default
+ * the strings are encoded in the platform's default character set, so that with the default SHA-1 algorithm this is
+ * the identifier the connectors have always produced. Encoding the strings as UTF-8 instead makes identifiers
+ * independent of the platform but changes them for non-ASCII input on platforms whose default character set is not
+ * UTF-8.
+ * 
+ * Each thread reuses its own {@link MessageDigest} instance. Identifiers may optionally be cached, since a given peer
+ * and source ID always produce the same identifier.
+ */
+@ThreadSafe
+public class ComputedIDGenerator {
+
+    /** Default hash algorithm, SHA-1. */
+    public static final String DEFAULT_ALGORITHM = "SHA";
+
+    /** Hash algorithm used to compute identifiers. */
+    private final String algorithm;
+
+    /** Salt used when computing identifiers. */
+    private final byte[] salt;
+
+    /** Character set used to encode the hashed strings. */
+    private final Charset charset;
+
+    /** Per-thread digest. */
+    private final ThreadLocal<MessageDigest> threadDigest;
+
+    /** Cache of computed identifiers, indexed by the peer entity ID and source ID, null if caching is disabled. */
+    private final LRUCache<String, String> idCache;
+
+    /**
+     * Constructor.
+     * 
+     * @param hashAlgorithm hash algorithm used to compute identifiers, {@link #DEFAULT_ALGORITHM} if null
+     * @param idSalt salt used when computing identifiers
+     * @param cacheSize maximum number of identifiers cached, 0 to disable caching
+     */
+    public ComputedIDGenerator(String hashAlgorithm, byte[] idSalt, int cacheSize) {
+        this(hashAlgorithm, idSalt, cacheSize, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param hashAlgorithm hash algorithm used to compute identifiers, {@link #DEFAULT_ALGORITHM} if null
+     * @param idSalt salt used when computing identifiers
+     * @param cacheSize maximum number of identifiers cached, 0 to disable caching
+     * @param encoding character set used to encode the hashed strings, the platform default if null
+     */
+    public ComputedIDGenerator(String hashAlgorithm, byte[] idSalt, int cacheSize, Charset encoding) {
+        String digestAlgorithm = DatatypeHelper.safeTrimOrNullString(hashAlgorithm);
+        if (digestAlgorithm == null) {
+            digestAlgorithm = DEFAULT_ALGORITHM;
+        }
+        algorithm = digestAlgorithm;
+
+        if (idSalt == null) {
+            throw new IllegalArgumentException("Salt may not be null");
+        }
+        salt = idSalt.clone();
+
+        if (encoding == null) {
+            charset = Charset.defaultCharset();
+        } else {
+            charset = encoding;
+        }
+
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Hash algorithm " + algorithm + " is not supported", e);
+        }
+
+        threadDigest = new ThreadLocal<MessageDigest>() {
+            protected MessageDigest initialValue() {
+                try {
+                    return MessageDigest.getInstance(algorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    // checked in the constructor
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        if (cacheSize > 0) {
+            idCache = new LRUCache<String, String>(cacheSize);
+        } else {
+            idCache = null;
+        }
+    }
+
+    /**
+     * Gets the hash algorithm used to compute identifiers.
+     * 
+     * @return hash algorithm used to compute identifiers
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Gets the character set used to encode the hashed strings.
+     * 
+     * @return character set used to encode the hashed strings
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets the identifier cache.
+     * 
+     * @return the identifier cache, null if caching is disabled
+     */
+    public LRUCache<String, String> getIdCache() {
+        return idCache;
+    }
+
+    /**
+     * Computes the identifier for a peer entity and source ID.
+     * 
+     * @param peerEntityId ID of the peer entity
+     * @param sourceId the source ID
+     * 
+     * @return the computed identifier
+     */
+    public String generate(String peerEntityId, String sourceId) {
+        String cacheKey = null;
+        if (idCache != null) {
+            // the key is the hashed input, so distinct keys can not produce the same identifier
+            cacheKey = peerEntityId + "!" + sourceId;
+            String id = idCache.get(cacheKey);
+            if (id != null) {
+                return id;
+            }
+        }
+
+        MessageDigest md = threadDigest.get();
+        md.reset();
+        md.update(peerEntityId.getBytes(charset));
+        md.update((byte) '!');
+        md.update(sourceId.getBytes(charset));
+        md.update((byte) '!');
+        String id = Base64.encodeBytes(md.digest(salt), Base64.DONT_BREAK_LINES);
+
+        if (idCache != null) {
+            idCache.put(cacheKey, id);
+        }
+        return id;
+    }
+}
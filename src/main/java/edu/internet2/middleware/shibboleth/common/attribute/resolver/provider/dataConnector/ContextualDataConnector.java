@@ -45,6 +45,17 @@ public class ContextualDataConnector implements DataConnector {
         this.connector = newConnector;
     }
 
+    /**
+     * Constructor.
+     * 
+     * @param newConnector data connector to wrap
+     * @param resolvedAttributes result of already resolving the connector within the context
+     */
+    public ContextualDataConnector(DataConnector newConnector, Map<String, BaseAttribute> resolvedAttributes) {
+        this.connector = newConnector;
+        attributes = resolvedAttributes;
+    }
+
     /** {@inheritDoc} */
     public boolean equals(Object obj) {
         return connector.equals(obj);
@@ -17,6 +17,7 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -138,6 +139,9 @@ public class LdapDataConnector extends BaseDataConnector {
     /** Cache of past search results. */
     private Cache resultsCache;
 
+    /** Snapshot the results cache is saved to and restored from, null if the cache is not persisted. */
+    private ResultsCacheSnapshot cacheSnapshot;
+
     /** Filter value escaping strategy. */
     private final LDAPValueEscapingStrategy escapingStrategy;
 
@@ -172,6 +176,51 @@ public class LdapDataConnector extends BaseDataConnector {
         filterCreator.registerTemplate(filterTemplateName, filterTemplate);        
     }
 
+    /**
+     * Gets the snapshot the results cache is saved to and restored from.
+     * 
+     * @return snapshot of the results cache, null if the cache is not persisted
+     */
+    public ResultsCacheSnapshot getCacheSnapshot() {
+        return cacheSnapshot;
+    }
+
+    /**
+     * Sets the snapshot the results cache is saved to and restored from.
+     * 
+     * @param snapshot snapshot of the results cache, null if the cache is not persisted
+     */
+    public void setCacheSnapshot(ResultsCacheSnapshot snapshot) {
+        cacheSnapshot = snapshot;
+    }
+
+    /** Restores, on a background thread, the results cache from its snapshot if results are cached and persisted. */
+    public void restoreCacheSnapshot() {
+        if (resultsCache != null && cacheSnapshot != null) {
+            cacheSnapshot.restoreInBackground(resultsCache, getId());
+        }
+    }
+
+    /** Saves the results cache to its snapshot if results are cached and persisted. */
+    public void saveCacheSnapshot() {
+        if (resultsCache == null || cacheSnapshot == null) {
+            return;
+        }
+
+        try {
+            int saved = cacheSnapshot.save(resultsCache);
+            log.info("LDAP data connector {} - saved {} cached results to {}", new Object[] {getId(), saved,
+                    cacheSnapshot.getSnapshotFile(),});
+        } catch (IOException e) {
+            log.warn("LDAP data connector " + getId() + " - unable to save cached results to "
+                    + cacheSnapshot.getSnapshotFile(), e);
+        } catch (IllegalStateException e) {
+            // the cache manager was shut down before this connector
+            log.warn("LDAP data connector " + getId() + " - unable to save cached results to "
+                    + cacheSnapshot.getSnapshotFile() + ", the results cache is no longer available", e);
+        }
+    }
+
     /** Removes all entries from the cache if results are being cached. */
     protected void clearCache() {
         if (isCacheResults()) {
@@ -424,7 +473,7 @@ public class LdapDataConnector extends BaseDataConnector {
                     if (value instanceof String) {
                         String s = (String) value;
                         if (!DatatypeHelper.isEmpty(s)) {
-                            attribute.getValues().add(DatatypeHelper.safeTrimOrNullString(s));
+                            attribute.getValues().add(internValue(DatatypeHelper.safeTrimOrNullString(s)));
                         }
                     } else {
                         log.debug("LDAP data connector {} - Attribute {} contained a value that is not of type String",
@@ -17,6 +17,7 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -82,6 +83,9 @@ public class RDBMSDataConnector extends BaseDataConnector {
     
     /** Query result cache. */
     private Cache resultsCache;
+
+    /** Snapshot the results cache is saved to and restored from, null if the cache is not persisted. */
+    private ResultsCacheSnapshot cacheSnapshot;
     
     /**
      * Constructor.
@@ -119,6 +123,51 @@ public class RDBMSDataConnector extends BaseDataConnector {
         queryCreator.registerTemplate(queryTemplateName, queryTemplate);
     }
 
+    /**
+     * Gets the snapshot the results cache is saved to and restored from.
+     * 
+     * @return snapshot of the results cache, null if the cache is not persisted
+     */
+    public ResultsCacheSnapshot getCacheSnapshot() {
+        return cacheSnapshot;
+    }
+
+    /**
+     * Sets the snapshot the results cache is saved to and restored from.
+     * 
+     * @param snapshot snapshot of the results cache, null if the cache is not persisted
+     */
+    public void setCacheSnapshot(ResultsCacheSnapshot snapshot) {
+        cacheSnapshot = snapshot;
+    }
+
+    /** Restores, on a background thread, the results cache from its snapshot if results are cached and persisted. */
+    public void restoreCacheSnapshot() {
+        if (resultsCache != null && cacheSnapshot != null) {
+            cacheSnapshot.restoreInBackground(resultsCache, getId());
+        }
+    }
+
+    /** Saves the results cache to its snapshot if results are cached and persisted. */
+    public void saveCacheSnapshot() {
+        if (resultsCache == null || cacheSnapshot == null) {
+            return;
+        }
+
+        try {
+            int saved = cacheSnapshot.save(resultsCache);
+            log.info("RDBMS data connector {} - saved {} cached results to {}", new Object[] {getId(), saved,
+                    cacheSnapshot.getSnapshotFile(),});
+        } catch (IOException e) {
+            log.warn("RDBMS data connector " + getId() + " - unable to save cached results to "
+                    + cacheSnapshot.getSnapshotFile(), e);
+        } catch (IllegalStateException e) {
+            // the cache manager was shut down before this connector
+            log.warn("RDBMS data connector " + getId() + " - unable to save cached results to "
+                    + cacheSnapshot.getSnapshotFile() + ", the results cache is no longer available", e);
+        }
+    }
+
     /**
      * Gets whether this data connector is caching results.
      * 
@@ -375,6 +424,7 @@ public class RDBMSDataConnector extends BaseDataConnector {
             String attributeId;
             BaseAttribute attribute;
             Collection attributeValues;
+            Object value;
             
             do {
                 for (int i = 1; i <= numOfCols; i++) {
@@ -395,7 +445,11 @@ public class RDBMSDataConnector extends BaseDataConnector {
                     attributes.put(attribute.getId(), attribute);
                     attributeValues = attribute.getValues();
                     if (columnDescriptor == null || columnDescriptor.getDataType() == null) {
-                        attributeValues.add(resultSet.getObject(i));
+                        value = resultSet.getObject(i);
+                        if (value instanceof String) {
+                            value = internValue((String) value);
+                        }
+                        attributeValues.add(value);
                     } else {
                         addValueByType(attributeValues, columnDescriptor.getDataType(), resultSet, i);
                     }
@@ -465,7 +519,7 @@ public class RDBMSDataConnector extends BaseDataConnector {
                 values.add(resultSet.getURL(columnIndex));
                 break;
             default:
-                values.add(resultSet.getString(columnIndex));
+                values.add(internValue(resultSet.getString(columnIndex)));
         }
     }
 
@@ -0,0 +1,468 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.ScopedAttributeValue;
+
+/**
+ * A file holding a snapshot of a data connector's results cache, so that a restarted connector does not begin with an
+ * empty cache.
+ * 
+ * Each cached result is written with its expiration time and restored only if it has not yet expired, keeping its
+ * remaining time to live. Results are written in a compact binary form which supports attributes whose values are
+ * strings, {@link ScopedAttributeValue}s, byte arrays, integers, longs or booleans; results containing any other type
+ * of value are not written. The snapshot is written to a temporary file which then replaces the snapshot file, so an
+ * interrupted write never leaves a partial snapshot behind.
+ * 
+ * The snapshot holds the cached attribute values, unencrypted. Where the file system supports it the snapshot is
+ * created readable and writable only by its owner, but it should still be kept in a directory to which only the
+ * identity provider has access.
+ */
+@ThreadSafe
+public class ResultsCacheSnapshot {
+
+    /** Value marking the start of a snapshot file. */
+    private static final int MAGIC = 0x53524353;
+
+    /** Version of the snapshot file format. */
+    private static final int VERSION = 1;
+
+    /** Value type tag for null values. */
+    private static final byte NULL_VALUE = 0;
+
+    /** Value type tag for strings. */
+    private static final byte STRING_VALUE = 1;
+
+    /** Value type tag for scoped values. */
+    private static final byte SCOPED_VALUE = 2;
+
+    /** Value type tag for byte arrays. */
+    private static final byte BYTES_VALUE = 3;
+
+    /** Value type tag for integers. */
+    private static final byte INTEGER_VALUE = 4;
+
+    /** Value type tag for longs. */
+    private static final byte LONG_VALUE = 5;
+
+    /** Value type tag for booleans. */
+    private static final byte BOOLEAN_VALUE = 6;
+
+    /** Character set strings are written in. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(ResultsCacheSnapshot.class);
+
+    /** File the snapshot is written to. */
+    private final File snapshotFile;
+
+    /**
+     * Constructor.
+     * 
+     * @param file file the snapshot is written to
+     */
+    public ResultsCacheSnapshot(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Snapshot file may not be null");
+        }
+        snapshotFile = file;
+    }
+
+    /**
+     * Gets the file the snapshot is written to.
+     * 
+     * @return file the snapshot is written to
+     */
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Writes the unexpired results in a cache to the snapshot file, replacing any existing snapshot.
+     * 
+     * @param cache cache whose results are written
+     * 
+     * @return number of results written
+     * 
+     * @throws IOException thrown if the snapshot can not be written
+     */
+    public synchronized int save(Cache cache) throws IOException {
+        File directory = snapshotFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create snapshot directory " + directory);
+        }
+
+        File tempFile = createTempFile(directory);
+        int written = 0;
+        try {
+            FileOutputStream fileOut = new FileOutputStream(tempFile);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
+                DataOutputStream entryOut = new DataOutputStream(entryBuffer);
+                Element element;
+                for (Object key : cache.getKeys()) {
+                    element = cache.getQuiet(key);
+                    if (!(key instanceof String) || element == null || element.isExpired()
+                            || !(element.getObjectValue() instanceof Map)) {
+                        continue;
+                    }
+
+                    entryBuffer.reset();
+                    if (writeEntry(entryOut, (String) key, element)) {
+                        entryOut.flush();
+                        entryBuffer.writeTo(out);
+                        written++;
+                    }
+                }
+
+                out.writeBoolean(false);
+                out.flush();
+                fileOut.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                log.debug("Unable to delete temporary snapshot file {}", tempFile);
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Creates the temporary file a snapshot is written to, readable and writable only by its owner where the file
+     * system supports POSIX permissions.
+     * 
+     * @param directory directory the snapshot file is in, null for the current directory
+     * 
+     * @return the temporary file
+     * 
+     * @throws IOException thrown if the file can not be created
+     */
+    private File createTempFile(File directory) throws IOException {
+        Path directoryPath = directory == null ? new File(".").toPath() : directory.toPath();
+        String prefix = "." + snapshotFile.getName() + "-";
+        try {
+            return Files.createTempFile(directoryPath, prefix, ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))).toFile();
+        } catch (UnsupportedOperationException e) {
+            File tempFile = Files.createTempFile(directoryPath, prefix, ".tmp").toFile();
+            if (!(tempFile.setReadable(false, false) && tempFile.setReadable(true, true)
+                    && tempFile.setWritable(false, false) && tempFile.setWritable(true, true))) {
+                log.warn("Unable to restrict access to results cache snapshot {} to its owner", snapshotFile);
+            }
+            return tempFile;
+        }
+    }
+
+    /**
+     * Adds the unexpired results in the snapshot file to a cache. Results already in the cache are kept.
+     * 
+     * @param cache cache the results are added to
+     * 
+     * @return number of results added to the cache, 0 if there is no snapshot file
+     * 
+     * @throws IOException thrown if the snapshot file can not be read or is not a snapshot
+     */
+    public int restore(Cache cache) throws IOException {
+        if (!snapshotFile.isFile()) {
+            return 0;
+        }
+
+        int restored = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(snapshotFile + " is not a results cache snapshot");
+            }
+
+            long now = System.currentTimeMillis();
+            String key;
+            long expiration;
+            Map<String, BaseAttribute> attributes;
+            Element element;
+            while (in.readBoolean()) {
+                key = readString(in);
+                expiration = in.readLong();
+                attributes = readAttributes(in);
+                if (expiration <= now || cache.getQuiet(key) != null) {
+                    continue;
+                }
+
+                element = new Element(key, attributes);
+                if (expiration != Long.MAX_VALUE) {
+                    element.setTimeToLive((int) Math.max(1, Math.min(Integer.MAX_VALUE, (expiration - now) / 1000)));
+                }
+                cache.put(element);
+                restored++;
+            }
+        } catch (EOFException e) {
+            throw new IOException(snapshotFile + " is truncated", e);
+        } finally {
+            in.close();
+        }
+
+        return restored;
+    }
+
+    /**
+     * Restores the snapshot in to a cache on a background daemon thread, logging the outcome.
+     * 
+     * @param cache cache the results are added to
+     * @param connectorId ID of the data connector whose cache is restored, used in log messages
+     * 
+     * @return the thread restoring the snapshot
+     */
+    public Thread restoreInBackground(final Cache cache, final String connectorId) {
+        Thread restorer = new Thread("results-cache-restore-" + connectorId) {
+            public void run() {
+                try {
+                    int restored = restore(cache);
+                    log.info("Data connector {} - restored {} cached results from {}", new Object[] {connectorId,
+                            restored, snapshotFile,});
+                } catch (IOException e) {
+                    log.warn("Data connector " + connectorId + " - unable to restore cached results from "
+                            + snapshotFile, e);
+                }
+            }
+        };
+        restorer.setDaemon(true);
+        restorer.start();
+        return restorer;
+    }
+
+    /**
+     * Writes a cached result.
+     * 
+     * @param out stream the result is written to
+     * @param key cache key of the result
+     * @param element cached result
+     * 
+     * @return false if the result contains a value which can not be written, in which case the output must be
+     *         discarded
+     * 
+     * @throws IOException thrown if the result can not be written
+     */
+    @SuppressWarnings("unchecked")
+    private boolean writeEntry(DataOutputStream out, String key, Element element) throws IOException {
+        Map<String, BaseAttribute> attributes = (Map<String, BaseAttribute>) element.getObjectValue();
+
+        out.writeBoolean(true);
+        writeString(out, key);
+        out.writeLong(element.getExpirationTime());
+        out.writeInt(attributes.size());
+        Collection<?> values;
+        for (Map.Entry<String, BaseAttribute> attribute : attributes.entrySet()) {
+            writeString(out, attribute.getKey());
+            writeString(out, attribute.getValue().getId());
+            values = attribute.getValue().getValues();
+            out.writeInt(values.size());
+            for (Object value : values) {
+                if (!writeValue(out, value)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes an attribute value, preceded by its type tag.
+     * 
+     * @param out stream the value is written to
+     * @param value value to write
+     * 
+     * @return false if the value is of a type that can not be written
+     * 
+     * @throws IOException thrown if the value can not be written
+     */
+    private boolean writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof String) {
+            out.writeByte(STRING_VALUE);
+            writeString(out, (String) value);
+        } else if (value instanceof ScopedAttributeValue) {
+            out.writeByte(SCOPED_VALUE);
+            writeString(out, ((ScopedAttributeValue) value).getValue());
+            writeString(out, ((ScopedAttributeValue) value).getScope());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES_VALUE);
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG_VALUE);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeBoolean((Boolean) value);
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the attributes of a cached result.
+     * 
+     * @param in stream the attributes are read from
+     * 
+     * @return the attributes, indexed by the key they were cached under
+     * 
+     * @throws IOException thrown if the attributes can not be read
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, BaseAttribute> readAttributes(DataInputStream in) throws IOException {
+        int attributeCount = in.readInt();
+        Map<String, BaseAttribute> attributes = new HashMap<String, BaseAttribute>(attributeCount * 2);
+        String attributeKey;
+        BasicAttribute<Object> attribute;
+        int valueCount;
+        for (int i = 0; i < attributeCount; i++) {
+            attributeKey = readString(in);
+            attribute = new BasicAttribute<Object>(readString(in));
+            valueCount = in.readInt();
+            for (int j = 0; j < valueCount; j++) {
+                attribute.getValues().add(readValue(in));
+            }
+            attributes.put(attributeKey, attribute);
+        }
+
+        return attributes;
+    }
+
+    /**
+     * Reads an attribute value and its type tag.
+     * 
+     * @param in stream the value is read from
+     * 
+     * @return the value
+     * 
+     * @throws IOException thrown if the value can not be read
+     */
+    private Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL_VALUE:
+                return null;
+            case STRING_VALUE:
+                return readString(in);
+            case SCOPED_VALUE:
+                return new ScopedAttributeValue(readString(in), readString(in));
+            case BYTES_VALUE:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            case INTEGER_VALUE:
+                return in.readInt();
+            case LONG_VALUE:
+                return in.readLong();
+            case BOOLEAN_VALUE:
+                return in.readBoolean();
+            default:
+                throw new IOException("Unknown value type " + type + " in " + snapshotFile);
+        }
+    }
+
+    /**
+     * Writes a possibly null string as its UTF-8 length and bytes. Unlike {@link DataOutputStream#writeUTF(String)}
+     * this does not limit the length of the string.
+     * 
+     * @param out stream the string is written to
+     * @param value string to write
+     * 
+     * @throws IOException thrown if the string can not be written
+     */
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     * 
+     * @param in stream the string is read from
+     * 
+     * @return the string, possibly null
+     * 
+     * @throws IOException thrown if the string can not be read
+     */
+    private String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
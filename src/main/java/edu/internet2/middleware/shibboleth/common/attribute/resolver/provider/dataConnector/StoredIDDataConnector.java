@@ -17,8 +17,6 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Collection;
@@ -31,7 +29,6 @@ import org.opensaml.saml2.core.SubjectQuery;
 import org.opensaml.saml2.core.AttributeQuery;
 import org.opensaml.saml2.core.AuthnRequest;
 import org.opensaml.xml.XMLObject;
-import org.opensaml.xml.util.Base64;
 import org.opensaml.xml.util.DatatypeHelper;
 import org.opensaml.xml.util.LazyMap;
 import org.slf4j.Logger;
@@ -70,6 +67,9 @@ public class StoredIDDataConnector extends BaseDataConnector {
     /** Salt used when computing the ID. */
     private byte[] salt;
 
+    /** Generator used to compute the first ID issued for a local/peer/localId tuple. */
+    private ComputedIDGenerator idGenerator;
+
     /**
      * Constructor.
      * 
@@ -100,6 +100,7 @@ public class StoredIDDataConnector extends BaseDataConnector {
             throw new IllegalArgumentException("Provided salt must be at least 16 bytes in size.");
         }
         salt = idSalt;
+        idGenerator = new ComputedIDGenerator(ComputedIDGenerator.DEFAULT_ALGORITHM, salt, 0);
     }
 
     /**
@@ -120,6 +121,28 @@ public class StoredIDDataConnector extends BaseDataConnector {
         return salt;
     }
 
+    /**
+     * Gets the generator used to compute the first ID issued for a local/peer/localId tuple.
+     * 
+     * @return generator used to compute the first ID issued for a tuple
+     */
+    public ComputedIDGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * Sets the generator used to compute the first ID issued for a local/peer/localId tuple. The generator should use
+     * the same salt as this connector.
+     * 
+     * @param generator generator used to compute the first ID issued for a tuple
+     */
+    public void setIdGenerator(ComputedIDGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID generator may not be null");
+        }
+        idGenerator = generator;
+    }
+
     /**
      * Gets the ID of the attribute whose first value is used when generating the computed ID.
      * 
@@ -304,8 +327,8 @@ public class StoredIDDataConnector extends BaseDataConnector {
     /**
      * Creates a persistent ID that is unique for a given local/peer/localId tuple.
      * 
-     * If an ID has never been issued for to the given tuple then an ID is created by taking a SHA-1 hash of the peer's
-     * entity ID, the local ID, and a salt. This is to ensure compatability with IDs created by the now deprecated
+     * If an ID has never been issued for to the given tuple then an ID is created by taking a hash, SHA-1 by default, of
+     * the peer's entity ID, the local ID, and a salt. This is to ensure compatability with IDs created by the now deprecated
      * {@link ComputedIDDataConnector}.
      * 
      * If an ID has been issued to the given tuple than a new, random type 4 UUID is generated as the persistent ID.
@@ -333,17 +356,7 @@ public class StoredIDDataConnector extends BaseDataConnector {
                         entry.getLocalId());
 
         if (numberOfExistingEntries == 0) {
-            try {
-                MessageDigest md = MessageDigest.getInstance("SHA");
-                md.update(entry.getPeerEntityId().getBytes());
-                md.update((byte) '!');
-                md.update(localId.getBytes());
-                md.update((byte) '!');
-                persistentId = Base64.encodeBytes(md.digest(salt));
-            } catch (NoSuchAlgorithmException e) {
-                log.error("JVM error, SHA-1 is not supported, unable to compute ID");
-                throw new SQLException("SHA-1 is not supported, unable to compute ID");
-            }
+            persistentId = idGenerator.generate(entry.getPeerEntityId(), localId);
         } else {
             persistentId = UUID.randomUUID().toString();
         }
@@ -26,12 +26,15 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.internet2.middleware.shibboleth.common.util.LRUCache;
+
 /**
  * Represents as persistent, database-backed, store of identifiers.
  * 
@@ -39,9 +42,18 @@ import org.slf4j.LoggerFactory;
  * 
  * <tt>CREATE TABLE shibpid {localEntity VARCHAR NOT NULL, peerEntity VARCHAR NOT NULL, principalName VARCHAR NOT NULL, localId VARCHAR NOT NULL, persistentId VARCHAR NOT NULL, peerProvidedId VARCHAR, creationDate TIMESTAMP NOT NULL, deactivationDate TIMESTAMP}</tt>
  * .
+ * 
+ * Active entries may optionally be cached, indexed by persistent ID, so that resolving a persistent ID back to its
+ * principal does not require a database query. The cache is populated when entries are looked up or stored and an
+ * entry is removed when it is deactivated through this store. Entries deactivated by other means, for example by
+ * another node sharing the database, remain in the cache until their cache lifetime passes. Entries are copied into
+ * and out of the cache, so callers may not modify the cached entries.
  */
 public class StoredIDStore {
 
+    /** Default time, in milliseconds, an entry may be served from the cache: 5 minutes. */
+    public static final long DEFAULT_ACTIVE_ID_CACHE_LIFETIME = 5 * 60 * 1000;
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(StoredIDStore.class);
 
@@ -85,6 +97,18 @@ public class StoredIDStore {
     private final String deactivateIdSQL = "UPDATE " + table + " SET " + deactivationTimeColumn + "= ? WHERE "
             + persistentIdColumn + "= ?";
 
+    /** Cache of active entries, indexed by persistent ID, null if caching is disabled. */
+    private volatile LRUCache<String, CachedIdEntry> activeIdCache;
+
+    /** Number of IDs deactivated through this store, guarded by {@link #activeIdCacheLock} when incremented. */
+    private final AtomicLong deactivationCount = new AtomicLong();
+
+    /** Lock held while checking the deactivation count and updating the cache. */
+    private final Object activeIdCacheLock = new Object();
+
+    /** Time, in milliseconds, an entry may be served from the cache, 0 for no limit. */
+    private long activeIdCacheLifetime = DEFAULT_ACTIVE_ID_CACHE_LIFETIME;
+
     /**
      * Constructor.
      * 
@@ -96,6 +120,70 @@ public class StoredIDStore {
         queryTimeout = timeout;
     }
 
+    /**
+     * Gets the maximum number of active entries cached.
+     * 
+     * @return maximum number of active entries cached, 0 if caching is disabled
+     */
+    public int getActiveIdCacheSize() {
+        LRUCache<String, CachedIdEntry> cache = activeIdCache;
+        if (cache == null) {
+            return 0;
+        }
+        return cache.getMaximumSize();
+    }
+
+    /**
+     * Sets the maximum number of active entries cached. If the size is changed any entries already cached are
+     * discarded.
+     * 
+     * @param size maximum number of active entries cached, 0 to disable caching
+     */
+    public synchronized void setActiveIdCacheSize(int size) {
+        int currentSize = getActiveIdCacheSize();
+        if (size == currentSize) {
+            return;
+        }
+
+        if (currentSize > 0) {
+            log.warn("Changing the size of the active persistent ID cache from {} to {}", currentSize, size);
+        }
+        if (size > 0) {
+            activeIdCache = new LRUCache<String, CachedIdEntry>(size);
+        } else {
+            activeIdCache = null;
+        }
+    }
+
+    /**
+     * Gets the time, in milliseconds, an entry may be served from the cache.
+     * 
+     * @return time an entry may be served from the cache, 0 for no limit
+     */
+    public long getActiveIdCacheLifetime() {
+        return activeIdCacheLifetime;
+    }
+
+    /**
+     * Sets the time, in milliseconds, an entry may be served from the cache. This bounds how long an entry
+     * deactivated by another node sharing the database continues to be resolved by this one.
+     * 
+     * @param lifetime time an entry may be served from the cache, 0 for no limit, defaults to
+     *            {@link #DEFAULT_ACTIVE_ID_CACHE_LIFETIME}
+     */
+    public void setActiveIdCacheLifetime(long lifetime) {
+        activeIdCacheLifetime = lifetime;
+    }
+
+    /**
+     * Gets the cache of active entries.
+     * 
+     * @return cache of active entries, null if caching is disabled
+     */
+    public LRUCache<String, ?> getActiveIdCache() {
+        return activeIdCache;
+    }
+
     /**
      * Gets the number of persistent ID entries for a (principal, peer, local) tuple.
      * 
@@ -202,7 +290,22 @@ public class StoredIDStore {
      * @throws java.sql.SQLException thrown if there is a problem communication with the database
      */
     public PersistentIdEntry getActivePersistentIdEntry(String persistentId) throws SQLException {
-        return getPersistentIdEntry(persistentId, true);
+        LRUCache<String, CachedIdEntry> cache = activeIdCache;
+        if (cache != null) {
+            CachedIdEntry cachedEntry = cache.get(persistentId);
+            if (cachedEntry != null) {
+                if (!cachedEntry.isStale()) {
+                    log.debug("Persistent ID entry {} found in cache", persistentId);
+                    return copyEntry(cachedEntry.entry);
+                }
+                cache.remove(persistentId);
+            }
+        }
+
+        long deactivations = deactivationCount.get();
+        PersistentIdEntry entry = getPersistentIdEntry(persistentId, true);
+        cacheActiveEntry(entry, deactivations);
+        return entry;
     }
 
     /**
@@ -325,6 +428,7 @@ public class StoredIDStore {
         String sql = sqlBuilder.toString();
 
         log.debug("Selecting active persistent ID entry based on prepared sql statement: {}", sql);
+        long deactivations = deactivationCount.get();
         Connection dbConn = dataSource.getConnection();
         try {
             PreparedStatement statement = dbConn.prepareStatement(sql);
@@ -348,6 +452,7 @@ public class StoredIDStore {
                 log.warn("More than one active identifier, only the first will be used");
             }
 
+            cacheActiveEntry(entries.get(0), deactivations);
             return entries.get(0);
         } finally {
             try {
@@ -434,6 +539,7 @@ public class StoredIDStore {
 
         String sql = sqlBuilder.toString();
 
+        long deactivations = deactivationCount.get();
         Connection dbConn = dataSource.getConnection();
         try {
             log.debug("Storing persistent ID entry based on prepared sql statement: {}", sql);
@@ -463,6 +569,7 @@ public class StoredIDStore {
             statement.setTimestamp(7, timestamp);
 
             statement.executeUpdate();
+            cacheActiveEntry(entry, deactivations);
         } finally {
             try {
                 if (dbConn != null && !dbConn.isClosed()) {
@@ -488,6 +595,8 @@ public class StoredIDStore {
             deactivationTime = new Timestamp(System.currentTimeMillis());
         }
 
+        invalidateCachedEntry(persistentId);
+
         Connection dbConn = dataSource.getConnection();
         try {
             log.debug("Deactivating persistent id {} as of {}", persistentId, deactivationTime.toString());
@@ -504,9 +613,76 @@ public class StoredIDStore {
             } catch (SQLException e) {
                 log.error("Error closing database connection", e);
             }
+
+            // a read which raced with the update may have cached the entry again
+            invalidateCachedEntry(persistentId);
         }
     }
 
+    /**
+     * Removes an entry from the active entry cache and prevents reads started before now from caching it again.
+     * 
+     * @param persistentId persistent ID of the entry
+     */
+    private void invalidateCachedEntry(String persistentId) {
+        synchronized (activeIdCacheLock) {
+            deactivationCount.incrementAndGet();
+            LRUCache<String, CachedIdEntry> cache = activeIdCache;
+            if (cache != null) {
+                cache.remove(persistentId);
+            }
+        }
+    }
+
+    /**
+     * Adds an entry to the active entry cache, if caching is enabled, the entry is active and no ID has been deactivated
+     * since the entry was read.
+     * 
+     * @param entry entry to cache, may be null
+     * @param deactivations number of IDs deactivated through this store before the entry was read
+     */
+    private void cacheActiveEntry(PersistentIdEntry entry, long deactivations) {
+        LRUCache<String, CachedIdEntry> cache = activeIdCache;
+        if (cache == null || entry == null || entry.getPersistentId() == null || entry.getDeactivationTime() != null) {
+            return;
+        }
+
+        long staleTime = Long.MAX_VALUE;
+        if (activeIdCacheLifetime > 0) {
+            staleTime = System.currentTimeMillis() + activeIdCacheLifetime;
+        }
+        CachedIdEntry cachedEntry = new CachedIdEntry(copyEntry(entry), staleTime);
+        synchronized (activeIdCacheLock) {
+            if (deactivationCount.get() == deactivations) {
+                cache.put(entry.getPersistentId(), cachedEntry);
+            }
+        }
+    }
+
+    /**
+     * Copies an entry, so that entries held in the cache are never shared with callers.
+     * 
+     * @param entry entry to copy
+     * 
+     * @return the copy
+     */
+    private PersistentIdEntry copyEntry(PersistentIdEntry entry) {
+        PersistentIdEntry copy = new PersistentIdEntry();
+        copy.setLocalEntityId(entry.getLocalEntityId());
+        copy.setPeerEntityId(entry.getPeerEntityId());
+        copy.setPrincipalName(entry.getPrincipalName());
+        copy.setLocalId(entry.getLocalId());
+        copy.setPersistentId(entry.getPersistentId());
+        copy.setPeerProvidedId(entry.getPeerProvidedId());
+        if (entry.getCreationTime() != null) {
+            copy.setCreationTime((Timestamp) entry.getCreationTime().clone());
+        }
+        if (entry.getDeactivationTime() != null) {
+            copy.setDeactivationTime((Timestamp) entry.getDeactivationTime().clone());
+        }
+        return copy;
+    }
+
     /**
      * Builds a list of {@link edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.StoredIDStore.PersistentIdEntry}s from a result set.
      * 
@@ -538,6 +714,36 @@ public class StoredIDStore {
         return entries;
     }
 
+    /** An active entry held in the cache. */
+    private static class CachedIdEntry {
+
+        /** The cached entry. */
+        private final PersistentIdEntry entry;
+
+        /** Time, in milliseconds since the epoch, after which the entry may no longer be served from the cache. */
+        private final long staleTime;
+
+        /**
+         * Constructor.
+         * 
+         * @param idEntry the cached entry
+         * @param stale time after which the entry may no longer be served from the cache
+         */
+        public CachedIdEntry(PersistentIdEntry idEntry, long stale) {
+            entry = idEntry;
+            staleTime = stale;
+        }
+
+        /**
+         * Gets whether the entry may no longer be served from the cache.
+         * 
+         * @return true if the entry may no longer be served from the cache
+         */
+        public boolean isStale() {
+            return System.currentTimeMillis() > staleTime;
+        }
+    }
+
     /** Data object representing a persistent identifier entry in the database. */
     public class PersistentIdEntry implements Serializable {
 
@@ -31,9 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
-import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ResolutionPlugIn;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ShibbolethResolutionContext;
-import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.AttributeDefinition;
 import edu.internet2.middleware.shibboleth.common.util.StringResourceLoader;
 
 /**
@@ -115,21 +113,21 @@ public class TemplateEngine {
         VelocityContext vCtx = new VelocityContext();
         vCtx.put("requestContext", resolutionContext.getAttributeRequestContext());
 
-        ResolutionPlugIn plugin;
         Map<String, BaseAttribute> attributes;
         BaseAttribute attribute;
         for (String dependencyId : dependencies) {
-            plugin = resolutionContext.getResolvedPlugins().get(dependencyId);
-            if (plugin instanceof DataConnector) {
-                log.trace("Resolving attributes from data connector {}", dependencyId);
-                attributes = ((DataConnector) plugin).resolve(resolutionContext);
-
+            attributes = resolutionContext.getResolvedDataConnectorAttributes(dependencyId);
+            if (attributes != null) {
+                log.trace("Resolved attributes from data connector {}", dependencyId);
                 for (String attributeId : attributes.keySet()) {
                     vCtx.put(attributeId, prepareAttributeValues(attributes.get(attributeId), escapingStrategy));
                 }
-            } else if (plugin instanceof AttributeDefinition) {
-                log.trace("Resolving attributes from attribute definition {}", dependencyId);
-                attribute = ((AttributeDefinition) plugin).resolve(resolutionContext);
+                continue;
+            }
+
+            attribute = resolutionContext.getResolvedAttribute(dependencyId);
+            if (attribute != null) {
+                log.trace("Resolved attribute from attribute definition {}", dependencyId);
                 if (!vCtx.containsKey(attribute.getId())) {
                     vCtx.put(attribute.getId(), new ArrayList<String>());
                 }
@@ -17,6 +17,8 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.principalConnector;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.opensaml.common.SAMLObject;
 import org.opensaml.saml1.core.NameIdentifier;
 import org.opensaml.saml2.core.NameID;
@@ -28,7 +30,9 @@ import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.Sh
 import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
 import edu.internet2.middleware.shibboleth.common.util.DataExpiredException;
 import edu.internet2.middleware.shibboleth.common.util.DataSealer;
+import edu.internet2.middleware.shibboleth.common.util.DataSealer.UnwrappedData;
 import edu.internet2.middleware.shibboleth.common.util.DataSealerException;
+import edu.internet2.middleware.shibboleth.common.util.LRUCache;
 
 /**
  * A principal connector that attempts to look up a name identifier within a store.
@@ -40,6 +44,15 @@ public class CryptoTransientPrincipalConnector extends BasePrincipalConnector {
 
     /** Object used to protect and encrypt the data. */
     private DataSealer dataSealer;
+
+    /** Cache of unwrapped identifiers, indexed by the wrapped identifier, null if caching is disabled. */
+    private volatile LRUCache<String, UnwrappedData> unwrapCache;
+
+    /** Number of identifiers found, unexpired, in the unwrap cache. */
+    private final AtomicLong unwrapCacheHits = new AtomicLong();
+
+    /** Number of identifiers which had to be unwrapped. */
+    private final AtomicLong unwrapCacheMisses = new AtomicLong();
     
     /**
      * Constructor.
@@ -82,14 +95,7 @@ public class CryptoTransientPrincipalConnector extends BasePrincipalConnector {
             throw new AttributeResolutionException("Invalid subject name identifier");
         }
 
-        String decodedId;
-        try {
-            decodedId = dataSealer.unwrap(transientId);
-        } catch (DataExpiredException e) {
-            throw new AttributeResolutionException("Principal identifier has expired.");
-        } catch (DataSealerException e) {
-            throw new AttributeResolutionException("Caught exception unwrapping principal identifier.", e);
-        }
+        String decodedId = unwrap(transientId);
         
         if (decodedId == null) {
             throw new AttributeResolutionException("Unable to recover principal from transient identifier: "
@@ -129,4 +135,98 @@ public class CryptoTransientPrincipalConnector extends BasePrincipalConnector {
                     + ") must have a DataSealer object set.");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the maximum number of unwrapped identifiers cached.
+     * 
+     * @return maximum number of unwrapped identifiers cached, 0 if caching is disabled
+     */
+    public int getUnwrapCacheSize() {
+        if (unwrapCache == null) {
+            return 0;
+        }
+        return unwrapCache.getMaximumSize();
+    }
+
+    /**
+     * Sets the maximum number of unwrapped identifiers cached. Identifiers are cached until their embedded expiration
+     * time, so that repeated queries for the same identifier do not have to decrypt it again.
+     * 
+     * @param size maximum number of unwrapped identifiers cached, 0 to disable caching
+     */
+    public void setUnwrapCacheSize(int size) {
+        if (size > 0) {
+            unwrapCache = new LRUCache<String, UnwrappedData>(size);
+        } else {
+            unwrapCache = null;
+        }
+    }
+
+    /**
+     * Gets the number of unexpired identifiers currently in the unwrap cache.
+     * 
+     * @return number of identifiers currently in the unwrap cache
+     */
+    public int getUnwrapCacheEntries() {
+        if (unwrapCache == null) {
+            return 0;
+        }
+        return unwrapCache.size();
+    }
+
+    /**
+     * Gets the number of identifiers found, unexpired, in the unwrap cache.
+     * 
+     * @return number of identifiers found in the unwrap cache
+     */
+    public long getUnwrapCacheHits() {
+        return unwrapCacheHits.get();
+    }
+
+    /**
+     * Gets the number of identifiers which were not in the unwrap cache, or had expired, and had to be unwrapped.
+     * 
+     * @return number of identifiers which had to be unwrapped
+     */
+    public long getUnwrapCacheMisses() {
+        return unwrapCacheMisses.get();
+    }
+
+    /**
+     * Unwraps a transient identifier, using the unwrap cache if it is enabled.
+     * 
+     * @param transientId the wrapped identifier
+     * 
+     * @return the unwrapped identifier
+     * 
+     * @throws AttributeResolutionException thrown if the identifier can not be unwrapped or has expired
+     */
+    protected String unwrap(String transientId) throws AttributeResolutionException {
+        LRUCache<String, UnwrappedData> cache = unwrapCache;
+        UnwrappedData unwrapped = null;
+        if (cache != null) {
+            unwrapped = cache.get(transientId);
+            if (unwrapped != null) {
+                if (!unwrapped.isExpired()) {
+                    unwrapCacheHits.incrementAndGet();
+                    return unwrapped.getData();
+                }
+                cache.remove(transientId);
+            }
+            unwrapCacheMisses.incrementAndGet();
+        }
+
+        try {
+            unwrapped = dataSealer.unwrapData(transientId);
+        } catch (DataExpiredException e) {
+            throw new AttributeResolutionException("Principal identifier has expired.");
+        } catch (DataSealerException e) {
+            throw new AttributeResolutionException("Caught exception unwrapping principal identifier.", e);
+        }
+
+        if (cache != null && unwrapped.getData() != null) {
+            cache.put(transientId, unwrapped);
+        }
+        return unwrapped.getData();
+    }
+}
@@ -80,6 +80,45 @@ public class StoredIDPrincipalConnector extends BasePrincipalConnector {
         noResultIsError = isError;
     }
 
+    /**
+     * Gets the maximum number of active persistent IDs cached by the ID store.
+     * 
+     * @return maximum number of active persistent IDs cached, 0 if caching is disabled
+     */
+    public int getCacheSize() {
+        return pidStore.getActiveIdCacheSize();
+    }
+
+    /**
+     * Sets the maximum number of active persistent IDs cached by the ID store. The store is shared with the data
+     * connector that produced the IDs, and with any other principal connector using that data connector, so IDs it
+     * issues are cached as well as those looked up by this connector and the setting applies to all of them.
+     * 
+     * @param size maximum number of active persistent IDs cached, 0 to disable caching
+     */
+    public void setCacheSize(int size) {
+        pidStore.setActiveIdCacheSize(size);
+    }
+
+    /**
+     * Gets the time, in milliseconds, a persistent ID may be resolved from the cache.
+     * 
+     * @return time a persistent ID may be resolved from the cache, 0 for no limit
+     */
+    public long getCacheLifetime() {
+        return pidStore.getActiveIdCacheLifetime();
+    }
+
+    /**
+     * Sets the time, in milliseconds, a persistent ID may be resolved from the cache. Like the cache size, this is a
+     * setting of the ID store shared with the data connector that produced the IDs.
+     * 
+     * @param lifetime time a persistent ID may be resolved from the cache, 0 for no limit
+     */
+    public void setCacheLifetime(long lifetime) {
+        pidStore.setActiveIdCacheLifetime(lifetime);
+    }
+
     /** {@inheritDoc} */
     public String resolve(ShibbolethResolutionContext resolutionContext) throws AttributeResolutionException {
         SAMLProfileRequestContext requestContext = resolutionContext.getAttributeRequestContext();
@@ -78,6 +78,9 @@ public abstract class BaseService implements Service, ApplicationContextAware, B
         Lock writeLock = getReadWriteLock().writeLock();
         writeLock.lock();
         isDestroyed = true;
+        if (serviceContext != null) {
+            serviceContext.close();
+        }
         serviceContext = null;
         serviceConfigurations.clear();
         setInitialized(false);
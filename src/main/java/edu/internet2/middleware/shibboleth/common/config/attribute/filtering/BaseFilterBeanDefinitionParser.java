@@ -21,19 +21,34 @@ import org.opensaml.common.IdentifierGenerator;
 import org.opensaml.common.impl.RandomIdentifierGenerator;
 import org.opensaml.xml.util.DatatypeHelper;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.w3c.dom.Element;
 
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AbstractMatchFunctor;
+
 /**
  * Base class for Spring bean definition parsers within the filter engine configuration. This base class is responsible
- * for generating an ID for the Spring bean that is unique within all the policy components loaded.
+ * for generating an ID for the Spring bean that is unique within all the policy components loaded. The configured ID of
+ * a match functor is also set as its functor ID, see {@link AbstractMatchFunctor#setFunctorId(String)}.
  */
 public abstract class BaseFilterBeanDefinitionParser extends AbstractSingleBeanDefinitionParser {
 
     /** Generator of unique IDs. */
     private static IdentifierGenerator idGen = new RandomIdentifierGenerator();
 
+    /** {@inheritDoc} */
+    protected void doParse(Element configElement, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        super.doParse(configElement, parserContext, builder);
+
+        Class beanClass = getBeanClass(configElement);
+        String functorId = DatatypeHelper.safeTrimOrNullString(configElement.getAttributeNS(null, "id"));
+        if (functorId != null && beanClass != null && AbstractMatchFunctor.class.isAssignableFrom(beanClass)) {
+            builder.addPropertyValue("functorId", functorId);
+        }
+    }
+
     /** {@inheritDoc} */
     protected String resolveId(Element configElement, AbstractBeanDefinition beanDefinition, ParserContext parserContext) {
         return getQualifiedId(configElement, configElement.getLocalName(), configElement.getAttributeNS(null, "id"));
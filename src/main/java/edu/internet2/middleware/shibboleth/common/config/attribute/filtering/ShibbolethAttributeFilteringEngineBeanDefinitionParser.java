@@ -20,6 +20,7 @@ package edu.internet2.middleware.shibboleth.common.config.attribute.filtering;
 import javax.xml.namespace.QName;
 
 import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
@@ -53,5 +54,30 @@ public class ShibbolethAttributeFilteringEngineBeanDefinitionParser extends
 
         log.info("Parsing configuration for attribute filtering engine {}", DatatypeHelper.safeTrimOrNullString(config
                 .getAttributeNS(null, "id")));
+
+        if (config.hasAttributeNS(null, "activePolicyCacheSize")) {
+            builder.addPropertyValue("activePolicyCacheSize", Integer.parseInt(config.getAttributeNS(null,
+                    "activePolicyCacheSize").trim()));
+        }
+
+        if (config.hasAttributeNS(null, "compileToBytecode")) {
+            builder.addPropertyValue("compileToBytecode", XMLHelper.getAttributeValueAsBoolean(config
+                    .getAttributeNodeNS(null, "compileToBytecode")));
+        }
+
+        if (config.hasAttributeNS(null, "parallelValueThreshold")) {
+            builder.addPropertyValue("parallelValueThreshold", Integer.parseInt(config.getAttributeNS(null,
+                    "parallelValueThreshold").trim()));
+        }
+
+        if (config.hasAttributeNS(null, "parallelValueThreads")) {
+            builder.addPropertyValue("parallelValueThreads", Integer.parseInt(config.getAttributeNS(null,
+                    "parallelValueThreads").trim()));
+        }
+
+        if (config.hasAttributeNS(null, "profilingEnabled")) {
+            builder.addPropertyValue("profilingEnabled", XMLHelper.getAttributeValueAsBoolean(config
+                    .getAttributeNodeNS(null, "profilingEnabled")));
+        }
     }
 }
\ No newline at end of file
@@ -55,5 +55,15 @@ public class ScriptMatchFunctorBeanDefinitionParser extends BaseFilterBeanDefini
         List<Element> scripts = XMLHelper.getChildElementsByTagNameNS(configElement,
                 BasicMatchFunctorNamespaceHandler.NAMESPACE, "Script");
         builder.addConstructorArgValue(DatatypeHelper.safeTrimOrNullString(scripts.get(0).getTextContent()));
+
+        if (configElement.hasAttributeNS(null, "enginePoolSize")) {
+            builder.addConstructorArgValue(Integer.parseInt(DatatypeHelper.safeTrim(configElement.getAttributeNS(null,
+                    "enginePoolSize"))));
+        }
+
+        if (configElement.hasAttributeNS(null, "batchEvaluation")) {
+            builder.addPropertyValue("batchEvaluation", XMLHelper.getAttributeValueAsBoolean(configElement
+                    .getAttributeNodeNS(null, "batchEvaluation")));
+        }
     }
 }
\ No newline at end of file
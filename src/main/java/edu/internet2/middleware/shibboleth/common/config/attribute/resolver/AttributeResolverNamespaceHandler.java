@@ -33,6 +33,9 @@ public class AttributeResolverNamespaceHandler extends BaseSpringNamespaceHandle
     public void init() {
         BeanDefinitionParser parser = new ShibbolethAttributeResolverBeanDefinitionParser();
         registerBeanDefinitionParser(ShibbolethAttributeResolverBeanDefinitionParser.SCHEMA_TYPE, parser);
+
+        registerBeanDefinitionParser(AuditLogCacheWarmerBeanDefinitionParser.SCHEMA_TYPE,
+                new AuditLogCacheWarmerBeanDefinitionParser());
         
         parser = new AttributeResolverBeanDefinitionParser();
         registerBeanDefinitionParser(AttributeResolverBeanDefinitionParser.SCHEMA_TYPE, parser);
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.config.attribute.resolver;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLHelper;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.w3c.dom.Element;
+
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.AuditLogCacheWarmer;
+import edu.internet2.middleware.shibboleth.common.config.SpringConfigurationUtils;
+
+/**
+ * Spring bean definition parser for {@link AuditLogCacheWarmer} services.
+ */
+public class AuditLogCacheWarmerBeanDefinitionParser extends AbstractSingleBeanDefinitionParser {
+
+    /** Schema type. */
+    public static final QName SCHEMA_TYPE = new QName(AttributeResolverNamespaceHandler.NAMESPACE,
+            "AuditLogCacheWarmer");
+
+    /** {@inheritDoc} */
+    protected Class getBeanClass(Element element) {
+        return AuditLogCacheWarmer.class;
+    }
+
+    /** {@inheritDoc} */
+    protected void doParse(Element configElement, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        String id = configElement.getAttributeNS(null, "id");
+
+        builder.addConstructorArgReference(DatatypeHelper.safeTrimOrNullString(configElement.getAttributeNS(null,
+                "attributeResolver")));
+        builder.addConstructorArgValue(DatatypeHelper.safeTrimOrNullString(configElement.getAttributeNS(null,
+                "auditLogDirectory")));
+
+        long warmingInterval = 1000;
+        if (configElement.hasAttributeNS(null, "warmingInterval")) {
+            warmingInterval = SpringConfigurationUtils.parseDurationToMillis("'warmingInterval' on service " + id,
+                    configElement.getAttributeNS(null, "warmingInterval"), 0);
+        }
+        builder.addConstructorArgValue(warmingInterval);
+
+        if (configElement.hasAttributeNS(null, "auditLogFilePattern")) {
+            builder.addPropertyValue("auditLogFilePattern", configElement.getAttributeNS(null,
+                    "auditLogFilePattern"));
+        }
+
+        if (configElement.hasAttributeNS(null, "historyPeriod")) {
+            builder.addPropertyValue("historyPeriod", SpringConfigurationUtils.parseDurationToMillis(
+                    "'historyPeriod' on service " + id, configElement.getAttributeNS(null, "historyPeriod"), 0));
+        }
+
+        if (configElement.hasAttributeNS(null, "historyHalfLife")) {
+            builder.addPropertyValue("historyHalfLife", SpringConfigurationUtils.parseDurationToMillis(
+                    "'historyHalfLife' on service " + id, configElement.getAttributeNS(null, "historyHalfLife"), 0));
+        }
+
+        if (configElement.hasAttributeNS(null, "lookAhead")) {
+            builder.addPropertyValue("lookAhead", SpringConfigurationUtils.parseDurationToMillis(
+                    "'lookAhead' on service " + id, configElement.getAttributeNS(null, "lookAhead"), 0));
+        }
+
+        if (configElement.hasAttributeNS(null, "predictionInterval")) {
+            builder.addPropertyValue("predictionInterval", SpringConfigurationUtils.parseDurationToMillis(
+                    "'predictionInterval' on service " + id, configElement.getAttributeNS(null,
+                            "predictionInterval"), 0));
+        }
+
+        if (configElement.hasAttributeNS(null, "maximumPrincipals")) {
+            builder.addPropertyValue("maximumPrincipals", Integer.parseInt(configElement.getAttributeNS(null,
+                    "maximumPrincipals").trim()));
+        }
+
+        for (String dependency : XMLHelper
+                .getAttributeValueAsList(configElement.getAttributeNodeNS(null, "depends-on"))) {
+            builder.addDependsOn(dependency);
+        }
+
+        builder.setDestroyMethodName("destroy");
+    }
+
+    /** {@inheritDoc} */
+    protected String resolveId(Element configElement, AbstractBeanDefinition beanDef, ParserContext parserContext) {
+        return configElement.getAttributeNS(null, "id");
+    }
+}
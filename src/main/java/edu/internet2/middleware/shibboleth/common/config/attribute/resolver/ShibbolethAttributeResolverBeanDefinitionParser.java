@@ -19,9 +19,12 @@ package edu.internet2.middleware.shibboleth.common.config.attribute.resolver;
 
 import javax.xml.namespace.QName;
 
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.ParserContext;
 import org.w3c.dom.Element;
 
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ShibbolethAttributeResolver;
+import edu.internet2.middleware.shibboleth.common.config.SpringConfigurationUtils;
 import edu.internet2.middleware.shibboleth.common.config.service.AbstractReloadableServiceBeanDefinitionParser;
 
 /**
@@ -37,4 +40,20 @@ public class ShibbolethAttributeResolverBeanDefinitionParser extends AbstractRel
     protected Class getBeanClass(Element arg0) {
         return ShibbolethAttributeResolver.class;
     }
+
+    /** {@inheritDoc} */
+    protected void doParse(Element configElement, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        super.doParse(configElement, parserContext, builder);
+
+        if (configElement.hasAttributeNS(null, "validationThreads")) {
+            builder.addPropertyValue("validationThreads", Integer.parseInt(configElement.getAttributeNS(null,
+                    "validationThreads").trim()));
+        }
+
+        if (configElement.hasAttributeNS(null, "validationTimeout")) {
+            builder.addPropertyValue("validationTimeout", SpringConfigurationUtils.parseDurationToMillis(
+                    "'validationTimeout' on service " + configElement.getAttributeNS(null, "id"), configElement
+                            .getAttributeNS(null, "validationTimeout"), 0));
+        }
+    }
 }
\ No newline at end of file
@@ -67,5 +67,8 @@ public class AttributeDefinitionNamespaceHandler extends BaseSpringNamespaceHand
         
         registerBeanDefinitionParser(TemplateAttributeDefinitionBeanDefinitionParser.TYPE_NAME,
                 new TemplateAttributeDefinitionBeanDefinitionParser());
+
+        registerBeanDefinitionParser(JavaAttributeDefinitionBeanDefinitionParser.TYPE_NAME,
+                new JavaAttributeDefinitionBeanDefinitionParser());
     }
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ import java.util.Map;
 
 import javax.xml.namespace.QName;
 
+import org.opensaml.xml.util.DatatypeHelper;
 import org.opensaml.xml.util.XMLHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +85,14 @@ public abstract class BaseAttributeDefinitionBeanDefinitionParser extends Abstra
         }
         pluginBuilder.addPropertyValue("dependencyOnly", dependencyOnly);
 
+        int memoizationCacheSize = 0;
+        if (pluginConfig.hasAttributeNS(null, "memoizationCacheSize")) {
+            memoizationCacheSize = Integer.parseInt(DatatypeHelper.safeTrim(pluginConfig.getAttributeNS(null,
+                    "memoizationCacheSize")));
+        }
+        log.debug("Attribute definition {} memoization cache size: {}", pluginId, memoizationCacheSize);
+        pluginBuilder.addPropertyValue("memoizationCacheSize", memoizationCacheSize);
+
         pluginBuilder.addPropertyValue("attributeEncoders", SpringConfigurationUtils.parseInnerCustomElements(
                 pluginConfigChildren.get(ATTRIBUTE_ENCODER_ELEMENT_NAME), parserContext));
     }
@@ -47,6 +47,9 @@ public abstract class BaseAttributeDefinitionFactoryBean extends AbstractResolut
     /** Localized human readable description of attribute. */
     private Map<Locale, String> displayDescriptions;
 
+    /** Maximum number of inputs whose resulting values are memoized. */
+    private int memoizationCacheSize;
+
     /**
      * Gets the encoders for the attributes.
      * 
@@ -92,6 +95,15 @@ public abstract class BaseAttributeDefinitionFactoryBean extends AbstractResolut
         return dependencyOnly;
     }
 
+    /**
+     * Gets the maximum number of inputs whose resulting values are memoized.
+     * 
+     * @return maximum number of inputs whose resulting values are memoized, 0 if memoization is disabled
+     */
+    public int getMemoizationCacheSize() {
+        return memoizationCacheSize;
+    }
+
     /**
      * Populates the attribute definition with information from this factory.
      * 
@@ -118,6 +130,7 @@ public abstract class BaseAttributeDefinitionFactoryBean extends AbstractResolut
 
         definition.setId(getPluginId());
         definition.setSourceAttributeID(getSourceAttributeId());
+        definition.setMemoizationCacheSize(getMemoizationCacheSize());
     }
 
     /**
@@ -156,6 +169,15 @@ public abstract class BaseAttributeDefinitionFactoryBean extends AbstractResolut
         displayNames = names;
     }
 
+    /**
+     * Sets the maximum number of inputs whose resulting values are memoized.
+     * 
+     * @param size maximum number of inputs whose resulting values are memoized, 0 disables memoization
+     */
+    public void setMemoizationCacheSize(int size) {
+        memoizationCacheSize = size;
+    }
+
     /**
      * Sets the ID of the attribute that serves as the source of information for the attribute definition.
      * 
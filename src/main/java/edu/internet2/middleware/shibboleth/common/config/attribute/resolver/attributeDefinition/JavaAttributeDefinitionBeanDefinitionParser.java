@@ -0,0 +1,101 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.config.attribute.resolver.attributeDefinition;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.xml.util.DatatypeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.w3c.dom.Element;
+
+/**
+ * Spring bean definition parser for Java attribute definition configuration elements.
+ */
+public class JavaAttributeDefinitionBeanDefinitionParser extends BaseAttributeDefinitionBeanDefinitionParser {
+
+    /** Schema type name. */
+    public static final QName TYPE_NAME = new QName(AttributeDefinitionNamespaceHandler.NAMESPACE, "Java");
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(JavaAttributeDefinitionBeanDefinitionParser.class);
+
+    /** {@inheritDoc} */
+    protected Class getBeanClass(Element arg0) {
+        return JavaAttributeDefinitionFactoryBean.class;
+    }
+
+    /** {@inheritDoc} */
+    protected void doParse(String pluginId, Element pluginConfig, Map<QName, List<Element>> pluginConfigChildren,
+            BeanDefinitionBuilder pluginBuilder, ParserContext parserContext) {
+        super.doParse(pluginId, pluginConfig, pluginConfigChildren, pluginBuilder, parserContext);
+
+        String functionClass = null;
+        if (pluginConfig.hasAttributeNS(null, "functionClass")) {
+            functionClass = DatatypeHelper.safeTrimOrNullString(pluginConfig.getAttributeNS(null, "functionClass"));
+        }
+
+        String source = null;
+        List<Element> sourceElem = pluginConfigChildren.get(new QName(AttributeDefinitionNamespaceHandler.NAMESPACE,
+                "Source"));
+        if (sourceElem != null && sourceElem.size() > 0) {
+            source = sourceElem.get(0).getTextContent();
+        } else {
+            List<Element> sourceFileElem = pluginConfigChildren.get(new QName(
+                    AttributeDefinitionNamespaceHandler.NAMESPACE, "SourceFile"));
+            if (sourceFileElem != null && sourceFileElem.size() > 0) {
+                String sourceFile = DatatypeHelper.safeTrim(sourceFileElem.get(0).getTextContent());
+                try {
+                    FileInputStream sourceIn = new FileInputStream(sourceFile);
+                    try {
+                        source = DatatypeHelper.inputstreamToString(sourceIn, null);
+                    } finally {
+                        sourceIn.close();
+                    }
+                } catch (IOException e) {
+                    throw new BeanCreationException("Unable to read Java source file " + sourceFile, e);
+                }
+            }
+        }
+
+        if (functionClass == null && source == null) {
+            throw new BeanCreationException("Attribute definition " + pluginId
+                    + " must specify either a functionClass or Java source");
+        }
+        if (functionClass != null && source != null) {
+            throw new BeanCreationException("Attribute definition " + pluginId
+                    + " may not specify both a functionClass and Java source");
+        }
+
+        if (functionClass != null) {
+            log.debug("Attribute definition {} function class: {}", pluginId, functionClass);
+            pluginBuilder.addPropertyValue("functionClass", functionClass);
+        } else {
+            log.debug("Attribute definition {} Java source: {}", pluginId, source);
+            pluginBuilder.addPropertyValue("source", source);
+        }
+    }
+}
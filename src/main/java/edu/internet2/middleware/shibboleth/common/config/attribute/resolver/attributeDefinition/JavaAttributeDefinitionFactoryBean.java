@@ -0,0 +1,87 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.config.attribute.resolver.attributeDefinition;
+
+import org.opensaml.xml.util.DatatypeHelper;
+
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.JavaAttributeDefinition;
+
+/**
+ * Java attribute definition factory.
+ */
+public class JavaAttributeDefinitionFactoryBean extends BaseAttributeDefinitionFactoryBean {
+
+    /** Java source of the body of the attribute function. */
+    private String source;
+
+    /** Class name of a precompiled attribute function. */
+    private String functionClass;
+
+    /**
+     * Gets the Java source of the body of the attribute function.
+     * 
+     * @return Java source of the body of the attribute function
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Sets the Java source of the body of the attribute function.
+     * 
+     * @param newSource Java source of the body of the attribute function
+     */
+    public void setSource(String newSource) {
+        source = DatatypeHelper.safeTrimOrNullString(newSource);
+    }
+
+    /**
+     * Gets the class name of a precompiled attribute function.
+     * 
+     * @return class name of a precompiled attribute function
+     */
+    public String getFunctionClass() {
+        return functionClass;
+    }
+
+    /**
+     * Sets the class name of a precompiled attribute function.
+     * 
+     * @param className class name of a precompiled attribute function
+     */
+    public void setFunctionClass(String className) {
+        functionClass = DatatypeHelper.safeTrimOrNullString(className);
+    }
+
+    /** {@inheritDoc} */
+    public Class getObjectType() {
+        return JavaAttributeDefinition.class;
+    }
+
+    /** {@inheritDoc} */
+    protected Object createInstance() throws Exception {
+        JavaAttributeDefinition definition = new JavaAttributeDefinition();
+        populateAttributeDefinition(definition);
+
+        definition.setFunctionClass(functionClass);
+        definition.setSource(source);
+        definition.initialize();
+
+        return definition;
+    }
+}
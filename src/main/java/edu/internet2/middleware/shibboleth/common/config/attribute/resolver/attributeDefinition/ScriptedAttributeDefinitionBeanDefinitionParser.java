@@ -32,6 +32,8 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.w3c.dom.Element;
 
+import edu.internet2.middleware.shibboleth.common.config.SpringConfigurationUtils;
+
 /**
  * Spring bean definition parser for scripted attribute configuration elements.
  */
@@ -83,5 +85,19 @@ public class ScriptedAttributeDefinitionBeanDefinitionParser extends BaseAttribu
         }
         log.debug("Attribute definition {} script: {}", pluginId, script);
         pluginBuilder.addPropertyValue("script", script);
+
+        if (pluginConfig.hasAttributeNS(null, "enginePoolSize")) {
+            int enginePoolSize = Integer.parseInt(DatatypeHelper.safeTrim(pluginConfig.getAttributeNS(null,
+                    "enginePoolSize")));
+            log.debug("Attribute definition {} script engine pool size: {}", pluginId, enginePoolSize);
+            pluginBuilder.addPropertyValue("enginePoolSize", enginePoolSize);
+        }
+
+        if (pluginConfig.hasAttributeNS(null, "executionTimeout")) {
+            long executionTimeout = SpringConfigurationUtils.parseDurationToMillis("executionTimeout on attribute "
+                    + "definition " + pluginId, pluginConfig.getAttributeNS(null, "executionTimeout"), 0);
+            log.debug("Attribute definition {} script execution timeout: {}ms", pluginId, executionTimeout);
+            pluginBuilder.addPropertyValue("executionTimeout", executionTimeout);
+        }
     }
 }
\ No newline at end of file
@@ -38,6 +38,12 @@ public class ScriptedAttributeDefinitionFactoryBean extends BaseAttributeDefinit
     /** The script. */
     private String script;
 
+    /** Maximum number of script engines used to execute the script concurrently, 0 for the default. */
+    private int enginePoolSize;
+
+    /** Maximum time, in milliseconds, the script may run, 0 for no limit. */
+    private long executionTimeout;
+
     /**
      * Gets the scripting language being used.
      * 
@@ -92,6 +98,42 @@ public class ScriptedAttributeDefinitionFactoryBean extends BaseAttributeDefinit
         scriptFile = DatatypeHelper.safeTrimOrNullString(file);
     }
 
+    /**
+     * Gets the maximum number of script engines used to execute the script concurrently.
+     * 
+     * @return maximum number of script engines used to execute the script concurrently, 0 for the default
+     */
+    public int getEnginePoolSize() {
+        return enginePoolSize;
+    }
+
+    /**
+     * Sets the maximum number of script engines used to execute the script concurrently.
+     * 
+     * @param size maximum number of script engines used to execute the script concurrently, 0 for the default
+     */
+    public void setEnginePoolSize(int size) {
+        enginePoolSize = size;
+    }
+
+    /**
+     * Gets the maximum time, in milliseconds, the script may run.
+     * 
+     * @return maximum time the script may run, 0 for no limit
+     */
+    public long getExecutionTimeout() {
+        return executionTimeout;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, the script may run.
+     * 
+     * @param timeout maximum time the script may run, 0 for no limit
+     */
+    public void setExecutionTimeout(long timeout) {
+        executionTimeout = timeout;
+    }
+
     /** {@inheritDoc} */
     public Class getObjectType() {
         return ScriptedAttributeDefinition.class;
@@ -113,6 +155,10 @@ public class ScriptedAttributeDefinitionFactoryBean extends BaseAttributeDefinit
             throw e;
         }
         definition.setScript(script);
+        if (enginePoolSize > 0) {
+            definition.setEnginePoolSize(enginePoolSize);
+        }
+        definition.setExecutionTimeout(executionTimeout);
 
         definition.initialize();
 
@@ -60,5 +60,10 @@ public abstract class BaseDataConnectorBeanDefinitionParser extends AbstractReso
                     connectorId);
             pluginBuilder.addPropertyValue("failoverDataConnectorIds", connectorId);
         }
+
+        if (pluginConfig.hasAttributeNS(null, "valueInternPoolSize")) {
+            pluginBuilder.addPropertyValue("valueInternPoolSize", Integer.parseInt(pluginConfig.getAttributeNS(null,
+                    "valueInternPoolSize").trim()));
+        }
     }
 }
\ No newline at end of file
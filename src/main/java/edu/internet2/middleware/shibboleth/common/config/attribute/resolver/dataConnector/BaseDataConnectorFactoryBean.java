@@ -19,6 +19,7 @@ package edu.internet2.middleware.shibboleth.common.config.attribute.resolver.dat
 
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.BaseDataConnector;
 import edu.internet2.middleware.shibboleth.common.config.attribute.resolver.AbstractResolutionPluginFactoryBean;
+import edu.internet2.middleware.shibboleth.common.util.ValueInterner;
 
 /**
  * Base class for data connector factories.
@@ -28,6 +29,9 @@ public abstract class BaseDataConnectorFactoryBean extends AbstractResolutionPlu
     /** ID of failover data connectors for this plugin. */
     private String failoverDataConnectorId;
 
+    /** Number of slots in the pool used to share repeated string values, 0 if values are not pooled. */
+    private int valueInternPoolSize;
+
     /**
      * Gets the ID of failover data connectors for this plugin.
      * 
@@ -46,6 +50,24 @@ public abstract class BaseDataConnectorFactoryBean extends AbstractResolutionPlu
         failoverDataConnectorId = id;
     }
 
+    /**
+     * Gets the number of slots in the pool used to share repeated string values.
+     * 
+     * @return number of slots in the pool used to share repeated string values, 0 if values are not pooled
+     */
+    public int getValueInternPoolSize() {
+        return valueInternPoolSize;
+    }
+
+    /**
+     * Sets the number of slots in the pool used to share repeated string values.
+     * 
+     * @param size number of slots in the pool used to share repeated string values, 0 if values are not pooled
+     */
+    public void setValueInternPoolSize(int size) {
+        valueInternPoolSize = size;
+    }
+
     /**
      * Populates data connector with information from this factory.
      * 
@@ -61,5 +83,9 @@ public abstract class BaseDataConnectorFactoryBean extends AbstractResolutionPlu
         if (getFailoverDataConnectorId() != null) {
             connector.setFailoverDependencyIds(getFailoverDataConnectorId());
         }
+
+        if (getValueInternPoolSize() > 0) {
+            connector.setValueInterner(new ValueInterner<String>(getValueInternPoolSize()));
+        }
     }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import java.util.Map;
 
 import javax.xml.namespace.QName;
 
+import org.opensaml.xml.util.XMLHelper;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.w3c.dom.Element;
@@ -53,5 +54,19 @@ public class ComputedIDDataConnectorBeanDefinitionParser extends BaseDataConnect
 
         pluginBuilder.addPropertyValue("sourceAttribute", pluginConfig.getAttributeNS(null, "sourceAttributeID"));
         pluginBuilder.addPropertyValue("salt", pluginConfig.getAttributeNS(null, "salt").getBytes());
+
+        if (pluginConfig.hasAttributeNS(null, "hashAlgorithm")) {
+            pluginBuilder.addPropertyValue("hashAlgorithm", pluginConfig.getAttributeNS(null, "hashAlgorithm"));
+        }
+
+        if (pluginConfig.hasAttributeNS(null, "utf8Encoding")) {
+            pluginBuilder.addPropertyValue("utf8Encoding", XMLHelper.getAttributeValueAsBoolean(pluginConfig
+                    .getAttributeNodeNS(null, "utf8Encoding")));
+        }
+
+        if (pluginConfig.hasAttributeNS(null, "idCacheSize")) {
+            pluginBuilder.addPropertyValue("idCacheSize", Integer.parseInt(pluginConfig.getAttributeNS(null,
+                    "idCacheSize").trim()));
+        }
     }
 }
\ No newline at end of file
@@ -17,7 +17,9 @@
 
 package edu.internet2.middleware.shibboleth.common.config.attribute.resolver.dataConnector;
 
+import java.nio.charset.Charset;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.ComputedIDDataConnector;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.ComputedIDGenerator;
 
 /**
  * Spring factory bean for {@link ComputedIDDataConnector}s.
@@ -33,6 +35,15 @@ public class ComputedIDDataConnectorFactoryBean extends BaseDataConnectorFactory
     /** Salt used when computing the ID. */
     private byte[] salt;
 
+    /** Hash algorithm used to compute the ID, null for the default. */
+    private String hashAlgorithm;
+
+    /** Whether the hashed strings are encoded as UTF-8 rather than in the platform's default character set. */
+    private boolean utf8Encoding;
+
+    /** Maximum number of computed IDs cached, 0 to disable caching. */
+    private int idCacheSize;
+
     /** {@inheritDoc} */
     public Class getObjectType() {
         return ComputedIDDataConnector.class;
@@ -92,11 +103,69 @@ public class ComputedIDDataConnectorFactoryBean extends BaseDataConnectorFactory
         this.salt = salt;
     }
 
+    /**
+     * Gets the hash algorithm used to compute the ID.
+     * 
+     * @return hash algorithm used to compute the ID, null for the default
+     */
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * Sets the hash algorithm used to compute the ID.
+     * 
+     * @param algorithm hash algorithm used to compute the ID, null for the default
+     */
+    public void setHashAlgorithm(String algorithm) {
+        hashAlgorithm = algorithm;
+    }
+
+    /**
+     * Gets whether the hashed strings are encoded as UTF-8 rather than in the platform's default character set.
+     * 
+     * @return whether the hashed strings are encoded as UTF-8
+     */
+    public boolean isUtf8Encoding() {
+        return utf8Encoding;
+    }
+
+    /**
+     * Sets whether the hashed strings are encoded as UTF-8 rather than in the platform's default character set.
+     * Enabling this changes the IDs computed for non-ASCII values on platforms whose default character set is not
+     * UTF-8.
+     * 
+     * @param utf8 whether the hashed strings are encoded as UTF-8
+     */
+    public void setUtf8Encoding(boolean utf8) {
+        utf8Encoding = utf8;
+    }
+
+    /**
+     * Gets the maximum number of computed IDs cached.
+     * 
+     * @return maximum number of computed IDs cached, 0 if caching is disabled
+     */
+    public int getIdCacheSize() {
+        return idCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of computed IDs cached.
+     * 
+     * @param size maximum number of computed IDs cached, 0 to disable caching
+     */
+    public void setIdCacheSize(int size) {
+        idCacheSize = size;
+    }
+
     /** {@inheritDoc} */
     protected Object createInstance() throws Exception {
         ComputedIDDataConnector connector = new ComputedIDDataConnector(getGeneratedAttribute(), getSourceAttribute(),
                 getSalt());
         populateDataConnector(connector);
+        connector.setIdGenerator(new ComputedIDGenerator(getHashAlgorithm(), getSalt(), getIdCacheSize(),
+                isUtf8Encoding() ? Charset.forName("UTF-8") : null));
         return connector;
     }
 }
\ No newline at end of file
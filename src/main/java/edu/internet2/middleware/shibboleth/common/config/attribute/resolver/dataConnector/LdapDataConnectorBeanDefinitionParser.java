@@ -360,6 +360,7 @@ public class LdapDataConnectorBeanDefinitionParser extends BaseDataConnectorBean
         String cacheManagerId = "shibboleth.CacheManager";
         long cacheElementTtl = 4 * 60 * 60 * 1000;
         int maximumCachedElements = 500;
+        String cacheSnapshotFile = null;
 
         List<Element> cacheConfigs =
                 XMLHelper.getChildElementsByTagNameNS(pluginConfig, DataConnectorNamespaceHandler.NAMESPACE,
@@ -384,6 +385,10 @@ public class LdapDataConnectorBeanDefinitionParser extends BaseDataConnectorBean
                         Integer.parseInt(DatatypeHelper.safeTrim(cacheConfig.getAttributeNS(null,
                                 "maximumCachedElements")));
             }
+
+            if (cacheConfig.hasAttributeNS(null, "snapshotFile")) {
+                cacheSnapshotFile = DatatypeHelper.safeTrimOrNullString(cacheConfig.getAttributeNS(null, "snapshotFile"));
+            }
         }
 
         if (pluginConfig.hasAttributeNS(null, "cacheResults")) {
@@ -402,6 +407,11 @@ public class LdapDataConnectorBeanDefinitionParser extends BaseDataConnectorBean
 
             log.debug("Data connector {} maximum number of caches elements: {}", pluginId, maximumCachedElements);
             pluginBuilder.addPropertyValue("maximumCachedElements", maximumCachedElements);
+
+            if (cacheSnapshotFile != null) {
+                log.debug("Data connector {} results cache snapshot file: {}", pluginId, cacheSnapshotFile);
+                pluginBuilder.addPropertyValue("cacheSnapshotFile", cacheSnapshotFile);
+            }
         }
 
     }
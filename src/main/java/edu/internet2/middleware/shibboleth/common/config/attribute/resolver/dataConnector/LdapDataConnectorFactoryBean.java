@@ -17,6 +17,7 @@
 
 package edu.internet2.middleware.shibboleth.common.config.attribute.resolver.dataConnector;
 
+import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
@@ -38,6 +39,7 @@ import org.opensaml.xml.security.x509.X509Credential;
 import org.opensaml.xml.util.DatatypeHelper;
 
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.LdapDataConnector;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.ResultsCacheSnapshot;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.LdapPoolStrategy;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.TemplateEngine;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.LdapDataConnector.AUTHENTICATION_TYPE;
@@ -107,6 +109,9 @@ public class LdapDataConnectorFactoryBean extends BaseDataConnectorFactoryBean {
     /** Length of time, in milliseconds, elements are cached. */
     private long cacheElementTtl;
 
+    /** Path of the file the results cache is persisted to, null if the cache is not persisted. */
+    private String cacheSnapshotFile;
+
     /** {@inheritDoc} */
     protected Object createInstance() throws Exception {
         List<SearchResultHandler> resultHandlers = new ArrayList<SearchResultHandler>();
@@ -157,9 +162,19 @@ public class LdapDataConnectorFactoryBean extends BaseDataConnectorFactoryBean {
         }
         connector.registerTemplate(templateEngine, filterTemplate);
 
+        if (resultsCache != null && cacheSnapshotFile != null) {
+            connector.setCacheSnapshot(new ResultsCacheSnapshot(new File(cacheSnapshotFile)));
+            connector.restoreCacheSnapshot();
+        }
+
         return connector;
     }
 
+    /** {@inheritDoc} */
+    protected void destroyInstance(Object instance) throws Exception {
+        ((LdapDataConnector) instance).saveCacheSnapshot();
+    }
+
     /**
      * Initializes the LDAP factory and validator for the selected pool strategy,
      * and initializes the pool.
@@ -483,6 +498,26 @@ public class LdapDataConnectorFactoryBean extends BaseDataConnectorFactoryBean {
         cacheElementTtl = ttl;
     }
 
+    /**
+     * Gets the path of the file the results cache is persisted to.
+     * 
+     * @return path of the file the results cache is persisted to, null if the cache is not persisted
+     */
+    public String getCacheSnapshotFile() {
+        return cacheSnapshotFile;
+    }
+
+    /**
+     * Sets the path of the file the results cache is persisted to. The file holds the cached attribute values
+     * unencrypted; it is created readable only by its owner where the file system allows, and should be kept in a
+     * directory only the identity provider can access.
+     * 
+     * @param file path of the file the results cache is persisted to, null if the cache is not persisted
+     */
+    public void setCacheSnapshotFile(String file) {
+        cacheSnapshotFile = file;
+    }
+
     /**
      * Sets the manager for the results cache.
      * 
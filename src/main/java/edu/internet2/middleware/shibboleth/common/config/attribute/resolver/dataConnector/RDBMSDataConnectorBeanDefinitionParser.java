@@ -311,6 +311,7 @@ public class RDBMSDataConnectorBeanDefinitionParser extends BaseDataConnectorBea
         String cacheManagerId = "shibboleth.CacheManager";
         long cacheElementTtl = 4 * 60 * 60 * 1000;
         int maximumCachedElements = 500;
+        String cacheSnapshotFile = null;
 
         List<Element> cacheConfigs = XMLHelper.getChildElementsByTagNameNS(pluginConfig,
                 DataConnectorNamespaceHandler.NAMESPACE, "ResultCache");
@@ -332,6 +333,10 @@ public class RDBMSDataConnectorBeanDefinitionParser extends BaseDataConnectorBea
                 maximumCachedElements = Integer.parseInt(DatatypeHelper.safeTrim(cacheConfig.getAttributeNS(null,
                         "maximumCachedElements")));
             }
+
+            if (cacheConfig.hasAttributeNS(null, "snapshotFile")) {
+                cacheSnapshotFile = DatatypeHelper.safeTrimOrNullString(cacheConfig.getAttributeNS(null, "snapshotFile"));
+            }
         }
 
         if (pluginConfig.hasAttributeNS(null, "cacheResults")) {
@@ -350,6 +355,11 @@ public class RDBMSDataConnectorBeanDefinitionParser extends BaseDataConnectorBea
 
             log.debug("Data connector {} maximum number of caches elements: {}", pluginId, maximumCachedElements);
             pluginBuilder.addPropertyValue("maximumCachedElements", maximumCachedElements);
+
+            if (cacheSnapshotFile != null) {
+                log.debug("Data connector {} results cache snapshot file: {}", pluginId, cacheSnapshotFile);
+                pluginBuilder.addPropertyValue("cacheSnapshotFile", cacheSnapshotFile);
+            }
         }
 
     }
@@ -17,6 +17,7 @@
 
 package edu.internet2.middleware.shibboleth.common.config.attribute.resolver.dataConnector;
 
+import java.io.File;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,7 @@ import org.opensaml.xml.util.DatatypeHelper;
 
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.RDBMSColumnDescriptor;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.RDBMSDataConnector;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.ResultsCacheSnapshot;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.TemplateEngine;
 
 /**
@@ -69,6 +71,9 @@ public class RDBMSDataConnectorFactoryBean extends BaseDataConnectorFactoryBean
     /** Length of time, in milliseconds, elements are cached. */
     private long cacheElementTtl;
 
+    /** Path of the file the results cache is persisted to, null if the cache is not persisted. */
+    private String cacheSnapshotFile;
+
 
     /** {@inheritDoc} */
     public Class getObjectType() {
@@ -237,6 +242,26 @@ public class RDBMSDataConnectorFactoryBean extends BaseDataConnectorFactoryBean
         cacheElementTtl = ttl;
     }
 
+    /**
+     * Gets the path of the file the results cache is persisted to.
+     * 
+     * @return path of the file the results cache is persisted to, null if the cache is not persisted
+     */
+    public String getCacheSnapshotFile() {
+        return cacheSnapshotFile;
+    }
+
+    /**
+     * Sets the path of the file the results cache is persisted to. The file holds the cached attribute values
+     * unencrypted; it is created readable only by its owner where the file system allows, and should be kept in a
+     * directory only the identity provider can access.
+     * 
+     * @param file path of the file the results cache is persisted to, null if the cache is not persisted
+     */
+    public void setCacheSnapshotFile(String file) {
+        cacheSnapshotFile = file;
+    }
+
     /**
      * Gets the maximum number of elements that will be cached.
      * 
@@ -302,6 +327,16 @@ public class RDBMSDataConnectorFactoryBean extends BaseDataConnectorFactoryBean
             }
         }
 
+        if (resultsCache != null && cacheSnapshotFile != null) {
+            connector.setCacheSnapshot(new ResultsCacheSnapshot(new File(cacheSnapshotFile)));
+            connector.restoreCacheSnapshot();
+        }
+
         return connector;
     }
+
+    /** {@inheritDoc} */
+    protected void destroyInstance(Object instance) throws Exception {
+        ((RDBMSDataConnector) instance).saveCacheSnapshot();
+    }
 }
\ No newline at end of file
@@ -88,6 +88,20 @@ public class StoredIDDataConnectorBeanDefinitionParser extends BaseDataConnector
         String salt = DatatypeHelper.safeTrimOrNullString(pluginConfig.getAttributeNS(null, "salt"));
         log.debug("Data connector {} salt: {}", pluginId, salt);
         pluginBuilder.addPropertyValue("salt", salt.getBytes());
+
+        if (pluginConfig.hasAttributeNS(null, "hashAlgorithm")) {
+            String hashAlgorithm = DatatypeHelper.safeTrimOrNullString(pluginConfig.getAttributeNS(null,
+                    "hashAlgorithm"));
+            log.debug("Data connector {} hash algorithm: {}", pluginId, hashAlgorithm);
+            pluginBuilder.addPropertyValue("hashAlgorithm", hashAlgorithm);
+        }
+
+        if (pluginConfig.hasAttributeNS(null, "utf8Encoding")) {
+            boolean utf8Encoding = XMLHelper.getAttributeValueAsBoolean(pluginConfig.getAttributeNodeNS(null,
+                    "utf8Encoding"));
+            log.debug("Data connector {} UTF-8 encoding: {}", pluginId, utf8Encoding);
+            pluginBuilder.addPropertyValue("utf8Encoding", utf8Encoding);
+        }
     }
 
     /**
@@ -17,8 +17,11 @@
 
 package edu.internet2.middleware.shibboleth.common.config.attribute.resolver.dataConnector;
 
+import java.nio.charset.Charset;
+
 import javax.sql.DataSource;
 
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.ComputedIDGenerator;
 import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.StoredIDDataConnector;
 
 /** Spring factory bean for {@link StoredIDDataConnector}s. */
@@ -39,6 +42,12 @@ public class StoredIDDataConnectorBeanFactory extends BaseDataConnectorFactoryBe
     /** Salt used when computing the ID. */
     private byte[] salt;
 
+    /** Hash algorithm used to compute the ID, null for the default. */
+    private String hashAlgorithm;
+
+    /** Whether the hashed strings are encoded as UTF-8 rather than in the platform's default character set. */
+    private boolean utf8Encoding;
+
     /** {@inheritDoc} */
     public Class getObjectType() {
         return StoredIDDataConnector.class;
@@ -134,11 +143,51 @@ public class StoredIDDataConnectorBeanFactory extends BaseDataConnectorFactoryBe
         this.salt = salt;
     }
 
+    /**
+     * Gets the hash algorithm used to compute the ID.
+     * 
+     * @return hash algorithm used to compute the ID, null for the default
+     */
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * Sets the hash algorithm used to compute the ID.
+     * 
+     * @param algorithm hash algorithm used to compute the ID, null for the default
+     */
+    public void setHashAlgorithm(String algorithm) {
+        hashAlgorithm = algorithm;
+    }
+
+    /**
+     * Gets whether the hashed strings are encoded as UTF-8 rather than in the platform's default character set.
+     * 
+     * @return whether the hashed strings are encoded as UTF-8
+     */
+    public boolean isUtf8Encoding() {
+        return utf8Encoding;
+    }
+
+    /**
+     * Sets whether the hashed strings are encoded as UTF-8 rather than in the platform's default character set.
+     * Enabling this changes the IDs computed for non-ASCII values on platforms whose default character set is not
+     * UTF-8.
+     * 
+     * @param utf8 whether the hashed strings are encoded as UTF-8
+     */
+    public void setUtf8Encoding(boolean utf8) {
+        utf8Encoding = utf8;
+    }
+
     /** {@inheritDoc} */
     protected Object createInstance() throws Exception {
         StoredIDDataConnector connector = new StoredIDDataConnector(getDatasource(), (int) (queryTimeout / 1000),
                 getGeneratedAttribute(), getSourceAttribute(), getSalt());
         populateDataConnector(connector);
+        connector.setIdGenerator(new ComputedIDGenerator(getHashAlgorithm(), getSalt(), 0,
+                isUtf8Encoding() ? Charset.forName("UTF-8") : null));
         return connector;
     }
 }
\ No newline at end of file
@@ -47,5 +47,10 @@ public class CryptoTransientPrincipalConnectorBeanDefinitionParser extends BaseP
 
         pluginBuilder.addPropertyReference("dataSealer", DatatypeHelper.safeTrimOrNullString(pluginConfig
                 .getAttributeNS(null, "dataSealerRef")));
+
+        if (pluginConfig.hasAttributeNS(null, "unwrapCacheSize")) {
+            pluginBuilder.addPropertyValue("unwrapCacheSize", Integer.parseInt(DatatypeHelper.safeTrim(pluginConfig
+                    .getAttributeNS(null, "unwrapCacheSize"))));
+        }
     }
 }
\ No newline at end of file
@@ -28,6 +28,9 @@ public class CryptoTransientPrincipalConnectorFactoryBean extends BasePrincipalC
     /** Object used to decrypt identifiers. */
     private DataSealer dataSealer;
 
+    /** Maximum number of unwrapped identifiers cached, 0 to disable caching. */
+    private int unwrapCacheSize;
+
     /** {@inheritDoc} */
     public Class<CryptoTransientPrincipalConnector> getObjectType() {
         return CryptoTransientPrincipalConnector.class;
@@ -51,10 +54,29 @@ public class CryptoTransientPrincipalConnectorFactoryBean extends BasePrincipalC
         dataSealer = sealer;
     }
 
+    /**
+     * Gets the maximum number of unwrapped identifiers cached.
+     * 
+     * @return maximum number of unwrapped identifiers cached, 0 if caching is disabled
+     */
+    public int getUnwrapCacheSize() {
+        return unwrapCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of unwrapped identifiers cached.
+     * 
+     * @param size maximum number of unwrapped identifiers cached, 0 to disable caching
+     */
+    public void setUnwrapCacheSize(int size) {
+        unwrapCacheSize = size;
+    }
+
     /** {@inheritDoc} */
     protected Object createInstance() throws Exception {
         CryptoTransientPrincipalConnector connector = new CryptoTransientPrincipalConnector(getDataSealer());
         populatePrincipalConnector(connector);
+        connector.setUnwrapCacheSize(unwrapCacheSize);
 
         return connector;
     }
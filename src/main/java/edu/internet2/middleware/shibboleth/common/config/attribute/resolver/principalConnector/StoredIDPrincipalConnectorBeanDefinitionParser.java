@@ -29,6 +29,8 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.w3c.dom.Element;
 
+import edu.internet2.middleware.shibboleth.common.config.SpringConfigurationUtils;
+
 /**
  * Spring bean definition for transient principal connectors.
  */
@@ -56,5 +58,16 @@ public class StoredIDPrincipalConnectorBeanDefinitionParser extends BasePrincipa
                     "noResultIsError"));
         }
         pluginBuilder.addPropertyValue("noResultIsError", noResultsIsError);
+
+        if (pluginConfig.hasAttributeNS(null, "cacheSize")) {
+            pluginBuilder.addPropertyValue("cacheSize", Integer.parseInt(DatatypeHelper.safeTrim(pluginConfig
+                    .getAttributeNS(null, "cacheSize"))));
+        }
+
+        if (pluginConfig.hasAttributeNS(null, "cacheLifetime")) {
+            pluginBuilder.addPropertyValue("cacheLifetime", SpringConfigurationUtils.parseDurationToMillis(
+                    "cacheLifetime on principal connector " + pluginId, pluginConfig.getAttributeNS(null,
+                            "cacheLifetime"), 0));
+        }
     }
 }
\ No newline at end of file
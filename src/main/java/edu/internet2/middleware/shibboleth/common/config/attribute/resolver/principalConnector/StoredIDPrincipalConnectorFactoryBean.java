@@ -32,6 +32,12 @@ public class StoredIDPrincipalConnectorFactoryBean extends BasePrincipalConnecto
     /** Whether an empty result set is an error. */
     private boolean noResultsIsError;
 
+    /** Maximum number of active persistent IDs cached, 0 to disable caching, null if not configured. */
+    private Integer cacheSize;
+
+    /** Time, in milliseconds, a persistent ID may be resolved from the cache, null if not configured. */
+    private Long cacheLifetime;
+
     /** {@inheritDoc} */
     public Class getObjectType() {
         return StoredIDPrincipalConnector.class;
@@ -73,11 +79,55 @@ public class StoredIDPrincipalConnectorFactoryBean extends BasePrincipalConnecto
         idProducer = producer;
     }
 
+    /**
+     * Gets the maximum number of active persistent IDs cached.
+     * 
+     * @return maximum number of active persistent IDs cached, 0 if caching is disabled, null if not configured
+     */
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the maximum number of active persistent IDs cached. The cache belongs to the ID store shared with the data
+     * connector, so the store is left as it is if this is not configured.
+     * 
+     * @param size maximum number of active persistent IDs cached, 0 to disable caching, null if not configured
+     */
+    public void setCacheSize(Integer size) {
+        cacheSize = size;
+    }
+
+    /**
+     * Gets the time, in milliseconds, a persistent ID may be resolved from the cache.
+     * 
+     * @return time a persistent ID may be resolved from the cache, 0 for no limit, null if not configured
+     */
+    public Long getCacheLifetime() {
+        return cacheLifetime;
+    }
+
+    /**
+     * Sets the time, in milliseconds, a persistent ID may be resolved from the cache. The store is left as it is if
+     * this is not configured.
+     * 
+     * @param lifetime time a persistent ID may be resolved from the cache, 0 for no limit, null if not configured
+     */
+    public void setCacheLifetime(Long lifetime) {
+        cacheLifetime = lifetime;
+    }
+
     /** {@inheritDoc} */
     protected Object createInstance() throws Exception {
         StoredIDPrincipalConnector connector = new StoredIDPrincipalConnector(getIdProducer());
         populatePrincipalConnector(connector);
         connector.setNoResultIsError(isNoResultIsError());
+        if (getCacheLifetime() != null) {
+            connector.setCacheLifetime(getCacheLifetime());
+        }
+        if (getCacheSize() != null) {
+            connector.setCacheSize(getCacheSize());
+        }
 
         return connector;
     }
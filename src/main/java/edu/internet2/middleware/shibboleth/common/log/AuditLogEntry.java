@@ -24,6 +24,7 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.opensaml.xml.util.DatatypeHelper;
 
 /**
  * Represents an auditable event in the system.
@@ -185,6 +186,15 @@ public class AuditLogEntry {
         return responseId;
     }
 
+    /**
+     * Sets the time the event occurred.
+     * 
+     * @param time time the event occurred
+     */
+    public void setAuditEventTime(DateTime time) {
+        auditEventTime = time;
+    }
+
     /**
      * Sets the provider (message issuer) ID.
      * 
@@ -325,4 +335,61 @@ public class AuditLogEntry {
 
         return entryString.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses an audit log entry from the string produced by {@link #toString()}.
+     * 
+     * @param entry the string form of the audit log entry
+     * 
+     * @return the parsed entry or null if the string is not an audit log entry
+     */
+    public static AuditLogEntry parse(String entry) {
+        if (entry == null) {
+            return null;
+        }
+
+        String[] fields = entry.trim().split("\\|", -1);
+        if (fields.length < 11) {
+            return null;
+        }
+
+        AuditLogEntry parsedEntry = new AuditLogEntry();
+        try {
+            parsedEntry.setAuditEventTime(dateFormatter.withZone(DateTimeZone.UTC).parseDateTime(fields[0]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        parsedEntry.setRequestBinding(parseField(fields[1]));
+        parsedEntry.setRequestId(parseField(fields[2]));
+        parsedEntry.setRelyingPartyId(parseField(fields[3]));
+        parsedEntry.setMessageProfile(parseField(fields[4]));
+        parsedEntry.setAssertingPartyId(parseField(fields[5]));
+        parsedEntry.setResponseBinding(parseField(fields[6]));
+        parsedEntry.setResponseId(parseField(fields[7]));
+        parsedEntry.setPrincipalName(parseField(fields[8]));
+        parsedEntry.setPrincipalAuthenticationMethod(parseField(fields[9]));
+        for (String attribute : fields[10].split(",")) {
+            if (!DatatypeHelper.isEmpty(attribute)) {
+                parsedEntry.getReleasedAttributes().add(attribute);
+            }
+        }
+
+        return parsedEntry;
+    }
+
+    /**
+     * Converts a field of the string form of an entry back to its value. Fields which {@link #toString()} writes
+     * without a null check contain the string "null" when the value was not set.
+     * 
+     * @param field the field to convert
+     * 
+     * @return the field value, or null if the field is empty or "null"
+     */
+    private static String parseField(String field) {
+        String value = DatatypeHelper.safeTrimOrNullString(field);
+        if ("null".equals(value)) {
+            return null;
+        }
+        return value;
+    }
+}
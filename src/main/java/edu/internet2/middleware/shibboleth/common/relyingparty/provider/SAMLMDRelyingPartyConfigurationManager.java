@@ -22,11 +22,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Lock;
 
-import org.opensaml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml2.metadata.provider.BaseMetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
@@ -36,6 +36,7 @@ import edu.internet2.middleware.shibboleth.common.config.relyingparty.RelyingPar
 import edu.internet2.middleware.shibboleth.common.relyingparty.RelyingPartyConfiguration;
 import edu.internet2.middleware.shibboleth.common.relyingparty.RelyingPartyConfigurationManager;
 import edu.internet2.middleware.shibboleth.common.service.ServiceException;
+import edu.internet2.middleware.shibboleth.common.util.EntityGroupMembership;
 
 /**
  * A relying party manager that uses SAML metadata to lookup information about requested entities. Relying party
@@ -48,6 +49,9 @@ import edu.internet2.middleware.shibboleth.common.service.ServiceException;
  * ancestral entities descriptors are then looked up, in ascending order (i.e. the parent entities descriptor, then the
  * grandparent, great-grandparent, etc.), with the first configuration found being returned. If no configuration is
  * found once the top of the tree is reached the default configuration is returned.
+ * 
+ * The entity group names are computed in to the shared {@link EntityGroupMembership} when metadata is loaded and each
+ * time it is refreshed. The observer doing so is removed from the previous metadata provider when a reload replaces it.
  */
 public class SAMLMDRelyingPartyConfigurationManager extends BaseReloadableService implements
         RelyingPartyConfigurationManager {
@@ -67,10 +71,14 @@ public class SAMLMDRelyingPartyConfigurationManager extends BaseReloadableServic
     /** Registered relying party configurations. */
     private HashMap<String, RelyingPartyConfiguration> rpConfigs;
 
+    /** Observer registered with the metadata provider to compute the entity groups of refreshed metadata. */
+    private final EntityGroupIndexer entityGroupIndexer;
+
     /** Constructor. */
     public SAMLMDRelyingPartyConfigurationManager() {
         super();
         rpConfigs = new HashMap<String, RelyingPartyConfiguration>();
+        entityGroupIndexer = new EntityGroupIndexer();
     }
 
     /** {@inheritDoc} */
@@ -139,14 +147,13 @@ public class SAMLMDRelyingPartyConfigurationManager extends BaseReloadableServic
                 } else {
                     EntityDescriptor entityDescriptor = metadataProvider.getEntityDescriptor(relyingPartyEntityID);
                     if (entityDescriptor != null) {
-                        EntitiesDescriptor entityGroup = (EntitiesDescriptor) entityDescriptor.getParent();
-                        while (entityGroup != null) {
-                            if (rpConfigs.containsKey(entityGroup.getName())) {
+                        for (String entityGroup : EntityGroupMembership.getInstance().getGroups(entityDescriptor)
+                                .getNames()) {
+                            if (rpConfigs.containsKey(entityGroup)) {
                                 log.debug("Relying party configuration found for {} as member of metadata group {}",
-                                        relyingPartyEntityID, entityGroup.getName());
-                                return rpConfigs.get(entityGroup.getName());
+                                        relyingPartyEntityID, entityGroup);
+                                return rpConfigs.get(entityGroup);
                             }
-                            entityGroup = (EntitiesDescriptor) entityGroup.getParent();
                         }
                     }
                 }
@@ -167,6 +174,50 @@ public class SAMLMDRelyingPartyConfigurationManager extends BaseReloadableServic
         return rpConfigs;
     }
 
+    /**
+     * Computes the entity group names of the metadata of a provider.
+     * 
+     * @param provider the metadata provider, may be null
+     */
+    protected void indexEntityGroups(MetadataProvider provider) {
+        if (provider == null) {
+            return;
+        }
+
+        try {
+            EntityGroupMembership.getInstance().index(provider.getMetadata());
+        } catch (MetadataProviderException e) {
+            log.warn("Unable to compute entity groups of the loaded metadata, they will be computed on first use", e);
+        }
+    }
+
+    /**
+     * Registers the entity group indexer with a metadata provider, if the provider is observable and the indexer is
+     * not already registered.
+     * 
+     * @param provider the metadata provider, may be null
+     */
+    protected void addEntityGroupIndexer(MetadataProvider provider) {
+        if (provider instanceof ObservableMetadataProvider) {
+            List<ObservableMetadataProvider.Observer> observers = ((ObservableMetadataProvider) provider)
+                    .getObservers();
+            if (!observers.contains(entityGroupIndexer)) {
+                observers.add(entityGroupIndexer);
+            }
+        }
+    }
+
+    /**
+     * Removes the entity group indexer from a metadata provider, if the provider is observable.
+     * 
+     * @param provider the metadata provider, may be null
+     */
+    protected void removeEntityGroupIndexer(MetadataProvider provider) {
+        if (provider instanceof ObservableMetadataProvider) {
+            ((ObservableMetadataProvider) provider).getObservers().remove(entityGroupIndexer);
+        }
+    }
+
     /** {@inheritDoc} */
     protected void onNewContextCreated(ApplicationContext newServiceContext) throws ServiceException {
         MetadataProvider oldProvider = metadataProvider;
@@ -176,6 +227,8 @@ public class SAMLMDRelyingPartyConfigurationManager extends BaseReloadableServic
             RelyingPartyGroup newRpGroup = (RelyingPartyGroup) newServiceContext.getBean(relyingPartyGroupNames[0]);
 
             metadataProvider = newRpGroup.getMetadataProvider();
+            addEntityGroupIndexer(metadataProvider);
+            indexEntityGroups(metadataProvider);
 
             HashMap<String, RelyingPartyConfiguration> newRpConfigs = new HashMap<String, RelyingPartyConfiguration>();
             List<RelyingPartyConfiguration> loadRpConfigs = newRpGroup.getRelyingParties();
@@ -189,13 +242,28 @@ public class SAMLMDRelyingPartyConfigurationManager extends BaseReloadableServic
             newRpConfigs.put(DEFAULT_RP_NAME, newRpGroup.getDefaultRP());
             rpConfigs = newRpConfigs;
             
-            if(oldProvider instanceof BaseMetadataProvider){
-                ((BaseMetadataProvider)oldProvider).destroy();
+            if (oldProvider != metadataProvider) {
+                removeEntityGroupIndexer(oldProvider);
+                if(oldProvider instanceof BaseMetadataProvider){
+                    ((BaseMetadataProvider)oldProvider).destroy();
+                }
             }
         } catch (Exception e) {
+            if (metadataProvider != oldProvider) {
+                removeEntityGroupIndexer(metadataProvider);
+            }
             metadataProvider = oldProvider;
             rpConfigs = oldRpConfigs;
             throw new ServiceException(getId() + " configuration is not valid, retaining old configuration", e);
         }
     }
-}
\ No newline at end of file
+
+    /** An observer that computes the entity group names of refreshed metadata. */
+    protected class EntityGroupIndexer implements ObservableMetadataProvider.Observer {
+
+        /** {@inheritDoc} */
+        public void onEvent(MetadataProvider provider) {
+            indexEntityGroups(provider);
+        }
+    }
+}
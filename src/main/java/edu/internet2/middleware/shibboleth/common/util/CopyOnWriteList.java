@@ -0,0 +1,128 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A list which reads through to a shared list until it is first modified, at which point it takes a private copy of
+ * the shared list and operates on that from then on. The shared list is never modified.
+ * 
+ * This allows many short-lived objects to expose the same, rarely modified, data as a mutable list without each of
+ * them copying it. Unlike {@link java.util.concurrent.CopyOnWriteArrayList} this class copies at most once and is not
+ * safe for concurrent modification.
+ * 
+ * @param <ElementType> object type of the elements
+ */
+@NotThreadSafe
+public class CopyOnWriteList<ElementType> extends AbstractList<ElementType> {
+
+    /** Shared list read from until this list is modified. */
+    private final List<ElementType> shared;
+
+    /** Private copy of the shared list, null until this list is modified. */
+    private List<ElementType> copy;
+
+    /**
+     * Constructor.
+     * 
+     * @param sharedList list read from until this list is modified, must not be modified while this list reads through
+     *            to it
+     */
+    public CopyOnWriteList(List<ElementType> sharedList) {
+        if (sharedList == null) {
+            throw new IllegalArgumentException("Shared list may not be null");
+        }
+        shared = sharedList;
+    }
+
+    /**
+     * Gets whether this list has taken a private copy of the shared list.
+     * 
+     * @return true if this list has been modified and so no longer reads through to the shared list
+     */
+    public boolean isCopied() {
+        return copy != null;
+    }
+
+    /** {@inheritDoc} */
+    public ElementType get(int index) {
+        return read().get(index);
+    }
+
+    /** {@inheritDoc} */
+    public int size() {
+        return read().size();
+    }
+
+    /** {@inheritDoc} */
+    public ElementType set(int index, ElementType element) {
+        return write().set(index, element);
+    }
+
+    /** {@inheritDoc} */
+    public void add(int index, ElementType element) {
+        write().add(index, element);
+        modCount++;
+    }
+
+    /** {@inheritDoc} */
+    public ElementType remove(int index) {
+        ElementType removed = write().remove(index);
+        modCount++;
+        return removed;
+    }
+
+    /** {@inheritDoc} */
+    public void clear() {
+        if (copy == null) {
+            copy = new ArrayList<ElementType>();
+        } else {
+            copy.clear();
+        }
+        modCount++;
+    }
+
+    /**
+     * Gets the list reads are currently served from.
+     * 
+     * @return the private copy if there is one, otherwise the shared list
+     */
+    private List<ElementType> read() {
+        if (copy != null) {
+            return copy;
+        }
+        return shared;
+    }
+
+    /**
+     * Gets the private copy of the shared list, taking it if necessary.
+     * 
+     * @return the private copy of the shared list
+     */
+    private List<ElementType> write() {
+        if (copy == null) {
+            copy = new ArrayList<ElementType>(shared);
+        }
+        return copy;
+    }
+}
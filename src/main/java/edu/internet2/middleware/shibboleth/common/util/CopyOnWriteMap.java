@@ -0,0 +1,202 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A map which reads through to a shared map until it is first modified, at which point it takes a private copy of
+ * the shared map and operates on that from then on. The shared map is never modified.
+ * 
+ * This allows many short-lived objects to expose the same, rarely modified, data as a mutable map without each of
+ * them copying it. Unlike the java.util.concurrent copy-on-write collections this class copies at most once and is not
+ * safe for concurrent modification.
+ * 
+ * @param <KeyType> object type of the keys
+ * @param <ValueType> object type of the values
+ */
+@NotThreadSafe
+public class CopyOnWriteMap<KeyType, ValueType> extends AbstractMap<KeyType, ValueType> {
+
+    /** Shared map read from until this map is modified. */
+    private final Map<KeyType, ValueType> shared;
+
+    /** Private copy of the shared map, null until this map is modified. */
+    private Map<KeyType, ValueType> copy;
+
+    /**
+     * Constructor.
+     * 
+     * @param sharedMap map read from until this map is modified, must not be modified while this map reads through
+     *            to it
+     */
+    public CopyOnWriteMap(Map<KeyType, ValueType> sharedMap) {
+        if (sharedMap == null) {
+            throw new IllegalArgumentException("Shared map may not be null");
+        }
+        shared = sharedMap;
+    }
+
+    /**
+     * Gets whether this map has taken a private copy of the shared map.
+     * 
+     * @return true if this map has been modified and so no longer reads through to the shared map
+     */
+    public boolean isCopied() {
+        return copy != null;
+    }
+
+    /** {@inheritDoc} */
+    public int size() {
+        return read().size();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isEmpty() {
+        return read().isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    public boolean containsKey(Object key) {
+        return read().containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    public boolean containsValue(Object value) {
+        return read().containsValue(value);
+    }
+
+    /** {@inheritDoc} */
+    public ValueType get(Object key) {
+        return read().get(key);
+    }
+
+    /** {@inheritDoc} */
+    public ValueType put(KeyType key, ValueType value) {
+        return write().put(key, value);
+    }
+
+    /** {@inheritDoc} */
+    public void putAll(Map<? extends KeyType, ? extends ValueType> map) {
+        if (!map.isEmpty()) {
+            write().putAll(map);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public ValueType remove(Object key) {
+        if (copy == null && !shared.containsKey(key)) {
+            return null;
+        }
+        return write().remove(key);
+    }
+
+    /** {@inheritDoc} */
+    public void clear() {
+        if (copy == null) {
+            copy = new HashMap<KeyType, ValueType>();
+        } else {
+            copy.clear();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Set<Map.Entry<KeyType, ValueType>> entrySet() {
+        if (copy != null) {
+            return copy.entrySet();
+        }
+        return new SharedEntrySet();
+    }
+
+    /**
+     * Gets the map reads are currently served from.
+     * 
+     * @return the private copy if there is one, otherwise the shared map
+     */
+    private Map<KeyType, ValueType> read() {
+        if (copy != null) {
+            return copy;
+        }
+        return shared;
+    }
+
+    /**
+     * Gets the private copy of the shared map, taking it if necessary.
+     * 
+     * @return the private copy of the shared map
+     */
+    private Map<KeyType, ValueType> write() {
+        if (copy == null) {
+            copy = new HashMap<KeyType, ValueType>(shared);
+        }
+        return copy;
+    }
+
+    /** View of the entries of the shared map whose modifications are applied to the private copy. */
+    private class SharedEntrySet extends AbstractSet<Map.Entry<KeyType, ValueType>> {
+
+        /** {@inheritDoc} */
+        public int size() {
+            return CopyOnWriteMap.this.size();
+        }
+
+        /** {@inheritDoc} */
+        public Iterator<Map.Entry<KeyType, ValueType>> iterator() {
+            final Iterator<Map.Entry<KeyType, ValueType>> entries = shared.entrySet().iterator();
+            return new Iterator<Map.Entry<KeyType, ValueType>>() {
+
+                /** Key of the last entry returned. */
+                private KeyType lastKey;
+
+                /** {@inheritDoc} */
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                /** {@inheritDoc} */
+                public Map.Entry<KeyType, ValueType> next() {
+                    Map.Entry<KeyType, ValueType> entry = entries.next();
+                    lastKey = entry.getKey();
+                    return new SimpleEntry<KeyType, ValueType>(entry) {
+
+                        /** Serial version UID. */
+                        private static final long serialVersionUID = 2870470580467282745L;
+
+                        /** {@inheritDoc} */
+                        public ValueType setValue(ValueType value) {
+                            super.setValue(value);
+                            return write().put(getKey(), value);
+                        }
+                    };
+                }
+
+                /** {@inheritDoc} */
+                public void remove() {
+                    write().remove(lastKey);
+                }
+            };
+        }
+    }
+}
@@ -29,12 +29,17 @@ import java.security.KeyException;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 
 import org.slf4j.Logger;
@@ -43,12 +48,35 @@ import org.slf4j.LoggerFactory;
 /**
  * Applies a MAC to time-limited information and encrypts with a symmetric key.
  * 
+ * Data is wrapped in an authenticated encryption format, AES-GCM by default, which carries the version of the key used
+ * to wrap it so that keys may be rotated without invalidating data wrapped with a previous key. Data wrapped in the
+ * original MAC-then-encrypt format is still accepted by {@link #unwrap(String)}, and may still be produced by setting
+ * {@link #setLegacyWrapFormat(boolean)}, while deployments migrate to the new format.
+ * 
+ * Cipher and MAC instances are created once per thread and reused, so instances of this class may be used
+ * concurrently.
+ * 
  * @author Scott Cantor
  * @author Walter Hoehn
  * @author Derek Morr
  */
 public class DataSealer {
 
+    /** Prefix of data wrapped in the authenticated encryption format; never part of a Base32 encoding. */
+    public static final String AEAD_FORMAT_PREFIX = "1";
+
+    /** Length, in bytes, of the authenticated encryption format header holding the key version. */
+    private static final int AEAD_HEADER_LENGTH = 4;
+
+    /** Length, in bytes, of the GCM nonce. */
+    private static final int GCM_NONCE_LENGTH = 12;
+
+    /** Length, in bytes, of the GCM authentication tag. */
+    private static final int GCM_TAG_LENGTH = 16;
+
+    /** Length, in bytes, of an encoded long. */
+    private static final int LONG_LENGTH = 8;
+
     /** Class logger. */
     private static Logger log = LoggerFactory.getLogger(DataSealer.class.getName());
 
@@ -88,6 +116,30 @@ public class DataSealer {
     /** MAC algorithm to use. */
     private String macAlgorithm = "HmacSHA256";
 
+    /** Authenticated encryption algorithm to use. */
+    private String aeadAlgorithm = "AES/GCM/NoPadding";
+
+    /** Version of the encryption key, recorded in wrapped data. */
+    private int cipherKeyVersion;
+
+    /** Keystore aliases of previous encryption keys, indexed by key version. */
+    private Map<Integer, String> previousCipherKeyAliases;
+
+    /** Previous encryption keys, indexed by key version, accepted when unwrapping data. */
+    private Map<Integer, SecretKey> previousCipherKeys;
+
+    /** Whether data is wrapped in the original MAC-then-encrypt format. */
+    private boolean legacyWrapFormat;
+
+    /** Per-thread authenticated encryption cipher. */
+    private final ThreadLocal<Cipher> threadAeadCipher = new ThreadLocal<Cipher>();
+
+    /** Per-thread encryption cipher used by the original format. */
+    private final ThreadLocal<Cipher> threadCipher = new ThreadLocal<Cipher>();
+
+    /** Per-thread MAC used by the original format. */
+    private final ThreadLocal<Mac> threadMac = new ThreadLocal<Mac>();
+
     /**
      * Initialization method used after setting all relevant bean properties.
      * @throws DataSealerException if initialization fails
@@ -312,23 +364,251 @@ public class DataSealer {
     }
 
     /**
-     * Decrypts and verifies an encrypted bundle of MAC'd data, and returns it.
+     * Returns the authenticated encryption algorithm.
+     * @return the authenticated encryption algorithm
+     */
+    public String getAeadAlgorithm() {
+        return aeadAlgorithm;
+    }
+
+    /**
+     * Sets the authenticated encryption algorithm. The algorithm must accept a {@link GCMParameterSpec}.
+     * @param alg the authenticated encryption algorithm to set
+     */
+    public void setAeadAlgorithm(String alg) {
+        aeadAlgorithm = alg;
+    }
+
+    /**
+     * Returns the version of the encryption key.
+     * @return the version of the encryption key
+     */
+    public int getCipherKeyVersion() {
+        return cipherKeyVersion;
+    }
+
+    /**
+     * Sets the version of the encryption key. The version is recorded in wrapped data and must be changed whenever the
+     * encryption key is changed.
+     * @param version the version of the encryption key
+     */
+    public void setCipherKeyVersion(int version) {
+        cipherKeyVersion = version;
+    }
+
+    /**
+     * Returns the keystore aliases of previous encryption keys, indexed by key version.
+     * @return the keystore aliases of previous encryption keys
+     */
+    public Map<Integer, String> getPreviousCipherKeyAliases() {
+        return previousCipherKeyAliases;
+    }
+
+    /**
+     * Sets the keystore aliases of previous encryption keys, indexed by key version. The keys are protected by the
+     * encryption key password.
+     * @param aliases the keystore aliases of previous encryption keys
+     */
+    public void setPreviousCipherKeyAliases(Map<Integer, String> aliases) {
+        previousCipherKeyAliases = aliases;
+    }
+
+    /**
+     * Returns the previous encryption keys, indexed by key version.
+     * @return the previous encryption keys
+     */
+    public Map<Integer, SecretKey> getPreviousCipherKeys() {
+        return previousCipherKeys;
+    }
+
+    /**
+     * Sets the previous encryption keys, indexed by key version, which are accepted when unwrapping data.
+     * @param keys the previous encryption keys
+     */
+    public void setPreviousCipherKeys(Map<Integer, SecretKey> keys) {
+        previousCipherKeys = keys;
+    }
+
+    /**
+     * Returns whether data is wrapped in the original MAC-then-encrypt format.
+     * @return whether data is wrapped in the original format
+     */
+    public boolean isLegacyWrapFormat() {
+        return legacyWrapFormat;
+    }
+
+    /**
+     * Sets whether data is wrapped in the original MAC-then-encrypt format, for use while other deployments sharing
+     * the keys are unable to read the new format.
+     * @param legacy whether data is wrapped in the original format
+     */
+    public void setLegacyWrapFormat(boolean legacy) {
+        legacyWrapFormat = legacy;
+    }
+
+    /**
+     * Decrypts and verifies an encrypted bundle of MAC'd data, and returns it. Data in both the authenticated
+     * encryption format and the original format is accepted.
      * 
      * @param wrapped the encoded blob
      * @return the decrypted data, if it's unexpired
      * @throws DataSealerException if the data cannot be unwrapped and verified
      */
     public String unwrap(String wrapped) throws DataSealerException {
+        return unwrapData(wrapped).getData();
+    }
+
+    /**
+     * Decrypts and verifies an encrypted bundle of MAC'd data, and returns it along with its expiration time. Data in
+     * both the authenticated encryption format and the original format is accepted.
+     * 
+     * @param wrapped the encoded blob
+     * @return the decrypted data and its expiration time, if it's unexpired
+     * @throws DataSealerException if the data cannot be unwrapped and verified
+     */
+    public UnwrappedData unwrapData(String wrapped) throws DataSealerException {
+        if (wrapped == null) {
+            throw new DataSealerException("Wrapped data may not be null.");
+        }
 
         try {
-            byte[] in = Base32.decode(wrapped);
+            if (wrapped.startsWith(AEAD_FORMAT_PREFIX)) {
+                return unwrapAead(Base32.decode(wrapped.substring(AEAD_FORMAT_PREFIX.length())));
+            }
+            return unwrapLegacy(Base32.decode(wrapped));
+        } catch (IllegalArgumentException e) {
+            log.warn("Wrapped data is not validly encoded: {}", e.getMessage());
+            throw new DataSealerException("Wrapped data is not validly encoded.", e);
+        }
+    }
 
-            Cipher cipher = Cipher.getInstance(cipherAlgorithm);
+    /**
+     * Encodes data into a cryptographic blob. Unless the original format is selected, the blob is [ver][nonce][ct]
+     * where: [ver] = the version of the encryption key; 4 bytes, Big-endian [nonce] = the GCM nonce; 12 bytes [ct] =
+     * the authenticated encryption, with [ver] as additional authenticated data, of [exp][data]; [exp] = expiration
+     * time of the data; 8 bytes, Big-endian [data] = the UTF-8 encoded data. The payload is small, so it is not
+     * compressed. The blob is Base32-encoded and prefixed with {@value #AEAD_FORMAT_PREFIX}, a character which never
+     * occurs in Base32, to distinguish it from the original format.
+     * 
+     * @param data the data to wrap
+     * @param exp expiration time
+     * @return the encoded blob
+     * @throws DataSealerException if the wrapping operation fails
+     */
+    public String wrap(String data, long exp) throws DataSealerException {
+
+        if (data == null) {
+            throw new IllegalArgumentException("Data must be supplied for the wrapping operation.");
+        }
+
+        if (legacyWrapFormat) {
+            return wrapLegacy(data, exp);
+        }
+
+        try {
+            byte[] dataBytes = data.getBytes("UTF-8");
+            byte[] nonce = new byte[GCM_NONCE_LENGTH];
+            random.nextBytes(nonce);
+
+            Cipher cipher = getAeadCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, cipherKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, nonce));
+
+            byte[] handleBytes = new byte[AEAD_HEADER_LENGTH + GCM_NONCE_LENGTH
+                    + cipher.getOutputSize(LONG_LENGTH + dataBytes.length)];
+            writeInt(handleBytes, 0, cipherKeyVersion);
+            cipher.updateAAD(handleBytes, 0, AEAD_HEADER_LENGTH);
+            System.arraycopy(nonce, 0, handleBytes, AEAD_HEADER_LENGTH, GCM_NONCE_LENGTH);
+
+            byte[] plaintext = new byte[LONG_LENGTH + dataBytes.length];
+            writeLong(plaintext, 0, exp);
+            System.arraycopy(dataBytes, 0, plaintext, LONG_LENGTH, dataBytes.length);
+            cipher.doFinal(plaintext, 0, plaintext.length, handleBytes, AEAD_HEADER_LENGTH + GCM_NONCE_LENGTH);
+
+            return AEAD_FORMAT_PREFIX + Base32.encode(handleBytes);
+
+        } catch (GeneralSecurityException e) {
+            log.error(e.getMessage());
+            throw new DataSealerException("Caught GeneralSecurityException wrapping data.", e);
+        } catch (IOException e) {
+            log.error(e.getMessage());
+            throw new DataSealerException("Caught IOException wrapping data.", e);
+        }
+    }
+
+    /**
+     * Decrypts and verifies data in the authenticated encryption format.
+     * 
+     * @param in the decoded blob, without its format prefix
+     * @return the decrypted data and its expiration time, if it's unexpired
+     * @throws DataSealerException if the data cannot be unwrapped and verified
+     */
+    private UnwrappedData unwrapAead(byte[] in) throws DataSealerException {
+        if (in.length < AEAD_HEADER_LENGTH + GCM_NONCE_LENGTH + GCM_TAG_LENGTH + LONG_LENGTH) {
+            log.error("Wrapped data is malformed (not enough bytes).");
+            throw new DataSealerException("Wrapped data is malformed (not enough bytes).");
+        }
+
+        int keyVersion = readInt(in, 0);
+        SecretKey key;
+        if (keyVersion == cipherKeyVersion) {
+            key = cipherKey;
+        } else if (previousCipherKeys != null) {
+            key = previousCipherKeys.get(keyVersion);
+        } else {
+            key = null;
+        }
+        if (key == null) {
+            log.warn("Wrapped data was encrypted with unknown key version {}.", keyVersion);
+            throw new DataSealerException("Wrapped data was encrypted with unknown key version " + keyVersion + ".");
+        }
+
+        byte[] plaintext;
+        try {
+            Cipher cipher = getAeadCipher();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, in, AEAD_HEADER_LENGTH,
+                    GCM_NONCE_LENGTH));
+            cipher.updateAAD(in, 0, AEAD_HEADER_LENGTH);
+            plaintext = cipher.doFinal(in, AEAD_HEADER_LENGTH + GCM_NONCE_LENGTH, in.length - AEAD_HEADER_LENGTH
+                    - GCM_NONCE_LENGTH);
+        } catch (AEADBadTagException e) {
+            log.warn("Unwrapped data failed integrity check.");
+            throw new DataSealerException("Unwrapped data failed integrity check.", e);
+        } catch (GeneralSecurityException e) {
+            log.error(e.getMessage());
+            throw new DataSealerException("Caught GeneralSecurityException unwrapping data.", e);
+        }
+
+        long decodedExpirationTime = readLong(plaintext, 0);
+        if (System.currentTimeMillis() > decodedExpirationTime) {
+            log.info("Unwrapped data has expired.");
+            throw new DataExpiredException("Unwrapped data has expired.");
+        }
+
+        try {
+            log.debug("Unwrapped data verified.");
+            return new UnwrappedData(new String(plaintext, LONG_LENGTH, plaintext.length - LONG_LENGTH, "UTF-8"),
+                    decodedExpirationTime);
+        } catch (IOException e) {
+            log.error(e.getMessage());
+            throw new DataSealerException("Caught IOException unwrapping data.", e);
+        }
+    }
+
+    /**
+     * Decrypts and verifies data in the original MAC-then-encrypt format.
+     * 
+     * @param in the decoded blob
+     * @return the decrypted data and its expiration time, if it's unexpired
+     * @throws DataSealerException if the data cannot be unwrapped and verified
+     */
+    private UnwrappedData unwrapLegacy(byte[] in) throws DataSealerException {
+
+        try {
+            Cipher cipher = getCipher();
             int ivSize = cipher.getBlockSize();
             byte[] iv = new byte[ivSize];
 
-            Mac mac = Mac.getInstance(macAlgorithm);
-            mac.init(macKey);
+            Mac mac = getMac();
             int macSize = mac.getMacLength();
 
             if (in.length < ivSize) {
@@ -373,7 +653,7 @@ public class DataSealer {
             }
 
             log.debug("Unwrapped data verified.");
-            return decodedData;
+            return new UnwrappedData(decodedData, decodedExpirationTime);
 
         } catch (GeneralSecurityException e) {
             log.error(e.getMessage());
@@ -385,28 +665,23 @@ public class DataSealer {
     }
 
     /**
-     * Encodes data into a cryptographic blob: [IV][HMAC][exp][data] where: [IV] = the Initialization Vector; byte-array
-     * [HMAC] = the HMAC; byte array [exp] = expiration time of the data; 8 bytes; Big-endian [data] = the principal; a
-     * UTF-8-encoded string The bytes are then GZIP'd. The IV is pre-pended to this byte stream, and the result is
-     * Base32-encoded. We don't need to encode the IV or MAC's lengths. They can be obtained from Cipher.getBlockSize()
-     * and Mac.getMacLength(), respectively.
+     * Encodes data into a cryptographic blob in the original format: [IV][HMAC][exp][data] where: [IV] = the
+     * Initialization Vector; byte-array [HMAC] = the HMAC; byte array [exp] = expiration time of the data; 8 bytes;
+     * Big-endian [data] = the principal; a UTF-8-encoded string The bytes are then GZIP'd. The IV is pre-pended to
+     * this byte stream, and the result is Base32-encoded. We don't need to encode the IV or MAC's lengths. They can be
+     * obtained from Cipher.getBlockSize() and Mac.getMacLength(), respectively.
      * 
      * @param data the data to wrap
      * @param exp expiration time
      * @return the encoded blob
      * @throws DataSealerException if the wrapping operation fails
      */
-    public String wrap(String data, long exp) throws DataSealerException {
-
-        if (data == null) {
-            throw new IllegalArgumentException("Data must be supplied for the wrapping operation.");
-        }
+    private String wrapLegacy(String data, long exp) throws DataSealerException {
 
         try {
-            Mac mac = Mac.getInstance(macAlgorithm);
-            mac.init(macKey);
+            Mac mac = getMac();
 
-            Cipher cipher = Cipher.getInstance(cipherAlgorithm);
+            Cipher cipher = getCipher();
             byte[] iv = new byte[cipher.getBlockSize()];
             random.nextBytes(iv);
             IvParameterSpec ivSpec = new IvParameterSpec(iv);
@@ -446,6 +721,49 @@ public class DataSealer {
 
     }
 
+    /**
+     * Gets this thread's authenticated encryption cipher, creating it if necessary.
+     * @return the authenticated encryption cipher
+     * @throws GeneralSecurityException if the cipher can not be created
+     */
+    private Cipher getAeadCipher() throws GeneralSecurityException {
+        Cipher cipher = threadAeadCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(aeadAlgorithm);
+            threadAeadCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Gets this thread's encryption cipher for the original format, creating it if necessary.
+     * @return the encryption cipher
+     * @throws GeneralSecurityException if the cipher can not be created
+     */
+    private Cipher getCipher() throws GeneralSecurityException {
+        Cipher cipher = threadCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(cipherAlgorithm);
+            threadCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Gets this thread's MAC for the original format, creating and initializing it if necessary.
+     * @return the MAC, initialized with the MAC key
+     * @throws GeneralSecurityException if the MAC can not be created
+     */
+    private Mac getMac() throws GeneralSecurityException {
+        Mac mac = threadMac.get();
+        if (mac == null) {
+            mac = Mac.getInstance(macAlgorithm);
+            mac.init(macKey);
+            threadMac.set(mac);
+        }
+        return mac;
+    }
+
     /**
      * Run a test over the configured bean properties.
      * @throws DataSealerException if the test fails
@@ -488,6 +806,66 @@ public class DataSealer {
             log.error("Message Authentication test unsuccessful.");
             throw new DataSealerException("Message Authentication test unsuccessful.");
         }
+
+        if (!legacyWrapFormat) {
+            decrypted = unwrap(wrap("test", System.currentTimeMillis() + 60000));
+            if (!"test".equals(decrypted)) {
+                log.error("Authenticated encryption round trip test unsuccessful. Unwrapped text did not match.");
+                throw new DataSealerException("Authenticated encryption round trip test unsuccessful.");
+            }
+        }
+    }
+
+    /**
+     * Writes an int in to a byte array, most significant byte first.
+     * @param bytes array to write to
+     * @param offset offset at which to write the value
+     * @param value value to write
+     */
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[offset + 3 - i] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    /**
+     * Reads an int, most significant byte first, from a byte array.
+     * @param bytes array to read from
+     * @param offset offset at which to read the value
+     * @return the value read
+     */
+    private static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * Writes a long in to a byte array, most significant byte first.
+     * @param bytes array to write to
+     * @param offset offset at which to write the value
+     * @param value value to write
+     */
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + 7 - i] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    /**
+     * Reads a long, most significant byte first, from a byte array.
+     * @param bytes array to read from
+     * @param offset offset at which to read the value
+     * @return the value read
+     */
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
     }
 
     /**
@@ -560,6 +938,86 @@ public class DataSealer {
                 macKey = cipherKey;
             }
         }
+
+        if (previousCipherKeyAliases != null && !previousCipherKeyAliases.isEmpty()) {
+            KeyStore ks = KeyStore.getInstance(keystoreType);
+            FileInputStream fis = null;
+            try {
+                fis = new FileInputStream(keystorePath);
+                ks.load(fis, keystorePassword.toCharArray());
+            } finally {
+                if (fis != null) {
+                    fis.close();
+                }
+            }
+
+            Map<Integer, SecretKey> keys = new HashMap<Integer, SecretKey>();
+            if (previousCipherKeys != null) {
+                keys.putAll(previousCipherKeys);
+            }
+
+            Key loadedKey;
+            for (Map.Entry<Integer, String> alias : previousCipherKeyAliases.entrySet()) {
+                loadedKey = ks.getKey(alias.getValue(), cipherKeyPassword.toCharArray());
+                if (!(loadedKey instanceof SecretKey)) {
+                    log.error("Cipher key {} is not a symmetric key.", alias.getValue());
+                    throw new KeyException("Cipher key " + alias.getValue() + " is not a symmetric key.");
+                }
+                keys.put(alias.getKey(), (SecretKey) loadedKey);
+            }
+            previousCipherKeys = keys;
+        }
+
+        if (previousCipherKeys == null) {
+            previousCipherKeys = Collections.emptyMap();
+        }
+    }
+
+    /** Data recovered from an encrypted bundle, along with its expiration time. */
+    public static class UnwrappedData {
+
+        /** The unwrapped data. */
+        private final String data;
+
+        /** Expiration time of the data, in milliseconds since the epoch. */
+        private final long expiration;
+
+        /**
+         * Constructor.
+         * 
+         * @param unwrapped the unwrapped data
+         * @param exp expiration time of the data
+         */
+        public UnwrappedData(String unwrapped, long exp) {
+            data = unwrapped;
+            expiration = exp;
+        }
+
+        /**
+         * Gets the unwrapped data.
+         * 
+         * @return the unwrapped data
+         */
+        public String getData() {
+            return data;
+        }
+
+        /**
+         * Gets the expiration time of the data, in milliseconds since the epoch.
+         * 
+         * @return expiration time of the data
+         */
+        public long getExpiration() {
+            return expiration;
+        }
+
+        /**
+         * Gets whether the data has expired.
+         * 
+         * @return true if the expiration time of the data has passed
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expiration;
+        }
     }
-    
 }
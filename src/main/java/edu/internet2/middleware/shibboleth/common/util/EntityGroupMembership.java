@@ -0,0 +1,166 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.opensaml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.xml.XMLObject;
+
+/**
+ * The names of the entity groups, the EntitiesDescriptors, which enclose metadata entities.
+ * 
+ * Group names are computed once per EntitiesDescriptor and shared by all the entities, and nested groups, within it.
+ * They may be computed for a whole metadata tree when it is loaded, see {@link #index(XMLObject)}, and are otherwise
+ * computed the first time an entity in the group is looked up. Computed names live as long as the EntitiesDescriptor
+ * they belong to, so a metadata refresh, which creates new descriptors, discards the names of the old metadata.
+ */
+@ThreadSafe
+public class EntityGroupMembership {
+
+    /** Membership shared by the relying party configuration manager and the attribute filtering engine. */
+    private static final EntityGroupMembership INSTANCE = new EntityGroupMembership();
+
+    /** Groups of an entity not within any EntitiesDescriptor. */
+    private static final EntityGroups NO_GROUPS = new EntityGroups(Collections.<String> emptyList());
+
+    /** Groups enclosing the entities of a group, including the group itself, by group. */
+    private final Map<EntitiesDescriptor, EntityGroups> groups;
+
+    /** Constructor. */
+    public EntityGroupMembership() {
+        groups = Collections.synchronizedMap(new WeakHashMap<EntitiesDescriptor, EntityGroups>());
+    }
+
+    /**
+     * Gets the shared membership instance.
+     * 
+     * @return the shared membership instance
+     */
+    public static EntityGroupMembership getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the groups enclosing an entity.
+     * 
+     * @param entity the entity
+     * 
+     * @return groups enclosing the entity, never null
+     */
+    public EntityGroups getGroups(EntityDescriptor entity) {
+        return getGroups(entity.getParent());
+    }
+
+    /**
+     * Computes the groups of all the entities in a metadata tree.
+     * 
+     * @param metadata root of the metadata tree, may be null
+     */
+    public void index(XMLObject metadata) {
+        if (!(metadata instanceof EntitiesDescriptor)) {
+            return;
+        }
+
+        EntitiesDescriptor group = (EntitiesDescriptor) metadata;
+        getGroups(group);
+        if (group.getEntitiesDescriptors() != null) {
+            for (EntitiesDescriptor childGroup : group.getEntitiesDescriptors()) {
+                index(childGroup);
+            }
+        }
+    }
+
+    /**
+     * Gets the groups enclosing the children of a metadata element.
+     * 
+     * @param parent the parent of the entity or group, may be null
+     * 
+     * @return the groups enclosing the children of the element
+     */
+    private EntityGroups getGroups(XMLObject parent) {
+        if (!(parent instanceof EntitiesDescriptor)) {
+            return NO_GROUPS;
+        }
+
+        EntitiesDescriptor group = (EntitiesDescriptor) parent;
+        EntityGroups entityGroups = groups.get(group);
+        if (entityGroups == null) {
+            EntityGroups parentGroups = getGroups(group.getParent());
+            if (group.getName() == null) {
+                entityGroups = parentGroups;
+            } else {
+                List<String> names = new ArrayList<String>(parentGroups.getNames().size() + 1);
+                names.add(group.getName());
+                names.addAll(parentGroups.getNames());
+                entityGroups = new EntityGroups(names);
+            }
+            groups.put(group, entityGroups);
+        }
+        return entityGroups;
+    }
+
+    /** The names of the groups enclosing an entity. */
+    public static class EntityGroups {
+
+        /** Group names, nearest group first. */
+        private final List<String> names;
+
+        /** Group names. */
+        private final Set<String> nameSet;
+
+        /**
+         * Constructor.
+         * 
+         * @param groupNames group names, nearest group first
+         */
+        public EntityGroups(List<String> groupNames) {
+            names = Collections.unmodifiableList(groupNames);
+            nameSet = new HashSet<String>(groupNames);
+        }
+
+        /**
+         * Gets the group names, starting with the nearest enclosing group.
+         * 
+         * @return group names, nearest group first
+         */
+        public List<String> getNames() {
+            return names;
+        }
+
+        /**
+         * Checks whether the entity is within a given group.
+         * 
+         * @param groupName name of the group
+         * 
+         * @return true if the entity is within the group, false if not
+         */
+        public boolean contains(String groupName) {
+            return nameSet.contains(groupName);
+        }
+    }
+}
@@ -0,0 +1,741 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils.MillisProvider;
+import org.opensaml.util.storage.ExpiringObject;
+import org.opensaml.util.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded {@link StorageService} which evicts expired entries in the background.
+ * 
+ * Values which implement {@link ExpiringObject} are indexed by their expiration time in a hierarchical timing wheel.
+ * A background task, scheduled on the given {@link Timer}, advances the wheel once per sweep interval and removes the
+ * entries whose expiration time has passed. Inserting, removing and expiring an entry are constant time operations,
+ * independent of the number of entries in the store, so sweeping does not scan the store. Expired values are never
+ * returned from {@link #get(String, Object)}, nor reported by {@link #contains(String, Object)}, even if they have not
+ * yet been swept. Whether an entry has expired is
+ * determined from the value's expiration time and the service's clock, which is the system clock unless another one is
+ * given.
+ * 
+ * Each partition may also be limited to a maximum number of entries. When a partition is full, the least recently
+ * used entry in it is evicted to make room for a new one. The entries of a partition which hold the same value object,
+ * such as a transient ID stored under both its token and its principal, are used and evicted together, so that one of
+ * the keys of a value is never evicted while another is still in use.
+ * 
+ * @param <KeyType> object type of the keys
+ * @param <ValueType> object type of the values
+ */
+@ThreadSafe
+public class ExpiringMapBasedStorageService<KeyType, ValueType> implements StorageService<KeyType, ValueType> {
+
+    /** Number of bits of the tick count used to index the slots of one level of the timing wheel. */
+    private static final int WHEEL_BITS = 6;
+
+    /** Number of slots in each level of the timing wheel. */
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    /** Number of levels in the timing wheel. */
+    private static final int WHEEL_LEVELS = 4;
+
+    /** Number of ticks spanned by the whole timing wheel. */
+    private static final long WHEEL_SPAN = 1L << (WHEEL_BITS * WHEEL_LEVELS);
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(ExpiringMapBasedStorageService.class);
+
+    /** Backing map, partition name to partition entries held in least recently used order. */
+    private final Map<String, LinkedHashMap<KeyType, StorageEntry>> store;
+
+    /** Partition name to, for each value stored in the partition, one of the entries holding it. */
+    private final Map<String, IdentityHashMap<ValueType, StorageEntry>> valueEntries;
+
+    /** Index of the entries with an expiration time. */
+    private final TimingWheel expirationIndex;
+
+    /** Length, in milliseconds, of one tick of the timing wheel. */
+    private final long sweepInterval;
+
+    /** Background task which sweeps expired entries. */
+    private final TimerTask sweeper;
+
+    /** Source of the current time. */
+    private final MillisProvider clock;
+
+    /** Maximum number of entries in a partition, 0 for no limit. */
+    private int maximumPartitionSize;
+
+    /** Number of entries in the store. */
+    private int size;
+
+    /** Number of entries removed because they expired. */
+    private long expirationCount;
+
+    /** Number of entries removed to keep a partition within its maximum size. */
+    private long evictionCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param taskTimer timer used to schedule the background sweeping of expired entries
+     * @param interval time, in milliseconds, between sweeps of expired entries
+     */
+    public ExpiringMapBasedStorageService(Timer taskTimer, long interval) {
+        this(taskTimer, interval, new MillisProvider() {
+            public long getMillis() {
+                return System.currentTimeMillis();
+            }
+        });
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param taskTimer timer used to schedule the background sweeping of expired entries
+     * @param interval time, in milliseconds, between sweeps of expired entries
+     * @param timeSource source of the current time against which entries are expired
+     */
+    public ExpiringMapBasedStorageService(Timer taskTimer, long interval, MillisProvider timeSource) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Sweep interval must be greater than 0");
+        }
+        if (timeSource == null) {
+            throw new IllegalArgumentException("Time source may not be null");
+        }
+
+        store = new LinkedHashMap<String, LinkedHashMap<KeyType, StorageEntry>>();
+        valueEntries = new LinkedHashMap<String, IdentityHashMap<ValueType, StorageEntry>>();
+        sweepInterval = interval;
+        clock = timeSource;
+        expirationIndex = new TimingWheel(clock.getMillis() / sweepInterval);
+
+        sweeper = new TimerTask() {
+            public void run() {
+                sweep();
+            }
+        };
+        taskTimer.schedule(sweeper, sweepInterval, sweepInterval);
+    }
+
+    /**
+     * Gets the maximum number of entries in a partition.
+     * 
+     * @return maximum number of entries in a partition, 0 for no limit
+     */
+    public synchronized int getMaximumPartitionSize() {
+        return maximumPartitionSize;
+    }
+
+    /**
+     * Sets the maximum number of entries in a partition. Partitions which are already larger than the new maximum are
+     * reduced to it the next time an entry is added to them.
+     * 
+     * @param maximum maximum number of entries in a partition, 0 for no limit
+     */
+    public synchronized void setMaximumPartitionSize(int maximum) {
+        if (maximum < 0) {
+            throw new IllegalArgumentException("Maximum partition size may not be negative");
+        }
+        maximumPartitionSize = maximum;
+    }
+
+    /**
+     * Gets the time, in milliseconds, between sweeps of expired entries.
+     * 
+     * @return time between sweeps of expired entries
+     */
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    /**
+     * Gets the number of entries in the store, including expired entries which have not yet been swept.
+     * 
+     * @return number of entries in the store
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of entries in a partition, including expired entries which have not yet been swept.
+     * 
+     * @param partition the partition
+     * 
+     * @return number of entries in the partition
+     */
+    public synchronized int getSize(String partition) {
+        Map<KeyType, StorageEntry> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return 0;
+        }
+        return partitionMap.size();
+    }
+
+    /**
+     * Gets the number of entries which have been removed from the store because they expired.
+     * 
+     * @return number of entries removed because they expired
+     */
+    public synchronized long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Gets the number of entries which have been removed from the store to keep a partition within its maximum size.
+     * 
+     * @return number of entries removed to keep a partition within its maximum size
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean contains(String partition, Object key) {
+        if (partition == null || key == null) {
+            return false;
+        }
+
+        Map<KeyType, StorageEntry> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return false;
+        }
+
+        StorageEntry entry = partitionMap.get(key);
+        if (entry == null) {
+            return false;
+        }
+
+        if (isExpired(entry.value)) {
+            removeEntry(entry);
+            expirationCount++;
+            return false;
+        }
+
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized ValueType get(String partition, Object key) {
+        if (partition == null || key == null) {
+            return null;
+        }
+
+        Map<KeyType, StorageEntry> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return null;
+        }
+
+        StorageEntry entry = partitionMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (isExpired(entry.value)) {
+            removeEntry(entry);
+            expirationCount++;
+            return null;
+        }
+
+        for (StorageEntry sibling = entry.nextSibling; sibling != entry; sibling = sibling.nextSibling) {
+            // keep the other keys of the value as recently used as this one
+            partitionMap.get(sibling.key);
+        }
+
+        return entry.value;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Iterator<KeyType> getKeys(String partition) {
+        if (partition == null) {
+            return null;
+        }
+
+        Map<KeyType, StorageEntry> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return null;
+        }
+
+        return new PartitionEntryIterator(partition, new ArrayList<KeyType>(partitionMap.keySet()));
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Iterator<String> getPartitions() {
+        return new PartitionIterator(new ArrayList<String>(store.keySet()));
+    }
+
+    /** {@inheritDoc} */
+    public synchronized ValueType put(String partition, KeyType key, ValueType value) {
+        if (partition == null || key == null) {
+            return null;
+        }
+
+        LinkedHashMap<KeyType, StorageEntry> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            partitionMap = new LinkedHashMap<KeyType, StorageEntry>(16, 0.75f, true);
+            store.put(partition, partitionMap);
+        }
+
+        StorageEntry entry = new StorageEntry(partition, key, value);
+        StorageEntry replacedEntry = partitionMap.put(key, entry);
+        if (replacedEntry != null) {
+            expirationIndex.remove(replacedEntry);
+            unlinkSibling(replacedEntry);
+        } else {
+            size++;
+        }
+        linkSibling(entry);
+
+        if (value instanceof ExpiringObject) {
+            DateTime expiration = ((ExpiringObject) value).getExpirationTime();
+            if (expiration != null) {
+                // round up so that an entry is never swept before it has expired
+                entry.expirationTick = (expiration.getMillis() + sweepInterval - 1) / sweepInterval;
+                expirationIndex.add(entry);
+            }
+        }
+
+        if (maximumPartitionSize > 0) {
+            StorageEntry evictedEntry;
+            while (partitionMap.size() > maximumPartitionSize) {
+                evictedEntry = partitionMap.values().iterator().next();
+                if (evictedEntry.value != null && evictedEntry.value == value) {
+                    // only the keys of the value just added remain
+                    break;
+                }
+                while (evictedEntry.nextSibling != evictedEntry) {
+                    removeEntry(evictedEntry.nextSibling);
+                    evictionCount++;
+                }
+                removeEntry(evictedEntry);
+                evictionCount++;
+            }
+        }
+
+        if (replacedEntry == null) {
+            return null;
+        }
+        return replacedEntry.value;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized ValueType remove(String partition, KeyType key) {
+        if (partition == null || key == null) {
+            return null;
+        }
+
+        Map<KeyType, StorageEntry> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return null;
+        }
+
+        StorageEntry entry = partitionMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        removeEntry(entry);
+        return entry.value;
+    }
+
+    /** Stops the background sweeping of expired entries. */
+    public void destroy() {
+        sweeper.cancel();
+    }
+
+    /** Removes all the entries whose expiration time has passed. */
+    protected void sweep() {
+        long now = clock.getMillis() / sweepInterval;
+        int storeSize;
+        long expired;
+        synchronized (this) {
+            long previousExpirationCount = expirationCount;
+            expirationIndex.advance(now);
+            storeSize = size;
+            expired = expirationCount - previousExpirationCount;
+        }
+        log.debug("Swept {} expired entries from storage service, {} entries remain", expired, storeSize);
+    }
+
+    /**
+     * Checks whether a value has expired according to the service's clock.
+     * 
+     * @param value the value to check
+     * 
+     * @return true if the value is an {@link ExpiringObject} whose expiration time has passed
+     */
+    private boolean isExpired(ValueType value) {
+        if (!(value instanceof ExpiringObject)) {
+            return false;
+        }
+
+        DateTime expiration = ((ExpiringObject) value).getExpirationTime();
+        return expiration != null && expiration.getMillis() < clock.getMillis();
+    }
+
+    /**
+     * Removes an entry from its partition and from the expiration index. The caller must hold the lock on this
+     * service.
+     * 
+     * @param entry the entry to remove
+     */
+    private void removeEntry(StorageEntry entry) {
+        Map<KeyType, StorageEntry> partitionMap = store.get(entry.partition);
+        if (partitionMap != null && partitionMap.get(entry.key) == entry) {
+            partitionMap.remove(entry.key);
+            unlinkSibling(entry);
+            size--;
+        }
+        expirationIndex.remove(entry);
+    }
+
+    /**
+     * Adds an entry to the ring of the entries in its partition holding the same value. The caller must hold the lock
+     * on this service.
+     * 
+     * @param entry the entry to add
+     */
+    private void linkSibling(StorageEntry entry) {
+        if (entry.value == null) {
+            return;
+        }
+
+        IdentityHashMap<ValueType, StorageEntry> partitionValues = valueEntries.get(entry.partition);
+        if (partitionValues == null) {
+            partitionValues = new IdentityHashMap<ValueType, StorageEntry>();
+            valueEntries.put(entry.partition, partitionValues);
+        }
+
+        StorageEntry sibling = partitionValues.get(entry.value);
+        if (sibling == null) {
+            partitionValues.put(entry.value, entry);
+        } else {
+            entry.nextSibling = sibling.nextSibling;
+            sibling.nextSibling = entry;
+        }
+    }
+
+    /**
+     * Removes an entry from the ring of the entries in its partition holding the same value. The caller must hold the
+     * lock on this service.
+     * 
+     * @param entry the entry to remove
+     */
+    private void unlinkSibling(StorageEntry entry) {
+        IdentityHashMap<ValueType, StorageEntry> partitionValues = valueEntries.get(entry.partition);
+        if (entry.value == null || partitionValues == null) {
+            return;
+        }
+
+        if (entry.nextSibling == entry) {
+            if (partitionValues.get(entry.value) == entry) {
+                partitionValues.remove(entry.value);
+                if (partitionValues.isEmpty()) {
+                    valueEntries.remove(entry.partition);
+                }
+            }
+            return;
+        }
+
+        StorageEntry previousSibling = entry.nextSibling;
+        while (previousSibling.nextSibling != entry) {
+            previousSibling = previousSibling.nextSibling;
+        }
+        previousSibling.nextSibling = entry.nextSibling;
+        if (partitionValues.get(entry.value) == entry) {
+            partitionValues.put(entry.value, entry.nextSibling);
+        }
+        entry.nextSibling = entry;
+    }
+
+    /** An entry in the store, which is also a node of a doubly linked timing wheel slot list. */
+    private class StorageEntry {
+
+        /** Partition the entry is stored in. */
+        private final String partition;
+
+        /** Key of the entry. */
+        private final KeyType key;
+
+        /** Value of the entry. */
+        private final ValueType value;
+
+        /** Tick at which the entry expires. */
+        private long expirationTick;
+
+        /** Previous entry in the timing wheel slot, null if the entry is not in the wheel. */
+        private StorageEntry previous;
+
+        /** Next entry in the ring of the entries of the partition holding the same value, this entry if none. */
+        private StorageEntry nextSibling;
+
+        /** Next entry in the timing wheel slot, null if the entry is not in the wheel. */
+        private StorageEntry next;
+
+        /**
+         * Constructor.
+         * 
+         * @param entryPartition partition the entry is stored in
+         * @param entryKey key of the entry
+         * @param entryValue value of the entry
+         */
+        public StorageEntry(String entryPartition, KeyType entryKey, ValueType entryValue) {
+            partition = entryPartition;
+            key = entryKey;
+            value = entryValue;
+            nextSibling = this;
+        }
+    }
+
+    /**
+     * A hierarchical timing wheel. Level 0 has one slot per tick. Each slot of level n spans all the slots of level n -
+     * 1, and its entries are cascaded down to the lower levels when the wheel reaches the start of the slot's span.
+     * Entries in a level 0 slot expire when the wheel reaches the slot.
+     */
+    private class TimingWheel {
+
+        /** Slots of the wheel, indexed by level and slot; each slot is a circular list headed by a sentinel. */
+        private final StorageEntry[][] slots;
+
+        /** Tick the wheel has been advanced to. */
+        private long currentTick;
+
+        /**
+         * Constructor.
+         * 
+         * @param startTick tick at which the wheel starts
+         */
+        @SuppressWarnings("unchecked")
+        public TimingWheel(long startTick) {
+            currentTick = startTick;
+            slots = (StorageEntry[][]) new ExpiringMapBasedStorageService<?, ?>.StorageEntry[WHEEL_LEVELS][WHEEL_SIZE];
+            StorageEntry sentinel;
+            for (int level = 0; level < WHEEL_LEVELS; level++) {
+                for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                    sentinel = new StorageEntry(null, null, null);
+                    sentinel.previous = sentinel;
+                    sentinel.next = sentinel;
+                    slots[level][slot] = sentinel;
+                }
+            }
+        }
+
+        /**
+         * Adds an entry to the slot of the wheel matching its expiration tick.
+         * 
+         * @param entry entry to add
+         */
+        public void add(StorageEntry entry) {
+            long tick = Math.max(entry.expirationTick, currentTick + 1);
+            long delta = tick - currentTick;
+            if (delta >= WHEEL_SPAN) {
+                // revisited, and re-added, when the wheel gets closer to the expiration time
+                tick = currentTick + WHEEL_SPAN - 1;
+                delta = WHEEL_SPAN - 1;
+            }
+
+            int level = 0;
+            while (delta >= 1L << (WHEEL_BITS * (level + 1))) {
+                level++;
+            }
+
+            StorageEntry sentinel = slots[level][(int) (tick >>> (WHEEL_BITS * level)) & (WHEEL_SIZE - 1)];
+            entry.previous = sentinel.previous;
+            entry.next = sentinel;
+            sentinel.previous.next = entry;
+            sentinel.previous = entry;
+        }
+
+        /**
+         * Removes an entry from the wheel if it is in it.
+         * 
+         * @param entry entry to remove
+         */
+        public void remove(StorageEntry entry) {
+            if (entry.next == null) {
+                return;
+            }
+
+            entry.previous.next = entry.next;
+            entry.next.previous = entry.previous;
+            entry.previous = null;
+            entry.next = null;
+        }
+
+        /**
+         * Advances the wheel to the given tick, removing from the store all the entries which expire on or before it.
+         * 
+         * @param tick tick to advance the wheel to
+         */
+        public void advance(long tick) {
+            List<StorageEntry> cascaded = new ArrayList<StorageEntry>();
+            while (currentTick < tick) {
+                currentTick++;
+
+                for (int level = WHEEL_LEVELS - 1; level > 0; level--) {
+                    if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                        drain(slots[level][(int) (currentTick >>> (WHEEL_BITS * level)) & (WHEEL_SIZE - 1)],
+                                cascaded);
+                        for (StorageEntry entry : cascaded) {
+                            if (entry.expirationTick <= currentTick) {
+                                expire(entry);
+                            } else {
+                                add(entry);
+                            }
+                        }
+                        cascaded.clear();
+                    }
+                }
+
+                drain(slots[0][(int) currentTick & (WHEEL_SIZE - 1)], cascaded);
+                for (StorageEntry entry : cascaded) {
+                    expire(entry);
+                }
+                cascaded.clear();
+            }
+        }
+
+        /**
+         * Removes all the entries from a slot.
+         * 
+         * @param sentinel sentinel heading the slot
+         * @param entries list to which the removed entries are added
+         */
+        private void drain(StorageEntry sentinel, List<StorageEntry> entries) {
+            StorageEntry entry = sentinel.next;
+            StorageEntry next;
+            while (entry != sentinel) {
+                next = entry.next;
+                entry.previous = null;
+                entry.next = null;
+                entries.add(entry);
+                entry = next;
+            }
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        /**
+         * Removes an expired entry from the store.
+         * 
+         * @param entry the expired entry
+         */
+        private void expire(StorageEntry entry) {
+            removeEntry(entry);
+            expirationCount++;
+        }
+    }
+
+    /** An iterator over a snapshot of the partitions of the storage service. */
+    private class PartitionIterator implements Iterator<String> {
+
+        /** Iterator over the partition names. */
+        private final Iterator<String> partitionItr;
+
+        /** Current partition. */
+        private String currentPartition;
+
+        /**
+         * Constructor.
+         * 
+         * @param partitions snapshot of the partition names
+         */
+        public PartitionIterator(List<String> partitions) {
+            partitionItr = partitions.iterator();
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            return partitionItr.hasNext();
+        }
+
+        /** {@inheritDoc} */
+        public String next() {
+            currentPartition = partitionItr.next();
+            return currentPartition;
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            synchronized (ExpiringMapBasedStorageService.this) {
+                Map<KeyType, StorageEntry> partitionMap = store.remove(currentPartition);
+                valueEntries.remove(currentPartition);
+                if (partitionMap != null) {
+                    for (StorageEntry entry : partitionMap.values()) {
+                        expirationIndex.remove(entry);
+                    }
+                    size -= partitionMap.size();
+                }
+            }
+        }
+    }
+
+    /** An iterator over a snapshot of the keys of a partition of the storage service. */
+    private class PartitionEntryIterator implements Iterator<KeyType> {
+
+        /** Partition on which we are operating. */
+        private final String partition;
+
+        /** Iterator over the keys within the partition. */
+        private final Iterator<KeyType> keysItr;
+
+        /** Current key within the iteration. */
+        private KeyType currentKey;
+
+        /**
+         * Constructor.
+         * 
+         * @param entryPartition partition upon which this iterator operates
+         * @param keys snapshot of the keys in the partition
+         */
+        public PartitionEntryIterator(String entryPartition, List<KeyType> keys) {
+            partition = entryPartition;
+            keysItr = keys.iterator();
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            return keysItr.hasNext();
+        }
+
+        /** {@inheritDoc} */
+        public KeyType next() {
+            currentKey = keysItr.next();
+            return currentKey;
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            ExpiringMapBasedStorageService.this.remove(partition, currentKey);
+        }
+    }
+}
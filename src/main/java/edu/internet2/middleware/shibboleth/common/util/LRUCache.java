@@ -0,0 +1,155 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A thread-safe, size bounded, in-memory cache which discards the least recently used entry when it is full.
+ * 
+ * This is meant for small, process local caches of values which are cheap to hold but expensive to compute. Caches
+ * which need to be shared, persisted, or managed by an administrator should use an ehcache {@link net.sf.ehcache.Cache}
+ * instead.
+ * 
+ * @param <KeyType> object type of the keys
+ * @param <ValueType> object type of the values
+ */
+@ThreadSafe
+public class LRUCache<KeyType, ValueType> {
+
+    /** Maximum number of entries held by the cache. */
+    private final int maxSize;
+
+    /** Backing map, kept in access order. */
+    private final LinkedHashMap<KeyType, ValueType> entries;
+
+    /** Number of lookups which found an entry. */
+    private long hits;
+
+    /** Number of lookups which did not find an entry. */
+    private long misses;
+
+    /**
+     * Constructor.
+     * 
+     * @param maximumSize maximum number of entries held by the cache, must be greater than 0
+     */
+    public LRUCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum cache size must be greater than 0");
+        }
+        maxSize = maximumSize;
+        entries = new LinkedHashMap<KeyType, ValueType>(16, 0.75f, true) {
+
+            /** Serial version UID. */
+            private static final long serialVersionUID = -5226547627787227562L;
+
+            /** {@inheritDoc} */
+            protected boolean removeEldestEntry(Map.Entry<KeyType, ValueType> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the maximum number of entries held by the cache.
+     * 
+     * @return maximum number of entries held by the cache
+     */
+    public int getMaximumSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the cached value for a key.
+     * 
+     * @param key key of the value
+     * 
+     * @return the cached value or null if the key is not in the cache
+     */
+    public synchronized ValueType get(KeyType key) {
+        ValueType value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used entry if the cache is full.
+     * 
+     * @param key key of the value
+     * @param value value to cache
+     * 
+     * @return the value previously cached under the key, or null
+     */
+    public synchronized ValueType put(KeyType key, ValueType value) {
+        if (key == null || value == null) {
+            return null;
+        }
+        return entries.put(key, value);
+    }
+
+    /**
+     * Removes the cached value for a key.
+     * 
+     * @param key key of the value
+     * 
+     * @return the removed value, or null if the key was not in the cache
+     */
+    public synchronized ValueType remove(KeyType key) {
+        return entries.remove(key);
+    }
+
+    /** Removes all entries from the cache. */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of entries currently in the cache.
+     * 
+     * @return number of entries currently in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups which found a cached value.
+     * 
+     * @return number of lookups which found a cached value
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups which did not find a cached value.
+     * 
+     * @return number of lookups which did not find a cached value
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
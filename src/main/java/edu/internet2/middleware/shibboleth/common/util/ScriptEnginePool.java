@@ -0,0 +1,467 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of JSR-223 script engines, each with its own compiled copy of a single script and a reusable script
+ * context.
+ * 
+ * Most script engines are not safe for concurrent use, and those that are usually serialize on internal locks, so each
+ * {@link PooledScript} is used by at most one thread at a time. Engines are created lazily, up to the maximum pool
+ * size, and callers block while all engines are in use.
+ * 
+ * The pool also records the number of script executions and their latency, and may enforce an execution time limit.
+ * Timed scripts run on the pool's own executor, which has no more threads than the pool has engines. Scripts which
+ * exceed the limit are interrupted and their engine is discarded rather than returned to the pool. Most script engines
+ * ignore interruption, so a script which exceeded the limit keeps counting against the pool size until it actually
+ * completes; a runaway script therefore never causes more scripts to run at once than the pool size allows.
+ */
+@ThreadSafe
+public class ScriptEnginePool {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(ScriptEnginePool.class);
+
+    /** Scripting language. */
+    private final String scriptLanguage;
+
+    /** Script executed by the engines. */
+    private final String script;
+
+    /** Maximum time, in milliseconds, a script may run, 0 or less for no limit. */
+    private final long executionTimeout;
+
+    /** Idle engines. */
+    private final BlockingQueue<PooledScript> idleScripts;
+
+    /** Permits for engines which may be checked out of the pool. */
+    private final Semaphore permits;
+
+    /** Number of completed script executions. */
+    private final AtomicLong executionCount;
+
+    /** Total time, in nanoseconds, spent executing scripts. */
+    private final AtomicLong totalExecutionTime;
+
+    /** Longest time, in nanoseconds, spent executing a script. */
+    private final AtomicLong maxExecutionTime;
+
+    /** Number of script executions which exceeded the execution time limit. */
+    private final AtomicLong timeoutCount;
+
+    /** Executor used to run scripts which have an execution time limit, null if there is no limit. */
+    private final ThreadPoolExecutor timedExecutor;
+
+    /**
+     * Constructor. One engine is created immediately so that an unsupported language or a script which does not
+     * compile is detected at configuration time.
+     * 
+     * @param language JSR-223 name of the scripting language
+     * @param newScript script executed by the engines
+     * @param maxSize maximum number of engines, must be greater than 0
+     * @param timeout maximum time, in milliseconds, a script may run, 0 or less for no limit
+     * 
+     * @throws ScriptException thrown if no engine is available for the language or the script can not be compiled
+     */
+    public ScriptEnginePool(String language, String newScript, int maxSize, long timeout) throws ScriptException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum script engine pool size must be greater than 0");
+        }
+
+        scriptLanguage = language;
+        script = newScript;
+        executionTimeout = timeout;
+        idleScripts = new LinkedBlockingQueue<PooledScript>();
+        permits = new Semaphore(maxSize);
+        executionCount = new AtomicLong();
+        totalExecutionTime = new AtomicLong();
+        maxExecutionTime = new AtomicLong();
+        timeoutCount = new AtomicLong();
+
+        if (executionTimeout > 0) {
+            timedExecutor = new ThreadPoolExecutor(maxSize, maxSize, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "shibboleth-script-executor");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            timedExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            timedExecutor = null;
+        }
+
+        idleScripts.add(createScript());
+    }
+
+    /**
+     * Gets the scripting language.
+     * 
+     * @return scripting language
+     */
+    public String getScriptLanguage() {
+        return scriptLanguage;
+    }
+
+    /**
+     * Gets the script executed by the engines.
+     * 
+     * @return script executed by the engines
+     */
+    public String getScript() {
+        return script;
+    }
+
+    /**
+     * Gets the number of completed script executions.
+     * 
+     * @return number of completed script executions
+     */
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    /**
+     * Gets the total time, in milliseconds, spent executing scripts.
+     * 
+     * @return total time spent executing scripts
+     */
+    public long getTotalExecutionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalExecutionTime.get());
+    }
+
+    /**
+     * Gets the longest time, in milliseconds, spent executing a script.
+     * 
+     * @return longest time spent executing a script
+     */
+    public long getMaxExecutionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxExecutionTime.get());
+    }
+
+    /**
+     * Gets the number of script executions which exceeded the execution time limit.
+     * 
+     * @return number of script executions which exceeded the execution time limit
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Checks a script out of the pool, waiting for one to become available if all are in use. The script must be
+     * handed back with {@link #release(PooledScript)} once the caller is done with it.
+     * 
+     * @return a script whose context has no bindings
+     * 
+     * @throws ScriptException thrown if the thread is interrupted while waiting or a new engine can not be created
+     */
+    public PooledScript borrow() throws ScriptException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptException("Interrupted while waiting for a script engine");
+        }
+
+        PooledScript pooledScript = idleScripts.poll();
+        if (pooledScript == null) {
+            try {
+                pooledScript = createScript();
+            } catch (ScriptException e) {
+                permits.release();
+                throw e;
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        return pooledScript;
+    }
+
+    /**
+     * Returns a script to the pool. Scripts which failed or timed out are discarded rather than reused. A script which
+     * timed out but is still running continues to count against the pool size until it completes.
+     * 
+     * @param pooledScript the script to return, may be null
+     */
+    public void release(PooledScript pooledScript) {
+        if (pooledScript == null) {
+            return;
+        }
+
+        if (pooledScript.reusable) {
+            pooledScript.reset();
+            idleScripts.add(pooledScript);
+        }
+        if (pooledScript.releasePermit()) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Executes a script checked out of this pool against its own context, enforcing the execution time limit if there
+     * is one.
+     * 
+     * @param pooledScript the script to execute
+     * 
+     * @return the result of the script
+     * 
+     * @throws ScriptException thrown if the script fails or exceeds the execution time limit
+     */
+    public Object eval(final PooledScript pooledScript) throws ScriptException {
+        long start = System.nanoTime();
+        try {
+            if (executionTimeout <= 0) {
+                return pooledScript.eval();
+            }
+
+            pooledScript.startTimedExecution();
+            Future<Object> result = timedExecutor.submit(new Callable<Object>() {
+                public Object call() throws ScriptException {
+                    if (!pooledScript.claimTimedExecution()) {
+                        return null;
+                    }
+                    try {
+                        return pooledScript.eval();
+                    } finally {
+                        pooledScript.finishTimedExecution();
+                    }
+                }
+            });
+            try {
+                return result.get(executionTimeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                abandon(pooledScript, result);
+                timeoutCount.incrementAndGet();
+                throw new ScriptException("Script did not complete within " + executionTimeout + "ms");
+            } catch (InterruptedException e) {
+                abandon(pooledScript, result);
+                Thread.currentThread().interrupt();
+                throw new ScriptException("Interrupted while waiting for script to complete");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ScriptException) {
+                    throw (ScriptException) e.getCause();
+                }
+                ScriptException se = new ScriptException("Script execution failed");
+                se.initCause(e.getCause());
+                throw se;
+            }
+        } catch (ScriptException e) {
+            pooledScript.reusable = false;
+            throw e;
+        } catch (RuntimeException e) {
+            pooledScript.reusable = false;
+            throw e;
+        } finally {
+            recordExecution(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gives up on a timed script execution. The execution is cancelled if it has not started and interrupted if it
+     * has; in the latter case the script keeps its pool permit until it completes.
+     * 
+     * @param pooledScript the script being executed
+     * @param result the pending result of the execution
+     */
+    private void abandon(PooledScript pooledScript, Future<Object> result) {
+        pooledScript.reusable = false;
+        result.cancel(true);
+        if (pooledScript.claimTimedExecution()) {
+            pooledScript.finishTimedExecution();
+        }
+    }
+
+    /**
+     * Records the time taken by a script execution.
+     * 
+     * @param elapsed time, in nanoseconds, taken by the script
+     */
+    private void recordExecution(long elapsed) {
+        executionCount.incrementAndGet();
+        totalExecutionTime.addAndGet(elapsed);
+
+        long max = maxExecutionTime.get();
+        while (elapsed > max && !maxExecutionTime.compareAndSet(max, elapsed)) {
+            max = maxExecutionTime.get();
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("{} script executed in {}ms", scriptLanguage, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    /**
+     * Creates a new engine and compiles the script with it, if the engine supports compilation.
+     * 
+     * @return the new script
+     * 
+     * @throws ScriptException thrown if no engine is available for the language or the script can not be compiled
+     */
+    private PooledScript createScript() throws ScriptException {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName(scriptLanguage);
+        if (engine == null) {
+            throw new ScriptException("Unable to create scripting engine for the language: " + scriptLanguage);
+        }
+
+        CompiledScript compiledScript = null;
+        if (engine instanceof Compilable) {
+            compiledScript = ((Compilable) engine).compile(script);
+        }
+
+        log.debug("Created new {} script engine", scriptLanguage);
+        return new PooledScript(engine, compiledScript);
+    }
+
+    /** A script engine, the script compiled by it, and a context reused across executions. */
+    public final class PooledScript {
+
+        /** Engine used to execute the script. */
+        private final ScriptEngine engine;
+
+        /** The compiled script, null if the engine does not support compilation. */
+        private final CompiledScript compiledScript;
+
+        /** Context reused across executions. */
+        private final SimpleScriptContext context;
+
+        /** Whether this script may be returned to the pool. */
+        private volatile boolean reusable;
+
+        /** Whether the current timed execution has been started by the executor or abandoned before it started. */
+        private final AtomicBoolean executionClaimed;
+
+        /** Whether a timed execution of this script is running. Guarded by this script. */
+        private boolean executing;
+
+        /** Whether the script was released while a timed execution was still running. Guarded by this script. */
+        private boolean releasePending;
+
+        /**
+         * Constructor.
+         * 
+         * @param scriptEngine engine used to execute the script
+         * @param compiled the compiled script, may be null
+         */
+        private PooledScript(ScriptEngine scriptEngine, CompiledScript compiled) {
+            engine = scriptEngine;
+            compiledScript = compiled;
+            context = new SimpleScriptContext();
+            reusable = true;
+            executionClaimed = new AtomicBoolean();
+        }
+
+        /**
+         * Gets the context the script is executed against. Its engine scope bindings are cleared each time the script
+         * is returned to the pool.
+         * 
+         * @return the context the script is executed against
+         */
+        public ScriptContext getContext() {
+            return context;
+        }
+
+        /**
+         * Executes the script against its context.
+         * 
+         * @return result of the script
+         * 
+         * @throws ScriptException thrown if the script fails
+         */
+        private Object eval() throws ScriptException {
+            if (compiledScript != null) {
+                return compiledScript.eval(context);
+            } else {
+                return engine.eval(script, context);
+            }
+        }
+
+        /** Clears all bindings added to the context. */
+        private void reset() {
+            context.getBindings(ScriptContext.ENGINE_SCOPE).clear();
+        }
+
+        /** Records that a timed execution of this script has been submitted. */
+        private synchronized void startTimedExecution() {
+            executionClaimed.set(false);
+            executing = true;
+        }
+
+        /**
+         * Claims the submitted timed execution, either to run it or to abandon it before it runs.
+         * 
+         * @return true if the caller claimed the execution, false if it was already claimed
+         */
+        private boolean claimTimedExecution() {
+            return executionClaimed.compareAndSet(false, true);
+        }
+
+        /** Records that the timed execution of this script has completed, returning its permit if it was released. */
+        private synchronized void finishTimedExecution() {
+            executing = false;
+            if (releasePending) {
+                releasePending = false;
+                log.debug("Abandoned {} script completed, returning its permit to the pool", scriptLanguage);
+                permits.release();
+            }
+        }
+
+        /**
+         * Records that this script has been released.
+         * 
+         * @return true if the script's permit may be returned to the pool now, false if it will be returned when the
+         *         running timed execution completes
+         */
+        private synchronized boolean releasePermit() {
+            if (executing) {
+                releasePending = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A bounded pool used to replace values with an equal, previously seen, instance so that repeated values share a single
+ * copy in memory.
+ * 
+ * The pool is a fixed size table indexed by the value's hash code. A value whose slot holds an equal value is replaced
+ * by that value, otherwise it takes over the slot. The pool therefore never grows, never locks and, as values which
+ * share a slot push each other out, works best when it is a few times larger than the number of distinct values that
+ * commonly recur.
+ * 
+ * @param <ValueType> object type of the values
+ */
+@ThreadSafe
+public class ValueInterner<ValueType> {
+
+    /** Pooled values, indexed by hash code. */
+    private final AtomicReferenceArray<ValueType> pool;
+
+    /** Mask applied to the hash code of a value to get its slot. */
+    private final int mask;
+
+    /**
+     * Constructor.
+     * 
+     * @param size minimum number of slots in the pool, rounded up to the next power of two
+     */
+    public ValueInterner(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be greater than 0");
+        }
+        if (size > 1 << 30) {
+            throw new IllegalArgumentException("Pool size may not be greater than " + (1 << 30));
+        }
+
+        int slots = Integer.highestOneBit(size);
+        if (slots < size) {
+            slots = slots << 1;
+        }
+        pool = new AtomicReferenceArray<ValueType>(slots);
+        mask = slots - 1;
+    }
+
+    /**
+     * Gets the number of slots in the pool.
+     * 
+     * @return number of slots in the pool
+     */
+    public int getSize() {
+        return pool.length();
+    }
+
+    /**
+     * Gets the pooled instance equal to the given value, pooling the value if there is none.
+     * 
+     * @param value value to intern, may be null
+     * 
+     * @return the pooled instance equal to the value, or the value itself
+     */
+    public ValueType intern(ValueType value) {
+        if (value == null) {
+            return null;
+        }
+
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        ValueType pooled = pool.get(slot);
+        if (pooled != null && pooled.equals(value)) {
+            return pooled;
+        }
+
+        pool.lazySet(slot, value);
+        return value;
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.script.ScriptEngineManager;
+import javax.xml.namespace.QName;
+
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.common.Extensions;
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeValue;
+import org.opensaml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.samlext.saml2mdattr.EntityAttributes;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObjectBuilderFactory;
+import org.opensaml.xml.schema.XSString;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AndMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AnyMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AttributeRequesterStringMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AttributeScopeStringMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AttributeValueRegexMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AttributeValueStringMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.OrMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.ScriptMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.saml.AttributeRequesterEntityAttributeExactMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.saml.AttributeRequesterInEntityGroupMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.ScopedAttributeValue;
+import edu.internet2.middleware.shibboleth.common.profile.provider.BaseSAMLProfileRequestContext;
+
+/**
+ * Benchmark of {@link ShibbolethAttributeFilteringEngine} against a generated policy set and synthetic metadata. Run
+ * the main method with the test classpath; it is not run as part of the unit tests.
+ * 
+ * The policy set mixes requester, entity group and entity attribute policy requirements with value string, value
+ * regex, scope and, if a JavaScript engine is available, script permit value rules. The requesters are drawn from a
+ * federation of nested, named and unnamed, entity groups whose entities carry entity category and assurance entity
+ * attributes. For each size of the multi-valued attribute the benchmark reports the filtering throughput and the bytes
+ * allocated per filtering request, including the copy of the unfiltered attributes each request is given.
+ * 
+ * Arguments, all optional, are the number of policies (default 200), the number of attribute rules per policy
+ * (default 5) and the number of seconds each size is warmed up and then measured for (default 2). The engine is
+ * configured from the system properties benchmark.compileToBytecode, benchmark.activePolicyCacheSize and
+ * benchmark.parallelValueThreshold, so that engine configurations can be compared. Logging is limited to warnings so
+ * that the cost of debug logging is not measured.
+ */
+public class ShibbolethAttributeFilteringEngineBenchmark {
+
+    /** Sizes of the multi-valued attribute. */
+    private static final int[] ATTRIBUTE_SIZES = { 1, 10, 100, 1000, 10000 };
+
+    /** Number of entity groups within the federation. */
+    private static final int GROUPS = 10;
+
+    /** Number of entities in each group. */
+    private static final int ENTITIES_PER_GROUP = 20;
+
+    /** Name of the federation's entity group. */
+    private static final String FEDERATION = "urn:example.org:federation";
+
+    /** Name of the entity category entity attribute. */
+    private static final String ENTITY_CATEGORY = "http://macedir.org/entity-category";
+
+    /** Name of the assurance certification entity attribute. */
+    private static final String ASSURANCE = "urn:oasis:names:tc:SAML:attribute:assurance-certification";
+
+    /** Entity categories assigned to the entities. */
+    private static final String[] CATEGORIES = { "http://refeds.org/category/research-and-scholarship",
+            "http://www.geant.net/uri/dataprotection-code-of-conduct/v1",
+            "http://refeds.org/category/hide-from-discovery", };
+
+    /** Values of the single-valued attributes. */
+    private static final String[] AFFILIATIONS = { "member", "staff", "faculty", "student", "affiliate", };
+
+    /** Name format of entity attributes. */
+    private static final String URI_NAME_FORMAT = "urn:oasis:names:tc:SAML:2.0:attrname-format:uri";
+
+    /** Name of the metadata extensions element. */
+    private static final QName EXTENSIONS_ELEMENT_NAME = new QName(SAMLConstants.SAML20MD_NS, Extensions.LOCAL_NAME,
+            SAMLConstants.SAML20MD_PREFIX);
+
+    /** Builder factory for the metadata objects. */
+    private static XMLObjectBuilderFactory builderFactory;
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args number of policies, number of attribute rules per policy and number of seconds per measurement
+     * 
+     * @throws Exception thrown if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        int policyCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int rulesPerPolicy = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long measurementNanos = (args.length > 2 ? Long.parseLong(args[2]) : 2) * 1000000000L;
+
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        DefaultBootstrap.bootstrap();
+        builderFactory = Configuration.getBuilderFactory();
+        List<EntityDescriptor> requesters = createFederation();
+
+        boolean scripts = new ScriptEngineManager().getEngineByName("javascript") != null;
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.setCompileToBytecode(Boolean.getBoolean("benchmark.compileToBytecode"));
+        filterEngine.setActivePolicyCacheSize(Integer.getInteger("benchmark.activePolicyCacheSize", 1000));
+        filterEngine.setParallelValueThreshold(Integer.getInteger("benchmark.parallelValueThreshold", 0));
+        Random random = new Random(42);
+        AttributeFilterPolicy filterPolicy;
+        for (int i = 0; i < policyCount; i++) {
+            filterPolicy = createPolicy(i, rulesPerPolicy, random, scripts);
+            filterEngine.compileMatchFunctors(filterPolicy);
+            filterEngine.getFilterPolicies().add(filterPolicy);
+        }
+
+        System.out.println(policyCount + " policies, " + rulesPerPolicy + " rules per policy, " + requesters.size()
+                + " requesters, script rules " + (scripts ? "enabled" : "disabled, no JavaScript engine")
+                + ", compileToBytecode=" + filterEngine.isCompileToBytecode() + ", activePolicyCacheSize="
+                + filterEngine.getActivePolicyCacheSize() + ", parallelValueThreshold="
+                + filterEngine.getParallelValueThreshold());
+        System.out.println(String.format("%8s %14s %14s %16s %12s", "values", "ops/s", "us/op", "bytes/op",
+                "retained"));
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        long threadId = Thread.currentThread().getId();
+
+        for (int size : ATTRIBUTE_SIZES) {
+            Map<String, BaseAttribute> unfilteredAttributes = createAttributes(size);
+            run(filterEngine, unfilteredAttributes, requesters, measurementNanos);
+
+            long allocatedBefore = allocationBean == null ? 0 : allocationBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long[] result = run(filterEngine, unfilteredAttributes, requesters, measurementNanos);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocationBean == null ? -1 : allocationBean.getThreadAllocatedBytes(threadId)
+                    - allocatedBefore;
+
+            System.out.println(String.format("%8d %14.1f %14.3f %16s %12.1f", size, result[0] * 1e9 / elapsed,
+                    elapsed / 1e3 / result[0], allocated < 0 ? "n/a" : Long.toString(allocated / result[0]),
+                    (double) result[1] / result[0]));
+        }
+    }
+
+    /**
+     * Filters copies of the unfiltered attributes, for each requester in turn, for the given time.
+     * 
+     * @param filterEngine the engine to benchmark
+     * @param unfilteredAttributes the attributes to filter
+     * @param requesters the requesters
+     * @param duration time, in nanoseconds, to run for
+     * 
+     * @return the number of filtering requests made and the total number of values retained
+     * 
+     * @throws Exception thrown if the attributes can not be filtered
+     */
+    private static long[] run(ShibbolethAttributeFilteringEngine filterEngine,
+            Map<String, BaseAttribute> unfilteredAttributes, List<EntityDescriptor> requesters, long duration)
+            throws Exception {
+        List<BaseSAMLProfileRequestContext> requestContexts = new ArrayList<BaseSAMLProfileRequestContext>();
+        for (EntityDescriptor requester : requesters) {
+            requestContexts.add(createRequestContext(requester));
+        }
+
+        long operations = 0;
+        long retainedValues = 0;
+        long end = System.nanoTime() + duration;
+        while (System.nanoTime() < end) {
+            for (BaseSAMLProfileRequestContext requestContext : requestContexts) {
+                Map<String, BaseAttribute> attributes = new HashMap<String, BaseAttribute>();
+                for (BaseAttribute<?> attribute : unfilteredAttributes.values()) {
+                    BasicAttribute<Object> copy = new BasicAttribute<Object>(attribute.getId());
+                    copy.getValues().addAll(attribute.getValues());
+                    attributes.put(copy.getId(), copy);
+                }
+
+                for (BaseAttribute attribute : filterEngine.filterAttributes(attributes, requestContext).values()) {
+                    retainedValues += attribute.getValues().size();
+                }
+                operations++;
+            }
+        }
+        return new long[] { operations, retainedValues };
+    }
+
+    /**
+     * Creates the attributes to filter.
+     * 
+     * @param size number of values of the isMemberOf attribute
+     * 
+     * @return the attributes to filter
+     */
+    private static Map<String, BaseAttribute> createAttributes(int size) {
+        Map<String, BaseAttribute> attributes = new HashMap<String, BaseAttribute>();
+
+        BasicAttribute<String> isMemberOf = new BasicAttribute<String>("isMemberOf");
+        for (int i = 0; i < size; i++) {
+            isMemberOf.getValues().add("urn:mace:example.org:groups:g" + i);
+        }
+        attributes.put(isMemberOf.getId(), isMemberOf);
+
+        BasicAttribute<String> affiliation = new BasicAttribute<String>("eduPersonAffiliation");
+        BasicAttribute<ScopedAttributeValue> scopedAffiliation = new BasicAttribute<ScopedAttributeValue>(
+                "eduPersonScopedAffiliation");
+        for (String value : AFFILIATIONS) {
+            affiliation.getValues().add(value);
+            scopedAffiliation.getValues().add(new ScopedAttributeValue(value, "example.org"));
+        }
+        attributes.put(affiliation.getId(), affiliation);
+        attributes.put(scopedAffiliation.getId(), scopedAffiliation);
+
+        BasicAttribute<String> mail = new BasicAttribute<String>("mail");
+        mail.getValues().add("jsmith@example.org");
+        attributes.put(mail.getId(), mail);
+
+        return attributes;
+    }
+
+    /**
+     * Creates a filter policy.
+     * 
+     * @param index index of the policy
+     * @param ruleCount number of attribute rules in the policy
+     * @param random source of the policy's variations
+     * @param scripts whether script rules may be used
+     * 
+     * @return the policy
+     */
+    private static AttributeFilterPolicy createPolicy(int index, int ruleCount, Random random, boolean scripts) {
+        AttributeFilterPolicy filterPolicy = new AttributeFilterPolicy("policy" + index);
+
+        switch (random.nextInt(5)) {
+            case 0:
+                AttributeRequesterStringMatchFunctor requester = new AttributeRequesterStringMatchFunctor();
+                requester.setMatchString(getEntityId(random.nextInt(GROUPS), random.nextInt(ENTITIES_PER_GROUP)));
+                filterPolicy.setPolicyRequirementRule(requester);
+                break;
+            case 1:
+                filterPolicy.setPolicyRequirementRule(createGroupMatch(random.nextInt(GROUPS)));
+                break;
+            case 2:
+                filterPolicy.setPolicyRequirementRule(createCategoryMatch(CATEGORIES[random
+                        .nextInt(CATEGORIES.length)]));
+                break;
+            case 3:
+                List<MatchFunctor> alternatives = new ArrayList<MatchFunctor>();
+                alternatives.add(createGroupMatch(random.nextInt(GROUPS)));
+                alternatives.add(createCategoryMatch(CATEGORIES[random.nextInt(CATEGORIES.length)]));
+                filterPolicy.setPolicyRequirementRule(new OrMatchFunctor(alternatives));
+                break;
+            default:
+                filterPolicy.setPolicyRequirementRule(new AnyMatchFunctor());
+        }
+
+        AttributeRule attributeRule;
+        for (int i = 0; i < ruleCount; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    attributeRule = new AttributeRule("isMemberOf");
+                    if (scripts && random.nextInt(10) == 0) {
+                        attributeRule.setPermitValueRule(new ScriptMatchFunctor("javascript",
+                                "attributeValue.indexOf('g" + random.nextInt(10) + "') > 0"));
+                    } else if (random.nextBoolean()) {
+                        attributeRule.setPermitValueRule(createValueRegex("urn:mace:example\\.org:groups:g[0-9]*"
+                                + random.nextInt(10)));
+                    } else {
+                        attributeRule.setPermitValueRule(createValueMatch("urn:mace:example.org:groups:g"
+                                + random.nextInt(100)));
+                    }
+                    if (random.nextInt(5) == 0) {
+                        attributeRule.setDenyValueRule(createValueRegex("urn:mace:example\\.org:groups:g[0-9]*7"));
+                    }
+                    break;
+                case 1:
+                    attributeRule = new AttributeRule("eduPersonAffiliation");
+                    List<MatchFunctor> values = new ArrayList<MatchFunctor>();
+                    values.add(createValueMatch(AFFILIATIONS[random.nextInt(AFFILIATIONS.length)]));
+                    values.add(createValueMatch(AFFILIATIONS[random.nextInt(AFFILIATIONS.length)]));
+                    attributeRule.setPermitValueRule(new OrMatchFunctor(values));
+                    break;
+                case 2:
+                    attributeRule = new AttributeRule("eduPersonScopedAffiliation");
+                    AttributeScopeStringMatchFunctor scope = new AttributeScopeStringMatchFunctor();
+                    scope.setMatchString("example.org");
+                    scope.setCaseSensitive(false);
+                    List<MatchFunctor> conditions = new ArrayList<MatchFunctor>();
+                    conditions.add(scope);
+                    conditions.add(createValueMatch(AFFILIATIONS[random.nextInt(AFFILIATIONS.length)]));
+                    attributeRule.setPermitValueRule(new AndMatchFunctor(conditions));
+                    break;
+                default:
+                    attributeRule = new AttributeRule("mail");
+                    attributeRule.setPermitValueRule(createValueRegex(".*@example\\.org"));
+            }
+            filterPolicy.getAttributeRules().add(attributeRule);
+        }
+
+        return filterPolicy;
+    }
+
+    /**
+     * Creates a rule matching requesters in a group of the federation.
+     * 
+     * @param group index of the group
+     * 
+     * @return the rule
+     */
+    private static MatchFunctor createGroupMatch(int group) {
+        AttributeRequesterInEntityGroupMatchFunctor functor = new AttributeRequesterInEntityGroupMatchFunctor();
+        functor.setEntityGroup(getGroupName(group));
+        return functor;
+    }
+
+    /**
+     * Creates a rule matching requesters with an entity category.
+     * 
+     * @param category the entity category
+     * 
+     * @return the rule
+     */
+    private static MatchFunctor createCategoryMatch(String category) {
+        AttributeRequesterEntityAttributeExactMatchFunctor functor =
+                new AttributeRequesterEntityAttributeExactMatchFunctor();
+        functor.setName(ENTITY_CATEGORY);
+        functor.setNameFormat(URI_NAME_FORMAT);
+        functor.setValue(category);
+        return functor;
+    }
+
+    /**
+     * Creates a case sensitive attribute value string rule.
+     * 
+     * @param matchString string to match
+     * 
+     * @return the rule
+     */
+    private static MatchFunctor createValueMatch(String matchString) {
+        AttributeValueStringMatchFunctor functor = new AttributeValueStringMatchFunctor();
+        functor.setMatchString(matchString);
+        functor.setCaseSensitive(true);
+        return functor;
+    }
+
+    /**
+     * Creates an attribute value regular expression rule.
+     * 
+     * @param regex regular expression to match
+     * 
+     * @return the rule
+     */
+    private static MatchFunctor createValueRegex(String regex) {
+        AttributeValueRegexMatchFunctor functor = new AttributeValueRegexMatchFunctor();
+        functor.setRegularExpression(regex);
+        return functor;
+    }
+
+    /**
+     * Creates the request context of an attribute request from a requester.
+     * 
+     * @param requester metadata of the requester
+     * 
+     * @return the request context
+     */
+    private static BaseSAMLProfileRequestContext createRequestContext(EntityDescriptor requester) {
+        BaseSAMLProfileRequestContext requestContext = new BaseSAMLProfileRequestContext();
+        requestContext.setPrincipalName("jsmith");
+        requestContext.setInboundMessageIssuer(requester.getEntityID());
+        requestContext.setPeerEntityId(requester.getEntityID());
+        requestContext.setPeerEntityMetadata(requester);
+        requestContext.setOutboundMessageIssuer("https://idp.example.org/idp/shibboleth");
+        return requestContext;
+    }
+
+    /**
+     * Creates the federation metadata. The federation contains named groups, each wrapped in an unnamed group, and
+     * each entity has one or more entity categories and, for some, an assurance certification.
+     * 
+     * @return the entities of the federation
+     */
+    private static List<EntityDescriptor> createFederation() {
+        EntitiesDescriptor federation = createGroup(FEDERATION);
+        List<EntityDescriptor> entities = new ArrayList<EntityDescriptor>();
+        for (int group = 0; group < GROUPS; group++) {
+            EntitiesDescriptor wrapper = createGroup(null);
+            EntitiesDescriptor entityGroup = createGroup(getGroupName(group));
+            wrapper.getEntitiesDescriptors().add(entityGroup);
+            federation.getEntitiesDescriptors().add(wrapper);
+
+            for (int entity = 0; entity < ENTITIES_PER_GROUP; entity++) {
+                EntityDescriptor entityDescriptor = (EntityDescriptor) builderFactory.getBuilder(
+                        EntityDescriptor.DEFAULT_ELEMENT_NAME).buildObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+                entityDescriptor.setEntityID(getEntityId(group, entity));
+
+                EntityAttributes entityAttributes = (EntityAttributes) builderFactory.getBuilder(
+                        EntityAttributes.DEFAULT_ELEMENT_NAME).buildObject(EntityAttributes.DEFAULT_ELEMENT_NAME);
+                List<String> categories = new ArrayList<String>();
+                for (int i = 0; i < CATEGORIES.length; i++) {
+                    if ((entity + group) % (i + 2) == 0) {
+                        categories.add(CATEGORIES[i]);
+                    }
+                }
+                entityAttributes.getAttributes().add(createEntityAttribute(ENTITY_CATEGORY, categories));
+                if (entity % 4 == 0) {
+                    List<String> assurance = new ArrayList<String>();
+                    assurance.add("https://refeds.org/sirtfi");
+                    entityAttributes.getAttributes().add(createEntityAttribute(ASSURANCE, assurance));
+                }
+
+                Extensions extensions = (Extensions) builderFactory.getBuilder(EXTENSIONS_ELEMENT_NAME).buildObject(
+                        EXTENSIONS_ELEMENT_NAME);
+                extensions.getUnknownXMLObjects().add(entityAttributes);
+                entityDescriptor.setExtensions(extensions);
+
+                entityGroup.getEntityDescriptors().add(entityDescriptor);
+                entities.add(entityDescriptor);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Creates an entity attribute.
+     * 
+     * @param name name of the attribute
+     * @param values values of the attribute
+     * 
+     * @return the entity attribute
+     */
+    private static Attribute createEntityAttribute(String name, List<String> values) {
+        Attribute attribute = (Attribute) builderFactory.getBuilder(Attribute.DEFAULT_ELEMENT_NAME).buildObject(
+                Attribute.DEFAULT_ELEMENT_NAME);
+        attribute.setName(name);
+        attribute.setNameFormat(URI_NAME_FORMAT);
+        XSString attributeValue;
+        for (String value : values) {
+            attributeValue = (XSString) builderFactory.getBuilder(XSString.TYPE_NAME).buildObject(
+                    AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+            attributeValue.setValue(value);
+            attribute.getAttributeValues().add(attributeValue);
+        }
+        return attribute;
+    }
+
+    /**
+     * Creates an entity group.
+     * 
+     * @param name name of the group, null for an unnamed group
+     * 
+     * @return the entity group
+     */
+    private static EntitiesDescriptor createGroup(String name) {
+        EntitiesDescriptor group = (EntitiesDescriptor) builderFactory.getBuilder(
+                EntitiesDescriptor.DEFAULT_ELEMENT_NAME).buildObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        group.setName(name);
+        return group;
+    }
+
+    /**
+     * Gets the name of a group of the federation.
+     * 
+     * @param group index of the group
+     * 
+     * @return the name of the group
+     */
+    private static String getGroupName(int group) {
+        return FEDERATION + ":region" + group;
+    }
+
+    /**
+     * Gets the ID of an entity of the federation.
+     * 
+     * @param group index of the entity's group
+     * @param entity index of the entity within its group
+     * 
+     * @return the ID of the entity
+     */
+    private static String getEntityId(int group, int entity) {
+        return "https://sp" + entity + ".region" + group + ".example.org/shibboleth";
+    }
+}
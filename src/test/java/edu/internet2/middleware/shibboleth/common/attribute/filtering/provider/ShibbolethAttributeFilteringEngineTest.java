@@ -17,13 +17,27 @@
 
 package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.TestCase;
+
+import org.opensaml.saml2.metadata.EntityDescriptor;
+
 import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AnyMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AttributeRequesterStringMatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AttributeValueRegexMatchFunctor;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.AttributeValueStringMatchFunctor;
 import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic.OrMatchFunctor;
 import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
@@ -207,4 +221,321 @@ public class ShibbolethAttributeFilteringEngineTest extends TestCase {
         assertEquals(1, eduPersonScopedAffiliation.getValues().size());
         assertTrue(eduPersonScopedAffiliation.getValues().contains("staff"));
     }
-}
\ No newline at end of file
+
+    /** Test that every deny value rule registered for an attribute is applied. */
+    public void testMultipleDenyRules() throws Exception {
+        AttributeValueStringMatchFunctor staffDeny = new AttributeValueStringMatchFunctor();
+        staffDeny.setMatchString("staff");
+
+        AttributeValueStringMatchFunctor employeeDeny = new AttributeValueStringMatchFunctor();
+        employeeDeny.setMatchString("employee");
+
+        AttributeFilterPolicy afp1 = new AttributeFilterPolicy("afp1");
+        afp1.setPolicyRequirementRule(new AnyMatchFunctor());
+        AttributeRule ePARule1 = new AttributeRule("eduPersonAffiliation");
+        ePARule1.setPermitValueRule(new AnyMatchFunctor());
+        ePARule1.setDenyValueRule(staffDeny);
+        afp1.getAttributeRules().add(ePARule1);
+
+        AttributeFilterPolicy afp2 = new AttributeFilterPolicy("afp2");
+        afp2.setPolicyRequirementRule(new AnyMatchFunctor());
+        AttributeRule ePARule2 = new AttributeRule("eduPersonAffiliation");
+        ePARule2.setDenyValueRule(employeeDeny);
+        afp2.getAttributeRules().add(ePARule2);
+
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.getFilterPolicies().add(afp1);
+        filterEngine.getFilterPolicies().add(afp2);
+
+        Map<String, BaseAttribute> filteredAttributes = filterEngine.filterAttributes(attributes, requestContext);
+
+        BaseAttribute eduPersonAffiliation = filteredAttributes.get("eduPersonAffiliation");
+        assertNotNull(eduPersonAffiliation);
+        assertEquals(2, eduPersonAffiliation.getValues().size());
+        assertTrue(eduPersonAffiliation.getValues().contains("part-time-student"));
+        assertTrue(eduPersonAffiliation.getValues().contains("part-time-staff"));
+    }
+
+    /** Test that policies without rules for the filtered attributes are not evaluated. */
+    public void testIrrelevantPoliciesSkipped() throws Exception {
+        final int[] evaluations = new int[1];
+        AttributeFilterPolicy afp1 = new AttributeFilterPolicy("afp1");
+        afp1.setPolicyRequirementRule(new AnyMatchFunctor() {
+            public boolean evaluatePolicyRequirement(ShibbolethFilteringContext filterContext) {
+                evaluations[0]++;
+                return true;
+            }
+        });
+        AttributeRule mailRule = new AttributeRule("mail");
+        mailRule.setPermitValueRule(new AnyMatchFunctor());
+        afp1.getAttributeRules().add(mailRule);
+
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.getFilterPolicies().add(afp1);
+
+        Map<String, BaseAttribute> filteredAttributes = filterEngine.filterAttributes(attributes, requestContext);
+        assertEquals(0, evaluations[0]);
+        assertTrue(filteredAttributes.isEmpty());
+
+        AttributeRule ePARule = new AttributeRule("eduPersonAffiliation");
+        ePARule.setPermitValueRule(new AnyMatchFunctor());
+        afp1.getAttributeRules().add(ePARule);
+        setUp();
+
+        filteredAttributes = filterEngine.filterAttributes(attributes, requestContext);
+        assertEquals(1, evaluations[0]);
+        assertEquals(4, filteredAttributes.get("eduPersonAffiliation").getValues().size());
+    }
+
+    /** Test that requester static policy requirements are evaluated once per requester. */
+    public void testActivePolicyCache() throws Exception {
+        final int[] evaluations = new int[1];
+        AttributeRequesterStringMatchFunctor requesterRule = new AttributeRequesterStringMatchFunctor() {
+            public boolean evaluatePolicyRequirement(ShibbolethFilteringContext filterContext)
+                    throws FilterProcessingException {
+                evaluations[0]++;
+                return super.evaluatePolicyRequirement(filterContext);
+            }
+        };
+        requesterRule.setMatchString("https://sp.example.org");
+
+        AttributeFilterPolicy afp = new AttributeFilterPolicy("afp");
+        afp.setPolicyRequirementRule(requesterRule);
+        AttributeRule ePARule = new AttributeRule("eduPersonAffiliation");
+        ePARule.setPermitValueRule(new AnyMatchFunctor());
+        afp.getAttributeRules().add(ePARule);
+
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.getFilterPolicies().add(afp);
+
+        requestContext.setInboundMessageIssuer("https://sp.example.org");
+        assertEquals(4, filterEngine.filterAttributes(attributes, requestContext).get("eduPersonAffiliation")
+                .getValues().size());
+        setUp();
+        requestContext.setInboundMessageIssuer("https://sp.example.org");
+        requestContext.setPrincipalName("bjones");
+        assertEquals(4, filterEngine.filterAttributes(attributes, requestContext).get("eduPersonAffiliation")
+                .getValues().size());
+        assertEquals(1, evaluations[0]);
+
+        setUp();
+        requestContext.setInboundMessageIssuer("https://other.example.org");
+        assertTrue(filterEngine.filterAttributes(attributes, requestContext).isEmpty());
+        assertEquals(2, evaluations[0]);
+
+        filterEngine.setActivePolicyCacheSize(0);
+        setUp();
+        requestContext.setInboundMessageIssuer("https://other.example.org");
+        assertTrue(filterEngine.filterAttributes(attributes, requestContext).isEmpty());
+        assertEquals(3, evaluations[0]);
+    }
+
+    /** Test that cached policy activations do not keep the requester's metadata in memory. */
+    public void testActivePolicyCacheReleasesMetadata() throws Exception {
+        AttributeRequesterStringMatchFunctor requesterRule = new AttributeRequesterStringMatchFunctor();
+        requesterRule.setMatchString("https://sp.example.org");
+        AttributeFilterPolicy afp = new AttributeFilterPolicy("afp");
+        afp.setPolicyRequirementRule(requesterRule);
+        AttributeRule ePARule = new AttributeRule("eduPersonAffiliation");
+        ePARule.setPermitValueRule(new AnyMatchFunctor());
+        afp.getAttributeRules().add(ePARule);
+
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.getFilterPolicies().add(afp);
+
+        EntityDescriptor metadata = (EntityDescriptor) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {EntityDescriptor.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        requestContext.setInboundMessageIssuer("https://sp.example.org");
+        requestContext.setPeerEntityMetadata(metadata);
+        assertEquals(4, filterEngine.filterAttributes(attributes, requestContext).get("eduPersonAffiliation")
+                .getValues().size());
+
+        WeakReference<EntityDescriptor> metadataReference = new WeakReference<EntityDescriptor>(metadata);
+        metadata = null;
+        setUp();
+        for (int i = 0; i < 50 && metadataReference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(metadataReference.get());
+
+        requestContext.setInboundMessageIssuer("https://sp.example.org");
+        assertEquals(4, filterEngine.filterAttributes(attributes, requestContext).get("eduPersonAffiliation")
+                .getValues().size());
+    }
+
+    /** Test that the values of large attributes evaluated in parallel are filtered as when evaluated serially. */
+    public void testParallelValueEvaluation() throws Exception {
+        BasicAttribute<String> isMemberOf = new BasicAttribute<String>("isMemberOf");
+        List<String> expectedValues = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            isMemberOf.getValues().add("group-" + i);
+            if (i % 2 == 0) {
+                expectedValues.add("group-" + i);
+            }
+        }
+        attributes.put(isMemberOf.getId(), isMemberOf);
+
+        AttributeValueRegexMatchFunctor evenGroups = new AttributeValueRegexMatchFunctor();
+        evenGroups.setRegularExpression("group-[0-9]*[02468]");
+        AttributeRule isMemberOfRule = new AttributeRule("isMemberOf");
+        isMemberOfRule.setPermitValueRule(evenGroups);
+        AttributeRule ePARule = new AttributeRule("eduPersonAffiliation");
+        ePARule.setPermitValueRule(new AnyMatchFunctor());
+        AttributeFilterPolicy afp = new AttributeFilterPolicy("afp");
+        afp.setPolicyRequirementRule(new AnyMatchFunctor());
+        afp.getAttributeRules().add(isMemberOfRule);
+        afp.getAttributeRules().add(ePARule);
+
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.setParallelValueThreshold(100);
+        filterEngine.setParallelValueThreads(4);
+        filterEngine.getFilterPolicies().add(afp);
+
+        Map<String, BaseAttribute> filteredAttributes = filterEngine.filterAttributes(attributes, requestContext);
+        assertEquals(new HashSet<String>(expectedValues), new HashSet<Object>(filteredAttributes.get("isMemberOf")
+                .getValues()));
+        assertEquals(4, filteredAttributes.get("eduPersonAffiliation").getValues().size());
+        filterEngine.getParallelValueEvaluator().shutdown();
+    }
+
+    /** Test that values are evaluated in parallel while profiling, but serially while tracing. */
+    public void testParallelValueEvaluationProfiling() throws Exception {
+        BasicAttribute<String> isMemberOf = new BasicAttribute<String>("isMemberOf");
+        for (int i = 0; i < 5000; i++) {
+            isMemberOf.getValues().add("group-" + i);
+        }
+        attributes.put(isMemberOf.getId(), isMemberOf);
+
+        final Set<Thread> evaluatingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        AttributeValueRegexMatchFunctor evenGroups = new AttributeValueRegexMatchFunctor() {
+            protected boolean doEvaluateValue(ShibbolethFilteringContext filterContext, String id,
+                    Object attributeValue) throws FilterProcessingException {
+                evaluatingThreads.add(Thread.currentThread());
+                return super.doEvaluateValue(filterContext, id, attributeValue);
+            }
+        };
+        evenGroups.setRegularExpression("group-[0-9]*[02468]");
+        AttributeRule isMemberOfRule = new AttributeRule("isMemberOf");
+        isMemberOfRule.setPermitValueRule(evenGroups);
+        AttributeFilterPolicy afp = new AttributeFilterPolicy("afp");
+        afp.setPolicyRequirementRule(new AnyMatchFunctor());
+        afp.getAttributeRules().add(isMemberOfRule);
+
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.setParallelValueThreshold(100);
+        filterEngine.setParallelValueThreads(4);
+        filterEngine.setProfilingEnabled(true);
+        filterEngine.getFilterPolicies().add(afp);
+
+        try {
+            assertEquals(2500, filterEngine.filterAttributes(attributes, requestContext).get("isMemberOf")
+                    .getValues().size());
+            assertFalse(evaluatingThreads.contains(Thread.currentThread()));
+            String[] functorStatistics = filterEngine.getStatistics().getFunctorStatistics();
+            boolean recorded = false;
+            for (String line : functorStatistics) {
+                recorded |= line.contains("evaluations=5000");
+            }
+            assertTrue(Arrays.toString(functorStatistics), recorded);
+
+            evaluatingThreads.clear();
+            setUp();
+            attributes.put(isMemberOf.getId(), isMemberOf);
+            FilterEvaluationTrace.start();
+            try {
+                assertEquals(2500, filterEngine.filterAttributes(attributes, requestContext).get("isMemberOf")
+                        .getValues().size());
+            } finally {
+                FilterEvaluationTrace.stop();
+            }
+            assertEquals(Collections.singleton(Thread.currentThread()), evaluatingThreads);
+        } finally {
+            filterEngine.getParallelValueEvaluator().shutdown();
+        }
+    }
+
+    /** Tests that evaluations are recorded in the engine's statistics and in a trace. */
+    public void testEvaluationProfiling() throws Exception {
+        AttributeValueStringMatchFunctor staffRule = new AttributeValueStringMatchFunctor();
+        staffRule.setMatchString("staff");
+        AttributeValueStringMatchFunctor employeeRule = new AttributeValueStringMatchFunctor();
+        employeeRule.setMatchString("employee");
+        employeeRule.setFunctorId("employee");
+        ArrayList<MatchFunctor> allowedValues = new ArrayList<MatchFunctor>();
+        allowedValues.add(staffRule);
+        allowedValues.add(employeeRule);
+        AttributeRule ePARule = new AttributeRule("eduPersonAffiliation");
+        ePARule.setPermitValueRule(new OrMatchFunctor(allowedValues));
+        AttributeFilterPolicy activePolicy = new AttributeFilterPolicy("active");
+        activePolicy.setPolicyRequirementRule(new AnyMatchFunctor());
+        activePolicy.getAttributeRules().add(ePARule);
+
+        AttributeRequesterStringMatchFunctor requesterRule = new AttributeRequesterStringMatchFunctor();
+        requesterRule.setMatchString("urn:example.org:sp");
+        AttributeRule ePSARule = new AttributeRule("eduPersonScopedAffiliation");
+        ePSARule.setPermitValueRule(new AnyMatchFunctor());
+        AttributeFilterPolicy inactivePolicy = new AttributeFilterPolicy("inactive");
+        inactivePolicy.setPolicyRequirementRule(requesterRule);
+        inactivePolicy.getAttributeRules().add(ePSARule);
+
+        ShibbolethAttributeFilteringEngine filterEngine = new ShibbolethAttributeFilteringEngine();
+        filterEngine.setProfilingEnabled(true);
+        filterEngine.setActivePolicyCacheSize(0);
+        filterEngine.getFilterPolicies().add(activePolicy);
+        filterEngine.getFilterPolicies().add(inactivePolicy);
+
+        FilterEvaluationTrace trace = FilterEvaluationTrace.start();
+        Map<String, BaseAttribute> filteredAttributes;
+        try {
+            filteredAttributes = filterEngine.filterAttributes(attributes, requestContext);
+        } finally {
+            assertSame(trace, FilterEvaluationTrace.stop());
+        }
+        assertEquals(2, filteredAttributes.get("eduPersonAffiliation").getValues().size());
+        assertNull(filteredAttributes.get("eduPersonScopedAffiliation"));
+
+        FilterEvaluationStatistics statistics = filterEngine.getStatistics();
+        assertEquals(1, statistics.getFilteringRequestCount());
+        assertEquals(2, statistics.getPolicyStatistics().length);
+        for (String line : statistics.getPolicyStatistics()) {
+            if (line.startsWith("active:")) {
+                assertTrue(line, line.contains("evaluations=1, active=1 (100.0%)"));
+            } else {
+                assertTrue(line, line.startsWith("inactive: evaluations=1, active=0 (0.0%)"));
+            }
+        }
+        // any, or, staff, employee and requester functors
+        String[] functorStatistics = statistics.getFunctorStatistics();
+        assertEquals(5, functorStatistics.length);
+        Set<String> functorNames = new HashSet<String>();
+        for (String line : functorStatistics) {
+            functorNames.add(line.substring(0, line.indexOf(": evaluations=")));
+        }
+        assertTrue(functorNames.toString(), functorNames.contains("active/requirement (AnyMatchFunctor)"));
+        assertTrue(functorNames.toString(), functorNames.contains("active/eduPersonAffiliation/permit (OrMatchFunctor)"));
+        assertTrue(functorNames.toString(), functorNames
+                .contains("active/eduPersonAffiliation/permit/2[employee] (AttributeValueStringMatchFunctor)"));
+        assertTrue(functorNames.toString(), functorNames
+                .contains("inactive/requirement (AttributeRequesterStringMatchFunctor)"));
+
+        List<String> lines = trace.getLines();
+        assertTrue(lines.get(0), lines.get(0).startsWith("Policy active: active"));
+        assertTrue(lines.get(1), lines.get(1).startsWith("  active/requirement (AnyMatchFunctor)"));
+        assertTrue(lines.get(2), lines.get(2).startsWith("  active/eduPersonAffiliation/permit (OrMatchFunctor)"));
+        assertTrue(lines.get(2), lines.get(2).contains("[eduPersonAffiliation=staff]: true"));
+        assertTrue(lines.get(3), lines.get(3).startsWith(
+                "    active/eduPersonAffiliation/permit/1 (AttributeValueStringMatchFunctor)"));
+        assertTrue(lines.get(lines.size() - 2), lines.get(lines.size() - 2).startsWith("Policy inactive: not active"));
+        assertTrue(lines.get(lines.size() - 1), lines.get(lines.size() - 1).startsWith(
+                "  inactive/requirement (AttributeRequesterStringMatchFunctor)"));
+
+        filterEngine.filterAttributes(attributes, requestContext);
+        assertEquals(2, statistics.getFilteringRequestCount());
+        assertEquals(lines, trace.getLines());
+    }
+}
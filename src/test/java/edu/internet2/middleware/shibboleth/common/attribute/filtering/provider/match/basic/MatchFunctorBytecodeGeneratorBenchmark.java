@@ -0,0 +1,124 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.MatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.ShibbolethFilteringContext;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.profile.provider.BaseSAMLProfileRequestContext;
+
+/**
+ * Microbenchmark comparing interpreted match functor trees with the functors generated for them by
+ * {@link MatchFunctorBytecodeGenerator}. Run the main method with the test classpath; it is not run as part of the
+ * unit tests.
+ */
+public class MatchFunctorBytecodeGeneratorBenchmark {
+
+    /** Number of evaluations per measurement. */
+    private static final int ITERATIONS = 5000000;
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args ignored
+     * 
+     * @throws Exception thrown if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        BasicAttribute<String> affiliation = new BasicAttribute<String>("eduPersonAffiliation");
+        affiliation.getValues().add("member");
+        Map<String, BaseAttribute> attributes = new HashMap<String, BaseAttribute>();
+        attributes.put(affiliation.getId(), affiliation);
+        BaseSAMLProfileRequestContext requestContext = new BaseSAMLProfileRequestContext();
+        requestContext.setInboundMessageIssuer("https://sp10.example.org");
+        ShibbolethFilteringContext filterContext = new ShibbolethFilteringContext(attributes, requestContext);
+
+        List<MatchFunctor> requesters = new ArrayList<MatchFunctor>();
+        AttributeRequesterStringMatchFunctor requester;
+        for (int i = 0; i < 10; i++) {
+            requester = new AttributeRequesterStringMatchFunctor();
+            requester.setMatchString("https://sp" + i + ".example.org");
+            requesters.add(requester);
+        }
+        List<MatchFunctor> children = new ArrayList<MatchFunctor>();
+        children.add(new OrMatchFunctor(requesters));
+        children.add(new NotMatchFunctor(createValueMatch("faculty")));
+        children.add(new OrMatchFunctor(createValues("staff", "student", "member", "affiliate")));
+        MatchFunctor interpreted = new OrMatchFunctor(children);
+        MatchFunctor generated = MatchFunctorBytecodeGenerator.generate(interpreted);
+
+        String[] values = { "member", "faculty", "alum", "staff" };
+        for (int round = 0; round < 5; round++) {
+            int checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (interpreted.evaluatePermitValue(filterContext, "eduPersonAffiliation", values[i & 3])) {
+                    checksum++;
+                }
+            }
+            long interpretedTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (generated.evaluatePermitValue(filterContext, "eduPersonAffiliation", values[i & 3])) {
+                    checksum++;
+                }
+            }
+            long generatedTime = System.nanoTime() - start;
+
+            System.out.println("round " + round + ": interpreted " + (interpretedTime / ITERATIONS)
+                    + "ns/evaluation, generated " + (generatedTime / ITERATIONS) + "ns/evaluation (" + checksum + ")");
+        }
+    }
+
+    /**
+     * Creates attribute value string match functors for the eduPersonAffiliation attribute.
+     * 
+     * @param matchStrings strings to match
+     * 
+     * @return the created functors
+     */
+    private static List<MatchFunctor> createValues(String... matchStrings) {
+        List<MatchFunctor> functors = new ArrayList<MatchFunctor>();
+        for (String matchString : matchStrings) {
+            functors.add(createValueMatch(matchString));
+        }
+        return functors;
+    }
+
+    /**
+     * Creates an attribute value string match functor for the eduPersonAffiliation attribute.
+     * 
+     * @param matchString string to match
+     * 
+     * @return the created functor
+     */
+    private static MatchFunctor createValueMatch(String matchString) {
+        AttributeValueStringMatchFunctor functor = new AttributeValueStringMatchFunctor();
+        functor.setAttributeId("eduPersonAffiliation");
+        functor.setMatchString(matchString);
+        functor.setCaseSensitive(true);
+        return functor;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.MatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.ShibbolethFilteringContext;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.profile.provider.BaseSAMLProfileRequestContext;
+
+/** Unit test for {@link MatchFunctorBytecodeGenerator}. */
+public class MatchFunctorBytecodeGeneratorTest extends TestCase {
+
+    /** Values the interpreted and generated functors are evaluated against. */
+    private static final String[] VALUES = { "a", "B", "c", "other", "" };
+
+    /** Filtering context used during evaluation. */
+    private ShibbolethFilteringContext filterContext;
+
+    /** Leaf evaluations, in the order they were made. */
+    private List<String> evaluations;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        BasicAttribute<String> entitlement = new BasicAttribute<String>("eduPersonEntitlement");
+        entitlement.getValues().add("a");
+        Map<String, BaseAttribute> attributes = new HashMap<String, BaseAttribute>();
+        attributes.put(entitlement.getId(), entitlement);
+
+        BaseSAMLProfileRequestContext requestContext = new BaseSAMLProfileRequestContext();
+        requestContext.setInboundMessageIssuer("https://sp.example.org");
+        filterContext = new ShibbolethFilteringContext(attributes, requestContext);
+        evaluations = new ArrayList<String>();
+    }
+
+    /**
+     * Tests that generated functors give the same results, and evaluate their leaves in the same order, as randomly
+     * built functor trees.
+     * 
+     * @throws Exception thrown if a functor can not be evaluated
+     */
+    public void testRandomTreesEquivalent() throws Exception {
+        Random random = new Random(42);
+        MatchFunctor interpreted;
+        MatchFunctor generated;
+        for (int i = 0; i < 500; i++) {
+            interpreted = createTree(random, 4);
+            generated = MatchFunctorBytecodeGenerator.generate(interpreted);
+            if (interpreted instanceof AndMatchFunctor || interpreted instanceof OrMatchFunctor
+                    || interpreted instanceof NotMatchFunctor) {
+                assertTrue(generated instanceof GeneratedMatchFunctor);
+                assertSame(interpreted, ((GeneratedMatchFunctor) generated).getSource());
+            } else {
+                assertSame(interpreted, generated);
+            }
+            assertEquivalent(interpreted, generated);
+        }
+    }
+
+    /** Tests that functors which can not be turned in to branches are returned as is. */
+    public void testLeavesNotGenerated() {
+        assertNull(MatchFunctorBytecodeGenerator.generate(null));
+
+        MatchFunctor leaf = createStringMatch("a");
+        assertSame(leaf, MatchFunctorBytecodeGenerator.generate(leaf));
+
+        MatchFunctor not = new NotMatchFunctor(null);
+        assertSame(not, MatchFunctorBytecodeGenerator.generate(not));
+    }
+
+    /** Tests that the requester static property of the source tree is kept. */
+    public void testRequesterStatic() {
+        AttributeRequesterStringMatchFunctor requester = new AttributeRequesterStringMatchFunctor();
+        requester.setMatchString("https://sp.example.org");
+        assertTrue(AbstractMatchFunctor.isRequesterStatic(MatchFunctorBytecodeGenerator.generate(new NotMatchFunctor(
+                requester))));
+        assertFalse(AbstractMatchFunctor.isRequesterStatic(MatchFunctorBytecodeGenerator
+                .generate(new NotMatchFunctor(createStringMatch("a")))));
+    }
+
+    /**
+     * Asserts that two functors give the same results, and make the same leaf evaluations, for the policy requirement
+     * and for every test value.
+     * 
+     * @param expected the interpreted functor
+     * @param actual the generated functor
+     * 
+     * @throws Exception thrown if a functor can not be evaluated
+     */
+    private void assertEquivalent(MatchFunctor expected, MatchFunctor actual) throws Exception {
+        evaluations.clear();
+        boolean expectedResult = expected.evaluatePolicyRequirement(filterContext);
+        List<String> expectedEvaluations = new ArrayList<String>(evaluations);
+        evaluations.clear();
+        assertEquals(expectedResult, actual.evaluatePolicyRequirement(filterContext));
+        assertEquals(expectedEvaluations, evaluations);
+
+        for (String value : VALUES) {
+            evaluations.clear();
+            expectedResult = expected.evaluatePermitValue(filterContext, "eduPersonEntitlement", value);
+            expectedEvaluations = new ArrayList<String>(evaluations);
+            evaluations.clear();
+            assertEquals(value, expectedResult, actual.evaluatePermitValue(filterContext, "eduPersonEntitlement",
+                    value));
+            assertEquals(expectedEvaluations, evaluations);
+
+            assertEquals(value, expected.evaluateDenyRule(filterContext, "eduPersonEntitlement", value), actual
+                    .evaluateDenyRule(filterContext, "eduPersonEntitlement", value));
+        }
+    }
+
+    /**
+     * Creates a random functor tree.
+     * 
+     * @param random source of randomness
+     * @param depth maximum depth of the tree
+     * 
+     * @return the created tree
+     */
+    private MatchFunctor createTree(Random random, int depth) {
+        int type = random.nextInt(depth > 0 ? 8 : 4);
+        switch (type) {
+            case 0:
+                return new AnyMatchFunctor();
+            case 1:
+                return createStringMatch(VALUES[random.nextInt(VALUES.length)]);
+            case 2:
+                AttributeRequesterStringMatchFunctor requester = new AttributeRequesterStringMatchFunctor();
+                requester.setMatchString(random.nextBoolean() ? "https://sp.example.org" : "https://other.example.org");
+                return requester;
+            case 3:
+                return new RecordingMatchFunctor("leaf" + random.nextInt(100), random.nextBoolean());
+            case 4:
+                return new NotMatchFunctor(createTree(random, depth - 1));
+            default:
+                List<MatchFunctor> children = new ArrayList<MatchFunctor>();
+                int size = random.nextInt(5);
+                for (int i = 0; i < size; i++) {
+                    children.add(createTree(random, depth - 1));
+                }
+                if (type % 2 == 0) {
+                    return new AndMatchFunctor(children);
+                }
+                return new OrMatchFunctor(children);
+        }
+    }
+
+    /**
+     * Creates an attribute value string match functor for the eduPersonEntitlement attribute.
+     * 
+     * @param matchString string to match
+     * 
+     * @return the created functor
+     */
+    private MatchFunctor createStringMatch(String matchString) {
+        AttributeValueStringMatchFunctor functor = new AttributeValueStringMatchFunctor();
+        functor.setAttributeId("eduPersonEntitlement");
+        functor.setMatchString(matchString);
+        functor.setCaseSensitive(false);
+        return functor;
+    }
+
+    /** Functor which records its evaluations and returns a fixed result. */
+    private class RecordingMatchFunctor implements MatchFunctor {
+
+        /** Name recorded when this functor is evaluated. */
+        private final String name;
+
+        /** Result of every evaluation. */
+        private final boolean result;
+
+        /**
+         * Constructor.
+         * 
+         * @param functorName name recorded when this functor is evaluated
+         * @param functorResult result of every evaluation
+         */
+        public RecordingMatchFunctor(String functorName, boolean functorResult) {
+            name = functorName;
+            result = functorResult;
+        }
+
+        /** {@inheritDoc} */
+        public boolean evaluatePolicyRequirement(ShibbolethFilteringContext context) {
+            evaluations.add(name);
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        public boolean evaluatePermitValue(ShibbolethFilteringContext context, String attributeId,
+                Object attributeValue) {
+            evaluations.add(name + "=" + attributeValue);
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        public boolean evaluateDenyRule(ShibbolethFilteringContext context, String attributeId,
+                Object attributeValue) {
+            evaluations.add("deny:" + name + "=" + attributeValue);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.basic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.MatchFunctor;
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.ShibbolethFilteringContext;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.profile.provider.BaseSAMLProfileRequestContext;
+
+/** Unit test for {@link MatchFunctorCompiler}. */
+public class MatchFunctorCompilerTest extends TestCase {
+
+    /** Values the original and compiled functors are evaluated against. */
+    private static final String[] VALUES = { "entitlement-0", "ENTITLEMENT-1", "entitlement-150", "Entitlement-199",
+            "entitlement-200", "other", "regex-17", "regex-x", "", };
+
+    /** Filtering context used during evaluation. */
+    private ShibbolethFilteringContext filterContext;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        BasicAttribute<String> entitlement = new BasicAttribute<String>("eduPersonEntitlement");
+        entitlement.getValues().add("ENTITLEMENT-1");
+        Map<String, BaseAttribute> attributes = new HashMap<String, BaseAttribute>();
+        attributes.put(entitlement.getId(), entitlement);
+
+        BaseSAMLProfileRequestContext requestContext = new BaseSAMLProfileRequestContext();
+        requestContext.setInboundMessageIssuer("https://sp.example.org");
+        filterContext = new ShibbolethFilteringContext(attributes, requestContext);
+    }
+
+    /**
+     * Tests that an OR of string and regular expression matches is merged and evaluates as before.
+     * 
+     * @throws Exception thrown if a functor can not be evaluated
+     */
+    public void testMergeStringsAndRegexes() throws Exception {
+        List<MatchFunctor> children = new ArrayList<MatchFunctor>();
+        for (int i = 0; i < 200; i++) {
+            children.add(createStringMatch("entitlement-" + i, i % 2 == 0));
+        }
+        children.add(createRegexMatch("regex-[0-9]+"));
+        children.add(createRegexMatch("other|none"));
+        children.add(createRegexMatch("(capture)"));
+        OrMatchFunctor original = new OrMatchFunctor(children);
+        original.setFunctorId("entitlements");
+
+        MatchFunctor compiled = MatchFunctorCompiler.compile(original);
+        assertTrue(compiled instanceof OrMatchFunctor);
+        assertEquals(4, ((OrMatchFunctor) compiled).getTargetRules().size());
+        assertEquals("entitlements", ((OrMatchFunctor) compiled).getFunctorId());
+        assertEquivalent(original, compiled);
+    }
+
+    /**
+     * Tests that constant sub-trees are folded.
+     * 
+     * @throws Exception thrown if a functor can not be evaluated
+     */
+    public void testConstantFolding() throws Exception {
+        MatchFunctor requester = new AttributeRequesterStringMatchFunctor();
+        ((AttributeRequesterStringMatchFunctor) requester).setMatchString("https://sp.example.org");
+
+        List<MatchFunctor> children = new ArrayList<MatchFunctor>();
+        children.add(new AnyMatchFunctor());
+        children.add(requester);
+        assertSame(requester, MatchFunctorCompiler.compile(new AndMatchFunctor(children)));
+
+        MatchFunctor never = MatchFunctorCompiler.compile(new NotMatchFunctor(new AnyMatchFunctor()));
+        assertFalse(never.evaluatePolicyRequirement(filterContext));
+        assertFalse(never.evaluatePermitValue(filterContext, "eduPersonEntitlement", "other"));
+
+        children = new ArrayList<MatchFunctor>();
+        children.add(requester);
+        children.add(new NotMatchFunctor(new AnyMatchFunctor()));
+        assertFalse(MatchFunctorCompiler.compile(new AndMatchFunctor(children)).evaluatePolicyRequirement(
+                filterContext));
+
+        assertSame(requester, MatchFunctorCompiler.compile(new NotMatchFunctor(new NotMatchFunctor(requester))));
+        assertFalse(MatchFunctorCompiler.compile(new OrMatchFunctor(new ArrayList<MatchFunctor>()))
+                .evaluatePolicyRequirement(filterContext));
+    }
+
+    /** Tests that the children of an OR containing a functor which may throw are not merged or re-ordered. */
+    public void testImpureChildrenKept() {
+        AttributeScopeStringMatchFunctor scope = new AttributeScopeStringMatchFunctor();
+        scope.setAttributeId("eduPersonScopedAffiliation");
+        scope.setMatchString("example.org");
+
+        List<MatchFunctor> children = new ArrayList<MatchFunctor>();
+        children.add(createRegexMatch("regex-[0-9]+"));
+        children.add(scope);
+        children.add(createStringMatch("a", true));
+        children.add(createStringMatch("b", true));
+
+        MatchFunctor compiled = MatchFunctorCompiler.compile(new OrMatchFunctor(children));
+        assertEquals(children, ((OrMatchFunctor) compiled).getTargetRules());
+    }
+
+    /**
+     * Asserts that two functors give the same result for the policy requirement and for every test value.
+     * 
+     * @param expected the original functor
+     * @param actual the compiled functor
+     * 
+     * @throws Exception thrown if a functor can not be evaluated
+     */
+    private void assertEquivalent(MatchFunctor expected, MatchFunctor actual) throws Exception {
+        assertEquals(expected.evaluatePolicyRequirement(filterContext), actual.evaluatePolicyRequirement(filterContext));
+        for (String value : VALUES) {
+            assertEquals(value, expected.evaluatePermitValue(filterContext, "eduPersonEntitlement", value), actual
+                    .evaluatePermitValue(filterContext, "eduPersonEntitlement", value));
+            assertEquals(value, expected.evaluateDenyRule(filterContext, "eduPersonEntitlement", value), actual
+                    .evaluateDenyRule(filterContext, "eduPersonEntitlement", value));
+        }
+    }
+
+    /**
+     * Creates an attribute value string match functor for the eduPersonEntitlement attribute.
+     * 
+     * @param matchString string to match
+     * @param caseSensitive whether the match is case sensitive
+     * 
+     * @return the created functor
+     */
+    private MatchFunctor createStringMatch(String matchString, boolean caseSensitive) {
+        AttributeValueStringMatchFunctor functor = new AttributeValueStringMatchFunctor();
+        functor.setAttributeId("eduPersonEntitlement");
+        functor.setMatchString(matchString);
+        functor.setCaseSensitive(caseSensitive);
+        return functor;
+    }
+
+    /**
+     * Creates an attribute value regular expression match functor for the eduPersonEntitlement attribute.
+     * 
+     * @param regex regular expression to match
+     * 
+     * @return the created functor
+     */
+    private MatchFunctor createRegexMatch(String regex) {
+        AttributeValueRegexMatchFunctor functor = new AttributeValueRegexMatchFunctor();
+        functor.setAttributeId("eduPersonEntitlement");
+        functor.setRegularExpression(regex);
+        return functor;
+    }
+}
@@ -70,4 +70,40 @@ public class ScriptMatchFunctorTest extends BaseTestCase {
            fail(e.getLocalizedMessage());
         }
     }
+
+    /**
+     * Test that a policy requirement script is run once per filtering request.
+     */
+    public void testPolicyRequirementMemoized() {
+        try {
+            ScriptMatchFunctor functor = new ScriptMatchFunctor("JavaScript", "true;", 2);
+            assertTrue(functor.evaluatePolicyRequirement(filterContext));
+            assertTrue(functor.evaluatePolicyRequirement(filterContext));
+            assertEquals(1, functor.getEnginePool().getExecutionCount());
+        } catch (FilterProcessingException e) {
+            fail(e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Test that a batch script is run once for all the values of an attribute.
+     */
+    public void testBatchEvaluation() {
+        try {
+            ScriptMatchFunctor functor = new ScriptMatchFunctor("JavaScript",
+                    "var values = attributeValues.iterator();" +
+                    "while (values.hasNext()) {" +
+                    "  var value = values.next();" +
+                    "  if (value.equals(\"one\")) permittedValues.add(value);" +
+                    "}", 2);
+            functor.setBatchEvaluation(true);
+            assertTrue("Batch Value", functor.evaluatePermitValue(filterContext, sAttribute.getId(), "one"));
+            assertTrue("Batch Value", functor.evaluatePermitValue(filterContext, sAttribute.getId(), "one"));
+            assertEquals(1, functor.getEnginePool().getExecutionCount());
+            assertFalse("Batch Value", functor.evaluatePermitValue(filterContext, sAttribute.getId(), "two"));
+            assertEquals(2, functor.getEnginePool().getExecutionCount());
+        } catch (FilterProcessingException e) {
+            fail(e.getLocalizedMessage());
+        }
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.saml;
+
+import java.util.Set;
+
+import org.opensaml.saml2.metadata.EntityDescriptor;
+
+import edu.internet2.middleware.shibboleth.common.attribute.filtering.provider.match.BaseTestCaseMetadata;
+
+/** {@link EntityAttributeIndex} unit test. */
+public class EntityAttributeIndexTestCase extends BaseTestCaseMetadata {
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        metadataFile = MD_PATH + "/shibboleth.net-metadata.xml";
+        issuerEntityId = "https://issues.shibboleth.net/shibboleth";
+        requesterEntityId = "https://idp.shibboleth.net/idp/shibboleth";
+
+        super.setUp();
+    }
+
+    public void testGetValues() throws Exception {
+        EntityAttributeIndex index = new EntityAttributeIndex();
+        EntityDescriptor entity = metadataProvider.getEntityDescriptor(requesterEntityId);
+
+        Set<String> values = index.getValues(entity, "urn:example.org:policies", null);
+        assertEquals(2, values.size());
+        assertTrue(values.contains("urn:example.org:policy:ABCD"));
+        assertTrue(values.contains("urn:example.org:policy:1234"));
+        assertSame(values, index.getValues(entity, "urn:example.org:policies", null));
+
+        values = index.getValues(entity, "urn:example.org:entitlements",
+                "urn:oasis:names:tc:SAML:2.0:attrname-format:uri");
+        assertEquals(2, values.size());
+        assertTrue(values.contains("urn:example.org:entitlements:1234"));
+        assertSame(values, index.getValues(entity, "urn:example.org:entitlements", null));
+
+        assertNull(index.getValues(entity, "urn:example.org:entitlements",
+                "urn:oasis:names:tc:SAML:2.0:attrname-format:basic"));
+        assertNull(index.getValues(entity, "urn:example.org:policies",
+                "urn:oasis:names:tc:SAML:2.0:attrname-format:uri"));
+        assertNull(index.getValues(entity, "urn:example.org:missing", null));
+        assertNull(index.getValues(metadataProvider.getEntityDescriptor(issuerEntityId), "urn:example.org:policies",
+                null));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.provider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/** Unit test for {@link CompactValueList}. */
+public class CompactValueListTest extends TestCase {
+
+    public void testListContract() {
+        CompactValueList<String> values = new CompactValueList<String>();
+        assertTrue(values.add("member"));
+        assertTrue(values.add("staff"));
+        assertTrue(values.add("member"));
+        assertTrue(values.add(null));
+        values.add(1, "staff");
+        assertTrue(values.addAll(0, Arrays.asList("faculty", "staff")));
+        assertEquals(Arrays.asList("faculty", "staff", "member", "staff", "staff", "member", null), values);
+
+        assertEquals("faculty", values.set(0, "staff"));
+        assertEquals("staff", values.remove(1));
+        assertEquals(Arrays.asList("staff", "member", "staff", "staff", "member", null), values);
+        assertEquals(5, values.lastIndexOf(null));
+    }
+
+    public void testIteratorRemoval() {
+        CompactValueList<Integer> values = new CompactValueList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(i % 100);
+        }
+
+        Iterator<Integer> valueItr = values.iterator();
+        while (valueItr.hasNext()) {
+            if (valueItr.next() % 2 == 0) {
+                valueItr.remove();
+            }
+        }
+        assertEquals(500, values.size());
+        assertFalse(values.contains(42));
+        assertEquals(Integer.valueOf(1), values.get(0));
+        assertEquals(Integer.valueOf(99), values.get(499));
+
+        values.add(42);
+        values.add(0, 42);
+        assertEquals(Integer.valueOf(42), values.get(0));
+        assertEquals(Integer.valueOf(42), values.get(501));
+
+        values.trimToSize();
+        assertEquals(502, values.size());
+        assertEquals(Integer.valueOf(1), values.get(1));
+    }
+
+    public void testMatchesArrayList() {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<Integer>();
+        CompactValueList<Integer> values = new CompactValueList<Integer>();
+
+        for (int i = 0; i < 10000; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 4 || expected.isEmpty()) {
+                int position = random.nextInt(expected.size() + 1);
+                expected.add(position, i);
+                values.add(position, i);
+            } else if (operation < 7) {
+                int position = random.nextInt(expected.size());
+                assertEquals(expected.remove(position), values.remove(position));
+            } else if (operation < 8) {
+                int position = random.nextInt(expected.size());
+                assertEquals(expected.set(position, -i), values.set(position, -i));
+            } else {
+                ListIterator<Integer> expectedItr = expected.listIterator();
+                ListIterator<Integer> valueItr = values.listIterator();
+                while (expectedItr.hasNext()) {
+                    assertEquals(expectedItr.next(), valueItr.next());
+                    if (random.nextInt(4) == 0) {
+                        expectedItr.remove();
+                        valueItr.remove();
+                    }
+                }
+            }
+            assertEquals(expected, values);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.context.support.StaticApplicationContext;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.TransientIdAttributeDefinition;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.TransientIdEntry;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.StaticDataConnector;
+import edu.internet2.middleware.shibboleth.common.log.AuditLogEntry;
+import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
+import edu.internet2.middleware.shibboleth.common.util.ExpiringMapBasedStorageService;
+
+/** Unit test for {@link AuditLogCacheWarmer}. */
+public class AuditLogCacheWarmerTest extends TestCase {
+
+    /** Time from which logins are predicted. */
+    private static final DateTime NOW = new DateTime(2010, 3, 10, 8, 0, 0, 0, DateTimeZone.UTC);
+
+    /** Directory holding the test audit log. */
+    private File logDirectory;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        logDirectory = File.createTempFile("audit", "");
+        logDirectory.delete();
+        logDirectory.mkdir();
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        for (File file : logDirectory.listFiles()) {
+            file.delete();
+        }
+        logDirectory.delete();
+        super.tearDown();
+    }
+
+    /** Tests that an audit log entry survives being written and parsed. */
+    public void testParseAuditLogEntry() {
+        AuditLogEntry entry = createEntry("jsmith", NOW);
+        entry.getReleasedAttributes().add("uid");
+        entry.getReleasedAttributes().add("mail");
+
+        AuditLogEntry parsed = AuditLogEntry.parse(entry.toString());
+        assertEquals(NOW.getMillis(), parsed.getAuditEventTime().getMillis());
+        assertEquals("jsmith", parsed.getPrincipalName());
+        assertEquals("https://sp.example.org", parsed.getRelyingPartyId());
+        assertEquals("https://idp.example.org", parsed.getAssertingPartyId());
+        assertNull(parsed.getResponseBinding());
+        assertEquals(2, parsed.getReleasedAttributes().size());
+
+        assertNull(AuditLogEntry.parse("not an audit log entry"));
+    }
+
+    /**
+     * Tests that principals who recently logged in at this time of day are predicted, most frequent first.
+     * 
+     * @throws Exception thrown if the audit log can not be read
+     */
+    public void testPredictLogins() throws Exception {
+        FileWriter writer = new FileWriter(new File(logDirectory, "idp-audit.log"));
+        writer.write(createEntry("alice", NOW.minusDays(1).plusMinutes(10)) + "\n");
+        writer.write(createEntry("alice", NOW.minusDays(2).plusMinutes(5)) + "\n");
+        writer.write(createEntry("bob", NOW.minusDays(1).plusMinutes(20)) + "\n");
+        writer.write(createEntry("carol", NOW.minusDays(1).plusHours(6)) + "\n");
+        writer.write(createEntry("dave", NOW.minusDays(30).plusMinutes(10)) + "\n");
+        writer.write(createEntry("erin", NOW.minusDays(1).minusMinutes(10)) + "\n");
+        writer.write("malformed line\n");
+        writer.close();
+
+        AuditLogCacheWarmer warmer = new AuditLogCacheWarmer(new ShibbolethAttributeResolver(), logDirectory.getPath(),
+                Long.MAX_VALUE / 2);
+        List<AuditLogEntry> logins = warmer.predictLogins(NOW);
+        warmer.destroy();
+
+        assertEquals(2, logins.size());
+        assertEquals("alice", logins.get(0).getPrincipalName());
+        assertEquals(NOW.minusDays(1).plusMinutes(10).getMillis(), logins.get(0).getAuditEventTime().getMillis());
+        assertEquals("bob", logins.get(1).getPrincipalName());
+    }
+
+    /**
+     * Tests that predicted principals are resolved on the warmer's own background thread.
+     * 
+     * @throws Exception thrown if the audit log can not be written
+     */
+    public void testBackgroundWarming() throws Exception {
+        DateTime now = new DateTime(DateTimeZone.UTC);
+        FileWriter writer = new FileWriter(new File(logDirectory, "idp-audit.log"));
+        writer.write(createEntry("alice", now.minusDays(1).plusMinutes(10)) + "\n");
+        writer.close();
+
+        RecordingResolver resolver = new RecordingResolver();
+        AuditLogCacheWarmer warmer = new AuditLogCacheWarmer(resolver, logDirectory.getPath(), 10);
+        try {
+            assertTrue(resolver.resolved.await(10, TimeUnit.SECONDS));
+        } finally {
+            warmer.destroy();
+        }
+
+        assertEquals("alice", resolver.principal);
+        assertEquals("https://sp.example.org", resolver.relyingParty);
+        assertEquals("shibboleth-audit-log-cache-warmer", resolver.threadName);
+    }
+
+    /**
+     * Tests that warming resolves data connectors but not attribute definitions, so no transient IDs are issued.
+     * 
+     * @throws Exception thrown if the audit log can not be written or the resolver configured
+     */
+    public void testOnlyDataConnectorsWarmed() throws Exception {
+        DateTime now = new DateTime(DateTimeZone.UTC);
+        FileWriter writer = new FileWriter(new File(logDirectory, "idp-audit.log"));
+        writer.write(createEntry("alice", now.minusDays(1).plusMinutes(10)) + "\n");
+        writer.close();
+
+        final AtomicInteger connectorResolutions = new AtomicInteger();
+        BasicAttribute<String> mail = new BasicAttribute<String>("mail");
+        mail.getValues().add("alice@example.org");
+        StaticDataConnector connector = new StaticDataConnector(Collections
+                .<BaseAttribute<String>> singletonList(mail)) {
+            public Map<String, BaseAttribute> resolve(ShibbolethResolutionContext resolutionContext)
+                    throws AttributeResolutionException {
+                connectorResolutions.incrementAndGet();
+                return super.resolve(resolutionContext);
+            }
+        };
+        connector.setId("static");
+
+        Timer timer = new Timer(true);
+        ExpiringMapBasedStorageService<String, TransientIdEntry> idStore = new ExpiringMapBasedStorageService<String, TransientIdEntry>(
+                timer, 60000);
+        TransientIdAttributeDefinition transientId = new TransientIdAttributeDefinition(idStore);
+        transientId.setId("transientId");
+
+        StaticApplicationContext appContext = new StaticApplicationContext();
+        appContext.getBeanFactory().registerSingleton("static", connector);
+        appContext.getBeanFactory().registerSingleton("transientId", transientId);
+        RecordingResolver resolver = new RecordingResolver();
+        resolver.onNewContextCreated(appContext);
+
+        AuditLogCacheWarmer warmer = new AuditLogCacheWarmer(resolver, logDirectory.getPath(), 10);
+        try {
+            assertTrue(resolver.resolved.await(10, TimeUnit.SECONDS));
+        } finally {
+            warmer.destroy();
+            idStore.destroy();
+            timer.cancel();
+        }
+
+        assertEquals(1, connectorResolutions.get());
+        assertEquals(0, idStore.getSize());
+    }
+
+    /**
+     * Creates an audit log entry.
+     * 
+     * @param principal principal name of the entry
+     * @param time time of the entry
+     * 
+     * @return the created entry
+     */
+    private AuditLogEntry createEntry(String principal, DateTime time) {
+        AuditLogEntry entry = new AuditLogEntry();
+        entry.setAuditEventTime(time);
+        entry.setPrincipalName(principal);
+        entry.setRelyingPartyId("https://sp.example.org");
+        entry.setAssertingPartyId("https://idp.example.org");
+        entry.setMessageProfile("urn:mace:shibboleth:2.0:profiles:saml2:sso");
+        return entry;
+    }
+
+    /** Resolver which records the first principal whose data connectors it resolves. */
+    private static class RecordingResolver extends ShibbolethAttributeResolver {
+
+        /** Released once a principal has been resolved. */
+        private final CountDownLatch resolved = new CountDownLatch(1);
+
+        /** Name of the principal resolved. */
+        private volatile String principal;
+
+        /** Relying party the principal was resolved for. */
+        private volatile String relyingParty;
+
+        /** Name of the thread the principal was resolved on. */
+        private volatile String threadName;
+
+        /** {@inheritDoc} */
+        public void resolveDataConnectors(SAMLProfileRequestContext requestContext) {
+            if (resolved.getCount() > 0) {
+                principal = requestContext.getPrincipalName();
+                relyingParty = requestContext.getInboundMessageIssuer();
+                threadName = Thread.currentThread().getName();
+            }
+            super.resolveDataConnectors(requestContext);
+            resolved.countDown();
+        }
+    }
+}
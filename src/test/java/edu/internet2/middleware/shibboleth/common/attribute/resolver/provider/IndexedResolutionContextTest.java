@@ -0,0 +1,148 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
+
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.springframework.context.support.StaticApplicationContext;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.SimpleAttributeDefinition;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.StaticDataConnector;
+import edu.internet2.middleware.shibboleth.common.profile.provider.BaseSAMLProfileRequestContext;
+import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
+
+/** Unit test for resolving attributes with an {@link IndexedResolutionContext}. */
+public class IndexedResolutionContextTest extends TestCase {
+
+    private RecordingAttributeResolver resolver;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        BasicAttribute<String> mail = new BasicAttribute<String>("mail");
+        mail.getValues().add("jdoe@example.org");
+        StaticDataConnector connector = new StaticDataConnector(Collections
+                .<BaseAttribute<String>> singletonList(mail));
+        connector.setId("static");
+
+        SimpleAttributeDefinition definition = new SimpleAttributeDefinition();
+        definition.setId("email");
+        definition.setSourceAttributeID("mail");
+        definition.getDependencyIds().add("static");
+
+        StaticApplicationContext appContext = new StaticApplicationContext();
+        appContext.getBeanFactory().registerSingleton("static", connector);
+        appContext.getBeanFactory().registerSingleton("email", definition);
+
+        resolver = new RecordingAttributeResolver();
+        resolver.onNewContextCreated(appContext);
+    }
+
+    public void testIndexedResolution() throws AttributeResolutionException {
+        BaseSAMLProfileRequestContext requestContext = new BaseSAMLProfileRequestContext();
+
+        ShibbolethResolutionContext context = resolver.createResolutionContext(requestContext);
+        assertTrue(context instanceof IndexedResolutionContext);
+        try {
+            BaseAttribute email = resolver.resolveAttribute("email", context);
+            assertEquals(Collections.singletonList("jdoe@example.org"), email.getValues());
+            assertSame(email, context.getResolvedAttribute("email"));
+            assertNotNull(context.getResolvedDataConnectorAttributes("static").get("mail"));
+
+            // the map view is built on demand and kept up to date
+            assertTrue(context.getResolvedAttributeDefinitions().containsKey("email"));
+            assertSame(email, context.getResolvedAttributeDefinitions().get("email").resolve(context));
+
+            // nested resolutions get their own context
+            assertNotSame(context, resolver.createResolutionContext(requestContext));
+        } finally {
+            resolver.releaseResolutionContext(context);
+        }
+        assertNull(context.getResolvedAttribute("email"));
+        assertFalse(((IndexedResolutionContext) context).isInUse());
+
+        ShibbolethResolutionContext reused = resolver.createResolutionContext(requestContext);
+        assertSame(context, reused);
+        resolver.releaseResolutionContext(reused);
+
+        Map<String, BaseAttribute> attributes = resolver.resolveAttributes(requestContext);
+        assertEquals(1, attributes.size());
+        assertEquals("jdoe@example.org", attributes.get("email").getValues().iterator().next());
+
+        // the resolution ran on the pooled context, which was cleared when it was released
+        assertSame(context, resolver.lastContext);
+        assertFalse(((IndexedResolutionContext) context).isInUse());
+        assertNull(context.getAttributeRequestContext());
+        assertNull(context.getResolvedAttribute("email"));
+        assertTrue(context.getResolvedAttributeDefinitions().isEmpty());
+    }
+
+    public void testDirectlyRegisteredPlugIns() {
+        resolver.getAttributeDefinitions().put("other", new SimpleAttributeDefinition());
+        assertFalse(resolver.createResolutionContext(new BaseSAMLProfileRequestContext())
+                instanceof IndexedResolutionContext);
+    }
+
+    public void testReplacedPlugIn() {
+        SimpleAttributeDefinition replacement = new SimpleAttributeDefinition();
+        replacement.setId("email");
+        replacement.setSourceAttributeID("mail");
+        replacement.getDependencyIds().add("static");
+        resolver.getAttributeDefinitions().put("email", replacement);
+
+        assertFalse(resolver.createResolutionContext(new BaseSAMLProfileRequestContext())
+                instanceof IndexedResolutionContext);
+    }
+
+    public void testReloadReleasesPooledContext() throws Exception {
+        ShibbolethResolutionContext context = resolver.createResolutionContext(new BaseSAMLProfileRequestContext());
+        resolver.releaseResolutionContext(context);
+
+        StaticApplicationContext appContext = new StaticApplicationContext();
+        appContext.getBeanFactory().registerSingleton("static", resolver.getDataConnectors().get("static"));
+        appContext.getBeanFactory().registerSingleton("email", resolver.getAttributeDefinitions().get("email"));
+        resolver.onNewContextCreated(appContext);
+
+        ShibbolethResolutionContext reloaded = resolver.createResolutionContext(new BaseSAMLProfileRequestContext());
+        assertTrue(reloaded instanceof IndexedResolutionContext);
+        assertNotSame(context, reloaded);
+        assertNotSame(((IndexedResolutionContext) context).getPlugInIndex(), ((IndexedResolutionContext) reloaded)
+                .getPlugInIndex());
+        resolver.releaseResolutionContext(reloaded);
+    }
+
+    /** Attribute resolver which records the last resolution context it created. */
+    private static class RecordingAttributeResolver extends ShibbolethAttributeResolver {
+
+        /** Last resolution context created. */
+        private ShibbolethResolutionContext lastContext;
+
+        /** {@inheritDoc} */
+        protected ShibbolethResolutionContext createResolutionContext(SAMLProfileRequestContext requestContext) {
+            lastContext = super.createResolutionContext(requestContext);
+            return lastContext;
+        }
+    }
+}
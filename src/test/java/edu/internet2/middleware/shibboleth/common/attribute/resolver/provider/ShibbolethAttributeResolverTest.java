@@ -0,0 +1,69 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+
+/** Unit test for {@link ShibbolethAttributeResolver}. */
+public class ShibbolethAttributeResolverTest extends TestCase {
+
+    private ShibbolethAttributeResolver resolver;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        resolver = new ShibbolethAttributeResolver();
+    }
+
+    public void testRemoveDuplicateValues() {
+        BasicAttribute<String> affiliation = new BasicAttribute<String>("eduPersonAffiliation");
+        affiliation.getValues().addAll(
+                Arrays.asList("member", "staff", new String("member"), null, "student", "staff", null));
+
+        resolver.removeDuplicateValues(affiliation);
+        assertEquals(Arrays.asList("member", "staff", null, "student"), affiliation.getValues());
+    }
+
+    public void testRemoveDuplicateValuesLargeAttribute() {
+        BasicAttribute<Integer> groups = new BasicAttribute<Integer>("groups");
+        List<Integer> expectedValues = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            groups.getValues().add(i);
+            groups.getValues().add(i / 2);
+            expectedValues.add(i);
+        }
+
+        resolver.removeDuplicateValues(groups);
+        assertEquals(expectedValues, groups.getValues());
+    }
+
+    public void testRemoveDuplicateValuesSingleValue() {
+        BaseAttribute<String> mail = new BasicAttribute<String>("mail");
+        mail.getValues().add("jdoe@example.org");
+
+        resolver.removeDuplicateValues(mail);
+        assertEquals(Collections.singletonList("jdoe@example.org"), mail.getValues());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider;
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.StaticDataConnector;
+
+/** Unit test for concurrent validation in {@link ShibbolethAttributeResolver}. */
+public class ShibbolethAttributeResolverValidationTest extends TestCase {
+
+    private ShibbolethAttributeResolver resolver;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        resolver = new ShibbolethAttributeResolver();
+        resolver.setValidationThreads(4);
+        resolver.setValidationTimeout(500);
+        addConnector("valid", 0, false);
+    }
+
+    public void testValid() throws AttributeResolutionException {
+        addConnector("slow", 200, false);
+        resolver.validate();
+    }
+
+    public void testFailuresAggregated() {
+        addConnector("broken1", 0, true);
+        addConnector("broken2", 0, true);
+        addConnector("hung", 60000, false);
+
+        long start = System.currentTimeMillis();
+        try {
+            resolver.validate();
+            fail("Invalid connectors passed validation");
+        } catch (AttributeResolutionException e) {
+            assertTrue(e.getMessage().startsWith("3 of 4 plug-ins are invalid"));
+            assertTrue(e.getMessage().contains("data connector broken1: broken1 is broken"));
+            assertTrue(e.getMessage().contains("data connector broken2: broken2 is broken"));
+            assertTrue(e.getMessage().contains("data connector hung: did not validate within 500ms"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    public void testFailover() throws AttributeResolutionException {
+        StaticDataConnector broken = addConnector("broken", 0, true);
+        broken.setFailoverDependencyIds("valid");
+        resolver.validate();
+    }
+
+    private StaticDataConnector addConnector(final String id, final long delay, final boolean fail) {
+        StaticDataConnector connector = new StaticDataConnector(Collections.<BaseAttribute<String>> emptyList()) {
+            public void validate() throws AttributeResolutionException {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (fail) {
+                    throw new AttributeResolutionException(id + " is broken");
+                }
+            }
+        };
+        connector.setId(id);
+        resolver.getDataConnectors().put(id, connector);
+        return connector;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.AttributeResolutionException;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.ShibbolethResolutionContext;
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.StaticDataConnector;
+import edu.internet2.middleware.shibboleth.common.profile.provider.BaseSAMLProfileRequestContext;
+import edu.internet2.middleware.shibboleth.common.profile.provider.SAMLProfileRequestContext;
+
+/** Unit test for {@link JavaAttributeDefinition}. */
+public class JavaAttributeDefinitionTest extends TestCase {
+
+    private ShibbolethResolutionContext resolutionContext;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        BasicAttribute<String> affiliation = new BasicAttribute<String>("affiliation");
+        affiliation.getValues().add("staff");
+        affiliation.getValues().add("student");
+
+        ArrayList<BaseAttribute<String>> attributes = new ArrayList<BaseAttribute<String>>();
+        attributes.add(affiliation);
+
+        StaticDataConnector data = new StaticDataConnector(attributes);
+
+        SAMLProfileRequestContext requestCtx = new BaseSAMLProfileRequestContext();
+        resolutionContext = new ShibbolethResolutionContext(requestCtx);
+        resolutionContext.getResolvedPlugins().put("affiliation", data);
+    }
+
+    public void testCompiledSource() throws AttributeResolutionException {
+        JavaAttributeDefinition attributeDefinition = new JavaAttributeDefinition();
+        attributeDefinition.setId("upper");
+        attributeDefinition.setSourceAttributeID("affiliation");
+        attributeDefinition.getDependencyIds().add("affiliation");
+        attributeDefinition.setSource("for (String value : context.getStringValues(\"affiliation\")) {\n"
+                + "    attribute.getValues().add(value.toUpperCase() + \"@example.org\");\n" + "}");
+        attributeDefinition.initialize();
+        attributeDefinition.validate();
+
+        BaseAttribute attribute = attributeDefinition.resolve(resolutionContext);
+        assertEquals("upper", attribute.getId());
+        assertEquals(2, attribute.getValues().size());
+        assertTrue(attribute.getValues().contains("STAFF@example.org"));
+        assertTrue(attribute.getValues().contains("STUDENT@example.org"));
+    }
+
+    public void testCompileError() {
+        JavaAttributeDefinition attributeDefinition = new JavaAttributeDefinition();
+        attributeDefinition.setId("broken");
+        attributeDefinition.setSource("attribute.getValues().add(undefinedVariable);");
+        attributeDefinition.initialize();
+
+        try {
+            attributeDefinition.validate();
+            fail("definition with a compile error validated");
+        } catch (AttributeResolutionException e) {
+            assertTrue(e.getMessage().contains("line 1"));
+        }
+    }
+}
@@ -154,4 +154,64 @@ public class MappedAttributeDefinitionTest extends TestCase{
         assertEquals(true, mapAttrib.getValues().contains(bar));
         assertEquals(true, mapAttrib.getValues().contains("partime-employee"));
     }
+    
+    public void testBackReferenceMapping() throws AttributeResolutionException {
+        ValueMap fooValueMap = new ValueMap();
+        fooValueMap.setReturnValue("urn:example.org:$1");
+        fooValueMap.getSourceValues().add(fooValueMap.new SourceValue("(stu|sta).*", false, false));
+        
+        ValueMap barValueMap = new ValueMap();
+        barValueMap.setReturnValue("urn:example.org:staff");
+        barValueMap.getSourceValues().add(barValueMap.new SourceValue("Staff", true, false));
+        barValueMap.getSourceValues().add(barValueMap.new SourceValue("employe", false, true));
+        
+        MappedAttributeDefinition attributeDefinition = new MappedAttributeDefinition();
+        attributeDefinition.setId("map1");
+        attributeDefinition.setSourceAttributeID("affiliation");
+        attributeDefinition.getDependencyIds().add("affiliation");
+        attributeDefinition.getValueMaps().add(fooValueMap);
+        attributeDefinition.getValueMaps().add(barValueMap);
+        
+        BaseAttribute mapAttrib = attributeDefinition.resolve(resolutionContext);
+        assertEquals(4, mapAttrib.getValues().size());
+        assertEquals(true, mapAttrib.getValues().contains("urn:example.org:sta"));
+        assertEquals(true, mapAttrib.getValues().contains("urn:example.org:stu"));
+        assertEquals(true, mapAttrib.getValues().contains("urn:example.org:staff"));
+    }
+    
+    public void testMemoizedMapping() throws AttributeResolutionException {
+        ValueMap fooValueMap = new ValueMap();
+        fooValueMap.setReturnValue("foo");
+        fooValueMap.getSourceValues().add(fooValueMap.new SourceValue("staff", false, false));
+        
+        final int[] resolutions = new int[1];
+        MappedAttributeDefinition attributeDefinition = new MappedAttributeDefinition() {
+            protected BaseAttribute doResolve(ShibbolethResolutionContext context)
+                    throws AttributeResolutionException {
+                resolutions[0]++;
+                return super.doResolve(context);
+            }
+        };
+        attributeDefinition.setId("map1");
+        attributeDefinition.setSourceAttributeID("affiliation");
+        attributeDefinition.getDependencyIds().add("affiliation");
+        attributeDefinition.setMemoizationCacheSize(10);
+        attributeDefinition.getValueMaps().add(fooValueMap);
+        
+        BaseAttribute firstAttrib = attributeDefinition.resolve(resolutionContext);
+        assertEquals(1, resolutions[0]);
+        assertEquals(1, firstAttrib.getValues().size());
+        firstAttrib.getValues().clear();
+        
+        BaseAttribute secondAttrib = attributeDefinition.resolve(resolutionContext);
+        assertEquals(1, resolutions[0]);
+        assertNotSame(firstAttrib, secondAttrib);
+        assertEquals("map1", secondAttrib.getId());
+        assertEquals(1, secondAttrib.getValues().size());
+        assertEquals(true, secondAttrib.getValues().contains("foo"));
+
+        attributeDefinition.setMemoizationCacheSize(0);
+        attributeDefinition.resolve(resolutionContext);
+        assertEquals(2, resolutions[0]);
+    }
 }
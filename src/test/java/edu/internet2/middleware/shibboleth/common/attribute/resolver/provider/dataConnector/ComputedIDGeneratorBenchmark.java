@@ -0,0 +1,92 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
+
+import java.security.MessageDigest;
+
+import org.opensaml.xml.util.Base64;
+
+/**
+ * Microbenchmark comparing {@link ComputedIDGenerator} with the per-request digest lookup it replaced. Run the main
+ * method with the test classpath; it is not run as part of the unit tests.
+ */
+public class ComputedIDGeneratorBenchmark {
+
+    /** Number of identifiers computed per measurement. */
+    private static final int ITERATIONS = 1000000;
+
+    /** Salt used when computing identifiers. */
+    private static final byte[] SALT = "abcdefghijklmnopqrstuvwxyz".getBytes();
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args ignored
+     * 
+     * @throws Exception thrown if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        ComputedIDGenerator generator = new ComputedIDGenerator(null, SALT, 0);
+        ComputedIDGenerator cachingGenerator = new ComputedIDGenerator(null, SALT, 10000);
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int checksum = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                checksum += original("https://sp.example.org/shibboleth", "user" + (i % 5000)).length();
+            }
+            long original = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                checksum += generator.generate("https://sp.example.org/shibboleth", "user" + (i % 5000)).length();
+            }
+            long shared = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                checksum += cachingGenerator.generate("https://sp.example.org/shibboleth", "user" + (i % 5000))
+                        .length();
+            }
+            long cached = System.nanoTime() - start;
+
+            System.out.println("round " + round + ": original " + (original / ITERATIONS) + "ns/id, generator "
+                    + (shared / ITERATIONS) + "ns/id, cached generator " + (cached / ITERATIONS) + "ns/id ("
+                    + checksum + ")");
+        }
+    }
+
+    /**
+     * Computes an identifier the way the connectors did before {@link ComputedIDGenerator}.
+     * 
+     * @param peerEntityId ID of the peer entity
+     * @param sourceId the source ID
+     * 
+     * @return the computed identifier
+     * 
+     * @throws Exception thrown if SHA-1 is not supported
+     */
+    private static String original(String peerEntityId, String sourceId) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA");
+        md.update(peerEntityId.getBytes());
+        md.update((byte) '!');
+        md.update(sourceId.getBytes());
+        md.update((byte) '!');
+        return Base64.encodeBytes(md.digest(SALT));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import junit.framework.TestCase;
+
+import org.opensaml.xml.util.Base64;
+
+/** Unit test for {@link ComputedIDGenerator}. */
+public class ComputedIDGeneratorTest extends TestCase {
+
+    private static final byte[] SALT = "abcdefghijklmnopqrstuvwxyz".getBytes();
+
+    public void testCompatibleWithOriginalComputation() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA");
+        md.update("https://sp.example.org/shibboleth".getBytes());
+        md.update((byte) '!');
+        md.update("jdoe".getBytes());
+        md.update((byte) '!');
+        String expected = Base64.encodeBytes(md.digest(SALT));
+
+        ComputedIDGenerator generator = new ComputedIDGenerator(null, SALT, 0);
+        assertEquals(expected, generator.generate("https://sp.example.org/shibboleth", "jdoe"));
+        assertEquals(expected, generator.generate("https://sp.example.org/shibboleth", "jdoe"));
+    }
+
+    public void testCharset() throws Exception {
+        Charset utf8 = Charset.forName("UTF-8");
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        assertEquals(Charset.defaultCharset(), new ComputedIDGenerator(null, SALT, 0).getCharset());
+
+        MessageDigest md = MessageDigest.getInstance("SHA");
+        md.update("https://sp.example.org/shibboleth".getBytes(latin1));
+        md.update((byte) '!');
+        md.update("j\u00f6rg".getBytes(latin1));
+        md.update((byte) '!');
+        String expected = Base64.encodeBytes(md.digest(SALT));
+
+        ComputedIDGenerator latin1Generator = new ComputedIDGenerator(null, SALT, 0, latin1);
+        ComputedIDGenerator utf8Generator = new ComputedIDGenerator(null, SALT, 0, utf8);
+        assertEquals(expected, latin1Generator.generate("https://sp.example.org/shibboleth", "j\u00f6rg"));
+        assertFalse(expected.equals(utf8Generator.generate("https://sp.example.org/shibboleth", "j\u00f6rg")));
+        assertEquals(latin1Generator.generate("https://sp.example.org/shibboleth", "jdoe"), utf8Generator.generate(
+                "https://sp.example.org/shibboleth", "jdoe"));
+    }
+
+    public void testCache() {
+        ComputedIDGenerator uncached = new ComputedIDGenerator("SHA-256", SALT, 0);
+        ComputedIDGenerator cached = new ComputedIDGenerator("SHA-256", SALT, 2);
+
+        String id = cached.generate("https://sp.example.org/shibboleth", "jdoe");
+        assertEquals(uncached.generate("https://sp.example.org/shibboleth", "jdoe"), id);
+        assertEquals(id, cached.generate("https://sp.example.org/shibboleth", "jdoe"));
+        assertEquals(1, cached.getIdCache().getHits());
+        assertFalse(id.equals(cached.generate("https://sp.example.org/shibboleth", "jsmith")));
+    }
+
+    public void testLongDigestIsNotLineWrapped() {
+        ComputedIDGenerator generator = new ComputedIDGenerator("SHA-512", SALT, 0);
+        assertEquals(-1, generator.generate("https://sp.example.org/shibboleth", "jdoe").indexOf('\n'));
+    }
+
+    public void testUnsupportedAlgorithm() {
+        try {
+            new ComputedIDGenerator("NOT-A-DIGEST", SALT, 0);
+            fail("unsupported algorithm accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
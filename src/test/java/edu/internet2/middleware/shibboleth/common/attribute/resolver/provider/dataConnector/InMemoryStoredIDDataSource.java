@@ -0,0 +1,242 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * An in-memory stand-in for the <tt>shibpid</tt> table used by {@link StoredIDStore}. It understands only the
+ * statements issued by the store and counts the queries run against it.
+ */
+public class InMemoryStoredIDDataSource {
+
+    /** Rows of the table, each a map from column name to value. */
+    private final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+
+    /** Number of queries executed. */
+    private int queries;
+
+    /**
+     * Gets a data source backed by this table.
+     * 
+     * @return data source backed by this table
+     */
+    public DataSource getDataSource() {
+        return proxy(DataSource.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getConnection".equals(method.getName())) {
+                    return createConnection();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Adds an active row to the table.
+     * 
+     * @param peerEntity entity ID of the peer
+     * @param principal principal name
+     * @param persistentId the persistent ID
+     */
+    public void addActiveRow(String peerEntity, String principal, String persistentId) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("localEntity", "https://idp.example.org");
+        row.put("peerEntity", peerEntity);
+        row.put("principalName", principal);
+        row.put("localId", principal);
+        row.put("persistentId", persistentId);
+        row.put("creationDate", new Timestamp(System.currentTimeMillis()));
+        rows.add(row);
+    }
+
+    /**
+     * Gets the number of queries executed.
+     * 
+     * @return number of queries executed
+     */
+    public int getQueries() {
+        return queries;
+    }
+
+    /**
+     * Creates a connection to this table.
+     * 
+     * @return the connection
+     */
+    private Connection createConnection() {
+        return proxy(Connection.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("prepareStatement".equals(method.getName())) {
+                    return createStatement((String) args[0]);
+                } else if ("isClosed".equals(method.getName())) {
+                    return false;
+                } else if ("close".equals(method.getName())) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Creates a prepared statement for the given SQL.
+     * 
+     * @param sql the SQL
+     * 
+     * @return the statement
+     */
+    private PreparedStatement createStatement(final String sql) {
+        final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("setString".equals(name) || "setTimestamp".equals(name)) {
+                    parameters.put((Integer) args[0], args[1]);
+                    return null;
+                } else if ("setNull".equals(name)) {
+                    parameters.put((Integer) args[0], null);
+                    return null;
+                } else if ("setQueryTimeout".equals(name) || "close".equals(name)) {
+                    return null;
+                } else if ("executeQuery".equals(name)) {
+                    queries++;
+                    return createResultSet(select(sql, parameters));
+                } else if ("executeUpdate".equals(name)) {
+                    return update(sql, parameters);
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    /**
+     * Selects the rows matching the WHERE clause of a query.
+     * 
+     * @param sql the query
+     * @param parameters the statement parameters
+     * 
+     * @return the matching rows
+     */
+    private List<Map<String, Object>> select(String sql, Map<Integer, Object> parameters) {
+        String[] conditions = sql.substring(sql.indexOf(" WHERE ") + 7).split(" AND ");
+        List<Map<String, Object>> matches = new ArrayList<Map<String, Object>>();
+        for (Map<String, Object> row : rows) {
+            int parameter = 1;
+            boolean match = true;
+            for (String condition : conditions) {
+                String column = condition.substring(0, condition.indexOf(' '));
+                if (condition.endsWith("IS NOT NULL")) {
+                    match &= row.get(column) != null;
+                } else if (condition.endsWith("IS NULL")) {
+                    match &= row.get(column) == null;
+                } else {
+                    match &= parameters.get(parameter++).equals(row.get(column));
+                }
+            }
+            if (match) {
+                matches.add(new HashMap<String, Object>(row));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Applies an insert or deactivation.
+     * 
+     * @param sql the statement
+     * @param parameters the statement parameters
+     * 
+     * @return number of rows changed
+     */
+    private int update(String sql, Map<Integer, Object> parameters) {
+        if (sql.startsWith("INSERT")) {
+            String columns = sql.substring(sql.indexOf('(') + 1, sql.indexOf(')'));
+            Map<String, Object> row = new HashMap<String, Object>();
+            int parameter = 1;
+            for (String column : columns.split(", ")) {
+                row.put(column, parameters.get(parameter++));
+            }
+            rows.add(row);
+            return 1;
+        }
+
+        int updated = 0;
+        for (Map<String, Object> row : rows) {
+            if (parameters.get(2).equals(row.get("persistentId"))) {
+                row.put("deactivationDate", parameters.get(1));
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Creates a result set over the given rows.
+     * 
+     * @param results the rows
+     * 
+     * @return the result set
+     */
+    private ResultSet createResultSet(List<Map<String, Object>> results) {
+        final Iterator<Map<String, Object>> rowIterator = results.iterator();
+        return proxy(ResultSet.class, new InvocationHandler() {
+            private Map<String, Object> row;
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("next".equals(name)) {
+                    row = rowIterator.hasNext() ? rowIterator.next() : null;
+                    return row != null;
+                } else if ("getString".equals(name) || "getTimestamp".equals(name)) {
+                    return row.get(args[0]);
+                } else if ("close".equals(name)) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    /**
+     * Creates a proxy for a JDBC interface.
+     * 
+     * @param <T> the interface type
+     * @param type the interface
+     * @param handler handler for the interface methods
+     * 
+     * @return the proxy
+     */
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(InMemoryStoredIDDataSource.class.getClassLoader(),
+                new Class<?>[] {type}, handler));
+    }
+}
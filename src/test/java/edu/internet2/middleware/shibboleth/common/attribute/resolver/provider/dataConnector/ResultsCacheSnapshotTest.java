@@ -0,0 +1,146 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import edu.internet2.middleware.shibboleth.common.attribute.BaseAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.BasicAttribute;
+import edu.internet2.middleware.shibboleth.common.attribute.provider.ScopedAttributeValue;
+
+/** Unit test for {@link ResultsCacheSnapshot}. */
+public class ResultsCacheSnapshotTest extends TestCase {
+
+    /** Cache manager the test caches are registered with. */
+    private CacheManager cacheManager;
+
+    /** Snapshot file used by the test. */
+    private File snapshotFile;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        cacheManager = CacheManager.create();
+        snapshotFile = File.createTempFile("resultsCache", ".snapshot");
+        snapshotFile.delete();
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        cacheManager.removalAll();
+        snapshotFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Tests that unexpired results survive a save and restore and expired results do not.
+     * 
+     * @throws Exception thrown if the snapshot can not be read or written
+     */
+    public void testSaveAndRestore() throws Exception {
+        Cache source = createCache("source");
+
+        BasicAttribute<Object> uid = new BasicAttribute<Object>("uid");
+        uid.getValues().add("jsmith");
+        uid.getValues().add(new ScopedAttributeValue("member", "example.org"));
+        uid.getValues().add(new byte[] { 1, 2, 3 });
+        Map<String, BaseAttribute> result = new HashMap<String, BaseAttribute>();
+        result.put("uid", uid);
+        source.put(new Element("query1", result));
+
+        Element expired = new Element("query2", new HashMap<String, BaseAttribute>());
+        expired.setTimeToLive(1);
+        source.put(expired);
+        Thread.sleep(2100);
+
+        ResultsCacheSnapshot snapshot = new ResultsCacheSnapshot(snapshotFile);
+        assertEquals(1, snapshot.save(source));
+        assertTrue(snapshotFile.exists());
+
+        Cache target = createCache("target");
+        assertEquals(1, snapshot.restore(target));
+        assertNull(target.get("query2"));
+
+        Map<String, BaseAttribute> restored = (Map<String, BaseAttribute>) target.get("query1").getObjectValue();
+        BaseAttribute restoredUid = restored.get("uid");
+        assertEquals("uid", restoredUid.getId());
+        assertEquals(3, restoredUid.getValues().size());
+        assertTrue(restoredUid.getValues().contains("jsmith"));
+        assertTrue(restoredUid.getValues().contains(new ScopedAttributeValue("member", "example.org")));
+    }
+
+    /**
+     * Tests that restoring from a missing snapshot file leaves the cache empty.
+     * 
+     * @throws Exception thrown if the snapshot can not be read
+     */
+    public void testRestoreMissingSnapshot() throws Exception {
+        Cache target = createCache("missing");
+        assertEquals(0, new ResultsCacheSnapshot(snapshotFile).restore(target));
+        assertEquals(0, target.getSize());
+    }
+
+    /**
+     * Tests that the snapshot is readable only by its owner on file systems with POSIX permissions.
+     * 
+     * @throws Exception thrown if the snapshot can not be written
+     */
+    public void testSnapshotPermissions() throws Exception {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+
+        new ResultsCacheSnapshot(snapshotFile).save(createCache("permissions"));
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(snapshotFile
+                .toPath()));
+    }
+
+    /** Tests that saving the cache of a connector after the cache manager has been shut down does not fail. */
+    public void testSaveAfterCacheShutdown() {
+        Cache cache = createCache("shutdown");
+        RDBMSDataConnector connector = new RDBMSDataConnector(null, cache);
+        connector.setId("rdbms");
+        connector.setCacheSnapshot(new ResultsCacheSnapshot(snapshotFile));
+
+        cacheManager.removeCache("shutdown");
+        connector.saveCacheSnapshot();
+        assertFalse(snapshotFile.exists());
+    }
+
+    /**
+     * Creates a memory only cache registered with the test's cache manager.
+     * 
+     * @param name name of the cache
+     * 
+     * @return the created cache
+     */
+    private Cache createCache(String name) {
+        Cache cache = new Cache(name, 100, false, false, 60, 60);
+        cacheManager.addCache(cache);
+        return cache;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector;
+
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.dataConnector.StoredIDStore.PersistentIdEntry;
+import edu.internet2.middleware.shibboleth.common.config.attribute.resolver.principalConnector.StoredIDPrincipalConnectorFactoryBean;
+
+/** Unit test for the active persistent ID cache of {@link StoredIDStore}. */
+public class StoredIDStoreTest extends TestCase {
+
+    private static final String SP = "https://sp.example.org";
+
+    private InMemoryStoredIDDataSource database;
+
+    private StoredIDStore store;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        database = new InMemoryStoredIDDataSource();
+        database.addActiveRow(SP, "jdoe", "pid-jdoe");
+        store = new StoredIDStore(database.getDataSource(), 5);
+    }
+
+    public void testCachedLookup() throws Exception {
+        store.setActiveIdCacheSize(10);
+
+        PersistentIdEntry entry = store.getActivePersistentIdEntry("pid-jdoe");
+        assertEquals("jdoe", entry.getPrincipalName());
+        assertEquals(1, database.getQueries());
+
+        entry.setPrincipalName("mallory");
+        PersistentIdEntry cachedEntry = store.getActivePersistentIdEntry("pid-jdoe");
+        assertEquals(1, database.getQueries());
+        assertNotSame(entry, cachedEntry);
+        assertEquals("jdoe", cachedEntry.getPrincipalName());
+    }
+
+    public void testCacheDisabled() throws Exception {
+        store.getActivePersistentIdEntry("pid-jdoe");
+        store.getActivePersistentIdEntry("pid-jdoe");
+        assertEquals(2, database.getQueries());
+        assertNull(store.getActiveIdCache());
+    }
+
+    public void testStoredEntryIsCopied() throws Exception {
+        store.setActiveIdCacheSize(10);
+
+        PersistentIdEntry entry = store.new PersistentIdEntry();
+        entry.setLocalEntityId("https://idp.example.org");
+        entry.setPeerEntityId(SP);
+        entry.setPrincipalName("jsmith");
+        entry.setLocalId("jsmith");
+        entry.setPersistentId("pid-jsmith");
+        store.storePersistentIdEntry(entry);
+        entry.setPrincipalName("mallory");
+
+        assertEquals("jsmith", store.getActivePersistentIdEntry("pid-jsmith").getPrincipalName());
+        assertEquals(0, database.getQueries());
+    }
+
+    public void testDeactivationInvalidatesCache() throws Exception {
+        store.setActiveIdCacheSize(10);
+        assertNotNull(store.getActivePersistentIdEntry("pid-jdoe"));
+
+        store.deactivatePersistentId("pid-jdoe", null);
+        assertNull(store.getActivePersistentIdEntry("pid-jdoe"));
+        assertEquals(2, database.getQueries());
+    }
+
+    public void testDeactivationDuringRead() throws Exception {
+        // the ID is deactivated after a read has seen it active but before the read caches it
+        store = new StoredIDStore(database.getDataSource(), 5) {
+            public PersistentIdEntry getPersistentIdEntry(String persistentId, boolean onlyActiveId)
+                    throws SQLException {
+                PersistentIdEntry entry = super.getPersistentIdEntry(persistentId, onlyActiveId);
+                deactivatePersistentId(persistentId, null);
+                return entry;
+            }
+        };
+        store.setActiveIdCacheSize(10);
+
+        assertNotNull(store.getActivePersistentIdEntry("pid-jdoe"));
+        assertNull(store.getActiveIdCache().get("pid-jdoe"));
+    }
+
+    public void testDefaultCacheLifetime() {
+        assertEquals(StoredIDStore.DEFAULT_ACTIVE_ID_CACHE_LIFETIME, store.getActiveIdCacheLifetime());
+    }
+
+    public void testSharedStore() throws Exception {
+        StoredIDDataConnector dataConnector = new StoredIDDataConnector(database.getDataSource(), 5, "pid", "uid",
+                "abcdefghijklmnopqrstuvwxyz".getBytes());
+        StoredIDStore sharedStore = dataConnector.getStoredIDStore();
+
+        StoredIDPrincipalConnectorFactoryBean cachingFactory = new StoredIDPrincipalConnectorFactoryBean();
+        cachingFactory.setPluginId("caching");
+        cachingFactory.setIdProducer(dataConnector);
+        cachingFactory.setCacheSize(10);
+        cachingFactory.afterPropertiesSet();
+        cachingFactory.getObject();
+        assertEquals(10, sharedStore.getActiveIdCacheSize());
+
+        sharedStore.getActivePersistentIdEntry("pid-jdoe");
+
+        // a second connector which does not configure the cache leaves it, and its entries, alone
+        StoredIDPrincipalConnectorFactoryBean plainFactory = new StoredIDPrincipalConnectorFactoryBean();
+        plainFactory.setPluginId("plain");
+        plainFactory.setIdProducer(dataConnector);
+        plainFactory.afterPropertiesSet();
+        plainFactory.getObject();
+        assertEquals(10, sharedStore.getActiveIdCacheSize());
+        assertEquals(StoredIDStore.DEFAULT_ACTIVE_ID_CACHE_LIFETIME, sharedStore.getActiveIdCacheLifetime());
+
+        // nor does one configuring the same size
+        cachingFactory = new StoredIDPrincipalConnectorFactoryBean();
+        cachingFactory.setPluginId("caching2");
+        cachingFactory.setIdProducer(dataConnector);
+        cachingFactory.setCacheSize(10);
+        cachingFactory.afterPropertiesSet();
+        cachingFactory.getObject();
+
+        sharedStore.getActivePersistentIdEntry("pid-jdoe");
+        assertEquals(1, database.getQueries());
+    }
+}
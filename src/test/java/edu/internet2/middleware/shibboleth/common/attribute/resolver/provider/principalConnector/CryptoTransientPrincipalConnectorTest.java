@@ -0,0 +1,103 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.principalConnector;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import junit.framework.TestCase;
+import edu.internet2.middleware.shibboleth.common.util.DataSealer;
+import edu.internet2.middleware.shibboleth.common.util.DataSealerException;
+
+/** Unit test for the unwrap cache of {@link CryptoTransientPrincipalConnector}. */
+public class CryptoTransientPrincipalConnectorTest extends TestCase {
+
+    private static final String PRINCIPAL = "https://idp.example.org!https://sp.example.org!jdoe";
+
+    private CountingDataSealer sealer;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        SecretKey key = generator.generateKey();
+
+        sealer = new CountingDataSealer();
+        sealer.setCipherKey(key);
+        sealer.setMacKey(key);
+        sealer.init();
+        sealer.unwraps = 0;
+    }
+
+    public void testCachedUnwrap() throws Exception {
+        CryptoTransientPrincipalConnector connector = new CryptoTransientPrincipalConnector(sealer);
+        connector.setUnwrapCacheSize(10);
+        String transientId = sealer.wrap(PRINCIPAL, System.currentTimeMillis() + 60000);
+
+        assertEquals(PRINCIPAL, connector.unwrap(transientId));
+        assertEquals(PRINCIPAL, connector.unwrap(transientId));
+        assertEquals(1, sealer.unwraps);
+        assertEquals(1, connector.getUnwrapCacheHits());
+        assertEquals(1, connector.getUnwrapCacheMisses());
+        assertEquals(1, connector.getUnwrapCacheEntries());
+    }
+
+    public void testExpiredEntry() throws Exception {
+        CryptoTransientPrincipalConnector connector = new CryptoTransientPrincipalConnector(sealer);
+        connector.setUnwrapCacheSize(10);
+        String transientId = sealer.wrap(PRINCIPAL, System.currentTimeMillis() + 60000);
+
+        // the sealer accepts the identifier but reports it as already expired, so it must not be served from cache
+        sealer.reportedExpiration = System.currentTimeMillis() - 1;
+        assertEquals(PRINCIPAL, connector.unwrap(transientId));
+        assertEquals(PRINCIPAL, connector.unwrap(transientId));
+        assertEquals(2, sealer.unwraps);
+        assertEquals(0, connector.getUnwrapCacheHits());
+        assertEquals(2, connector.getUnwrapCacheMisses());
+    }
+
+    public void testCacheDisabled() throws Exception {
+        CryptoTransientPrincipalConnector connector = new CryptoTransientPrincipalConnector(sealer);
+        String transientId = sealer.wrap(PRINCIPAL, System.currentTimeMillis() + 60000);
+
+        assertEquals(PRINCIPAL, connector.unwrap(transientId));
+        assertEquals(PRINCIPAL, connector.unwrap(transientId));
+        assertEquals(2, sealer.unwraps);
+        assertEquals(0, connector.getUnwrapCacheSize());
+        assertEquals(0, connector.getUnwrapCacheMisses());
+    }
+
+    /** Data sealer which counts unwrap operations and may override the expiration of unwrapped data. */
+    private static class CountingDataSealer extends DataSealer {
+
+        private int unwraps;
+
+        private long reportedExpiration;
+
+        /** {@inheritDoc} */
+        public UnwrappedData unwrapData(String wrapped) throws DataSealerException {
+            unwraps++;
+            UnwrappedData unwrapped = super.unwrapData(wrapped);
+            if (reportedExpiration != 0) {
+                return new UnwrappedData(unwrapped.getData(), reportedExpiration);
+            }
+            return unwrapped;
+        }
+    }
+}
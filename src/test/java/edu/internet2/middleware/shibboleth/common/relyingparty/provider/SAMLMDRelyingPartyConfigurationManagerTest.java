@@ -0,0 +1,94 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.relyingparty.provider;
+
+import junit.framework.TestCase;
+
+import org.opensaml.saml2.metadata.provider.AbstractObservableMetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.xml.XMLObject;
+import org.springframework.context.support.StaticApplicationContext;
+
+import edu.internet2.middleware.shibboleth.common.config.relyingparty.RelyingPartyGroup;
+
+/** Unit test for the metadata observer handling of {@link SAMLMDRelyingPartyConfigurationManager}. */
+public class SAMLMDRelyingPartyConfigurationManagerTest extends TestCase {
+
+    /** Tests that reloading moves the entity group indexer to the new metadata provider. */
+    public void testEntityGroupIndexerReplacedOnReload() throws Exception {
+        SAMLMDRelyingPartyConfigurationManager manager = new SAMLMDRelyingPartyConfigurationManager();
+
+        TestMetadataProvider firstProvider = new TestMetadataProvider();
+        manager.onNewContextCreated(createContext(firstProvider));
+        manager.onNewContextCreated(createContext(firstProvider));
+        assertEquals(1, countIndexers(firstProvider));
+
+        TestMetadataProvider secondProvider = new TestMetadataProvider();
+        manager.onNewContextCreated(createContext(secondProvider));
+        assertEquals(0, countIndexers(firstProvider));
+        assertEquals(1, countIndexers(secondProvider));
+        assertSame(secondProvider, manager.getMetadataProvider());
+    }
+
+    /**
+     * Creates an application context holding a relying party group with the given metadata provider.
+     * 
+     * @param provider the metadata provider of the group
+     * 
+     * @return the application context
+     * 
+     * @throws MetadataProviderException thrown if the provider can not be initialized
+     */
+    private StaticApplicationContext createContext(TestMetadataProvider provider) throws MetadataProviderException {
+        provider.initialize();
+
+        RelyingPartyGroup rpGroup = new RelyingPartyGroup();
+        rpGroup.setMetadataProvider(provider);
+
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("rpGroup", rpGroup);
+        return context;
+    }
+
+    /**
+     * Counts the entity group indexers registered with a provider.
+     * 
+     * @param provider the metadata provider
+     * 
+     * @return the number of registered entity group indexers
+     */
+    private int countIndexers(ObservableMetadataProvider provider) {
+        int count = 0;
+        for (ObservableMetadataProvider.Observer observer : provider.getObservers()) {
+            if (observer instanceof SAMLMDRelyingPartyConfigurationManager.EntityGroupIndexer) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** A metadata provider without metadata. */
+    private class TestMetadataProvider extends AbstractObservableMetadataProvider {
+
+        /** {@inheritDoc} */
+        protected XMLObject doGetMetadata() throws MetadataProviderException {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.SimpleBindings;
+
+/**
+ * Script engine factory for the "blocking" test language. A script is either the word "block", which waits, ignoring
+ * interruption as most JSR-223 engines do, until {@link #UNBLOCK} is counted down, or any other text, which returns
+ * the value of the "result" binding.
+ */
+public class BlockingScriptEngineFactory implements ScriptEngineFactory {
+
+    /** Latch blocking scripts wait on. */
+    public static volatile CountDownLatch UNBLOCK = new CountDownLatch(0);
+
+    /** Number of engines created. */
+    public static final AtomicInteger ENGINES_CREATED = new AtomicInteger();
+
+    /** {@inheritDoc} */
+    public String getEngineName() {
+        return "blocking";
+    }
+
+    /** {@inheritDoc} */
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getMimeTypes() {
+        return Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getNames() {
+        return Collections.singletonList("blocking");
+    }
+
+    /** {@inheritDoc} */
+    public String getLanguageName() {
+        return "blocking";
+    }
+
+    /** {@inheritDoc} */
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    /** {@inheritDoc} */
+    public Object getParameter(String key) {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public String getOutputStatement(String toDisplay) {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public String getProgram(String... statements) {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public ScriptEngine getScriptEngine() {
+        ENGINES_CREATED.incrementAndGet();
+        return new AbstractScriptEngine() {
+
+            public Object eval(String script, ScriptContext context) {
+                if ("block".equals(script)) {
+                    boolean interrupted = false;
+                    while (true) {
+                        try {
+                            UNBLOCK.await();
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }
+                return context.getAttribute("result");
+            }
+
+            public Object eval(Reader reader, ScriptContext context) {
+                throw new UnsupportedOperationException();
+            }
+
+            public Bindings createBindings() {
+                return new SimpleBindings();
+            }
+
+            public ScriptEngineFactory getFactory() {
+                return BlockingScriptEngineFactory.this;
+            }
+        };
+    }
+}
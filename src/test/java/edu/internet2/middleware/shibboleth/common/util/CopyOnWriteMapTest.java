@@ -0,0 +1,67 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/** Unit test for {@link CopyOnWriteMap}. */
+public class CopyOnWriteMapTest extends TestCase {
+
+    private Map<String, String> shared;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        shared = new HashMap<String, String>();
+        shared.put("en", "Email");
+        shared.put("de", "E-Mail");
+        shared = Collections.unmodifiableMap(shared);
+    }
+
+    public void testReadThrough() {
+        CopyOnWriteMap<String, String> map = new CopyOnWriteMap<String, String>(shared);
+        assertEquals(shared, map);
+        assertEquals("Email", map.get("en"));
+        assertNull(map.remove("fr"));
+        map.putAll(Collections.<String, String> emptyMap());
+        assertFalse(map.isCopied());
+    }
+
+    public void testCopyOnWrite() {
+        CopyOnWriteMap<String, String> map = new CopyOnWriteMap<String, String>(shared);
+        map.put("fr", "Courriel");
+        assertTrue(map.isCopied());
+        assertEquals(3, map.size());
+        assertEquals(2, shared.size());
+
+        map = new CopyOnWriteMap<String, String>(shared);
+        Iterator<Map.Entry<String, String>> entries = map.entrySet().iterator();
+        Map.Entry<String, String> entry = entries.next();
+        entry.setValue("changed");
+        assertEquals("changed", map.get(entry.getKey()));
+        entries.next();
+        entries.remove();
+        assertEquals(1, map.size());
+        assertEquals(2, shared.size());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.Collections;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import junit.framework.TestCase;
+
+/** Unit test for {@link DataSealer}. */
+public class DataSealerTest extends TestCase {
+
+    private SecretKey key1;
+
+    private SecretKey key2;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        key1 = generator.generateKey();
+        key2 = generator.generateKey();
+    }
+
+    public void testRoundTrip() throws Exception {
+        DataSealer sealer = buildSealer(key1, 1, false);
+
+        String wrapped = sealer.wrap("https://idp.example.org!https://sp.example.org!jdoe",
+                System.currentTimeMillis() + 60000);
+        assertTrue(wrapped.startsWith(DataSealer.AEAD_FORMAT_PREFIX));
+        assertEquals("https://idp.example.org!https://sp.example.org!jdoe", sealer.unwrap(wrapped));
+    }
+
+    public void testUnwrapData() throws Exception {
+        long expiration = System.currentTimeMillis() + 60000;
+        DataSealer sealer = buildSealer(key1, 1, false);
+        DataSealer legacySealer = buildSealer(key1, 1, true);
+
+        DataSealer.UnwrappedData unwrapped = sealer.unwrapData(sealer.wrap("jdoe", expiration));
+        assertEquals("jdoe", unwrapped.getData());
+        assertEquals(expiration, unwrapped.getExpiration());
+        assertFalse(unwrapped.isExpired());
+
+        unwrapped = sealer.unwrapData(legacySealer.wrap("jdoe", expiration));
+        assertEquals("jdoe", unwrapped.getData());
+        assertEquals(expiration, unwrapped.getExpiration());
+    }
+
+    public void testLegacyFormat() throws Exception {
+        DataSealer legacySealer = buildSealer(key1, 1, true);
+        String wrapped = legacySealer.wrap("jdoe", System.currentTimeMillis() + 60000);
+        assertFalse(wrapped.startsWith(DataSealer.AEAD_FORMAT_PREFIX));
+
+        DataSealer sealer = buildSealer(key1, 1, false);
+        assertEquals("jdoe", sealer.unwrap(wrapped));
+    }
+
+    public void testKeyRotation() throws Exception {
+        DataSealer oldSealer = buildSealer(key1, 1, false);
+        String wrapped = oldSealer.wrap("jdoe", System.currentTimeMillis() + 60000);
+
+        DataSealer sealer = new DataSealer();
+        sealer.setCipherKey(key2);
+        sealer.setMacKey(key2);
+        sealer.setCipherKeyVersion(2);
+        sealer.setPreviousCipherKeys(Collections.singletonMap(1, key1));
+        sealer.init();
+        assertEquals("jdoe", sealer.unwrap(wrapped));
+
+        DataSealer unrotatedSealer = buildSealer(key2, 2, false);
+        try {
+            unrotatedSealer.unwrap(wrapped);
+            fail("data wrapped with an unknown key version was unwrapped");
+        } catch (DataSealerException e) {
+            // expected
+        }
+    }
+
+    public void testTamperedData() throws Exception {
+        DataSealer sealer = buildSealer(key1, 1, false);
+        String wrapped = sealer.wrap("jdoe", System.currentTimeMillis() + 60000);
+
+        char last = wrapped.charAt(wrapped.length() - 1);
+        String tampered = wrapped.substring(0, wrapped.length() - 1) + (last == 'A' ? 'B' : 'A');
+        try {
+            sealer.unwrap(tampered);
+            fail("tampered data was unwrapped");
+        } catch (DataSealerException e) {
+            // expected
+        }
+    }
+
+    public void testExpiredData() throws Exception {
+        DataSealer sealer = buildSealer(key1, 1, false);
+        String wrapped = sealer.wrap("jdoe", System.currentTimeMillis() - 1000);
+        try {
+            sealer.unwrap(wrapped);
+            fail("expired data was unwrapped");
+        } catch (DataExpiredException e) {
+            // expected
+        }
+    }
+
+    private DataSealer buildSealer(SecretKey key, int keyVersion, boolean legacy) throws DataSealerException {
+        DataSealer sealer = new DataSealer();
+        sealer.setCipherKey(key);
+        sealer.setMacKey(key);
+        sealer.setCipherKeyVersion(keyVersion);
+        sealer.setLegacyWrapFormat(legacy);
+        sealer.init();
+        return sealer;
+    }
+}
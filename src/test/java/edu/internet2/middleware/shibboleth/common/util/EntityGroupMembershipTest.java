@@ -0,0 +1,100 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObjectBuilderFactory;
+
+import edu.internet2.middleware.shibboleth.common.util.EntityGroupMembership.EntityGroups;
+
+/** Unit test for {@link EntityGroupMembership}. */
+public class EntityGroupMembershipTest extends TestCase {
+
+    /** Builder factory for the metadata objects. */
+    private XMLObjectBuilderFactory builderFactory;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        DefaultBootstrap.bootstrap();
+        builderFactory = Configuration.getBuilderFactory();
+    }
+
+    /** Tests the groups of entities in nested and unnamed groups. */
+    public void testNestedGroups() {
+        EntitiesDescriptor federation = createGroup("urn:example.org:federation");
+        EntitiesDescriptor unnamed = createGroup(null);
+        EntitiesDescriptor members = createGroup("urn:example.org:members");
+        federation.getEntitiesDescriptors().add(unnamed);
+        unnamed.getEntitiesDescriptors().add(members);
+
+        EntityDescriptor member = createEntity("https://sp.example.org");
+        members.getEntityDescriptors().add(member);
+        EntityDescriptor other = createEntity("https://other.example.org");
+        members.getEntityDescriptors().add(other);
+        EntityDescriptor topLevel = createEntity("https://top.example.org");
+        federation.getEntityDescriptors().add(topLevel);
+
+        EntityGroupMembership membership = new EntityGroupMembership();
+        membership.index(federation);
+
+        EntityGroups groups = membership.getGroups(member);
+        assertEquals(Arrays.asList("urn:example.org:members", "urn:example.org:federation"), groups.getNames());
+        assertTrue(groups.contains("urn:example.org:federation"));
+        assertFalse(groups.contains("urn:example.org:other"));
+        assertSame(groups, membership.getGroups(other));
+
+        assertEquals(Arrays.asList("urn:example.org:federation"), membership.getGroups(topLevel).getNames());
+        assertTrue(membership.getGroups(createEntity("https://standalone.example.org")).getNames().isEmpty());
+    }
+
+    /**
+     * Creates an entity group.
+     * 
+     * @param name name of the group
+     * 
+     * @return the created group
+     */
+    private EntitiesDescriptor createGroup(String name) {
+        EntitiesDescriptor group = (EntitiesDescriptor) builderFactory.getBuilder(
+                EntitiesDescriptor.DEFAULT_ELEMENT_NAME).buildObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        group.setName(name);
+        return group;
+    }
+
+    /**
+     * Creates an entity.
+     * 
+     * @param entityId ID of the entity
+     * 
+     * @return the created entity
+     */
+    private EntityDescriptor createEntity(String entityId) {
+        EntityDescriptor entity = (EntityDescriptor) builderFactory.getBuilder(EntityDescriptor.DEFAULT_ELEMENT_NAME)
+                .buildObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        entity.setEntityID(entityId);
+        return entity;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.Timer;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTimeUtils.MillisProvider;
+
+import edu.internet2.middleware.shibboleth.common.attribute.resolver.provider.attributeDefinition.TransientIdEntry;
+
+/** Unit test for {@link ExpiringMapBasedStorageService}. */
+public class ExpiringMapBasedStorageServiceTest extends TestCase {
+
+    private Timer timer;
+
+    private TestClock clock;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        timer = new Timer(true);
+        clock = new TestClock();
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        timer.cancel();
+        super.tearDown();
+    }
+
+    public void testExpiration() throws Exception {
+        ExpiringMapBasedStorageService<String, TransientIdEntry> storageService = new ExpiringMapBasedStorageService<String, TransientIdEntry>(
+                timer, 60000, clock);
+
+        storageService.put("partition", "short", new TransientIdEntry(50000, "rp", "principal", "short"));
+        storageService.put("partition", "medium", new TransientIdEntry(150000, "rp", "principal", "medium"));
+        storageService.put("partition", "long", new TransientIdEntry(1000 * 60 * 60 * 24 * 30L, "rp",
+                "principal", "long"));
+        assertEquals(3, storageService.getSize());
+        assertNotNull(storageService.get("partition", "short"));
+
+        clock.advance(100000);
+        assertNull(storageService.get("partition", "short"));
+        assertNotNull(storageService.get("partition", "medium"));
+        assertEquals(2, storageService.getSize());
+        assertEquals(1, storageService.getExpirationCount());
+
+        storageService.destroy();
+    }
+
+    public void testSweep() throws Exception {
+        ExpiringMapBasedStorageService<String, TransientIdEntry> storageService = new ExpiringMapBasedStorageService<String, TransientIdEntry>(
+                timer, 1000, clock);
+
+        for (int i = 0; i < 100; i++) {
+            storageService.put("partition", Integer.toString(i), new TransientIdEntry(i * 2000, "rp", "principal",
+                    Integer.toString(i)));
+        }
+        storageService.put("partition", "long", new TransientIdEntry(1000 * 60 * 60 * 24, "rp", "principal",
+                "long"));
+        storageService.put("partition", "forever", null);
+
+        clock.advance(100000);
+        storageService.sweep();
+        assertEquals(52, storageService.getSize("partition"));
+
+        clock.advance(200000);
+        storageService.sweep();
+        assertEquals(2, storageService.getSize("partition"));
+        assertEquals(100, storageService.getExpirationCount());
+        assertTrue(storageService.contains("partition", "long"));
+        assertTrue(storageService.contains("partition", "forever"));
+
+        storageService.destroy();
+    }
+
+    public void testMaximumPartitionSize() {
+        ExpiringMapBasedStorageService<String, String> storageService = new ExpiringMapBasedStorageService<String, String>(
+                timer, 60000);
+        storageService.setMaximumPartitionSize(3);
+
+        storageService.put("partition", "key1", "value1");
+        storageService.put("partition", "key2", "value2");
+        storageService.put("partition", "key3", "value3");
+        storageService.get("partition", "key1");
+        storageService.put("partition", "key4", "value4");
+        storageService.put("other", "key1", "value1");
+
+        assertEquals(4, storageService.getSize());
+        assertEquals(3, storageService.getSize("partition"));
+        assertEquals(1, storageService.getEvictionCount());
+        assertTrue(storageService.contains("partition", "key1"));
+        assertFalse(storageService.contains("partition", "key2"));
+        assertTrue(storageService.contains("partition", "key4"));
+        assertTrue(storageService.contains("other", "key1"));
+
+        assertEquals("value4", storageService.remove("partition", "key4"));
+        assertEquals(3, storageService.getSize());
+
+        storageService.destroy();
+    }
+
+    public void testSharedValueEviction() {
+        ExpiringMapBasedStorageService<String, TransientIdEntry> storageService = new ExpiringMapBasedStorageService<String, TransientIdEntry>(
+                timer, 60000, clock);
+        storageService.setMaximumPartitionSize(10);
+
+        // stored as TransientIdAttributeDefinition does, under the token and the principal
+        TransientIdEntry liveEntry = new TransientIdEntry(3600000, "rp", "principal", "token");
+        storageService.put("transientId", "token", liveEntry);
+        storageService.put("transientId", "idp!rp!principal", liveEntry);
+
+        for (int i = 0; i < 50; i++) {
+            // a repeat login only looks up the principal key
+            assertSame(liveEntry, storageService.get("transientId", "idp!rp!principal"));
+            TransientIdEntry otherEntry = new TransientIdEntry(3600000, "rp", "principal" + i, "token" + i);
+            storageService.put("transientId", "token" + i, otherEntry);
+            storageService.put("transientId", "idp!rp!principal" + i, otherEntry);
+            assertTrue(storageService.getSize("transientId") <= 10);
+        }
+
+        assertSame(liveEntry, storageService.get("transientId", "token"));
+        assertFalse(storageService.contains("transientId", "token0"));
+        assertFalse(storageService.contains("transientId", "idp!rp!principal0"));
+        assertTrue(storageService.contains("transientId", "token49"));
+        assertTrue(storageService.contains("transientId", "idp!rp!principal49"));
+        assertEquals(2 * 50 + 2 - 10, storageService.getEvictionCount());
+
+        assertSame(liveEntry, storageService.remove("transientId", "token"));
+        assertSame(liveEntry, storageService.get("transientId", "idp!rp!principal"));
+
+        storageService.destroy();
+    }
+
+    public void testContainsExpired() {
+        ExpiringMapBasedStorageService<String, TransientIdEntry> storageService = new ExpiringMapBasedStorageService<String, TransientIdEntry>(
+                timer, 60000, clock);
+
+        storageService.put("partition", "short", new TransientIdEntry(50000, "rp", "principal", "short"));
+        assertTrue(storageService.contains("partition", "short"));
+
+        clock.advance(100000);
+        assertFalse(storageService.contains("partition", "short"));
+        assertNull(storageService.get("partition", "short"));
+        assertEquals(0, storageService.getSize());
+        assertEquals(1, storageService.getExpirationCount());
+
+        storageService.destroy();
+    }
+
+    /** Clock which only moves when advanced. */
+    private static class TestClock implements MillisProvider {
+
+        /** Current time. */
+        private long millis = System.currentTimeMillis();
+
+        /** {@inheritDoc} */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Moves the clock forward.
+         * 
+         * @param delta milliseconds to move the clock forward by
+         */
+        public void advance(long delta) {
+            millis += delta;
+        }
+    }
+}
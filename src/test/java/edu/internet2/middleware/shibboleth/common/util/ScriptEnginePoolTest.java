@@ -0,0 +1,126 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.internet2.middleware.shibboleth.common.util;
+
+import java.util.concurrent.CountDownLatch;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+
+import junit.framework.TestCase;
+import edu.internet2.middleware.shibboleth.common.util.ScriptEnginePool.PooledScript;
+
+/** Unit test for {@link ScriptEnginePool}. */
+public class ScriptEnginePoolTest extends TestCase {
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        BlockingScriptEngineFactory.UNBLOCK.countDown();
+        super.tearDown();
+    }
+
+    /** Tests that released engines are reset and reused, and that borrowers wait while all engines are in use. */
+    public void testBorrowAndRelease() throws Exception {
+        final ScriptEnginePool pool = new ScriptEnginePool("blocking", "result", 2, 0);
+        int created = BlockingScriptEngineFactory.ENGINES_CREATED.get();
+
+        PooledScript first = pool.borrow();
+        first.getContext().setAttribute("result", "one", ScriptContext.ENGINE_SCOPE);
+        assertEquals("one", pool.eval(first));
+        PooledScript second = pool.borrow();
+        assertNotSame(first, second);
+        assertEquals(created + 1, BlockingScriptEngineFactory.ENGINES_CREATED.get());
+
+        final PooledScript[] borrowed = new PooledScript[1];
+        Thread borrower = new Thread() {
+            public void run() {
+                try {
+                    borrowed[0] = pool.borrow();
+                } catch (ScriptException e) {
+                    fail(e.getMessage());
+                }
+            }
+        };
+        borrower.start();
+        borrower.join(200);
+        assertTrue(borrower.isAlive());
+
+        pool.release(first);
+        borrower.join(5000);
+        assertFalse(borrower.isAlive());
+        assertSame(first, borrowed[0]);
+        assertNull(borrowed[0].getContext().getAttribute("result"));
+        assertEquals(created + 1, BlockingScriptEngineFactory.ENGINES_CREATED.get());
+        assertEquals(1, pool.getExecutionCount());
+
+        pool.release(second);
+        pool.release(borrowed[0]);
+    }
+
+    /**
+     * Tests that a script exceeding the time limit is discarded and keeps counting against the pool size until it
+     * completes, even though the engine ignores interruption.
+     */
+    public void testTimeout() throws Exception {
+        BlockingScriptEngineFactory.UNBLOCK = new CountDownLatch(1);
+        final ScriptEnginePool pool = new ScriptEnginePool("blocking", "block", 1, 50);
+
+        PooledScript runaway = pool.borrow();
+        try {
+            pool.eval(runaway);
+            fail("Script should have timed out");
+        } catch (ScriptException e) {
+            // expected
+        }
+        assertEquals(1, pool.getTimeoutCount());
+        pool.release(runaway);
+
+        final PooledScript[] borrowed = new PooledScript[1];
+        Thread borrower = new Thread() {
+            public void run() {
+                try {
+                    borrowed[0] = pool.borrow();
+                } catch (ScriptException e) {
+                    fail(e.getMessage());
+                }
+            }
+        };
+        borrower.start();
+        borrower.join(200);
+        assertTrue("Permit of a running script was returned", borrower.isAlive());
+
+        BlockingScriptEngineFactory.UNBLOCK.countDown();
+        borrower.join(5000);
+        assertFalse(borrower.isAlive());
+        assertNotSame(runaway, borrowed[0]);
+        pool.release(borrowed[0]);
+    }
+
+    /** Tests that a timed script which completes in time returns its result and is reused. */
+    public void testTimedReuse() throws Exception {
+        ScriptEnginePool pool = new ScriptEnginePool("blocking", "result", 1, 5000);
+
+        PooledScript script = pool.borrow();
+        script.getContext().setAttribute("result", Boolean.TRUE, ScriptContext.ENGINE_SCOPE);
+        assertEquals(Boolean.TRUE, pool.eval(script));
+        pool.release(script);
+
+        assertSame(script, pool.borrow());
+        assertEquals(0, pool.getTimeoutCount());
+    }
+}